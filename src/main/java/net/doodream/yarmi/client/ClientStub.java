@@ -0,0 +1,71 @@
+package net.doodream.yarmi.client;
+
+import net.doodream.yarmi.data.Endpoint;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+
+/**
+ *  base class of the call proxies generated by {@link StubProcessor} for the controller interfaces, which are used instead of
+ *  {@link java.lang.reflect.Proxy} when the call proxy is created for single controller.
+ *
+ *  the endpoints of the methods are bound once on construction, so each method of the generated stub calls
+ *  {@link #call(Endpoint, Object[])} with its own endpoint directly. the call site is monomorphic and doesn't look up
+ *  {@link Method}, which allows JIT to inline the client call path.
+ *  generated stubs should not be created nor extended by hand
+ */
+public abstract class ClientStub {
+
+    static final String STUB_SUFFIX = "_YarmiStub";
+
+    private final RMIClient client;
+
+    protected ClientStub(RMIClient client) {
+        if(client == null) {
+            throw new IllegalArgumentException("null client");
+        }
+        this.client = client;
+    }
+
+    /**
+     * find the endpoint of the controller method
+     * @param controller controller interface implemented by the stub
+     * @param name name of the method
+     * @param parameterTypes parameter types of the method
+     * @return endpoint of the method, or null if not provided by the remote service
+     */
+    protected final Endpoint bind(Class<?> controller, String name, Class<?>... parameterTypes) {
+        try {
+            return client.bind(controller.getMethod(name, parameterTypes));
+        } catch (NoSuchMethodException e) {
+            // stub generated for different version of the controller
+            throw new IllegalStateException(String.format(Locale.ENGLISH, "no method %s in %s", name, controller.getName()), e);
+        }
+    }
+
+    /**
+     * call the endpoint with the arguments
+     * @param endpoint endpoint bound to the method, or null
+     * @param args arguments of the call, null for no argument
+     * @return result of the call as the return type of the method
+     * @throws Throwable same as {@link RMIClient#invoke(Object, Method, Object[])}
+     */
+    protected final Object call(Endpoint endpoint, Object[] args) throws Throwable {
+        return client.call(endpoint, args);
+    }
+
+    /**
+     * name of the stub generated for the controller, which is placed in the package of the controller.
+     * e.g. stub of {@code a.b.Outer$Inner} is {@code a.b.Outer_Inner_YarmiStub}
+     * @param binaryName binary name of the controller interface (i.e. {@link Class#getName()})
+     * @return binary name of the stub
+     */
+    static String getStubName(String binaryName) {
+        final int packageEnd = binaryName.lastIndexOf('.');
+        return binaryName.substring(0, packageEnd + 1) + binaryName.substring(packageEnd + 1).replace('$', '_') + STUB_SUFFIX;
+    }
+
+    RMIClient getClient() {
+        return client;
+    }
+}
@@ -1,24 +1,24 @@
 package net.doodream.yarmi.client;
 
 import net.doodream.yarmi.annotation.RMIException;
-import net.doodream.yarmi.annotation.server.Controller;
-import net.doodream.yarmi.annotation.server.Service;
 import net.doodream.yarmi.data.Endpoint;
 import net.doodream.yarmi.data.RMIError;
 import net.doodream.yarmi.data.RMIServiceInfo;
 import net.doodream.yarmi.data.Response;
-import net.doodream.yarmi.method.RMIMethod;
+import net.doodream.yarmi.net.BalancedServiceProxy;
+import net.doodream.yarmi.net.LatencyEwma;
 import net.doodream.yarmi.net.ServiceProxy;
+import net.doodream.yarmi.net.ServiceProxyRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -31,17 +31,18 @@ public class RMIClient implements InvocationHandler, Comparable<RMIClient>  {
 
     private static final Logger Log = LoggerFactory.getLogger(RMIClient.class);
 
+    private StubPlan plan;
     private Map<Method, Endpoint> methodMap;
     private ServiceProxy serviceProxy;
     private final AtomicInteger ongoingRequestCount;
     private long timeout;
-    private Long responseTime;
+    // response time of the calls in nanoseconds
+    private final LatencyEwma responseTime = new LatencyEwma();
     private volatile boolean markToClose;
 
     private RMIClient(ServiceProxy serviceProxy, long timeout) {
         this.serviceProxy = serviceProxy;
         markToClose = false;
-        responseTime = Long.MAX_VALUE;
         this.timeout = timeout;
         ongoingRequestCount = new AtomicInteger(0);
     }
@@ -55,7 +56,8 @@ public class RMIClient implements InvocationHandler, Comparable<RMIClient>  {
     }
 
 
-    private void setMethodEndpointMap(Map<Method, Endpoint> map) {
+    private void setMethodEndpointMap(StubPlan plan, Map<Method, Endpoint> map) {
+        this.plan = plan;
         this.methodMap = map;
     }
 
@@ -65,11 +67,14 @@ public class RMIClient implements InvocationHandler, Comparable<RMIClient>  {
 
     /**
      * get {@link RMIClient} for given RMI call proxy
-     * @param proxy
-     * @return
+     * @param proxy call proxy, either generated stub or {@link Proxy}
+     * @return client of the call proxy
      */
     static RMIClient access(Object proxy) {
-        if(Proxy.isProxyClass(proxy.getClass())) {
+        if(proxy instanceof ClientStub) {
+            return ((ClientStub) proxy).getClient();
+        }
+        if(!Proxy.isProxyClass(proxy.getClass()) || !(Proxy.getInvocationHandler(proxy) instanceof RMIClient)) {
             throw new IllegalArgumentException(String.format(Locale.ENGLISH,"invalid proxy : %s", proxy.getClass().getName()));
         }
         return  (RMIClient) Proxy.getInvocationHandler(proxy);
@@ -80,11 +85,7 @@ public class RMIClient implements InvocationHandler, Comparable<RMIClient>  {
      * @param force if true, close regardless its on-going request, otherwise, wait until the all the on-going requests is complete
      */
     public static void destroy(Object proxy, boolean force) throws IOException {
-        if(!Proxy.isProxyClass(proxy.getClass())) {
-            throw new IllegalArgumentException(String.format(Locale.ENGLISH,"invalid proxy : %s", proxy.getClass().getName()));
-        }
-        RMIClient client = (RMIClient) Proxy.getInvocationHandler(proxy);
-        client.close(force);
+        access(proxy).close(force);
     }
 
     /**
@@ -97,45 +98,9 @@ public class RMIClient implements InvocationHandler, Comparable<RMIClient>  {
     }
 
     static RMIClient createClient(ServiceProxy serviceProxy, Class<?> svc, Class<?>[] ctrl, long timeoutInMills) throws IllegalArgumentException {
-        if(svc == null) {
-            throw new IllegalArgumentException("null service");
-        }
-        Service service = svc.getAnnotation(Service.class);
-        if(service == null) {
-            throw new IllegalArgumentException(String.format(Locale.ENGLISH, "no service annotation on %s", svc));
-        }
-        final RMIServiceInfo serviceInfo = RMIServiceInfo.from(svc);
-        final ConcurrentHashMap<Class<?>, Controller> controllerMap  = new ConcurrentHashMap<>();
-
-        final Set<Field> controllers = getController(svc, serviceProxy);
-        if(ctrl == null) {
-            // all the controllers declared are added to call proxy, if ctrl is given as null
-            for (Field controller : controllers) {
-                controllerMap.put(controller.getType(), controller.getAnnotation(Controller.class));
-            }
-        } else {
-            Set<Class<?>> controllerSet = new HashSet<>(Arrays.asList(ctrl));
-            for (Field controller : controllers) {
-                if(controllerSet.contains(controller.getType())) {
-                    controllerMap.put(controller.getType(), controller.getAnnotation(Controller.class));
-                }
-            }
-        }
-        if(controllerMap.isEmpty()) {
-            // throw IllegalArgumentException if there is no matched controller
-            throw new IllegalArgumentException(String.format(Locale.ENGLISH, "no valid controllers for %s", service.name()));
-        }
-
-        Set<Method> validMethods = new HashSet<>();
-        for (Map.Entry<Class<?>, Controller> entry : controllerMap.entrySet()) {
-            Set<Method> methods = extractRMIMethods(entry.getKey());
-            validMethods.addAll(methods);
-        }
-
-        if(validMethods.isEmpty()) {
-            throw new IllegalArgumentException("no valid method");
-        }
-
+        // annotations are scanned and endpoints are built only for the first proxy of the service and controllers
+        final StubPlan plan = StubPlan.get(svc, ctrl);
+        final Map<Method, Endpoint> endpointMap = plan.bind(serviceProxy);
 
         try {
             if(serviceProxy.open()) {
@@ -143,13 +108,7 @@ public class RMIClient implements InvocationHandler, Comparable<RMIClient>  {
             }
 
             RMIClient rmiClient = new RMIClient(serviceProxy, timeoutInMills);
-            final HashMap<Method, Endpoint> endpointMap = new HashMap<>();
-            for (Method validMethod : validMethods) {
-                final Endpoint endpoint = Endpoint.create(controllerMap.get(validMethod.getDeclaringClass()), validMethod);
-                endpointMap.put(validMethod, endpoint);
-            }
-
-            rmiClient.setMethodEndpointMap(endpointMap);
+            rmiClient.setMethodEndpointMap(plan, endpointMap);
             // 18. 7. 31 consider give all the available controller interface to the call proxy
             // main concern is...
             // what happen if there are two methods declared in different interfaces which is identical in parameter & return type, etc.
@@ -163,30 +122,6 @@ public class RMIClient implements InvocationHandler, Comparable<RMIClient>  {
         }
     }
 
-    private static Set<Field> getController(Class<?> svc, ServiceProxy serviceProxy) {
-        final Set<Field> result = new HashSet<>();
-        for (Field field : svc.getDeclaredFields()) {
-            if(serviceProxy.provide(field.getType()) && isAnnotatedWithController(field)) {
-                result.add(field);
-            }
-        }
-        return result;
-    }
-
-    private static Set<Method> extractRMIMethods(Class<?> cls) {
-        Set<Method> methods = new HashSet<>();
-        for (Method method : cls.getMethods()) {
-            if(RMIMethod.isValidMethod(method)) {
-                methods.add(method);
-            }
-        }
-        return methods;
-    }
-
-    private static boolean isAnnotatedWithController(Field field) {
-        return field.getAnnotation(Controller.class) != null;
-    }
-
     /**
      *
      * @param serviceInfo
@@ -209,12 +144,30 @@ public class RMIClient implements InvocationHandler, Comparable<RMIClient>  {
      * @return
      */
     public static Object create(RMIServiceInfo serviceInfo, Class<?> svc, Class<?>[] ctrl, long timeoutInMills) {
-        final ServiceProxy serviceProxy = RMIServiceInfo.toServiceProxy(serviceInfo);
+        // call proxies of the same service share the connection, regardless of their controllers
+        final ServiceProxy serviceProxy = ServiceProxyRegistry.getDefault().get(serviceInfo);
         RMIClient rmiClient = createClient(serviceProxy, svc, ctrl, timeoutInMills);
         if(rmiClient == null) {
             return null;
         }
-        return Proxy.newProxyInstance(svc.getClassLoader(), ctrl, rmiClient);
+        return StubPlan.get(svc, ctrl).newProxy(svc.getClassLoader(), ctrl, rmiClient);
+    }
+
+    /**
+     * create call proxy balancing the calls over multiple instances of the same service
+     * @param serviceInfos instances of the service, which are obtained from the service discovery
+     * @param svc Service definition class
+     * @param ctrl controller definition as interface
+     * @param timeoutInMills timeout of the call
+     * @return call proxy instance for controller
+     */
+    public static Object create(List<RMIServiceInfo> serviceInfos, Class<?> svc, Class<?>[] ctrl, long timeoutInMills) {
+        final ServiceProxy serviceProxy = BalancedServiceProxy.create(serviceInfos);
+        RMIClient rmiClient = createClient(serviceProxy, svc, ctrl, timeoutInMills);
+        if(rmiClient == null) {
+            return null;
+        }
+        return StubPlan.get(svc, ctrl).newProxy(svc.getClassLoader(), ctrl, rmiClient);
     }
 
     /**
@@ -281,15 +234,42 @@ public class RMIClient implements InvocationHandler, Comparable<RMIClient>  {
             // prevent new request from being made
             throw new RMIException(RMIError.CLOSED.getResponse());
         }
-        Endpoint endpoint = methodMap.get(method);
+        // endpoint is found by identity of the method, unless the remote service provides only some of the controllers of the plan
+        final Endpoint endpoint = (methodMap == plan.getEndpoints()) ? plan.resolve(method) : methodMap.get(method);
+        return call(endpoint, args);
+    }
+
+    /**
+     * @return endpoint of the method, or null if the method is not provided by the remote service
+     */
+    Endpoint bind(Method method) {
+        return methodMap.get(method);
+    }
+
+    /**
+     * call the endpoint, which is resolved by the call proxy already
+     * @param endpoint endpoint of the method called, or null
+     * @param args arguments of the call
+     * @return response, or future of the response for async method. null if the endpoint is null
+     */
+    Object call(Endpoint endpoint, Object[] args) throws Throwable {
+        if(markToClose) {
+            throw new RMIException(RMIError.CLOSED.getResponse());
+        }
         if(endpoint == null) {
             return null;
         }
         ongoingRequestCount.getAndIncrement();
-        Response response = serviceProxy.request(endpoint, timeout, args);
-        synchronized (ongoingRequestCount) {
-            ongoingRequestCount.decrementAndGet();
-            ongoingRequestCount.notifyAll();
+        final long start = System.nanoTime();
+        if(endpoint.isAsync()) {
+            return invokeAsync(endpoint, start, args);
+        }
+        Response response;
+        try {
+            response = serviceProxy.request(endpoint, timeout, args);
+            updateResponseTime(System.nanoTime() - start);
+        } finally {
+            onRequestComplete();
         }
         if(response.isSuccessful()) {
             return response;
@@ -297,13 +277,55 @@ public class RMIClient implements InvocationHandler, Comparable<RMIClient>  {
         throw new RMIException(response);
     }
 
+    /**
+     * invoke async method returning {@code CompletableFuture<Response<T>>} without blocking the caller,
+     * the future is completed exceptionally with {@link RMIException} if the response is not successful
+     */
+    private CompletableFuture<Response<?>> invokeAsync(Endpoint endpoint, long start, Object[] args) throws IOException {
+        final CompletableFuture<Response<?>> future;
+        try {
+            future = serviceProxy.requestAsync(endpoint, timeout, args);
+        } catch (IOException | RuntimeException e) {
+            onRequestComplete();
+            throw e;
+        }
+        return future.handle((response, throwable) -> {
+            if(response != null) {
+                updateResponseTime(System.nanoTime() - start);
+            }
+            onRequestComplete();
+            if(throwable != null) {
+                throw (throwable instanceof CompletionException) ? (CompletionException) throwable : new CompletionException(throwable);
+            }
+            if(!response.isSuccessful()) {
+                throw new CompletionException(new RMIException(response));
+            }
+            return response;
+        });
+    }
+
+    private void onRequestComplete() {
+        // lock is taken only when close is waiting, not to serialize concurrent calls on the proxy
+        if((ongoingRequestCount.decrementAndGet() == 0) && markToClose) {
+            synchronized (ongoingRequestCount) {
+                ongoingRequestCount.notifyAll();
+            }
+        }
+    }
+
+    private void updateResponseTime(long elapsed) {
+        responseTime.update(elapsed);
+    }
+
     @Override
     public int compareTo(RMIClient o) {
-        return Math.toIntExact(getResponseDelay() - o.getResponseDelay());
+        return Long.compare(getResponseDelay(), o.getResponseDelay());
     }
 
     private long getResponseDelay() {
-        return responseTime;
+        // client not measured yet is ordered last
+        final long delay = responseTime.get();
+        return (delay == 0) ? Long.MAX_VALUE : delay;
     }
 
     String who() {
@@ -0,0 +1,261 @@
+package net.doodream.yarmi.client;
+
+import net.doodream.yarmi.annotation.server.Controller;
+import net.doodream.yarmi.annotation.server.Service;
+import net.doodream.yarmi.data.Endpoint;
+import net.doodream.yarmi.method.RMIMethod;
+import net.doodream.yarmi.net.ServiceProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *  endpoints of the controllers of a service definition, which are built once per (service class, controller set)
+ *  and shared by all the call proxies created for them. so creating a call proxy after the first one
+ *  neither scans the annotations nor builds the endpoints again, only the controllers provided by the remote service are picked.
+ *
+ *  endpoints are immutable since the arguments of each call are bound into its own request, so they can be shared by the proxies.
+ *  the proxy class of the plan is also resolved once, and the {@link Method}s passed by the proxy class are mapped to the endpoints
+ *  by identity, so a call doesn't compare the methods (i.e. name and parameter types) to find its endpoint.
+ *  for single controller, the stub generated at build time (refer {@link StubProcessor}) is used instead of the proxy class.
+ *
+ *  plans are cached in {@link ClassValue} of the service class, so the cache doesn't keep the service class (and its class loader)
+ *  from being unloaded
+ */
+final class StubPlan {
+
+    private static final Logger Log = LoggerFactory.getLogger(StubPlan.class);
+    private static final ClassValue<ConcurrentHashMap<Key, StubPlan>> PLANS = new ClassValue<ConcurrentHashMap<Key, StubPlan>>() {
+        @Override
+        protected ConcurrentHashMap<Key, StubPlan> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final String serviceName;
+    // endpoints per controller type in declaration order
+    private final Map<Class<?>, Map<Method, Endpoint>> controllers;
+    // endpoints of all the controllers above
+    private final Map<Method, Endpoint> endpoints;
+    // Method instances of the proxy class to the endpoints, copied on write as the methods are called for the first time
+    private volatile Map<Method, Endpoint> dispatchTable = new IdentityHashMap<>();
+    private volatile Constructor<?> proxyConstructor;
+    private volatile boolean isConstructorUsable = true;
+    // constructor of the stub generated for the single controller of the plan, if any
+    private volatile Constructor<?> stubConstructor;
+    private volatile boolean isStubResolved;
+
+    private StubPlan(String serviceName, Map<Class<?>, Map<Method, Endpoint>> controllers) {
+        this.serviceName = serviceName;
+        this.controllers = controllers;
+        final Map<Method, Endpoint> endpoints = new HashMap<>();
+        for (Map<Method, Endpoint> controllerEndpoints : controllers.values()) {
+            endpoints.putAll(controllerEndpoints);
+        }
+        this.endpoints = Collections.unmodifiableMap(endpoints);
+    }
+
+    /**
+     * get the plan from cache, or build it on the first request
+     * @param svc service definition class
+     * @param ctrl controller interfaces to be called, or null for all the controllers declared
+     * @return plan of the service class and the controllers
+     * @throws IllegalArgumentException invalid service definition, which is not cached
+     */
+    static StubPlan get(Class<?> svc, Class<?>[] ctrl) throws IllegalArgumentException {
+        if(svc == null) {
+            throw new IllegalArgumentException("null service");
+        }
+        return PLANS.get(svc).computeIfAbsent(new Key(ctrl), key -> build(svc, key.controllers));
+    }
+
+    private static StubPlan build(Class<?> svc, Set<Class<?>> controllerSet) {
+        final Service service = svc.getAnnotation(Service.class);
+        if(service == null) {
+            throw new IllegalArgumentException(String.format(Locale.ENGLISH, "no service annotation on %s", svc));
+        }
+        final Map<Class<?>, Map<Method, Endpoint>> controllers = new LinkedHashMap<>();
+        for (Field field : svc.getDeclaredFields()) {
+            final Controller controller = field.getAnnotation(Controller.class);
+            if((controller == null) || controllers.containsKey(field.getType())) {
+                continue;
+            }
+            // all the controllers declared are added to call proxy, if ctrl is given as null
+            if((controllerSet != null) && !controllerSet.contains(field.getType())) {
+                continue;
+            }
+            final Map<Method, Endpoint> endpoints = new HashMap<>();
+            for (Method method : field.getType().getMethods()) {
+                if(RMIMethod.isValidMethod(method)) {
+                    endpoints.put(method, Endpoint.create(controller, method));
+                }
+            }
+            controllers.put(field.getType(), endpoints);
+        }
+        if(controllers.isEmpty()) {
+            throw new IllegalArgumentException(String.format(Locale.ENGLISH, "no valid controllers for %s", service.name()));
+        }
+        return new StubPlan(service.name(), controllers);
+    }
+
+    /**
+     * pick the endpoints of the controllers provided by the remote service
+     * @param serviceProxy proxy to the remote service
+     * @return map of the methods and their endpoints, which should not be modified
+     * @throws IllegalArgumentException none of the controllers (or no valid method) is provided by the remote service
+     */
+    Map<Method, Endpoint> bind(ServiceProxy serviceProxy) throws IllegalArgumentException {
+        final Map<Method, Endpoint> provided = new HashMap<>();
+        int providedControllers = 0;
+        for (Map.Entry<Class<?>, Map<Method, Endpoint>> entry : controllers.entrySet()) {
+            if(serviceProxy.provide(entry.getKey())) {
+                providedControllers++;
+                provided.putAll(entry.getValue());
+            }
+        }
+        if(providedControllers == 0) {
+            throw new IllegalArgumentException(String.format(Locale.ENGLISH, "no valid controllers for %s", serviceName));
+        }
+        if(provided.isEmpty()) {
+            throw new IllegalArgumentException("no valid method");
+        }
+        // shared map of the plan is used in common case, where the remote service provides all the controllers
+        return (providedControllers == controllers.size()) ? endpoints : Collections.unmodifiableMap(provided);
+    }
+
+    /**
+     * @return endpoints of all the controllers of the plan, which should not be modified
+     */
+    Map<Method, Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * find the endpoint of the method called through the proxy
+     * @param method method passed to {@link java.lang.reflect.InvocationHandler} by the proxy of the plan
+     * @return endpoint of the method, or null if the method doesn't belong to the controllers of the plan
+     */
+    Endpoint resolve(Method method) {
+        final Endpoint endpoint = dispatchTable.get(method);
+        if(endpoint != null) {
+            return endpoint;
+        }
+        final Endpoint found = endpoints.get(method);
+        if(found == null) {
+            return null;
+        }
+        synchronized (this) {
+            final Map<Method, Endpoint> table = new IdentityHashMap<>(dispatchTable);
+            table.put(method, found);
+            dispatchTable = table;
+        }
+        return found;
+    }
+
+    /**
+     * create call proxy of the client, which is the stub generated by {@link StubProcessor} if the plan is for single controller
+     * and its stub is found. otherwise {@link Proxy} is created with the constructor of the proxy class resolved on the first call
+     */
+    Object newProxy(ClassLoader loader, Class<?>[] ctrl, RMIClient client) {
+        final Constructor<?> stub = getStubConstructor(ctrl);
+        if(stub != null) {
+            try {
+                return stub.newInstance(client);
+            } catch (ReflectiveOperationException e) {
+                Log.warn("fallback to proxy from stub {} : {}", stub.getDeclaringClass().getName(), e.getMessage());
+                stubConstructor = null;
+            }
+        }
+        return newReflectiveProxy(loader, ctrl, client);
+    }
+
+    private Constructor<?> getStubConstructor(Class<?>[] ctrl) {
+        if(isStubResolved) {
+            return stubConstructor;
+        }
+        // stub implements single controller, so the call proxy for multiple controllers is always reflective
+        final Constructor<?> constructor = ((ctrl != null) && (ctrl.length == 1)) ? findStub(ctrl[0]) : null;
+        stubConstructor = constructor;
+        isStubResolved = true;
+        return constructor;
+    }
+
+    private static Constructor<?> findStub(Class<?> controller) {
+        try {
+            final Class<?> stub = Class.forName(ClientStub.getStubName(controller.getName()), true, controller.getClassLoader());
+            if(!ClientStub.class.isAssignableFrom(stub) || !controller.isAssignableFrom(stub)) {
+                return null;
+            }
+            return stub.getConstructor(RMIClient.class);
+        } catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+            // not generated, e.g. the stub processor is disabled for the build of the controller
+            Log.debug("no stub for {}", controller.getName());
+            return null;
+        }
+    }
+
+    private Object newReflectiveProxy(ClassLoader loader, Class<?>[] ctrl, InvocationHandler handler) {
+        final Constructor<?> constructor = proxyConstructor;
+        if(constructor == null) {
+            final Object proxy = Proxy.newProxyInstance(loader, ctrl, handler);
+            if(isConstructorUsable) {
+                try {
+                    proxyConstructor = proxy.getClass().getConstructor(InvocationHandler.class);
+                } catch (NoSuchMethodException | SecurityException e) {
+                    isConstructorUsable = false;
+                }
+            }
+            return proxy;
+        }
+        try {
+            return constructor.newInstance(handler);
+        } catch (ReflectiveOperationException e) {
+            // e.g. proxy class of non-public interface, which is not accessible from here
+            Log.debug("fallback to proxy factory : {}", e.getMessage());
+            isConstructorUsable = false;
+            proxyConstructor = null;
+            return Proxy.newProxyInstance(loader, ctrl, handler);
+        }
+    }
+
+    private static final class Key {
+        // null for all the controllers
+        private final Set<Class<?>> controllers;
+
+        private Key(Class<?>[] ctrl) {
+            this.controllers = (ctrl == null) ? null : Collections.unmodifiableSet(new HashSet<>(Arrays.asList(ctrl)));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            return Objects.equals(controllers, ((Key) o).controllers);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(controllers);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package net.doodream.yarmi.client;
+
+import net.doodream.yarmi.annotation.RMIExpose;
+import net.doodream.yarmi.annotation.method.Delete;
+import net.doodream.yarmi.annotation.method.Get;
+import net.doodream.yarmi.annotation.method.Post;
+import net.doodream.yarmi.annotation.method.Put;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ *  annotation processor generating {@link ClientStub} for each controller interface declaring RMI methods
+ *  (refer {@link net.doodream.yarmi.method.RMIMethod#isValidMethod(java.lang.reflect.Method)}),
+ *  which is discovered by javac from the jar (META-INF/services), so the build of the controllers needs no configuration.
+ *
+ *  the stub of the controller is generated into the package of the controller (refer {@link ClientStub#getStubName(String)}),
+ *  and implements all the abstract methods of the controller by calling its endpoint bound on construction.
+ *  generic or private controller is skipped, for which {@link java.lang.reflect.Proxy} is used at runtime
+ */
+public class StubProcessor extends AbstractProcessor {
+
+    private static final List<Class<? extends Annotation>> METHOD_ANNOTATIONS = Arrays.asList(RMIExpose.class, Get.class, Post.class, Put.class, Delete.class);
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        final Set<String> types = new TreeSet<>();
+        for (Class<? extends Annotation> annotation : METHOD_ANNOTATIONS) {
+            types.add(annotation.getCanonicalName());
+        }
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        final Set<TypeElement> controllers = new LinkedHashSet<>();
+        for (Class<? extends Annotation> annotation : METHOD_ANNOTATIONS) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                final Element enclosing = element.getEnclosingElement();
+                if((element.getKind() == ElementKind.METHOD) && (enclosing.getKind() == ElementKind.INTERFACE)) {
+                    controllers.add((TypeElement) enclosing);
+                }
+            }
+        }
+        for (TypeElement controller : controllers) {
+            if(!controller.getTypeParameters().isEmpty() || isPrivate(controller)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "no stub for generic or private controller", controller);
+                continue;
+            }
+            try {
+                generate(controller);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        String.format(Locale.ENGLISH, "fail to generate stub : %s", e.getMessage()), controller);
+            }
+        }
+        // the annotations are also read at runtime, so they're not claimed
+        return false;
+    }
+
+    private static boolean isPrivate(TypeElement type) {
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            if(element.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement controller) throws IOException {
+        final String stubName = ClientStub.getStubName(processingEnv.getElementUtils().getBinaryName(controller).toString());
+        final PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(controller);
+        final String simpleName = stubName.substring(stubName.lastIndexOf('.') + 1);
+        final String controllerName = controller.getQualifiedName().toString();
+
+        final List<ExecutableElement> methods = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(controller))) {
+            if(method.getModifiers().contains(Modifier.ABSTRACT)) {
+                methods.add(method);
+            }
+        }
+
+        final Filer filer = processingEnv.getFiler();
+        final JavaFileObject source = filer.createSourceFile(stubName, controller);
+        try (Writer writer = source.openWriter(); PrintWriter out = new PrintWriter(writer)) {
+            if(!packageElement.isUnnamed()) {
+                out.printf("package %s;%n%n", packageElement.getQualifiedName());
+            }
+            out.printf("/**%n * call proxy of {@link %s} generated by %s, don't edit%n */%n", controllerName, StubProcessor.class.getName());
+            out.println("@SuppressWarnings(\"unchecked\")");
+            out.printf("public final class %s extends %s implements %s {%n%n", simpleName, ClientStub.class.getName(), controllerName);
+            for (int i = 0; i < methods.size(); i++) {
+                out.printf("    private final net.doodream.yarmi.data.Endpoint endpoint%d;%n", i);
+            }
+            out.println();
+            out.printf("    public %s(%s client) {%n", simpleName, RMIClient.class.getName());
+            out.println("        super(client);");
+            for (int i = 0; i < methods.size(); i++) {
+                final ExecutableElement method = methods.get(i);
+                final StringBuilder types = new StringBuilder();
+                for (VariableElement parameter : method.getParameters()) {
+                    types.append(", ").append(processingEnv.getTypeUtils().erasure(parameter.asType())).append(".class");
+                }
+                out.printf("        endpoint%d = bind(%s.class, \"%s\"%s);%n", i, controllerName, method.getSimpleName(), types);
+            }
+            out.println("    }");
+            for (int i = 0; i < methods.size(); i++) {
+                out.println();
+                writeMethod(out, methods.get(i), i);
+            }
+            out.println("}");
+        }
+    }
+
+    private void writeMethod(PrintWriter out, ExecutableElement method, int index) {
+        final StringBuilder typeParameters = new StringBuilder();
+        for (TypeParameterElement typeParameter : method.getTypeParameters()) {
+            typeParameters.append((typeParameters.length() == 0) ? "<" : ", ").append(typeParameter.getSimpleName());
+            final List<? extends TypeMirror> bounds = typeParameter.getBounds();
+            for (int i = 0; i < bounds.size(); i++) {
+                if((i == 0) && "java.lang.Object".equals(bounds.get(i).toString())) {
+                    continue;
+                }
+                typeParameters.append((i == 0) ? " extends " : " & ").append(bounds.get(i));
+            }
+        }
+        if(typeParameters.length() > 0) {
+            typeParameters.append("> ");
+        }
+
+        final List<? extends VariableElement> parameters = method.getParameters();
+        final StringBuilder declaration = new StringBuilder();
+        final StringBuilder args = new StringBuilder();
+        for (int i = 0; i < parameters.size(); i++) {
+            final TypeMirror type = parameters.get(i).asType();
+            if(i > 0) {
+                declaration.append(", ");
+                args.append(", ");
+            }
+            if(method.isVarArgs() && (i == parameters.size() - 1) && (type.getKind() == TypeKind.ARRAY)) {
+                declaration.append(((ArrayType) type).getComponentType()).append("...");
+            } else {
+                declaration.append(type);
+            }
+            declaration.append(" arg").append(i);
+            args.append("arg").append(i);
+        }
+        final StringBuilder thrown = new StringBuilder();
+        for (TypeMirror type : method.getThrownTypes()) {
+            thrown.append((thrown.length() == 0) ? " throws " : ", ").append(type);
+        }
+
+        final TypeMirror returnType = method.getReturnType();
+        // no argument is passed as null, same as java.lang.reflect.Proxy
+        final String call = String.format(Locale.ENGLISH, "call(endpoint%d, %s)", index,
+                parameters.isEmpty() ? "null" : "new Object[] { " + args + " }");
+        out.println("    @Override");
+        out.printf("    public %s%s %s(%s)%s {%n", typeParameters, returnType, method.getSimpleName(), declaration, thrown);
+        out.println("        try {");
+        if(returnType.getKind() == TypeKind.VOID) {
+            out.printf("            %s;%n", call);
+        } else {
+            out.printf("            return (%s) %s;%n", returnType, call);
+        }
+        out.println("        } catch (RuntimeException | Error e) {");
+        out.println("            throw e;");
+        out.println("        } catch (Throwable t) {");
+        for (TypeMirror type : method.getThrownTypes()) {
+            final TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+            out.printf("            if(t instanceof %s) {%n", erased);
+            out.printf("                throw (%s) t;%n", erased);
+            out.println("            }");
+        }
+        out.println("            throw new java.lang.reflect.UndeclaredThrowableException(t);");
+        out.println("        }");
+        out.println("    }");
+    }
+}
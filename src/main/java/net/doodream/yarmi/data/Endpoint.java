@@ -14,10 +14,12 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,12 +29,17 @@ import java.util.regex.Pattern;
 
 public class Endpoint {
     private static final Pattern TYPE_PATTERN = Pattern.compile("[^\\<\\>]+\\<([\\s\\S]+)\\>");
+    private static final List<Class<?>> PRIMITIVE_WRAPPERS = Arrays.asList(Integer.class, Long.class, Short.class, Byte.class,
+            Character.class, Boolean.class, Float.class, Double.class);
 
     private List<Param> params;
     private String unique;
     transient Method jMethod;
     transient Type unwrappedRetType;
-    transient BlobSession session;
+    transient Type[] paramTypes;
+    transient Class<?>[] primitiveTypes;
+    transient boolean isAsync;
+    transient ParamLayout paramLayout;
 
     private Endpoint() { }
 
@@ -50,11 +57,31 @@ public class Endpoint {
             return this;
         }
 
+        public Builder paramTypes(Type[] paramTypes) {
+            endpoint.paramTypes = paramTypes;
+            return this;
+        }
+
+        public Builder primitiveTypes(Class<?>[] primitiveTypes) {
+            endpoint.primitiveTypes = primitiveTypes;
+            return this;
+        }
+
         public Builder unwrappedRetType(Type retType) {
             endpoint.unwrappedRetType = retType;
             return this;
         }
 
+        public Builder paramLayout(ParamLayout paramLayout) {
+            endpoint.paramLayout = paramLayout;
+            return this;
+        }
+
+        public Builder isAsync(boolean isAsync) {
+            endpoint.isAsync = isAsync;
+            return this;
+        }
+
         public Builder unique(String unique) {
             endpoint.unique = unique;
             return this;
@@ -66,8 +93,9 @@ public class Endpoint {
     }
 
     public static Endpoint create(Controller controller, Method method) throws IllegalArgumentException {
-        if(!method.getReturnType().equals(Response.class)) {
-            throw new IllegalArgumentException("method should return Response<>");
+        final boolean isAsync = isAsyncMethod(method);
+        if(!method.getReturnType().equals(Response.class) && !isAsync) {
+            throw new IllegalArgumentException("method should return Response<> or CompletableFuture<Response<>>");
         }
 
 
@@ -82,21 +110,65 @@ public class Endpoint {
         List<Param> params = buildParamList(method);
 
         final String methodLookupKey = String.format("%x%x%x", method.hashCode(), controller.path().hashCode(), unique.hashCode()).toUpperCase();
+        // Response<T> of async method is wrapped once more by CompletableFuture
+        final Type responseType = isAsync ? ((ParameterizedType) method.getGenericReturnType()).getActualTypeArguments()[0]
+                : method.getGenericReturnType();
         Type retType;
         try {
-            retType = Types.unwrapType(method.getGenericReturnType().toString())[0];
+            retType = Types.unwrapType(responseType.toString())[0];
         } catch (ClassNotFoundException | IllegalArgumentException e) {
-            retType = method.getGenericReturnType();
+            retType = responseType;
         }
 
         return Endpoint.builder()
                 .params(params)
                 .jMethod(method)
+                .paramTypes(method.getGenericParameterTypes())
+                .paramLayout(ParamLayout.of(method))
                 .unwrappedRetType(retType)
+                .primitiveTypes(isAsync ? null : getPrimitiveTypes(method, retType))
+                .isAsync(isAsync)
                 .unique(methodLookupKey)
                 .build();
     }
 
+    /**
+     * @return true if the method returns {@code CompletableFuture<Response<T>>}
+     */
+    private static boolean isAsyncMethod(Method method) {
+        if(!method.getReturnType().equals(CompletableFuture.class)) {
+            return false;
+        }
+        final Type returnType = method.getGenericReturnType();
+        if(!(returnType instanceof ParameterizedType)) {
+            return false;
+        }
+        final Type responseType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+        return Response.class.equals(responseType)
+                || ((responseType instanceof ParameterizedType) && Response.class.equals(((ParameterizedType) responseType).getRawType()));
+    }
+
+    /**
+     * @return parameter types of the method if every parameter is primitive or {@link String}
+     * and the method returns primitive (boxed) or {@link String} body, otherwise null
+     */
+    private static Class<?>[] getPrimitiveTypes(Method method, Type retType) {
+        if(!isPrimitiveOrString(retType) && !PRIMITIVE_WRAPPERS.contains(retType)) {
+            return null;
+        }
+        final Class<?>[] types = method.getParameterTypes();
+        for (Class<?> type : types) {
+            if(!isPrimitiveOrString(type)) {
+                return null;
+            }
+        }
+        return types;
+    }
+
+    private static boolean isPrimitiveOrString(Type type) {
+        return (type == String.class) || ((type instanceof Class) && ((Class) type).isPrimitive() && (type != void.class));
+    }
+
     private static List<Param> buildParamList(Method method) {
         final Annotation[][] annotations = method.getParameterAnnotations();
         final List<Param> paramList = new ArrayList<>();
@@ -127,7 +199,8 @@ public class Endpoint {
     }
 
     private static String getUniqueSignature(Method method) {
-        final List<Type> types = Arrays.asList(method.getGenericParameterTypes());
+        // fixed-size list from Arrays#asList can't take the placeholder of no-arg method
+        final List<Type> types = new ArrayList<>(Arrays.asList(method.getGenericParameterTypes()));
         if(types.isEmpty()) {
             types.add(Void.class);
         }
@@ -165,20 +238,50 @@ public class Endpoint {
         return jMethod;
     }
 
-    public BlobSession getSession() {
-        return session;
+    /**
+     * @return layout of the parameters shared by all the calls to the endpoint, refer {@link ParamLayout#bind(Object[])}
+     */
+    public ParamLayout getParamLayout() {
+        return paramLayout;
     }
 
     public Type getUnwrappedRetType() {
         return unwrappedRetType;
     }
 
-    public void setParams(List<Param> params) {
-        this.params = params;
+    /**
+     * generic parameter types of the method, which is cached to avoid copy from {@link Method#getGenericParameterTypes()}
+     * @return generic parameter types
+     */
+    public Type[] getParamTypes() {
+        return paramTypes;
     }
 
-    public void setSession(BlobSession session) {
-        this.session = session;
+    /**
+     * @return true if the parameters and return value of the endpoint are all primitive or {@link String},
+     * which can be invoked with {@link PrimitiveArgs}
+     */
+    public boolean isPrimitive() {
+        return primitiveTypes != null;
+    }
+
+    /**
+     * @return true if the method of the endpoint returns {@code CompletableFuture<Response<T>>},
+     * which is completed when the response arrives instead of blocking the caller
+     */
+    public boolean isAsync() {
+        return isAsync;
+    }
+
+    /**
+     * @return parameter types of primitive endpoint or null if the endpoint is not primitive
+     */
+    public Class<?>[] getPrimitiveTypes() {
+        return primitiveTypes;
+    }
+
+    public void setParams(List<Param> params) {
+        this.params = params;
     }
 
 
@@ -0,0 +1,32 @@
+package net.doodream.yarmi.data;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ *  body of {@link Response} kept in encoded form, which is decoded by {@link Response#getBody()} on its first call
+ *  (or element by element by {@link Response#bodyIterator()}).
+ *  it's created by {@link net.doodream.yarmi.serde.Converter} supporting lazy decoding, refer
+ *  {@link net.doodream.yarmi.serde.Converter#invertLazily(byte[], int, int, net.doodream.yarmi.serde.EndpointLookup, net.doodream.yarmi.serde.StringDictionary)}
+ */
+public interface LazyBody {
+
+    /**
+     * decode whole body into return type of the endpoint
+     * @return decoded body
+     * @throws IOException the body is corrupted
+     */
+    Object decode() throws IOException;
+
+    /**
+     * decode elements of collection (or array) body one by one, so that whole collection is never held in memory
+     * @return iterator of the elements, which throws {@link java.io.UncheckedIOException} if an element is corrupted
+     * @throws IOException the body is not a collection
+     */
+    <E> Iterator<E> iterator() throws IOException;
+
+    /**
+     * @return size of the encoded body in byte
+     */
+    int size();
+}
@@ -1,6 +1,5 @@
 package net.doodream.yarmi.data;
 
-import com.doodream.cutils.Types;
 import net.doodream.yarmi.serde.Converter;
 
 import java.lang.annotation.Annotation;
@@ -27,6 +26,16 @@ public class Param<T> {
             return this;
         }
 
+        public Builder<T> order(int order) {
+            param.order = order;
+            return this;
+        }
+
+        public Builder<T> value(T value) {
+            param.value = value;
+            return this;
+        }
+
 
         public Param<T> build() {
             return param;
@@ -55,13 +64,16 @@ public class Param<T> {
         this.order = order;
     }
 
+    int getOrder() {
+        return order;
+    }
+
+    T getValue() {
+        return value;
+    }
+
     public Object resolve(Converter converter, Type type) throws IllegalAccessException, InstantiationException, ClassNotFoundException {
-        if(Types.isCastable(value, type)) {
-            return value;
-        }
-        if(Types.isPrimitive(type)) {
-            return Types.primitive(value, type);
-        }
+        // castable value & primitive type are handled by the resolution plan of the converter
         return converter.resolve(value, type);
     }
 
@@ -0,0 +1,75 @@
+package net.doodream.yarmi.data;
+
+import net.doodream.yarmi.net.session.BlobSession;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *  immutable layout of the parameters of an {@link Endpoint}, which is built once per endpoint and shared by all the calls.
+ *  arguments of each call are bound into new {@link Param}s by {@link #bind(Object[])}, so that concurrent calls
+ *  to the same endpoint never touch the state of each other
+ */
+public final class ParamLayout {
+
+    private static final int NO_SESSION = -1;
+
+    private final Type[] types;
+    private final int sessionIndex;
+
+    private ParamLayout(Type[] types, int sessionIndex) {
+        this.types = types;
+        this.sessionIndex = sessionIndex;
+    }
+
+    static ParamLayout of(Method method) {
+        final Type[] types = method.getGenericParameterTypes();
+        int sessionIndex = NO_SESSION;
+        for (int i = 0; i < types.length; i++) {
+            if(types[i] == BlobSession.class) {
+                sessionIndex = i;
+                break;
+            }
+        }
+        return new ParamLayout(types, sessionIndex);
+    }
+
+    /**
+     * bind arguments of a call into parameters
+     * @param args arguments of the call in declaration order
+     * @return parameters carrying the arguments, which belong to the call only
+     */
+    @SuppressWarnings("unchecked")
+    public List<Param> bind(Object[] args) {
+        if((args == null) || (types.length == 0)) {
+            return Collections.EMPTY_LIST;
+        }
+        final Param[] params = new Param[types.length];
+        for (int i = 0; i < types.length; i++) {
+            params[i] = new Param.Builder<>()
+                    .type(types[i])
+                    .order(i)
+                    .value(args[i])
+                    .build();
+        }
+        return Arrays.asList(params);
+    }
+
+    /**
+     * @param args arguments of a call
+     * @return {@link BlobSession} passed as argument or null if the endpoint doesn't take session (or it's null)
+     */
+    public BlobSession getSession(Object[] args) {
+        if((args == null) || (sessionIndex == NO_SESSION)) {
+            return null;
+        }
+        return (BlobSession) args[sessionIndex];
+    }
+
+    public int size() {
+        return types.length;
+    }
+}
@@ -0,0 +1,174 @@
+package net.doodream.yarmi.data;
+
+import java.util.List;
+
+/**
+ *  argument carrier for the endpoint whose parameters are all primitive or {@link String} (refer {@link Endpoint#isPrimitive()}).
+ *  primitive values are kept in long slots (floating point value as its raw bits), so that they are decoded and passed
+ *  to the method without boxing
+ */
+public final class PrimitiveArgs {
+
+    private final Class<?>[] types;
+    private final long[] values;
+    private final String[] strings;
+
+    /**
+     * @param endpoint primitive endpoint
+     * @return empty arguments for the endpoint
+     * @throws IllegalArgumentException if the endpoint is not primitive
+     */
+    public static PrimitiveArgs create(Endpoint endpoint) {
+        if(!endpoint.isPrimitive()) {
+            throw new IllegalArgumentException("not primitive endpoint");
+        }
+        return new PrimitiveArgs(endpoint.getPrimitiveTypes());
+    }
+
+    /**
+     * build arguments from parameters decoded in boxed form (e.g. by converter not supporting {@link PrimitiveArgs})
+     * @param endpoint primitive endpoint
+     * @param params decoded parameters
+     * @return arguments for the endpoint
+     */
+    public static PrimitiveArgs from(Endpoint endpoint, List<Param> params) {
+        final PrimitiveArgs args = create(endpoint);
+        for (Param param : params) {
+            final int order = param.getOrder();
+            if((order < 0) || (order >= args.size())) {
+                continue;
+            }
+            final Object value = param.getValue();
+            if(value instanceof Number) {
+                if((value instanceof Double) || (value instanceof Float)) {
+                    args.setDouble(order, ((Number) value).doubleValue());
+                } else {
+                    args.setLong(order, ((Number) value).longValue());
+                }
+            } else if(value instanceof Boolean) {
+                args.setBoolean(order, (Boolean) value);
+            } else if(value instanceof Character) {
+                args.setLong(order, (Character) value);
+            } else if(value != null) {
+                args.setString(order, value.toString());
+            }
+        }
+        return args;
+    }
+
+    private PrimitiveArgs(Class<?>[] types) {
+        this.types = types;
+        this.values = new long[types.length];
+        this.strings = hasString(types) ? new String[types.length] : null;
+    }
+
+    private static boolean hasString(Class<?>[] types) {
+        for (Class<?> type : types) {
+            if(type == String.class) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return types.length;
+    }
+
+    public Class<?> getType(int index) {
+        return types[index];
+    }
+
+    public void setLong(int index, long value) {
+        values[index] = isFloatingPoint(types[index]) ? Double.doubleToRawLongBits(value) : value;
+    }
+
+    public void setDouble(int index, double value) {
+        values[index] = isFloatingPoint(types[index]) ? Double.doubleToRawLongBits(value) : (long) value;
+    }
+
+    public void setBoolean(int index, boolean value) {
+        values[index] = value ? 1L : 0L;
+    }
+
+    public void setString(int index, String value) {
+        if(types[index] == char.class) {
+            values[index] = value.isEmpty() ? 0L : value.charAt(0);
+            return;
+        }
+        if(strings == null) {
+            throw new IllegalArgumentException(String.format("parameter %d is not string", index));
+        }
+        strings[index] = value;
+    }
+
+    public int getInt(int index) {
+        return (int) values[index];
+    }
+
+    public long getLong(int index) {
+        return values[index];
+    }
+
+    public short getShort(int index) {
+        return (short) values[index];
+    }
+
+    public byte getByte(int index) {
+        return (byte) values[index];
+    }
+
+    public char getChar(int index) {
+        return (char) values[index];
+    }
+
+    public boolean getBoolean(int index) {
+        return values[index] != 0L;
+    }
+
+    public float getFloat(int index) {
+        return (float) Double.longBitsToDouble(values[index]);
+    }
+
+    public double getDouble(int index) {
+        return Double.longBitsToDouble(values[index]);
+    }
+
+    public String getString(int index) {
+        return strings == null ? null : strings[index];
+    }
+
+    /**
+     * @return arguments boxed into array, used only when the method can't be invoked without boxing
+     */
+    public Object[] toArray() {
+        final Object[] array = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            final Class<?> type = types[i];
+            if(type == int.class) {
+                array[i] = getInt(i);
+            } else if(type == long.class) {
+                array[i] = getLong(i);
+            } else if(type == short.class) {
+                array[i] = getShort(i);
+            } else if(type == byte.class) {
+                array[i] = getByte(i);
+            } else if(type == char.class) {
+                array[i] = getChar(i);
+            } else if(type == boolean.class) {
+                array[i] = getBoolean(i);
+            } else if(type == float.class) {
+                array[i] = getFloat(i);
+            } else if(type == double.class) {
+                array[i] = getDouble(i);
+            } else {
+                array[i] = getString(i);
+            }
+        }
+        return array;
+    }
+
+    private static boolean isFloatingPoint(Class<?> type) {
+        return (type == double.class) || (type == float.class);
+    }
+}
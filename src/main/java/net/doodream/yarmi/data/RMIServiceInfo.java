@@ -11,6 +11,9 @@ import net.doodream.yarmi.serde.Converter;
 import net.doodream.yarmi.server.RMIController;
 
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 public class RMIServiceInfo {
@@ -195,6 +198,61 @@ public class RMIServiceInfo {
         return version;
     }
 
+    /**
+     * stable digest of the service contract (name, provider, version, adapter, negotiator, converter, params and controllers),
+     * which is identical across the processes for the same service definition. alias and proxy factory hint are not included
+     * @return fingerprint as hex string
+     */
+    public String getFingerprint() {
+        return getFingerprint(Collections.<String>emptySet());
+    }
+
+    /**
+     * fingerprint of the service contract without some of the params, e.g. the address of the instance
+     * to tell whether the instances are of the same service
+     * @param excludedParams keys of the params not included in the fingerprint
+     * @return fingerprint as hex string
+     */
+    public String getFingerprint(Collection<String> excludedParams) {
+        final StringBuilder contract = new StringBuilder()
+                .append(name).append('|')
+                .append(provider).append('|')
+                .append(version).append('|')
+                .append(getClassName(adapter)).append('|')
+                .append(getClassName(negotiator)).append('|')
+                .append(getClassName(converter)).append('|');
+        if(params != null) {
+            // sorted, not to depend on the iteration order of the map
+            final Map<String, String> sorted = new TreeMap<>(params);
+            sorted.keySet().removeAll(excludedParams);
+            contract.append(sorted);
+        }
+        contract.append('|');
+        if(controllerInfos != null) {
+            final List<String> controllers = new ArrayList<>();
+            for (ControllerInfo controllerInfo : controllerInfos) {
+                controllers.add(getClassName(controllerInfo.getStubCls()) + ':' + controllerInfo.getVersion());
+            }
+            Collections.sort(controllers);
+            contract.append(controllers);
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(contract.toString().getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format(Locale.ENGLISH, "%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is supported by every java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String getClassName(Class<?> cls) {
+        return (cls == null) ? null : cls.getName();
+    }
+
     public static ServiceProxy toServiceProxy(final RMIServiceInfo info) {
         final Class<?> adapter = info.getAdapter();
         if(adapter == null) {
@@ -14,7 +14,11 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Request contains information for client method invocation consisted with below
@@ -50,33 +54,76 @@ public class Request {
             return this;
         }
 
+        public Builder args(PrimitiveArgs args) {
+            request.args = args;
+            return this;
+        }
+
         public Builder session(BlobSession session) {
             request.session = session;
             return this;
         }
+
+        public Builder timeout(long timeout) {
+            request.timeout = timeout;
+            return this;
+        }
+
+        public Builder cancellation(boolean cancellation) {
+            request.cancellation = cancellation;
+            return this;
+        }
     }
 
     private static final Logger Log = LoggerFactory.getLogger(Request.class);
 
+    private static final AtomicReferenceFieldUpdater<Request, Response> RESPONSE = AtomicReferenceFieldUpdater.newUpdater(Request.class, Response.class, "response");
+    private static final AtomicReferenceFieldUpdater<Request, CompletableFuture> FUTURE = AtomicReferenceFieldUpdater.newUpdater(Request.class, CompletableFuture.class, "future");
+
     private transient ClientSocketAdapter client;
 
-    private transient Response response;
+    private transient volatile Response response;
+
+    // thread parked in getResponse(), unparked by the thread delivering the response
+    private transient volatile Thread waiter;
+
+    // created for async call, completed by the thread delivering the response
+    private transient volatile CompletableFuture<Response> future;
+
+    // parameters decoded without boxing for primitive endpoint, refer Endpoint#isPrimitive()
+    private transient PrimitiveArgs args;
+
+    // local deadline of the request as System#nanoTime(), or 0 if not bounded, set on the receiving side
+    private transient long deadline;
+
+    // cancelled by the caller while being handled, set on the receiving side
+    private transient volatile boolean isCancelled;
+
+    // thread invoking the controller for the request, guarded by the request itself
+    private transient Thread handler;
 
     private BlobSession session;
 
     private String endpoint;
 
+    // remaining time budget in milliseconds when the request is written, or 0 if not bounded.
+    // it precedes the parameters, so the receiver can skip decoding them once the request is expired
+    private long timeout;
+
     private List<Param> params;
 
     private SessionControlMessage scm;
 
     private int nonce;
 
+    // true for the message cancelling the request of the nonce, which has no endpoint
+    private boolean cancellation;
+
     // TODO : blob header & blob
 
     public static boolean isValid(Request request) {
         return (request.getEndpoint() != null) &&
-                (request.getParams() != null);
+                ((request.getParams() != null) || (request.getArgs() != null));
     }
 
     public static SessionControlMessageWriter buildSessionMessageWriter(final Writer writer) {
@@ -85,14 +132,58 @@ public class Request {
                 .build());
     }
 
+    /**
+     * build message cancelling the request, which is sent when the caller gives up waiting for the response
+     * @param nonce nonce of the request to be cancelled
+     */
+    public static Request cancellationOf(int nonce) {
+        final Request request = Request.builder()
+                .cancellation(true)
+                .build();
+        request.setNonce(nonce);
+        return request;
+    }
+
     private static Builder builder() {
         return new Builder();
     }
 
-    public synchronized void setResponse(Response response) {
-        Log.trace("notify waiting thread for response ({}) : {}", nonce, response.getBody());
-        this.response = response;
-        this.notifyAll();
+    /**
+     * complete the request with the response, only the first response is taken
+     * @param response response (or error) of the request
+     */
+    public void setResponse(Response response) {
+        if(!RESPONSE.compareAndSet(this, null, response)) {
+            Log.trace("request ({}) already completed", nonce);
+            return;
+        }
+        // body is not logged, as it might be decoded lazily by the caller
+        Log.trace("notify waiting thread for response ({}) : {}", nonce, response.getCode());
+        final Thread waiter = this.waiter;
+        if(waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+        final CompletableFuture<Response> future = this.future;
+        if(future != null) {
+            future.complete(response);
+        }
+    }
+
+    /**
+     * get future of the response instead of waiting for it with {@link #getResponse(long)}
+     * @return future completed with the response, which is completed in the thread delivering the response
+     */
+    public CompletableFuture<Response> toFuture() {
+        if(future == null) {
+            FUTURE.compareAndSet(this, null, new CompletableFuture<>());
+        }
+        final CompletableFuture<Response> future = this.future;
+        // response set before the future is published is not seen by setResponse
+        final Response received = response;
+        if(received != null) {
+            future.complete(received);
+        }
+        return future;
     }
 
 
@@ -100,26 +191,41 @@ public class Request {
         this.client = adapter;
     }
 
-    public synchronized Response getResponse(long timeout) throws TimeoutException {
-        if(response != null) {
-            return response;
+    /**
+     * park calling thread until the response is set
+     * @param timeout timeout in milliseconds, or 0 to wait until the response is set by others (e.g. expired by {@link net.doodream.yarmi.net.TimingWheel})
+     * @return response or {@link RMIError#TIMEOUT} response if not responded in time
+     * @throws TimeoutException the calling thread is interrupted
+     */
+    public Response getResponse(long timeout) throws TimeoutException {
+        Response received = response;
+        if(received != null) {
+            return received;
         }
         Log.trace("wait for response ({}) with timeout {}", nonce, timeout);
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        waiter = Thread.currentThread();
         try {
-            if (timeout > 0) {
-                this.wait(timeout);
-            } else {
-                this.wait();
-            }
-            if (response == null) {
-                Log.error("unexpected null result @ ({})", nonce);
-                return RMIError.TIMEOUT.getResponse();
+            while ((received = response) == null) {
+                if(timeout > 0) {
+                    final long remaining = deadline - System.nanoTime();
+                    if(remaining <= 0) {
+                        Log.debug("no response in time @ ({})", nonce);
+                        return RMIError.TIMEOUT.getResponse();
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                } else {
+                    LockSupport.park(this);
+                }
+                if(Thread.interrupted()) {
+                    throw new TimeoutException("interrupted while waiting response (" + nonce + ")");
+                }
             }
-            Log.trace("wake from waiting response ({}) @ {}", nonce, response.getBody());
-            return response;
-        } catch (InterruptedException e) {
-            throw new TimeoutException(e.getMessage());
+        } finally {
+            waiter = null;
         }
+        Log.trace("wake from waiting response ({}) @ {}", nonce, received.getCode());
+        return received;
     }
 
     public boolean hasScm() {
@@ -137,12 +243,14 @@ public class Request {
                     .endpoint(endpoint.getUnique())
                     .build();
         } else {
-            BlobSession session = BlobSession.findOne(args);
+            // arguments are bound into the parameters of this request, so the endpoint is safely shared by concurrent calls
+            final ParamLayout layout = endpoint.getParamLayout();
             final Request.Builder builder =  Request.builder()
-                    .params(convertParams(endpoint, args))
+                    .params(layout.bind(args))
                     .endpoint(endpoint.getUnique());
 
-            if(!session.equals(BlobSession.NULL)) {
+            final BlobSession session = layout.getSession(args);
+            if(session != null) {
                 builder.session(session);
             }
 
@@ -150,38 +258,96 @@ public class Request {
         }
     }
 
-    private static List<Param> convertParams(final Endpoint endpoint, Object[] objects) {
-        if(objects == null || endpoint == null) {
-            return Collections.EMPTY_LIST;
-        }
+    public void setNonce(int nonce) {
+        this.nonce = nonce;
+    }
 
-        List<Param> params = endpoint.getParams();
-        for (int i = 0; i < params.size(); i++) {
-            final Param param = params.get(i);
-            final Object object = objects[i];
-            if(param == null) {
-                continue;
-            }
-            param.apply(object);
-            if(param.isInstanceOf(BlobSession.class)) {
-                if(object != null) {
-                    endpoint.session = (BlobSession) object;
-                }
-            }
+    /**
+     * @return remaining time budget of the request in milliseconds, or 0 if not bounded
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @param timeout remaining time budget of the request in milliseconds, or 0 if not bounded
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = Math.max(timeout, 0L);
+    }
+
+    /**
+     * set local deadline of the received request
+     * @param deadline deadline as {@link System#nanoTime()}
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return true if the request is the message cancelling the request of the same nonce
+     */
+    public boolean isCancellation() {
+        return cancellation;
+    }
+
+    /**
+     * cancel the request received, the thread invoking the controller for the request is interrupted,
+     * so the controller checking the interrupt can stop early
+     */
+    public synchronized void cancel() {
+        isCancelled = true;
+        if(handler != null) {
+            handler.interrupt();
         }
+    }
 
-        return params;
+    public boolean isCancelled() {
+        return isCancelled;
+    }
 
+    /**
+     * mark the calling thread as the handler of the request, which is interrupted on {@link #cancel()}
+     * @return false if the request is cancelled already
+     */
+    public synchronized boolean startHandling() {
+        if(isCancelled) {
+            return false;
+        }
+        handler = Thread.currentThread();
+        return true;
     }
 
-    public void setNonce(int nonce) {
-        this.nonce = nonce;
+    /**
+     * unmark the calling thread, and clear the interrupt by {@link #cancel()} not to be leaked into the next task of the thread
+     */
+    public void endHandling() {
+        synchronized (this) {
+            handler = null;
+        }
+        if(isCancelled) {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * @return true if the request has a deadline and it's passed, so the caller has given up the response already
+     */
+    public boolean isExpired() {
+        return (deadline != 0L) && (System.nanoTime() - deadline >= 0);
     }
 
     public BlobSession getSession() {
         return session;
     }
 
+    /**
+     * @return parameters decoded into {@link PrimitiveArgs} or null if the parameters are decoded as {@link Param}
+     */
+    public PrimitiveArgs getArgs() {
+        return args;
+    }
+
     public List<Param> getParams() {
         return params;
     }
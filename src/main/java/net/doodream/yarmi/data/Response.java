@@ -1,6 +1,5 @@
 package net.doodream.yarmi.data;
 
-import com.doodream.cutils.Types;
 import net.doodream.yarmi.net.session.BlobSession;
 import net.doodream.yarmi.net.session.SessionCommand;
 import net.doodream.yarmi.net.session.SessionControlMessage;
@@ -12,8 +11,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.lang.reflect.ParameterizedType;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Created by innocentevil on 18. 5. 4.
@@ -21,13 +24,23 @@ import java.lang.reflect.Type;
 public class Response<T> {
     private static Logger Log = LoggerFactory.getLogger(Response.class);
     public static final int SUCCESS = 200;
+    // fields are serialized in declared order, body is placed at last so that
+    // reader can decide type of the body from the endpoint & result before reaching it
     private String endpoint;
-    private T body;
+    private int nonce;
+    private int code;
     private boolean isSuccessful;
     private boolean hasSessionSwitch;
-    private int code;
-    private int nonce;
     private SessionControlMessage scm;
+    private T body;
+    // body kept encoded until getBody() in lazy mode, it's decoded (and resolved) once then dropped
+    private transient volatile LazyBody lazyBody;
+    // failure of decoding the body kept encoded, thrown by every getBody()
+    private transient UncheckedIOException bodyError;
+    private transient Converter resolver;
+    private transient Type resolveType;
+    // response of async controller method, which is written when completed
+    private transient CompletableFuture<Response> deferred;
 
     public boolean hasSessionSwitch() {
         return hasSessionSwitch;
@@ -81,14 +94,91 @@ public class Response<T> {
         return new Builder<>();
     }
 
+    /**
+     * @return body of the response, which is decoded on the first call if the body is kept encoded ({@link #hasLazyBody()})
+     * @throws UncheckedIOException the body kept encoded can't be decoded (or resolved into return type of the endpoint)
+     */
     public T getBody() {
+        if(lazyBody != null) {
+            decodeBody();
+        }
+        if(bodyError != null) {
+            throw bodyError;
+        }
         return body;
     }
 
     public void setBody(T body) {
+        this.lazyBody = null;
+        this.bodyError = null;
         this.body = body;
     }
 
+    /**
+     * keep the body in encoded form, called by converter decoding the response lazily
+     * @param lazyBody encoded body
+     */
+    public void setLazyBody(LazyBody lazyBody) {
+        this.lazyBody = lazyBody;
+    }
+
+    /**
+     * @return true if the body is kept encoded and not decoded yet
+     */
+    public boolean hasLazyBody() {
+        return lazyBody != null;
+    }
+
+    /**
+     * iterate elements of collection (or array) body. encoded body is decoded element by element and consumed by the iterator,
+     * so that large collection is never held in memory as a whole ({@link #getBody()} returns null after this call).
+     * if the body is already decoded, iterator of the decoded collection is returned
+     * @return iterator of the elements of the body
+     * @throws IOException the body is not a collection
+     */
+    @SuppressWarnings("unchecked")
+    public <E> Iterator<E> bodyIterator() throws IOException {
+        final LazyBody encoded;
+        synchronized (this) {
+            encoded = lazyBody;
+            lazyBody = null;
+        }
+        if(encoded != null) {
+            return encoded.iterator();
+        }
+        if(body == null) {
+            return Collections.emptyIterator();
+        }
+        if(body instanceof Iterable) {
+            return ((Iterable<E>) body).iterator();
+        }
+        if(body instanceof Object[]) {
+            return (Iterator<E>) Arrays.asList((Object[]) body).iterator();
+        }
+        throw new IOException("body is not a collection : " + body.getClass());
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized void decodeBody() {
+        final LazyBody encoded = lazyBody;
+        if(encoded == null) {
+            return;
+        }
+        try {
+            Object decoded = encoded.decode();
+            if(resolver != null) {
+                decoded = resolver.resolve(decoded, resolveType);
+            }
+            body = (T) decoded;
+        } catch (IOException e) {
+            bodyError = new UncheckedIOException("fail to decode body", e);
+        } catch (IllegalAccessException | InstantiationException | ClassNotFoundException e) {
+            bodyError = new UncheckedIOException(new IOException("fail to resolve body", e));
+        } finally {
+            lazyBody = null;
+        }
+    }
+
     public static Response error(int code, String msg) {
         return Response.<String>builder()
                 .isSuccessful(false)
@@ -112,8 +202,35 @@ public class Response<T> {
                 .build();
     }
 
+    /**
+     * placeholder of the response which is not ready yet, returned from the request handler for async controller method
+     * @param future future of the response
+     * @return deferred response, which is written to the client when the future is completed
+     */
+    @SuppressWarnings("unchecked")
+    public static Response deferred(CompletableFuture<? extends Response> future) {
+        final Response response = new Response();
+        response.deferred = (CompletableFuture<Response>) future;
+        return response;
+    }
+
+    public boolean isDeferred() {
+        return deferred != null;
+    }
+
+    /**
+     * @return future of the response if {@link #isDeferred()}, otherwise null
+     */
+    public CompletableFuture<Response> getDeferred() {
+        return deferred;
+    }
+
+    /**
+     * @return new error response, as the response is completed with the nonce of its request (shared one from {@link RMIError#getResponse()} should not be modified)
+     */
     public static Response from(RMIError error) {
-        return error.getResponse();
+        final Response response = error.getResponse();
+        return error(response.getCode(), (String) response.getBody());
     }
 
     public static boolean validate(Response res) {
@@ -147,6 +264,10 @@ public class Response<T> {
         return scm;
     }
 
+    public String getEndpoint() {
+        return endpoint;
+    }
+
     public int getNonce() {
         return nonce;
     }
@@ -176,13 +297,15 @@ public class Response<T> {
      * @param type {@link Type} for body content
      */
     public void resolve(Converter converter, Type type) throws IllegalAccessException, InstantiationException, ClassNotFoundException {
-        if(!(type instanceof ParameterizedType)) {
-            Class rawCls = Class.forName(Types.getTypeName(type));
-            if(Types.isCastable(body, rawCls)) {
+        synchronized (this) {
+            if(lazyBody != null) {
+                // deferred to the decoding of the body
+                resolver = converter;
+                resolveType = type;
                 return;
             }
         }
-
+        // resolution plan of the converter returns body as it is if it's already instance of the type
         setBody((T) converter.resolve(getBody(), type));
     }
 
@@ -0,0 +1,55 @@
+package net.doodream.yarmi.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ *  parser of the numeric service parameters (refer {@link RMIServiceInfo#getParams()}),
+ *  falling back to the default value if the parameter is not configured or invalid
+ */
+public final class ServiceParams {
+
+    private static final Logger Log = LoggerFactory.getLogger(ServiceParams.class);
+
+    private ServiceParams() { }
+
+    /**
+     * @param params service parameters, can be null
+     * @param key key of the parameter
+     * @param defaultValue value for the parameter not configured or invalid
+     * @return value of the parameter
+     */
+    public static int getInt(Map<String, String> params, String key, int defaultValue) {
+        final String value = (params == null) ? null : params.get(key);
+        if(value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            Log.warn("invalid {} {}, fallback to default", key, value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @param params service parameters, can be null
+     * @param key key of the parameter
+     * @param defaultValue value for the parameter not configured or invalid
+     * @return value of the parameter
+     */
+    public static long getLong(Map<String, String> params, String key, long defaultValue) {
+        final String value = (params == null) ? null : params.get(key);
+        if(value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            Log.warn("invalid {} {}, fallback to default", key, value);
+            return defaultValue;
+        }
+    }
+}
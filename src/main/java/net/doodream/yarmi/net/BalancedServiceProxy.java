@@ -0,0 +1,492 @@
+package net.doodream.yarmi.net;
+
+import net.doodream.yarmi.data.Endpoint;
+import net.doodream.yarmi.data.RMIError;
+import net.doodream.yarmi.data.RMIServiceInfo;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.data.ServiceParams;
+import net.doodream.yarmi.net.tcp.TcpServiceAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  {@link ServiceProxy} balancing calls over multiple instances of the same service (e.g. discovered from several hosts).
+ *  each instance keeps EWMA of its latency and the number of outstanding requests, and a call is routed by power-of-two-choices,
+ *  i.e. the cheaper (latency x (outstanding + 1)) of two instances picked at random, which avoids herding onto single best instance.
+ *
+ *  instance is ejected from the selection for {@link #PARAM_EJECT_TIME} when it fails {@link #PARAM_MAX_FAILURES} times in a row
+ *  or gets much slower than the best instance. instance whose connection is lost is reconnected after ejection in the balancer thread.
+ *  the last available instance is never ejected, so that the calls keep going while all the instances are bad
+ */
+public class BalancedServiceProxy implements ServiceProxy {
+
+    private static final Logger Log = LoggerFactory.getLogger(BalancedServiceProxy.class);
+
+    // consecutive failures (service bad responses or I/O errors) to eject an instance
+    public static final String PARAM_MAX_FAILURES = "proxy.balance.failures";
+    // in milliseconds
+    public static final String PARAM_EJECT_TIME = "proxy.balance.eject";
+
+    public static final int DEFAULT_MAX_FAILURES = 3;
+    public static final long DEFAULT_EJECT_TIME = 10000L;
+
+    // instance is considered slow when its latency is worse than the best one by this factor
+    private static final int SLOW_FACTOR = 4;
+    // samples required before an instance is judged slow
+    private static final int MIN_SAMPLES = 16;
+    // params differing by the instances of the same service
+    private static final List<String> ADDRESS_PARAMS = Arrays.asList(TcpServiceAdapter.PARAM_HOST, TcpServiceAdapter.PARAM_PORT);
+
+    private final Instance[] instances;
+    private final int maxFailures;
+    private final long ejectTime;
+    private final ExecutorService executorService;
+    private final AtomicLong ejections = new AtomicLong();
+    private volatile boolean isValid;
+    private int openSemaphore;
+
+    /**
+     * @param infos service infos of the instances of the same service, which share the fingerprint except their addresses
+     * @return proxy balancing over the instances, configured by the params of the service
+     * @throws IllegalArgumentException no service info is given, or the infos are not of the same service
+     */
+    public static BalancedServiceProxy create(List<RMIServiceInfo> infos) {
+        if((infos == null) || infos.isEmpty()) {
+            throw new IllegalArgumentException("no service instance");
+        }
+        final String fingerprint = infos.get(0).getFingerprint(ADDRESS_PARAMS);
+        for (RMIServiceInfo info : infos) {
+            if(!fingerprint.equals(info.getFingerprint(ADDRESS_PARAMS))) {
+                throw new IllegalArgumentException(String.format(Locale.ENGLISH, "%s is not an instance of %s", info.getName(), infos.get(0).getName()));
+            }
+        }
+        final Map<String, String> params = infos.get(0).getParams();
+        return new BalancedServiceProxy(infos, getMaxFailures(params), getEjectTime(params));
+    }
+
+    private BalancedServiceProxy(List<RMIServiceInfo> infos, int maxFailures, long ejectTime) {
+        instances = new Instance[infos.size()];
+        for (int i = 0; i < instances.length; i++) {
+            instances[i] = new Instance(infos.get(i));
+        }
+        this.maxFailures = Math.max(maxFailures, 1);
+        this.ejectTime = Math.max(ejectTime, 0L);
+        executorService = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "yarmi-proxy-balancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * get max. consecutive failures of an instance from service parameters
+     * @param params service parameters
+     * @return max. consecutive failures, {@link #DEFAULT_MAX_FAILURES} if not configured
+     */
+    public static int getMaxFailures(Map<String, String> params) {
+        return ServiceParams.getInt(params, PARAM_MAX_FAILURES, DEFAULT_MAX_FAILURES);
+    }
+
+    /**
+     * get ejection time of bad instance from service parameters
+     * @param params service parameters
+     * @return ejection time in milliseconds, {@link #DEFAULT_EJECT_TIME} if not configured
+     */
+    public static long getEjectTime(Map<String, String> params) {
+        return ServiceParams.getLong(params, PARAM_EJECT_TIME, DEFAULT_EJECT_TIME);
+    }
+
+    /**
+     * open all the instances, the instances failing to open are ejected and retried later
+     * @throws IOException none of the instances is opened, the error of the last instance is thrown
+     * @throws IllegalAccessException same as above
+     * @throws InstantiationException same as above
+     */
+    @Override
+    public synchronized boolean open() throws IOException, IllegalAccessException, InstantiationException {
+        if(openSemaphore++ > 0) {
+            Log.debug("already opened {} times", openSemaphore);
+            return false;
+        }
+        isValid = true;
+        Exception error = null;
+        int opened = 0;
+        for (Instance instance : instances) {
+            try {
+                instance.proxy.open();
+                opened++;
+            } catch (IOException | IllegalAccessException | InstantiationException e) {
+                Log.warn("fail to open {} : {}", instance.info.getProxyFactoryHint(), e.getMessage());
+                error = e;
+                eject(instance, true);
+            }
+        }
+        if(opened == 0) {
+            // not opened, so the next open tries again with new proxies, as the failed proxy may not be opened again
+            openSemaphore--;
+            isValid = false;
+            for (Instance instance : instances) {
+                // e.g. socket opened before the handshake failure
+                closeQuietly(instance.proxy);
+                instance.proxy = RMIServiceInfo.toServiceProxy(instance.info);
+                instance.reset();
+                instance.isEjected = false;
+                instance.isLost = false;
+            }
+            if(error instanceof IllegalAccessException) {
+                throw (IllegalAccessException) error;
+            }
+            if(error instanceof InstantiationException) {
+                throw (InstantiationException) error;
+            }
+            throw (IOException) error;
+        }
+        return true;
+    }
+
+    @Override
+    public Response request(Endpoint endpoint, long timeoutMilliSec, Object... args) throws IOException {
+        final Instance instance = select();
+        final ServiceProxy proxy = instance.proxy;
+        final long start = System.nanoTime();
+        final Response response;
+        try {
+            response = proxy.request(endpoint, timeoutMilliSec, args);
+        } catch (IOException e) {
+            onComplete(instance, proxy, start, null);
+            throw e;
+        }
+        onComplete(instance, proxy, start, response);
+        return response;
+    }
+
+    @Override
+    public CompletableFuture<Response<?>> requestAsync(Endpoint endpoint, long timeoutMilliSec, Object... args) throws IOException {
+        final Instance instance = select();
+        final ServiceProxy proxy = instance.proxy;
+        final long start = System.nanoTime();
+        final CompletableFuture<Response<?>> future;
+        try {
+            future = proxy.requestAsync(endpoint, timeoutMilliSec, args);
+        } catch (IOException e) {
+            onComplete(instance, proxy, start, null);
+            throw e;
+        }
+        return future.whenComplete((response, throwable) -> onComplete(instance, proxy, start, response));
+    }
+
+    /**
+     * pick two instances at random among the available ones and take the cheaper one
+     */
+    private Instance select() throws IOException {
+        if(!isValid) {
+            throw new IOException("proxy closed");
+        }
+        final long now = System.nanoTime();
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        Instance first = null;
+        Instance second = null;
+        int available = 0;
+        // reservoir sampling of two available instances in single pass
+        for (Instance instance : instances) {
+            if(!instance.isAvailable(now)) {
+                continue;
+            }
+            available++;
+            if(first == null) {
+                first = instance;
+            } else if(second == null) {
+                second = instance;
+            } else if(random.nextInt(available) < 2) {
+                if(random.nextBoolean()) {
+                    first = instance;
+                } else {
+                    second = instance;
+                }
+            }
+        }
+        Instance selected;
+        if(first == null) {
+            // every instance is ejected, the one back the earliest is used rather than failing the call
+            selected = instances[0];
+            for (Instance instance : instances) {
+                if(instance.ejectedUntil - selected.ejectedUntil < 0) {
+                    selected = instance;
+                }
+            }
+        } else if(second == null) {
+            selected = first;
+        } else {
+            final long bestLatency = getBestLatency(now);
+            selected = (first.cost(bestLatency) <= second.cost(bestLatency)) ? first : second;
+        }
+        selected.outstanding.incrementAndGet();
+        return selected;
+    }
+
+    private long getBestLatency(long now) {
+        long best = Long.MAX_VALUE;
+        for (Instance instance : instances) {
+            final long latency = instance.latency.get();
+            if(instance.isAvailable(now) && (latency > 0)) {
+                best = Math.min(best, latency);
+            }
+        }
+        return (best == Long.MAX_VALUE) ? 0L : best;
+    }
+
+    /**
+     * update the statistics of the instance with the result of a call
+     * @param proxy proxy of the instance the call is made through, which is compared to ignore the result from replaced proxy
+     * @param response response of the call, or null if the call fails with I/O error
+     */
+    private void onComplete(Instance instance, ServiceProxy proxy, long start, Response response) {
+        instance.outstanding.decrementAndGet();
+        if(instance.proxy != proxy) {
+            return;
+        }
+        if((response == null) || RMIError.isServiceBad(response.getCode())) {
+            final boolean isLost = (response == null) || (response.getCode() == RMIError.CLOSED.code());
+            if((instance.failures.incrementAndGet() >= maxFailures) || isLost) {
+                eject(instance, isLost);
+            }
+            return;
+        }
+        instance.failures.set(0);
+        instance.onLatency(System.nanoTime() - start);
+        if(instance.samples.get() < MIN_SAMPLES) {
+            return;
+        }
+        final long now = System.nanoTime();
+        final long bestLatency = getBestLatency(now);
+        final long latency = instance.latency.get();
+        if((bestLatency > 0) && (latency > bestLatency * SLOW_FACTOR)) {
+            Log.debug("slow instance {} : {} ns (best {} ns)", instance.info.getProxyFactoryHint(), latency, bestLatency);
+            eject(instance, false);
+        }
+    }
+
+    /**
+     * exclude the instance from the selection for ejection time
+     * @param reconnect true if the connection to the instance is lost, then it's reconnected on the end of the ejection
+     */
+    private synchronized void eject(Instance instance, boolean reconnect) {
+        final long now = System.nanoTime();
+        if(!instance.isAvailable(now) || !isValid) {
+            return;
+        }
+        int available = 0;
+        for (Instance other : instances) {
+            if(other.isAvailable(now)) {
+                available++;
+            }
+        }
+        if((available <= 1) && !reconnect) {
+            // keep the last instance rather than failing all the calls
+            return;
+        }
+        instance.ejectedUntil = now + TimeUnit.MILLISECONDS.toNanos(ejectTime);
+        instance.isEjected = true;
+        instance.isLost = reconnect;
+        ejections.incrementAndGet();
+        Log.debug("instance {} ejected for {} ms", instance.info.getProxyFactoryHint(), ejectTime);
+        if(reconnect) {
+            scheduleReconnect(instance);
+        } else {
+            // statistics start over when the instance comes back
+            instance.reset();
+        }
+    }
+
+    private void scheduleReconnect(Instance instance) {
+        TimingWheel.getDefault().schedule(() -> {
+            if(!isValid) {
+                return;
+            }
+            executorService.execute(() -> reconnect(instance));
+        }, ejectTime, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * replace the proxy of the instance with new one, runs in the balancer thread
+     */
+    private void reconnect(Instance instance) {
+        if(!instance.isLost) {
+            // replaced already, e.g. by open after all the instances have failed
+            return;
+        }
+        final ServiceProxy proxy = RMIServiceInfo.toServiceProxy(instance.info);
+        try {
+            proxy.open();
+        } catch (Exception e) {
+            Log.warn("fail to reconnect {} : {}", instance.info.getProxyFactoryHint(), e.getMessage());
+            scheduleReconnect(instance);
+            return;
+        }
+        final ServiceProxy replaced;
+        synchronized (this) {
+            if(!isValid) {
+                closeQuietly(proxy);
+                return;
+            }
+            replaced = instance.proxy;
+            instance.proxy = proxy;
+            instance.reset();
+            instance.isLost = false;
+        }
+        closeQuietly(replaced);
+        Log.debug("instance {} reconnected", instance.info.getProxyFactoryHint());
+    }
+
+    private static void closeQuietly(ServiceProxy proxy) {
+        try {
+            proxy.close(true);
+        } catch (IOException ignore) { }
+    }
+
+    @Override
+    public synchronized void close(boolean force) throws IOException {
+        if(--openSemaphore > 0) {
+            Log.debug("not close : proxy still being used by {}", openSemaphore);
+            if(!force) {
+                return;
+            }
+        }
+        isValid = false;
+        executorService.shutdown();
+        Log.debug("close balancer : {}", this);
+        for (Instance instance : instances) {
+            try {
+                instance.proxy.close(force);
+            } catch (IOException e) {
+                Log.warn("fail to close instance : {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String who() {
+        return instances[0].proxy.who();
+    }
+
+    @Override
+    public boolean provide(Class controller) {
+        return instances[0].proxy.provide(controller);
+    }
+
+    @Override
+    public int getSessionCount() {
+        int sessions = 0;
+        for (Instance instance : instances) {
+            sessions += instance.proxy.getSessionCount();
+        }
+        return sessions;
+    }
+
+    /**
+     * @return number of the instances available for selection
+     */
+    public int getAvailable() {
+        final long now = System.nanoTime();
+        int available = 0;
+        for (Instance instance : instances) {
+            if(instance.isAvailable(now)) {
+                available++;
+            }
+        }
+        return available;
+    }
+
+    /**
+     * @return number of the ejections so far
+     */
+    public long getEjections() {
+        return ejections.get();
+    }
+
+    /**
+     * @param index index of the instance in the order given on creation
+     * @return number of the calls completed by the instance since it's (re)joined
+     */
+    public long getCompleted(int index) {
+        return instances[index].samples.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "{ instances : %d (%d available), ejections : %d }",
+                instances.length, getAvailable(), ejections.get());
+    }
+
+    /**
+     *  instance of the service with the statistics of its calls
+     */
+    private static final class Instance {
+
+        private final RMIServiceInfo info;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicLong samples = new AtomicLong();
+        // replaced on reconnect
+        private volatile ServiceProxy proxy;
+        // in nanoseconds
+        private final LatencyEwma latency = new LatencyEwma();
+        // as System#nanoTime(), valid only if ejected
+        private volatile long ejectedUntil;
+        private volatile boolean isEjected;
+        // connection is lost, so the instance is unavailable until reconnected regardless of ejection time
+        private volatile boolean isLost;
+
+        private Instance(RMIServiceInfo info) {
+            this.info = info;
+            this.proxy = RMIServiceInfo.toServiceProxy(info);
+        }
+
+        private boolean isAvailable(long now) {
+            if(isLost) {
+                return false;
+            }
+            if(!isEjected) {
+                return true;
+            }
+            if(now - ejectedUntil < 0) {
+                return false;
+            }
+            isEjected = false;
+            return true;
+        }
+
+        /**
+         * @param bestLatency latency of the best instance, which is assumed for the instance not measured yet
+         */
+        private long cost(long bestLatency) {
+            final long measured = this.latency.get();
+            final long latency = (measured > 0) ? measured : Math.max(bestLatency, 1L);
+            return latency * (outstanding.get() + 1);
+        }
+
+        private void onLatency(long elapsed) {
+            samples.incrementAndGet();
+            latency.update(elapsed);
+        }
+
+        private void reset() {
+            latency.reset();
+            samples.set(0L);
+            failures.set(0);
+        }
+    }
+}
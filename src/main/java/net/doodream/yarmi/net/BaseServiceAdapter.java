@@ -4,7 +4,9 @@ import net.doodream.yarmi.data.RMIError;
 import net.doodream.yarmi.data.RMIServiceInfo;
 import net.doodream.yarmi.data.Request;
 import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.frame.FrameChannel;
 import net.doodream.yarmi.serde.Converter;
+import net.doodream.yarmi.serde.EndpointLookup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,24 +15,38 @@ import java.net.InetAddress;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 public abstract class BaseServiceAdapter implements ServiceAdapter {
 
     protected static final Logger Log = LoggerFactory.getLogger(BaseServiceAdapter.class);
+    // in milliseconds
+    private static final long RECEPTION_STOP_TIMEOUT = 1000L;
     private final ExecutorService executorService = Executors.newWorkStealingPool();
     private final Map<RMISocket, Future> handshakeTasks = new ConcurrentHashMap<>();
     private final Set<ClientSocketAdapter> activeClients = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AtomicLong expiredRequests = new AtomicLong();
+    private final AtomicLong cancelledRequests = new AtomicLong();
     private volatile boolean listen = false;
     private Future<?> clientReceptionTask;
+    private volatile CountDownLatch receptionStopped = new CountDownLatch(0);
 
 
     @Override
-    public synchronized String listen(final RMIServiceInfo serviceInfo, final InetAddress network, final Function<Request, Response> handleRequest) throws IllegalAccessException, InstantiationException, IOException {
+    public String listen(final RMIServiceInfo serviceInfo, final InetAddress network, final Function<Request, Response> handleRequest) throws IllegalAccessException, InstantiationException, IOException {
+        return listen(serviceInfo, network, null, handleRequest);
+    }
+
+    @Override
+    public synchronized String listen(final RMIServiceInfo serviceInfo, final InetAddress network, final EndpointLookup lookup, final Function<Request, Response> handleRequest) throws IllegalAccessException, InstantiationException, IOException {
         if(listen) {
             throw new IllegalStateException("service already listening");
         }
@@ -45,6 +61,8 @@ public abstract class BaseServiceAdapter implements ServiceAdapter {
         final Negotiator negotiator = (Negotiator) serviceInfo.getNegotiator().newInstance();
         final Converter converter = (Converter) serviceInfo.getConverter().newInstance();
         onStart(network);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        receptionStopped = stopped;
         clientReceptionTask = executorService.submit(() -> {
             listen = true;
             try {
@@ -53,7 +71,8 @@ public abstract class BaseServiceAdapter implements ServiceAdapter {
                     handshakeTasks.put(client, executorService.submit(() -> {
                         try {
                             final RMISocket confirmedClient = negotiator.handshake(client, serviceInfo, converter, false);
-                            final ClientSocketAdapter socketAdapter = ClientSocketAdapter.create(confirmedClient, converter);
+                            final FrameChannel channel = FrameChannel.create(confirmedClient, converter, serviceInfo.getParams());
+                            final ClientSocketAdapter socketAdapter = ClientSocketAdapter.create(channel, converter, lookup);
                             onHandshakeSuccess(socketAdapter, handleRequest);
                         } catch (IOException e) {
                             Log.error("stop client handle {}", e.getMessage());
@@ -64,6 +83,8 @@ public abstract class BaseServiceAdapter implements ServiceAdapter {
                 }
             } catch (IOException e) {
                 Log.warn("stop service : {}", e.getMessage());
+            } finally {
+                stopped.countDown();
             }
         });
 
@@ -73,20 +94,48 @@ public abstract class BaseServiceAdapter implements ServiceAdapter {
     private void onHandshakeSuccess(final ClientSocketAdapter adapter, final Function<Request, Response> handleRequest) {
         adapter.startListen(request -> {
             try {
-                if (Request.isValid(request)) {
+                if (request.isExpired()) {
+                    // no response is written, as the caller has given up already
+                    dropExpired(adapter, request);
+                } else if (Request.isValid(request)) {
                     executorService.submit(() -> {
                         try {
                             if (Log.isTraceEnabled()) {
                                 Log.trace("Request <= {}", request);
                             }
+                            if (request.isExpired()) {
+                                dropExpired(adapter, request);
+                                return;
+                            }
+                            // request cancelled while queued is not handled at all
+                            if (!request.startHandling()) {
+                                dropCancelled(adapter, request);
+                                return;
+                            }
                             request.setClient(adapter);
                             try {
-                                final Response response = handleRequest.apply(request);
+                                final Response response;
+                                try {
+                                    response = handleRequest.apply(request);
+                                } finally {
+                                    request.endHandling();
+                                }
+                                if (response.isDeferred()) {
+                                    // response of async method is written by the thread completing it
+                                    writeDeferred(adapter, request, response.getDeferred());
+                                    return;
+                                }
+                                if (request.isCancelled()) {
+                                    dropCancelled(adapter, request);
+                                    return;
+                                }
                                 if (Log.isTraceEnabled()) {
                                     Log.trace("Response => {}", response);
                                 }
+                                adapter.complete(request);
                                 adapter.write(response);
                             } catch (Exception e) {
+                                adapter.complete(request);
                                 adapter.write(RMIError.INTERNAL_SERVER_ERROR.getResponse());
                             }
                         } catch (Exception e) {
@@ -94,6 +143,7 @@ public abstract class BaseServiceAdapter implements ServiceAdapter {
                         }
                     });
                 } else {
+                    adapter.complete(request);
                     adapter.write(Response.from(RMIError.BAD_REQUEST));
                 }
             } catch (IOException e) {
@@ -103,6 +153,43 @@ public abstract class BaseServiceAdapter implements ServiceAdapter {
         activeClients.add(adapter);
     }
 
+    private void dropExpired(ClientSocketAdapter adapter, Request request) {
+        adapter.complete(request);
+        expiredRequests.incrementAndGet();
+        Log.debug("drop expired request ({}) : {}", request.getNonce(), request.getEndpoint());
+    }
+
+    private void dropCancelled(ClientSocketAdapter adapter, Request request) {
+        adapter.complete(request);
+        cancelledRequests.incrementAndGet();
+        Log.debug("drop cancelled request ({}) : {}", request.getNonce(), request.getEndpoint());
+    }
+
+    @Override
+    public long getExpiredRequests() {
+        return expiredRequests.get();
+    }
+
+    @Override
+    public long getCancelledRequests() {
+        return cancelledRequests.get();
+    }
+
+    private void writeDeferred(final ClientSocketAdapter adapter, final Request request, CompletableFuture<Response> deferred) {
+        deferred.whenComplete((response, throwable) -> {
+            if (request.isCancelled()) {
+                dropCancelled(adapter, request);
+                return;
+            }
+            adapter.complete(request);
+            try {
+                adapter.write((throwable == null) ? response : RMIError.INTERNAL_SERVER_ERROR.getResponse());
+            } catch (Exception e) {
+                handleClientError(adapter, e);
+            }
+        });
+    }
+
     private void handleClientError(ClientSocketAdapter adapter, Throwable throwable) {
         Log.error("Error : ", throwable);
         if(activeClients.remove(adapter)) {
@@ -126,9 +213,28 @@ public abstract class BaseServiceAdapter implements ServiceAdapter {
         }
 
         cancelTask(clientReceptionTask);
+        // listening socket is released when the blocked accept returns, not when closed.
+        // so wait for the reception to stop, for the port to be bound again right after close
+        try {
+            if(!receptionStopped.await(RECEPTION_STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                Log.warn("client reception not stopped in {} ms", RECEPTION_STOP_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         for (Map.Entry<RMISocket, Future> entry : handshakeTasks.entrySet()) {
             cancelTask(entry.getValue());
         }
+        // connections accepted are closed, so the clients notice the service stopped
+        for (ClientSocketAdapter adapter : activeClients) {
+            if(activeClients.remove(adapter)) {
+                try {
+                    adapter.close();
+                } catch (IOException e) {
+                    Log.warn("fail to close client : {}", e.getMessage());
+                }
+            }
+        }
     }
 
     private void cancelTask(Future<?> task) {
@@ -1,25 +1,29 @@
 package net.doodream.yarmi.net;
 
 
+import net.doodream.yarmi.data.Endpoint;
 import net.doodream.yarmi.data.Request;
 import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.frame.Frame;
+import net.doodream.yarmi.net.frame.FrameChannel;
+import net.doodream.yarmi.net.frame.FrameDispatcher;
 import net.doodream.yarmi.net.session.BlobSession;
 import net.doodream.yarmi.net.session.SessionControlException;
 import net.doodream.yarmi.net.session.SessionControlMessage;
 import net.doodream.yarmi.net.session.param.SCMErrorParam;
 import net.doodream.yarmi.serde.Converter;
+import net.doodream.yarmi.serde.EndpointLookup;
 import net.doodream.yarmi.serde.Reader;
 import net.doodream.yarmi.serde.Writer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class ClientSocketAdapter {
@@ -27,30 +31,38 @@ public class ClientSocketAdapter {
     private Logger Log = LoggerFactory.getLogger(ClientSocketAdapter.class);
 
     private RMISocket client;
+    private FrameChannel channel;
+    private EndpointLookup lookup;
     private Reader reader;
     private Writer writer;
     private Converter converter;
     private final ExecutorService executorService;
     private final AtomicReference<Future> requestHandleTask = new AtomicReference<>();
     private final ConcurrentHashMap<String, BlobSession> sessionRegistry;
+    // requests being handled by nonce, which can be cancelled by the client
+    private final ConcurrentHashMap<Integer, Request> inflightRequests = new ConcurrentHashMap<>();
 
     public interface RequestListener {
         void onRequest(Request request);
     }
 
-    ClientSocketAdapter(RMISocket socket, InputStream in, OutputStream out, Converter converter) {
-        client = socket;
+    ClientSocketAdapter(FrameChannel channel, Converter converter, EndpointLookup lookup) {
+        client = channel.getSocket();
         executorService = Executors.newCachedThreadPool();
         sessionRegistry = new ConcurrentHashMap<>();
-        reader = converter.reader(in);
-        writer = converter.writer(out);
+        this.channel = channel;
+        this.lookup = lookup;
+        reader = channel.reader(lookup);
+        writer = channel.writer();
         this.converter = converter;
     }
 
     public static ClientSocketAdapter create(final RMISocket client, final Converter converter) throws IOException {
-        final OutputStream os = client.getOutputStream();
-        final InputStream is = client.getInputStream();
-        return new ClientSocketAdapter(client, is, os, converter);
+        return create(FrameChannel.create(client, converter, null), converter, null);
+    }
+
+    public static ClientSocketAdapter create(final FrameChannel channel, final Converter converter, final EndpointLookup lookup) {
+        return new ClientSocketAdapter(channel, converter, lookup);
     }
 
 
@@ -74,34 +86,26 @@ public class ClientSocketAdapter {
         if (listener == null) {
             return;
         }
+        // reading thread only cuts frames, requests are decoded by worker threads and handled in the order of arrival
+        final FrameDispatcher<Request> dispatcher = new FrameDispatcher<>(executorService,
+                this::decode,
+                new FrameDispatcher.Listener<Request>() {
+                    @Override
+                    public void onMessage(Request request) throws Exception {
+                        handleRequest(request, listener);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        Log.warn("stop request handling {} : {}", who(), throwable.getMessage());
+                        stopListen();
+                    }
+                });
+
         requestHandleTask.set(executorService.submit(() -> {
             try {
                 while (true) {
-                    final Request request = reader.read(Request.class);
-                    if (request == null) {
-                        return;
-                    }
-                    final BlobSession session = request.getSession();
-                    if (request.hasScm()) {
-                        // request has session control message, route it to dedicated session
-                        try {
-                            // chunk scm is followed by binary stream, must be consumed properly within handleSessionControlMessage
-                            handleSessionControlMessage(request);
-                        } catch (IllegalStateException | IllegalAccessException | InstantiationException | ClassNotFoundException e) {
-                            // dest. session doesn't exist
-                            write(Response.error(request.getScm(), e.getMessage(), SCMErrorParam.ErrorType.INVALID_SESSION));
-                        }
-                        continue;
-                    }
-                    if (session != null) {
-                        session.init();
-                        if (sessionRegistry.put(session.getKey(), session) != null) {
-                            return;
-                        }
-                        session.start(reader, writer, converter, Response::buildSessionMessageWriter, () -> unregisterSession(session));
-                        // forward request to transfer session object to application
-                    }
-                    listener.onRequest(request);
+                    dispatcher.dispatch(channel.read());
                 }
             } catch (IOException e) {
                 Log.debug("stop request handling {} : {}", who(), e.getMessage());
@@ -109,6 +113,9 @@ public class ClientSocketAdapter {
                 try {
                     requestHandleTask.lazySet(null);
                     client.close();
+                    if(channel.getCompressor() != null) {
+                        Log.debug("compression of {} : {}", who(), channel.getCompressor());
+                    }
                 } catch (IOException e) {
                     Log.trace("fail to close client socket : {}", e.getMessage());
                 }
@@ -116,6 +123,80 @@ public class ClientSocketAdapter {
         }));
     }
 
+    /**
+     * decode the request with its deadline, which is counted from the moment the frame is received.
+     * parameters of the request expired while waiting to be decoded are skipped
+     */
+    private Request decode(final Frame frame) throws IOException {
+        final long receivedAt = frame.getReceivedAt();
+        final Request request = channel.decode(frame, Request.class, new EndpointLookup() {
+            @Override
+            public Endpoint lookup(String unique) {
+                return (lookup == null) ? null : lookup.lookup(unique);
+            }
+
+            @Override
+            public boolean isExpired(long timeout) {
+                return System.nanoTime() - receivedAt >= TimeUnit.MILLISECONDS.toNanos(timeout);
+            }
+        });
+        if((request != null) && (request.getTimeout() > 0)) {
+            request.setDeadline(receivedAt + TimeUnit.MILLISECONDS.toNanos(request.getTimeout()));
+        }
+        return request;
+    }
+
+    private void handleRequest(Request request, RequestListener listener) throws IOException {
+        if (request == null) {
+            return;
+        }
+        if (request.isCancellation()) {
+            cancel(request.getNonce());
+            return;
+        }
+        final BlobSession session = request.getSession();
+        if (request.hasScm()) {
+            // request has session control message, route it to dedicated session
+            try {
+                handleSessionControlMessage(request);
+            } catch (IllegalStateException | IllegalAccessException | InstantiationException | ClassNotFoundException e) {
+                // dest. session doesn't exist
+                write(Response.error(request.getScm(), e.getMessage(), SCMErrorParam.ErrorType.INVALID_SESSION));
+            }
+            return;
+        }
+        if (session != null) {
+            session.init();
+            if (sessionRegistry.put(session.getKey(), session) != null) {
+                throw new IllegalStateException("session conflict for " + session.getKey());
+            }
+            session.start(reader, writer, converter, Response::buildSessionMessageWriter, () -> unregisterSession(session));
+            // forward request to transfer session object to application
+        }
+        if (request.getNonce() != 0) {
+            inflightRequests.put(request.getNonce(), request);
+        }
+        listener.onRequest(request);
+    }
+
+    private void cancel(int nonce) {
+        final Request request = inflightRequests.remove(nonce);
+        if (request == null) {
+            // already responded
+            Log.trace("no request ({}) to be cancelled", nonce);
+            return;
+        }
+        Log.debug("cancel request ({}) @ {}", nonce, request.getEndpoint());
+        request.cancel();
+    }
+
+    /**
+     * remove the request from the requests being handled, called once the request is responded or dropped
+     */
+    void complete(Request request) {
+        inflightRequests.remove(request.getNonce(), request);
+    }
+
     void stopListen() {
         cancelTask(requestHandleTask.get());
         try {
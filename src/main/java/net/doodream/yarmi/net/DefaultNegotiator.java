@@ -3,6 +3,8 @@ package net.doodream.yarmi.net;
 import net.doodream.yarmi.data.RMIError;
 import net.doodream.yarmi.data.RMIServiceInfo;
 import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.frame.FrameChannel;
+import net.doodream.yarmi.net.frame.FrameCompressor;
 import net.doodream.yarmi.serde.Converter;
 import net.doodream.yarmi.serde.Reader;
 import net.doodream.yarmi.serde.Writer;
@@ -10,23 +12,54 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+/**
+ *  handshake of the default negotiator is
+ *  1. client sends the fingerprint of its {@link RMIServiceInfo} (refer {@link RMIServiceInfo#getFingerprint()}),
+ *  which is accepted at once by server if it has accepted the fingerprint before (or it's the fingerprint of server's one)
+ *  2. otherwise, server replies with {@link #HANDSHAKE_FULL}, then client sends its whole {@link RMIServiceInfo},
+ *  which is accepted by server if it's identical to server's one. the fingerprint of the service info accepted is cached by the server
+ *  only when it's the one claimed in 1, so the cache holds only the fingerprints of the service infos accepted
+ *  3. server replies with {@link #HANDSHAKE_OK}, or {@link #HANDSHAKE_OK_COMPRESSED} if compression is enabled
+ *  by {@link FrameCompressor#PARAM_COMPRESSION_THRESHOLD}
+ *
+ *  as the negotiator is created per service, the fingerprints are cached per service and the connections after the first one
+ *  exchange only the fingerprint, instead of the whole service info.
+ *
+ *  as the parameters of both side are identical, compression is enabled only when the server confirms it,
+ *  then each side compresses its messages larger than the threshold
+ */
 public class DefaultNegotiator implements Negotiator {
     private static final Logger Log = LoggerFactory.getLogger(DefaultNegotiator.class);
     private static final long MAX_TIMEOUT = 10L;
+    static final String HANDSHAKE_OK = "OK";
+    static final String HANDSHAKE_OK_COMPRESSED = "OK;compression=deflate";
+    static final String HANDSHAKE_FULL = "FULL";
+
+    // fingerprints of the client service info accepted by the server
+    private final Set<String> acceptedFingerprints = ConcurrentHashMap.newKeySet();
 
     @Override
     public RMISocket handshake(RMISocket socket, RMIServiceInfo service, Converter converter, boolean isClient) throws HandshakeFailException {
         Log.info("Handshake start as {} @ {}", isClient? "CLIENT" : "SERVER", socket.getRemoteName());
         try {
-            Reader reader = converter.reader(socket.getInputStream());
-            Writer writer = converter.writer(socket.getOutputStream());
+            final FrameChannel channel = FrameChannel.create(socket, converter, service.getParams());
+            Reader reader = channel.reader(null);
+            Writer writer = channel.writer();
+            final boolean isCompressed;
             if(isClient) {
-                handshakeFromClient(service, reader, writer);
+                isCompressed = handshakeFromClient(service, reader, writer);
             } else {
-                handshakeFromServer(service, reader, writer);
+                isCompressed = handshakeFromServer(service, reader, writer);
+            }
+            if(isCompressed) {
+                final int threshold = FrameCompressor.getThreshold(service.getParams());
+                Log.debug("compression enabled for message larger than {} bytes", threshold);
+                return new NegotiatedRMISocket(socket, threshold);
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -34,15 +67,24 @@ public class DefaultNegotiator implements Negotiator {
         return socket;
     }
 
-    private void handshakeFromClient(final RMIServiceInfo service, Reader reader, Writer writer) throws HandshakeFailException {
+    /**
+     * @return true if the server confirms compression
+     */
+    private boolean handshakeFromClient(final RMIServiceInfo service, Reader reader, Writer writer) throws HandshakeFailException {
         try {
-            writer.write(service, MAX_TIMEOUT, TimeUnit.SECONDS);
-            Log.debug("write {}", service);
+            writer.write(Response.success(service.getFingerprint()), MAX_TIMEOUT, TimeUnit.SECONDS);
             Response response = reader.read(Response.class,MAX_TIMEOUT, TimeUnit.SECONDS);
+            if ((response != null) && response.isSuccessful() && HANDSHAKE_FULL.equals(response.getBody())) {
+                // server hasn't accepted the fingerprint yet
+                writer.write(service, MAX_TIMEOUT, TimeUnit.SECONDS);
+                Log.debug("write {}", service);
+                response = reader.read(Response.class,MAX_TIMEOUT, TimeUnit.SECONDS);
+            }
             if ((response != null) &&
                     response.isSuccessful()) {
                 Log.debug("Handshake Success {} (Ver. {})", service.getName(), service.getVersion());
-                return;
+                return HANDSHAKE_OK_COMPRESSED.equals(response.getBody())
+                        && (FrameCompressor.getThreshold(service.getParams()) != FrameCompressor.NO_COMPRESSION);
             }
             Log.error("Handshake Fail ({}) {}",response.getCode(), response.getBody());
         } catch (IOException e) {
@@ -53,20 +95,41 @@ public class DefaultNegotiator implements Negotiator {
         throw new HandshakeFailException();
     }
 
-    private void handshakeFromServer(final RMIServiceInfo service, Reader reader, final Writer writer) throws HandshakeFailException {
+    /**
+     * @return true if compression is confirmed to the client
+     */
+    private boolean handshakeFromServer(final RMIServiceInfo service, Reader reader, final Writer writer) throws HandshakeFailException {
         try {
-            final RMIServiceInfo serviceInfo = reader.read(RMIServiceInfo.class, MAX_TIMEOUT, TimeUnit.SECONDS);
-            if(serviceInfo.hashCode() == service.hashCode()) {
-                writer.write(Response.success("OK"));
-            } else {
-                writer.write(RMIError.BAD_REQUEST.getResponse());
-                throw new HandshakeFailException();
+            if(acceptedFingerprints.isEmpty()) {
+                acceptedFingerprints.add(service.getFingerprint());
+            }
+            final Response hello = reader.read(Response.class, MAX_TIMEOUT, TimeUnit.SECONDS);
+            final Object fingerprint = (hello == null) ? null : hello.getBody();
+            if(!(fingerprint instanceof String) || !acceptedFingerprints.contains(fingerprint)) {
+                writer.write(Response.success(HANDSHAKE_FULL));
+                final RMIServiceInfo serviceInfo = reader.read(RMIServiceInfo.class, MAX_TIMEOUT, TimeUnit.SECONDS);
+                if((serviceInfo == null) || (serviceInfo.hashCode() != service.hashCode())) {
+                    writer.write(RMIError.BAD_REQUEST.getResponse());
+                    throw new HandshakeFailException();
+                }
+                // claimed fingerprint is not trusted, but computed from the service info received
+                final String accepted = serviceInfo.getFingerprint();
+                if(accepted.equals(fingerprint)) {
+                    Log.debug("fingerprint accepted : {}", accepted);
+                    acceptedFingerprints.add(accepted);
+                } else {
+                    Log.debug("fingerprint not cached : {} claimed for {}", fingerprint, accepted);
+                }
             }
+            final boolean isCompressed = FrameCompressor.getThreshold(service.getParams()) != FrameCompressor.NO_COMPRESSION;
+            writer.write(Response.success(isCompressed ? HANDSHAKE_OK_COMPRESSED : HANDSHAKE_OK));
+            return isCompressed;
         } catch (IOException e) {
             Log.error("error on handshake : {}", e.getMessage());
         } catch (TimeoutException e) {
             Log.error("timeout on handshake : {}", e.getMessage());
         }
+        return false;
     }
 
 }
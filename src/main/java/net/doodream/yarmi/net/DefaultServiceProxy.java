@@ -2,6 +2,9 @@ package net.doodream.yarmi.net;
 
 import net.doodream.yarmi.annotation.RMIException;
 import net.doodream.yarmi.data.*;
+import net.doodream.yarmi.net.frame.Frame;
+import net.doodream.yarmi.net.frame.FrameChannel;
+import net.doodream.yarmi.net.frame.FrameDispatcher;
 import net.doodream.yarmi.net.session.BlobSession;
 import net.doodream.yarmi.net.session.SessionCommand;
 import net.doodream.yarmi.net.session.SessionControlMessage;
@@ -12,27 +15,30 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.SocketChannel;
 import java.util.Base64;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 
 class DefaultServiceProxy implements ServiceProxy {
 
     private static final Logger Log = LoggerFactory.getLogger(DefaultServiceProxy.class);
-
     private volatile int openSemaphore;
     private volatile boolean isValid;
+    private volatile boolean isClosed;
     private final ConcurrentHashMap<String, BlobSession> sessionRegistry = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Integer, Request> requestWaitQueue = new ConcurrentHashMap<>();
-    private final AtomicInteger requestId =  new AtomicInteger(0);
+    private final PendingRequestTable pendingRequests = new PendingRequestTable();
+    private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
     private final RMIServiceInfo serviceInfo;
     private final RMISocket socket;
     private final ExecutorService executorService;
     private Converter converter;
+    private FrameChannel channel;
     private Reader reader;
     private Writer writer;
     private Future<?> readerTask;
+    private ProxyEventLoop.Registration registration;
 
     public static DefaultServiceProxy create(RMIServiceInfo info, RMISocket socket) {
         return new DefaultServiceProxy(info, socket);
@@ -58,88 +64,227 @@ class DefaultServiceProxy implements ServiceProxy {
         Negotiator negotiator = (Negotiator) serviceInfo.getNegotiator().newInstance();
         converter = (Converter) serviceInfo.getConverter().newInstance();
         socket.open();
-        reader = converter.reader(socket.getInputStream());
-        writer = converter.writer(socket.getOutputStream());
-        negotiator.handshake(socket, serviceInfo, converter, true);
+        // negotiated socket carries the options agreed in the handshake (e.g. compression) to the channel
+        final RMISocket negotiated = negotiator.handshake(socket, serviceInfo, converter, true);
+        channel = FrameChannel.create(negotiated, converter, serviceInfo.getParams());
+        // response body is decoded into return type of the endpoint requested before
+        reader = channel.reader(endpoints::get);
+        writer = channel.writer();
 
         Log.debug("open proxy for {} : success", serviceInfo.getName());
         isValid = true;
 
-        readerTask = executorService.submit(() -> {
-            try {
-                while(isValid) {
-                    final Response response = reader.read(Response.class);
-                    if(response == null) {
-                        continue;
-                    }
-                    if(response.hasScm()) {
-                        handleSessionControlMessage(response);
-                        continue;
+        // reading thread only cuts frames, responses are decoded by worker threads and handled in the order of arrival
+        // in lazy mode, response body is decoded by the caller on Response#getBody()
+        final boolean isBodyLazy = (serviceInfo.getParams() != null) && Boolean.parseBoolean(serviceInfo.getParams().get(PARAM_LAZY_BODY));
+        // socket able to be multiplexed is read by the event loop shared by the proxies, instead of the reading thread of its own
+        final SocketChannel socketChannel = negotiated.getChannel();
+        final ProxyEventLoop eventLoop = (socketChannel != null) ? ProxyEventLoop.getDefault() : null;
+        // executor decoding the responses, shared by the proxies read by the event loop
+        final Executor workerExecutor = (eventLoop != null) ? eventLoop.getExecutor() : executorService;
+        final FrameDispatcher<Response> dispatcher = new FrameDispatcher<>(workerExecutor,
+                frame -> isBodyLazy ? channel.decodeLazily(frame, endpoints::get) : channel.decode(frame, Response.class, endpoints::get),
+                new FrameDispatcher.Listener<Response>() {
+                    @Override
+                    public void onMessage(Response response) throws Exception {
+                        handleResponse(response);
                     }
-                    final Request request = requestWaitQueue.get(response.getNonce());
-                    if (request == null) {
-                        Log.warn("no mapped request exists : {}", response);
-                        return;
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        DefaultServiceProxy.this.onError(throwable);
                     }
-                    request.setResponse(response);
+                });
+
+        if(eventLoop != null) {
+            registration = eventLoop.register(socketChannel, channel, new ProxyEventLoop.Listener() {
+                @Override
+                public boolean onFrame(Frame frame, Runnable resume) throws IOException {
+                    // I/O thread shared by the proxies is not blocked by the responses of this proxy piling up
+                    return dispatcher.offer(frame, resume);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    DefaultServiceProxy.this.onError(throwable);
                 }
-            } catch (IOException | IllegalAccessException | InstantiationException | ClassNotFoundException e) {
-                Log.warn("proxy stopped : {}", e.getMessage());
-            } finally {
+            });
+            return true;
+        }
 
+        readerTask = executorService.submit(() -> {
+            try {
+                while(isValid) {
+                    dispatcher.dispatch(channel.read());
+                }
+            } catch (IOException e) {
+                onError(e);
             }
         });
         return true;
     }
 
+    private void handleResponse(Response response) throws IOException, IllegalAccessException, InstantiationException, ClassNotFoundException {
+        if(response == null) {
+            return;
+        }
+        if(response.hasScm()) {
+            handleSessionControlMessage(response);
+            return;
+        }
+        // request is removed by the first of response, timeout and close, which completes it
+        final Request request = pendingRequests.remove(response.getNonce());
+        if (request == null) {
+            Log.warn("no mapped request exists (e.g. expired) : {}", response.getNonce());
+            return;
+        }
+        request.setResponse(response);
+    }
+
 
     @Override
     public Response request(Endpoint endpoint, long timeoutInMill, Object ...args) throws IOException {
+        final Request request = prepare(endpoint, args);
+        final long timeout = (request.getSession() != null) ? 0L : timeoutInMill;
+        request.setTimeout(timeout);
+        final TimingWheel.Timeout expiry = expireOnTimeout(request, timeout);
+        Response response;
+        try {
+            write(request, timeout);
+            // parked until the response arrives or the request is expired by the timing wheel
+            response = request.getResponse(0L);
+        } catch (RMIException | TimeoutException e) {
+            response = RMIError.TIMEOUT.getResponse();
+        } finally {
+            pendingRequests.remove(request.getNonce());
+            if(expiry != null) {
+                expiry.cancel();
+            }
+        }
+        return complete(endpoint, response);
+    }
+
+    /**
+     * the request is registered and written in the calling thread, and the future is completed by the thread delivering the response
+     * (or the timing wheel on timeout). so the callbacks attached to the future without executor should not block
+     */
+    @Override
+    public CompletableFuture<Response<?>> requestAsync(Endpoint endpoint, long timeoutInMill, Object ...args) throws IOException {
+        final Request request = prepare(endpoint, args);
+        final long timeout = (request.getSession() != null) ? 0L : timeoutInMill;
+        request.setTimeout(timeout);
+        final CompletableFuture<Response> future = request.toFuture();
+        final TimingWheel.Timeout expiry = expireOnTimeout(request, timeout);
+        try {
+            write(request, timeout);
+        } catch (TimeoutException e) {
+            if(pendingRequests.remove(request.getNonce()) != null) {
+                request.setResponse(RMIError.TIMEOUT.getResponse());
+            }
+        } catch (IOException e) {
+            pendingRequests.remove(request.getNonce());
+            if(expiry != null) {
+                expiry.cancel();
+            }
+            throw e;
+        }
+        return future.thenApply(response -> {
+            if(expiry != null) {
+                expiry.cancel();
+            }
+            return complete(endpoint, response);
+        });
+    }
+
+    /**
+     * build request and register it to wait for the response
+     */
+    private Request prepare(Endpoint endpoint, Object ...args) throws IOException {
         if(!isValid) {
             throw new IOException("proxy closed");
         }
 
+        // endpoint is registered once, the other calls only read
+        if(!endpoints.containsKey(endpoint.getUnique())) {
+            endpoints.putIfAbsent(endpoint.getUnique(), endpoint);
+        }
         final Request request = Request.fromEndpoint(endpoint, args);
-        final boolean hasBlobSession = request.getSession() != null;
 
-        request.setNonce(requestId.incrementAndGet());
-        if(hasBlobSession) {
+        pendingRequests.register(request);
+        if(request.getSession() != null) {
             registerSession(request.getSession());
         }
         if(Log.isTraceEnabled()) {
             Log.trace("Request => {}", request);
         }
-        requestWaitQueue.put(request.getNonce(), request);
-        long timeout = hasBlobSession? 0L : timeoutInMill;
-        Response response;
-        try {
-            if (timeout > 0) {
-                writer.write(request, timeout, TimeUnit.MILLISECONDS);
-            } else {
-                writer.write(request);
+        return request;
+    }
+
+    /**
+     * schedule expiry of the request on the timing wheel shared by all the proxies
+     * @return timeout to be cancelled on completion, or null if the request never expires
+     */
+    private TimingWheel.Timeout expireOnTimeout(final Request request, long timeout) {
+        if(timeout <= 0) {
+            return null;
+        }
+        final int nonce = request.getNonce();
+        return TimingWheel.getDefault().schedule(() -> {
+            if(pendingRequests.remove(nonce) != null) {
+                request.setResponse(RMIError.TIMEOUT.getResponse());
+                cancelRemote(nonce, timeout);
             }
-            response = request.getResponse(timeout);
-        } catch (RMIException | TimeoutException e) {
-            response = RMIError.TIMEOUT.getResponse();
-        } finally {
-            requestWaitQueue.remove(request.getNonce());
+        }, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * let the service stop handling the request given up, so the service doesn't spend on the response nobody waits for.
+     * the cancellation is written by the executor of this proxy, neither by the ticking thread of the timing wheel
+     * nor by the workers decoding the responses of all the proxies, as the write can block on the connection stalled.
+     * the write is bounded by the timeout of the request
+     */
+    private void cancelRemote(final int nonce, final long timeout) {
+        if(!isValid) {
+            return;
         }
+        try {
+            executorService.execute(() -> {
+                try {
+                    writer.write(Request.cancellationOf(nonce), timeout, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    Log.debug("fail to cancel request ({}) : {}", nonce, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.trace("proxy closed before cancelling request ({})", nonce);
+        }
+    }
+
+    private void write(Request request, long timeout) throws IOException, TimeoutException {
+        if (timeout > 0) {
+            writer.write(request, timeout, TimeUnit.MILLISECONDS);
+        } else {
+            writer.write(request);
+        }
+    }
 
+    /**
+     * resolve the body of successful response into return type of the endpoint
+     */
+    private Response complete(Endpoint endpoint, Response response) {
         try {
             if (response.isSuccessful()) {
+                // deferred until the body is decoded if it's kept encoded
                 response.resolve(converter, endpoint.getUnwrappedRetType());
                 if (response.hasSessionSwitch()) {
                     response = handleBlobResponse(response);
                 }
             }
-        } catch (IllegalAccessException | InstantiationException | ClassNotFoundException e) {
+        } catch (IllegalAccessException | InstantiationException | ClassNotFoundException | UncheckedIOException e) {
             Log.warn("fail to resolve response");
             response = RMIError.BAD_RESPONSE.getResponse();
         }
         return response;
-
-
-
     }
 
     private Response handleBlobResponse(Response response) {
@@ -190,9 +335,20 @@ class DefaultServiceProxy implements ServiceProxy {
         Log.trace("remove session : {}", session.getKey());
     }
 
-    private void onError(Throwable throwable) throws Exception {
-        Log.error("proxy closed {}({}) : {}", socket.getRemoteName(), serviceInfo.getName(), throwable.getMessage());
-        close(true);
+    /**
+     * close the connection lost (e.g. end of stream), the pending requests are failed and the proxy is marked closed,
+     * so the proxy is not reused (e.g. by {@link ServiceProxyRegistry}). the open count is kept for the close of the users
+     */
+    private synchronized void onError(Throwable throwable) {
+        if(isClosed) {
+            return;
+        }
+        Log.warn("proxy closed {}({}) : {}", socket.getRemoteName(), serviceInfo.getName(), throwable.getMessage());
+        try {
+            actualClose();
+        } catch (IOException e) {
+            Log.warn("fail to close proxy : {}", e.getMessage());
+        }
     }
 
     public synchronized void close(boolean force) throws IOException {
@@ -212,20 +368,37 @@ class DefaultServiceProxy implements ServiceProxy {
      */
     private void actualClose() throws IOException {
         isValid = false;
+        if(isClosed) {
+            return;
+        }
+        isClosed = true;
         Log.debug("actual close {}", serviceInfo);
         if(!socket.isClosed()) {
             socket.close();
         }
         cancelReaderTask();
+        if(registration != null) {
+            registration.cancel();
+        }
         executorService.shutdown();
-        for (Request request : requestWaitQueue.values()) {
-                // put error response on the request
-            request.setResponse(RMIError.CLOSED.getResponse());
-                // wake blocked threads from wait queue
+        if((channel != null) && (channel.getCompressor() != null)) {
+            Log.debug("compression of {} : {}", serviceInfo.getName(), channel.getCompressor());
         }
+        if(channel != null) {
+            Log.debug("writes of {} : {}", serviceInfo.getName(), channel.getSendQueue());
+        }
+        // put error response on the pending requests, which wakes the waiting threads
+        pendingRequests.drain(request -> request.setResponse(RMIError.CLOSED.getResponse()));
         Log.debug("proxy for {} closed", serviceInfo.getName());
     }
 
+    /**
+     * @return true if the proxy has been closed actually, which can't be opened again
+     */
+    boolean isClosed() {
+        return isClosed;
+    }
+
     private void cancelReaderTask() {
         if(readerTask == null) {
             return;
@@ -250,4 +423,9 @@ class DefaultServiceProxy implements ServiceProxy {
         }
         return result;
     }
+
+    @Override
+    public int getSessionCount() {
+        return sessionRegistry.size();
+    }
 }
@@ -0,0 +1,34 @@
+package net.doodream.yarmi.net;
+
+/**
+ *  exponentially weighted moving average of the latency, weighting the latest sample by 1/8.
+ *  the update is racy without lock, which is fine as a lost sample only makes the average a little older
+ */
+public final class LatencyEwma {
+
+    // weight of the latest sample as right shift
+    private static final int SHIFT = 3;
+
+    // 0 until the first sample
+    private volatile long average;
+
+    /**
+     * @param elapsed latency of the sample, in any unit used consistently
+     */
+    public void update(long elapsed) {
+        final long average = this.average;
+        // sample is at least 1, so the average measured is never taken as not measured
+        this.average = (average == 0) ? Math.max(elapsed, 1L) : Math.max(average + ((elapsed - average) >> SHIFT), 1L);
+    }
+
+    /**
+     * @return average latency, or 0 if not measured yet
+     */
+    public long get() {
+        return average;
+    }
+
+    public void reset() {
+        average = 0L;
+    }
+}
@@ -0,0 +1,76 @@
+package net.doodream.yarmi.net;
+
+import net.doodream.yarmi.net.frame.FrameCompressor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.SocketChannel;
+
+/**
+ *  {@link RMISocket} returned from {@link Negotiator} which carries the options agreed in the handshake,
+ *  so that {@link net.doodream.yarmi.net.frame.FrameChannel} over the socket applies them (e.g. compression)
+ */
+public class NegotiatedRMISocket implements RMISocket {
+
+    private final RMISocket socket;
+    private final int compressionThreshold;
+
+    /**
+     * @param socket socket the handshake is made over
+     * @param compressionThreshold min. size of message to be compressed or {@link FrameCompressor#NO_COMPRESSION}
+     */
+    public NegotiatedRMISocket(RMISocket socket, int compressionThreshold) {
+        this.socket = socket;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return socket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return socket.getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    @Override
+    public void open() throws IOException {
+        socket.open();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return socket.isConnected();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return socket.isClosed();
+    }
+
+    @Override
+    public String getRemoteName() {
+        return socket.getRemoteName();
+    }
+
+    @Override
+    public boolean setReadTimeout(int timeoutInMills) throws IOException {
+        return socket.setReadTimeout(timeoutInMills);
+    }
+
+    @Override
+    public SocketChannel getChannel() {
+        return socket.getChannel();
+    }
+}
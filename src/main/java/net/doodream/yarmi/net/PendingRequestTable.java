@@ -0,0 +1,187 @@
+package net.doodream.yarmi.net;
+
+import net.doodream.yarmi.data.Request;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ *  lock-free table of the requests waiting for response, used by {@link ServiceProxy} to find the request of the response by its nonce.
+ *  request is stored in power-of-two slot array at index of (nonce & mask), so that no boxing or hashing is performed per request.
+ *  the upper bits of the nonce work as generation of the slot, the request in the slot is returned only if its nonce is equal to the one looked up,
+ *  so that late response (e.g. after timeout) never completes another request reusing the slot.
+ *
+ *  if the slot is occupied by a long-pending request, the next nonce is tried. when no free slot is found in a few probes,
+ *  the table grows to twice size and the previous tables are kept to be looked up until their requests are removed.
+ *  the retired table is dropped as soon as it becomes empty, so the lookup goes through the newest table only in steady state
+ */
+public class PendingRequestTable {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int MAX_CAPACITY = 1 << 20;
+    private static final int MAX_PROBES = 8;
+
+    // the newest (and largest) table first, new requests are stored only in the newest one
+    private volatile Table[] tables;
+    private final AtomicInteger nonceCounter = new AtomicInteger();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public PendingRequestTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity initial number of the slots, rounded up to power of two
+     */
+    public PendingRequestTable(int initialCapacity) {
+        final int capacity = Math.min(Math.max(Integer.highestOneBit(Math.max(initialCapacity - 1, 1)) << 1, 2), MAX_CAPACITY);
+        tables = new Table[] { new Table(capacity) };
+    }
+
+    /**
+     * assign unique nonce to the request and store it to the table
+     * @param request request to be sent
+     * @return nonce of the request, which is also set to the request
+     * @throws IOException too many requests are pending
+     */
+    public int register(Request request) throws IOException {
+        while (true) {
+            final Table[] current = tables;
+            final Table table = current[0];
+            final int mask = table.slots.length() - 1;
+            for (int i = 0; i < MAX_PROBES; i++) {
+                final int nonce = nextNonce();
+                // nonce is set before the request is published by CAS, so lookup always sees it
+                request.setNonce(nonce);
+                // counted before CAS, so the table holding the request is never seen as empty
+                table.count.incrementAndGet();
+                if(table.slots.compareAndSet(nonce & mask, null, request)) {
+                    if(tables[0] == table) {
+                        size.incrementAndGet();
+                        return nonce;
+                    }
+                    // the table is retired meanwhile and may be dropped as empty, so store it again to the newest one
+                    table.slots.compareAndSet(nonce & mask, request, null);
+                    release(table);
+                    break;
+                }
+                release(table);
+            }
+            grow(current);
+        }
+    }
+
+    /**
+     * remove the request of the nonce from the table
+     * @param nonce nonce of the request
+     * @return removed request or null if the request has been removed already (e.g. responded or expired)
+     */
+    public Request remove(int nonce) {
+        for (Table table : tables) {
+            final int index = nonce & (table.slots.length() - 1);
+            final Request request = table.slots.get(index);
+            if((request != null) && (request.getNonce() == nonce) && table.slots.compareAndSet(index, request, null)) {
+                size.decrementAndGet();
+                release(table);
+                return request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * remove all the requests from the table
+     * @param consumer consumer of the removed requests (e.g. to complete them with error)
+     */
+    public void drain(Consumer<Request> consumer) {
+        for (Table table : tables) {
+            for (int i = 0; i < table.slots.length(); i++) {
+                final Request request = table.slots.getAndSet(i, null);
+                if(request != null) {
+                    size.decrementAndGet();
+                    release(table);
+                    consumer.accept(request);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of the pending requests
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return number of the slots of the newest table
+     */
+    public int capacity() {
+        return tables[0].slots.length();
+    }
+
+    /**
+     * @return number of the tables looked up, i.e. the newest one and the retired ones still holding requests
+     */
+    public int tableCount() {
+        return tables.length;
+    }
+
+    private int nextNonce() {
+        int nonce;
+        // 0 is nonce of the message not belonging to any request (e.g. session control message)
+        while ((nonce = nonceCounter.incrementAndGet()) == 0) ;
+        return nonce;
+    }
+
+    private synchronized void grow(Table[] expected) throws IOException {
+        if(tables != expected) {
+            return;
+        }
+        final int capacity = expected[0].slots.length();
+        if(capacity >= MAX_CAPACITY) {
+            throw new IOException("too many pending requests : " + size.get());
+        }
+        final Table[] grown = new Table[expected.length + 1];
+        grown[0] = new Table(capacity << 1);
+        System.arraycopy(expected, 0, grown, 1, expected.length);
+        tables = grown;
+        // requests of the previous table may be removed while probing, then no removal will drop it
+        dropEmpty();
+    }
+
+    private void release(Table table) {
+        if((table.count.decrementAndGet() == 0) && (tables[0] != table)) {
+            dropEmpty();
+        }
+    }
+
+    private synchronized void dropEmpty() {
+        final Table[] current = tables;
+        final List<Table> kept = new ArrayList<>(current.length);
+        kept.add(current[0]);
+        for (int i = 1; i < current.length; i++) {
+            // no request is stored to the retired table any longer, so it's empty forever
+            if(current[i].count.get() > 0) {
+                kept.add(current[i]);
+            }
+        }
+        if(kept.size() < current.length) {
+            tables = kept.toArray(new Table[0]);
+        }
+    }
+
+    private static final class Table {
+        private final AtomicReferenceArray<Request> slots;
+        // number of the requests stored, including the one being stored
+        private final AtomicInteger count = new AtomicInteger();
+
+        private Table(int capacity) {
+            slots = new AtomicReferenceArray<>(capacity);
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package net.doodream.yarmi.net;
+
+import net.doodream.yarmi.data.Endpoint;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.data.ServiceParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ *  {@link ServiceProxy} keeping multiple connections to the same service, each of which is a {@link ServiceProxy} of its own
+ *  with its own socket, reading thread and send queue. each call is routed to the connection with the fewest outstanding requests,
+ *  and to the earliest one among equally loaded ones, so that the spare connections are left idle under low load.
+ *
+ *  the pool starts with {@link #PARAM_POOL_MIN} connections and grows up to {@link #PARAM_POOL_MAX} when even the least loaded connection
+ *  has {@link #PARAM_POOL_GROW_THRESHOLD} outstanding requests, or its latency gets far worse than the best observed one while it's busy.
+ *  new connection is opened by the pool thread, so the call triggering the growth is not delayed by the handshake.
+ *  connections idle longer than {@link #PARAM_POOL_IDLE_TIMEOUT} are closed down to the min. size, except ones having blob session in progress.
+ *  the pool is also checked every idle timeout, and a spare connection is closed if the outstanding requests over the pool
+ *  have stayed under the grow threshold of one connection less during the period.
+ *  failed connection is removed from the pool, and the call finding no connection left schedules new one to recover the pool
+ */
+public class PooledServiceProxy implements ServiceProxy {
+
+    private static final Logger Log = LoggerFactory.getLogger(PooledServiceProxy.class);
+
+    public static final String PARAM_POOL_MIN = "proxy.pool.min";
+    public static final String PARAM_POOL_MAX = "proxy.pool.max";
+    // outstanding requests of the least loaded connection to open new connection
+    public static final String PARAM_POOL_GROW_THRESHOLD = "proxy.pool.threshold";
+    // in milliseconds
+    public static final String PARAM_POOL_IDLE_TIMEOUT = "proxy.pool.idle";
+
+    public static final int DEFAULT_POOL_MIN = 1;
+    public static final int DEFAULT_POOL_MAX = 1;
+    public static final int DEFAULT_POOL_GROW_THRESHOLD = 8;
+    public static final long DEFAULT_POOL_IDLE_TIMEOUT = 30000L;
+
+    // connection is considered slow when its latency is worse than the best one by this factor
+    private static final int LATENCY_GROW_FACTOR = 4;
+
+    private final Supplier<ServiceProxy> connector;
+    // first connection created, kept only for the identity of the service (i.e. who & provide), which doesn't change with the connection
+    private final ServiceProxy identity;
+    private final int minSize;
+    private final int maxSize;
+    private final int growThreshold;
+    private final long idleTimeout;
+    private final ExecutorService executorService;
+    private final AtomicBoolean isGrowing = new AtomicBoolean();
+    private final AtomicInteger totalOutstanding = new AtomicInteger();
+    // max. outstanding requests over the pool since the last maintenance
+    private final AtomicInteger peakOutstanding = new AtomicInteger();
+    private final AtomicLong grown = new AtomicLong();
+    private final AtomicLong shrunk = new AtomicLong();
+    // replaced as a whole under the lock of the pool, read without lock on every call
+    private volatile Connection[] connections;
+    private volatile boolean isValid;
+    private int openSemaphore;
+    private TimingWheel.Timeout maintenance;
+
+    /**
+     * @param connector supplier of new (not opened) connection to the service
+     * @param params service parameters to configure the pool
+     */
+    public static PooledServiceProxy create(Supplier<ServiceProxy> connector, Map<String, String> params) {
+        return new PooledServiceProxy(connector, getMinSize(params), getMaxSize(params), getGrowThreshold(params), getIdleTimeout(params));
+    }
+
+    private PooledServiceProxy(Supplier<ServiceProxy> connector, int minSize, int maxSize, int growThreshold, long idleTimeout) {
+        this.connector = connector;
+        this.minSize = Math.max(minSize, 1);
+        this.maxSize = Math.max(maxSize, this.minSize);
+        this.growThreshold = Math.max(growThreshold, 1);
+        this.idleTimeout = idleTimeout;
+        // first connection is created before open, so that the controllers it provides can be checked
+        identity = connector.get();
+        connections = new Connection[] { new Connection(identity) };
+        executorService = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "yarmi-proxy-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * get min. number of connections from service parameters
+     * @param params service parameters
+     * @return min. number of connections, {@link #DEFAULT_POOL_MIN} if not configured
+     */
+    public static int getMinSize(Map<String, String> params) {
+        return ServiceParams.getInt(params, PARAM_POOL_MIN, DEFAULT_POOL_MIN);
+    }
+
+    /**
+     * get max. number of connections from service parameters
+     * @param params service parameters
+     * @return max. number of connections, {@link #DEFAULT_POOL_MAX} (i.e. no pooling) if not configured
+     */
+    public static int getMaxSize(Map<String, String> params) {
+        return ServiceParams.getInt(params, PARAM_POOL_MAX, DEFAULT_POOL_MAX);
+    }
+
+    public static int getGrowThreshold(Map<String, String> params) {
+        return ServiceParams.getInt(params, PARAM_POOL_GROW_THRESHOLD, DEFAULT_POOL_GROW_THRESHOLD);
+    }
+
+    /**
+     * get idle timeout of the connection from service parameters
+     * @param params service parameters
+     * @return idle timeout in milliseconds, {@link #DEFAULT_POOL_IDLE_TIMEOUT} if not configured
+     */
+    public static long getIdleTimeout(Map<String, String> params) {
+        return ServiceParams.getLong(params, PARAM_POOL_IDLE_TIMEOUT, DEFAULT_POOL_IDLE_TIMEOUT);
+    }
+
+    @Override
+    public synchronized boolean open() throws IOException, IllegalAccessException, InstantiationException {
+        if(openSemaphore++ > 0) {
+            Log.debug("already opened {} times", openSemaphore);
+            return false;
+        }
+        connections[0].proxy.open();
+        isValid = true;
+        for (int i = 1; i < minSize; i++) {
+            addConnection();
+        }
+        scheduleMaintenance();
+        return true;
+    }
+
+    @Override
+    public Response request(Endpoint endpoint, long timeoutMilliSec, Object... args) throws IOException {
+        final Connection connection = acquire();
+        final long start = System.nanoTime();
+        try {
+            return connection.proxy.request(endpoint, timeoutMilliSec, args);
+        } catch (IOException e) {
+            onConnectionError(connection, e);
+            throw e;
+        } finally {
+            release(connection, start);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Response<?>> requestAsync(Endpoint endpoint, long timeoutMilliSec, Object... args) throws IOException {
+        final Connection connection = acquire();
+        final long start = System.nanoTime();
+        final CompletableFuture<Response<?>> future;
+        try {
+            future = connection.proxy.requestAsync(endpoint, timeoutMilliSec, args);
+        } catch (IOException e) {
+            release(connection, start);
+            onConnectionError(connection, e);
+            throw e;
+        }
+        return future.whenComplete((response, throwable) -> release(connection, start));
+    }
+
+    /**
+     * select the connection with the fewest outstanding requests and count the request on it
+     */
+    private Connection acquire() throws IOException {
+        while (true) {
+            if(!isValid) {
+                throw new IOException("proxy closed");
+            }
+            final Connection[] current = connections;
+            if(current.length == 0) {
+                // all the connections have failed, reconnect for the following calls
+                scheduleGrowth();
+                throw new IOException("no connection available");
+            }
+            // tie is broken toward the earliest connection, so the connections added for the peak load go idle afterward
+            Connection selected = null;
+            int least = Integer.MAX_VALUE;
+            for (Connection connection : current) {
+                final int outstanding = connection.outstanding.get();
+                if((outstanding >= 0) && (outstanding < least)) {
+                    selected = connection;
+                    least = outstanding;
+                }
+            }
+            if((selected == null) || !selected.acquire()) {
+                // retired right after the scan
+                continue;
+            }
+            peakOutstanding.accumulateAndGet(totalOutstanding.incrementAndGet(), Math::max);
+            if(shouldGrow(current, selected, least)) {
+                scheduleGrowth();
+            }
+            return selected;
+        }
+    }
+
+    private void release(Connection connection, long start) {
+        totalOutstanding.decrementAndGet();
+        connection.release(System.nanoTime() - start);
+    }
+
+    private boolean shouldGrow(Connection[] current, Connection selected, int outstanding) {
+        if(current.length >= maxSize) {
+            return false;
+        }
+        if(outstanding >= growThreshold) {
+            return true;
+        }
+        if(outstanding == 0) {
+            return false;
+        }
+        long bestLatency = Long.MAX_VALUE;
+        for (Connection connection : current) {
+            final long latency = connection.latency.get();
+            if(latency > 0) {
+                bestLatency = Math.min(bestLatency, latency);
+            }
+        }
+        return (bestLatency != Long.MAX_VALUE) && (selected.latency.get() > bestLatency * LATENCY_GROW_FACTOR);
+    }
+
+    private void scheduleGrowth() {
+        if(!isGrowing.compareAndSet(false, true)) {
+            return;
+        }
+        executorService.execute(() -> {
+            try {
+                if(isValid && (connections.length < maxSize)) {
+                    addConnection();
+                    grown.incrementAndGet();
+                }
+            } catch (Exception e) {
+                Log.warn("fail to grow pool : {}", e.getMessage());
+            } finally {
+                isGrowing.set(false);
+            }
+        });
+    }
+
+    private void addConnection() throws IOException, IllegalAccessException, InstantiationException {
+        final ServiceProxy proxy = connector.get();
+        proxy.open();
+        synchronized (this) {
+            if(!isValid) {
+                proxy.close(true);
+                return;
+            }
+            final Connection[] grown = Arrays.copyOf(connections, connections.length + 1);
+            grown[grown.length - 1] = new Connection(proxy);
+            connections = grown;
+        }
+        Log.debug("connection added to pool of {}", connections.length);
+    }
+
+    private synchronized void removeConnection(Connection connection) {
+        final List<Connection> remains = new ArrayList<>(Arrays.asList(connections));
+        if(remains.remove(connection)) {
+            connections = remains.toArray(new Connection[0]);
+        }
+    }
+
+    private void onConnectionError(Connection connection, IOException e) {
+        Log.warn("connection removed from pool : {}", e.getMessage());
+        removeConnection(connection);
+        try {
+            connection.proxy.close(true);
+        } catch (IOException ignore) { }
+        if(isValid && (connections.length < minSize)) {
+            scheduleGrowth();
+        }
+    }
+
+    private synchronized void scheduleMaintenance() {
+        if(!isValid || (idleTimeout <= 0)) {
+            return;
+        }
+        maintenance = TimingWheel.getDefault().schedule(() -> executorService.execute(this::shrink), idleTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * close the connections idle longer than idle timeout, and a spare one if the pool has been underloaded during the period,
+     * runs in the pool thread
+     */
+    private void shrink() {
+        final long now = System.nanoTime();
+        final int peak = peakOutstanding.getAndSet(totalOutstanding.get());
+        final Connection[] current = connections;
+        // even a spare connection kept used by a trickle of calls is closed, when one connection less could take the load
+        boolean isUnderloaded = peak < (current.length - 1) * growThreshold;
+        // the latest connection first, which is the least preferred one
+        for (int i = current.length - 1; i >= 0; i--) {
+            if(connections.length <= minSize) {
+                break;
+            }
+            final Connection connection = current[i];
+            // blob session keeps using the connection after its call returns, and is counted from the call
+            if(connection.proxy.getSessionCount() > 0) {
+                continue;
+            }
+            final boolean isIdle = now - connection.lastUsed >= TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+            if((!isIdle && !isUnderloaded) || !connection.retire()) {
+                continue;
+            }
+            if(!isIdle) {
+                // one spare connection per period, so the pool shrinks gradually as the load decreases
+                isUnderloaded = false;
+            }
+            removeConnection(connection);
+            shrunk.incrementAndGet();
+            try {
+                connection.proxy.close(true);
+            } catch (IOException e) {
+                Log.warn("fail to close idle connection : {}", e.getMessage());
+            }
+            Log.debug("{} connection closed, pool of {}", isIdle ? "idle" : "spare", connections.length);
+        }
+        scheduleMaintenance();
+    }
+
+    @Override
+    public synchronized void close(boolean force) throws IOException {
+        if(--openSemaphore > 0) {
+            Log.debug("not close : proxy still being used by {}", openSemaphore);
+            if(!force) {
+                return;
+            }
+        }
+        isValid = false;
+        if(maintenance != null) {
+            maintenance.cancel();
+        }
+        executorService.shutdown();
+        Log.debug("close pool : {}", this);
+        for (Connection connection : connections) {
+            try {
+                connection.proxy.close(force);
+            } catch (IOException e) {
+                Log.warn("fail to close connection : {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String who() {
+        return identity.who();
+    }
+
+    @Override
+    public boolean provide(Class controller) {
+        return identity.provide(controller);
+    }
+
+    @Override
+    public int getSessionCount() {
+        int sessions = 0;
+        for (Connection connection : connections) {
+            sessions += connection.proxy.getSessionCount();
+        }
+        return sessions;
+    }
+
+    /**
+     * @return current number of connections
+     */
+    public int size() {
+        return connections.length;
+    }
+
+    /**
+     * @return number of outstanding requests over all the connections
+     */
+    public int getOutstanding() {
+        int outstanding = 0;
+        for (Connection connection : connections) {
+            outstanding += Math.max(connection.outstanding.get(), 0);
+        }
+        return outstanding;
+    }
+
+    /**
+     * @return number of connections opened by growth of the pool
+     */
+    public long getGrown() {
+        return grown.get();
+    }
+
+    /**
+     * @return number of idle connections closed
+     */
+    public long getShrunk() {
+        return shrunk.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "{ size : %d (min %d, max %d), outstanding : %d, grown : %d, shrunk : %d }",
+                connections.length, minSize, maxSize, getOutstanding(), grown.get(), shrunk.get());
+    }
+
+    /**
+     *  connection of the pool with the number of its outstanding requests and EWMA of their latency
+     */
+    private static final class Connection {
+
+        // count of outstanding requests, or negative once retired
+        private static final int RETIRED = Integer.MIN_VALUE;
+
+        private final ServiceProxy proxy;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        // in nanoseconds
+        private final LatencyEwma latency = new LatencyEwma();
+        private volatile long lastUsed = System.nanoTime();
+
+        private Connection(ServiceProxy proxy) {
+            this.proxy = proxy;
+        }
+
+        private boolean acquire() {
+            int count;
+            do {
+                count = outstanding.get();
+                if(count < 0) {
+                    return false;
+                }
+            } while (!outstanding.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        private void release(long elapsed) {
+            outstanding.decrementAndGet();
+            lastUsed = System.nanoTime();
+            latency.update(elapsed);
+        }
+
+        /**
+         * retire the connection having no outstanding request, so that no more request is routed to it
+         */
+        private boolean retire() {
+            return outstanding.compareAndSet(0, RETIRED);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package net.doodream.yarmi.net;
+
+import net.doodream.yarmi.net.frame.Frame;
+import net.doodream.yarmi.net.frame.FrameAssembler;
+import net.doodream.yarmi.net.frame.FrameChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  event loop reading the frames of all the {@link ServiceProxy}s in the process with a few I/O threads, instead of a reading thread
+ *  blocked per proxy. each I/O thread multiplexes the channels registered to it with its own {@link Selector},
+ *  cuts frames from the bytes read in non-blocking mode by {@link FrameAssembler} and hands them to the listener of the channel.
+ *
+ *  frames are decoded by the workers shared by the proxies (refer {@link #getExecutor()}), so the I/O threads only read.
+ *  as the listener is called in the I/O thread, it should not block. instead, the listener which can't take more frames
+ *  stops the reading of its channel until it resumes (e.g. {@link net.doodream.yarmi.net.frame.FrameDispatcher#offer(Frame, Runnable)}),
+ *  while the other channels of the I/O thread are still read.
+ *  writes are not multiplexed, they are performed by the calling thread over the output stream of the socket
+ */
+public class ProxyEventLoop {
+
+    private static final Logger Log = LoggerFactory.getLogger(ProxyEventLoop.class);
+
+    public static final int DEFAULT_IO_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private static final int READ_BUFFER_SIZE = 64 << 10;
+    // reads of a channel per wake-up, not to starve the other channels of the thread
+    private static final int MAX_READS_PER_EVENT = 16;
+    private static final ProxyEventLoop DEFAULT = new ProxyEventLoop(DEFAULT_IO_THREADS);
+
+    private final IoThread[] ioThreads;
+    private final ForkJoinPool workers;
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong pauses = new AtomicLong();
+
+    public interface Listener {
+        /**
+         * called for each frame in the order of the stream, in the I/O thread
+         * @param frame frame read, which should be released by the listener
+         * @param resume resumes the reading of the channel stopped by returning false, can be run in any thread
+         * @return false to stop reading the channel until resume is run. the frames already read are still delivered
+         * @throws IOException fail to handle the frame, the channel is unregistered
+         */
+        boolean onFrame(Frame frame, Runnable resume) throws IOException;
+
+        /**
+         * called once when the channel can't be read any longer (e.g. end of stream), in the worker thread
+         * @param throwable cause
+         */
+        void onError(Throwable throwable);
+    }
+
+    /**
+     * @return event loop shared by all the proxies in the process
+     */
+    public static ProxyEventLoop getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param ioThreads number of the threads reading the channels
+     */
+    public ProxyEventLoop(int ioThreads) {
+        if(ioThreads <= 0) {
+            throw new IllegalArgumentException("invalid number of I/O threads");
+        }
+        this.ioThreads = new IoThread[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            this.ioThreads[i] = new IoThread(String.format(Locale.ENGLISH, "yarmi-proxy-io-%d", i));
+        }
+        final AtomicInteger workerIndex = new AtomicInteger();
+        workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(String.format(Locale.ENGLISH, "yarmi-proxy-worker-%d", workerIndex.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+        }, null, true);
+    }
+
+    /**
+     * @return executor shared by the proxies of the loop to decode the frames
+     */
+    public Executor getExecutor() {
+        return workers;
+    }
+
+    /**
+     * start reading the channel with the I/O thread having the least channels, the channel is switched into non-blocking mode.
+     * so nothing but the event loop should read the channel afterward
+     * @param socketChannel channel of the socket, whose handshake is done
+     * @param frameChannel frame channel over the socket, frames are read with its {@link FrameAssembler}
+     * @param listener listener for the frames of the channel
+     * @return registration to be cancelled when the proxy is closed
+     * @throws IOException fail to switch into non-blocking mode
+     */
+    public Registration register(SocketChannel socketChannel, FrameChannel frameChannel, Listener listener) throws IOException {
+        socketChannel.configureBlocking(false);
+        IoThread target = ioThreads[0];
+        for (IoThread ioThread : ioThreads) {
+            if(ioThread.channels.get() < target.channels.get()) {
+                target = ioThread;
+            }
+        }
+        final Registration registration = new Registration(target, socketChannel, frameChannel.assembler(), listener);
+        target.register(registration);
+        return registration;
+    }
+
+    /**
+     * @return number of the channels being read
+     */
+    public int size() {
+        int size = 0;
+        for (IoThread ioThread : ioThreads) {
+            size += ioThread.channels.get();
+        }
+        return size;
+    }
+
+    /**
+     * @return number of the frames read
+     */
+    public long getFrames() {
+        return frames.get();
+    }
+
+    /**
+     * @return number of times the reading of the channel is stopped by its listener
+     */
+    public long getPauses() {
+        return pauses.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "{ I/O threads : %d, channels : %d, frames : %d, pauses : %d }",
+                ioThreads.length, size(), frames.get(), pauses.get());
+    }
+
+    /**
+     *  channel registered to an I/O thread, the assembler is touched only by the I/O thread
+     */
+    public final class Registration {
+
+        private final IoThread ioThread;
+        private final SocketChannel channel;
+        private final FrameAssembler assembler;
+        private final Listener listener;
+        private final Runnable resumer = this::resume;
+        private volatile SelectionKey key;
+        private volatile boolean isCancelled;
+        // touched only by the I/O thread
+        private boolean isClosed;
+        private boolean isPaused;
+
+        private Registration(IoThread ioThread, SocketChannel channel, FrameAssembler assembler, Listener listener) {
+            this.ioThread = ioThread;
+            this.channel = channel;
+            this.assembler = assembler;
+            this.listener = listener;
+        }
+
+        /**
+         * stop reading the channel, the listener is not called afterward. the channel itself is not closed
+         */
+        public void cancel() {
+            if(isCancelled) {
+                return;
+            }
+            isCancelled = true;
+            // key is cancelled by the I/O thread, which also releases the frame being assembled
+            ioThread.wakeUp(this);
+        }
+
+        /**
+         * resume the reading stopped by the listener
+         */
+        private void resume() {
+            // interest of the key is changed by the I/O thread, after the stop of the reading
+            ioThread.wakeUp(this);
+        }
+
+        private void onReadable(ByteBuffer buffer) throws IOException {
+            boolean isAccepted = true;
+            for (int reads = 0; isAccepted && (reads < MAX_READS_PER_EVENT); reads++) {
+                buffer.clear();
+                final int size = channel.read(buffer);
+                if(size < 0) {
+                    throw new EOFException();
+                }
+                if(size == 0) {
+                    return;
+                }
+                buffer.flip();
+                Frame frame;
+                // frames in the buffer are delivered anyway, as the buffer is shared by the channels of the thread
+                while (!isCancelled && ((frame = assembler.poll(buffer)) != null)) {
+                    frames.incrementAndGet();
+                    isAccepted &= listener.onFrame(frame, resumer);
+                }
+                if(isCancelled) {
+                    return;
+                }
+            }
+            if(!isAccepted) {
+                isPaused = true;
+                pauses.incrementAndGet();
+                key.interestOps(0);
+            }
+        }
+
+        private void close(Throwable throwable) {
+            if(isClosed) {
+                return;
+            }
+            isClosed = true;
+            final SelectionKey key = this.key;
+            if(key != null) {
+                key.cancel();
+            }
+            assembler.release();
+            ioThread.channels.decrementAndGet();
+            if((throwable != null) && !isCancelled) {
+                isCancelled = true;
+                workers.execute(() -> listener.onError(throwable));
+            }
+        }
+    }
+
+    private final class IoThread implements Runnable {
+
+        private final String name;
+        private final AtomicInteger channels = new AtomicInteger();
+        // registrations to be added or cancelled, handed to the I/O thread
+        private final Queue<Registration> changes = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        private volatile Selector selector;
+
+        private IoThread(String name) {
+            this.name = name;
+        }
+
+        private void register(Registration registration) throws IOException {
+            channels.incrementAndGet();
+            start();
+            wakeUp(registration);
+        }
+
+        private void wakeUp(Registration registration) {
+            changes.offer(registration);
+            selector.wakeup();
+        }
+
+        private synchronized void start() throws IOException {
+            if(selector != null) {
+                return;
+            }
+            selector = Selector.open();
+            final Thread thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            final Selector selector = this.selector;
+            try {
+                while (true) {
+                    selector.select();
+                    applyChanges(selector);
+                    final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        final SelectionKey key = keys.next();
+                        keys.remove();
+                        final Registration registration = (Registration) key.attachment();
+                        try {
+                            if(key.isValid() && key.isReadable()) {
+                                registration.onReadable(readBuffer);
+                            }
+                        } catch (IOException | CancelledKeyException e) {
+                            Log.debug("stop reading {} : {}", registration.channel, e.getMessage());
+                            registration.close(e);
+                        } catch (RuntimeException e) {
+                            Log.warn("stop reading {} on error : {}", registration.channel, e.getMessage());
+                            registration.close(e);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                Log.error("{} stopped : {}", name, e.getMessage());
+            }
+        }
+
+        private void applyChanges(Selector selector) {
+            Registration registration;
+            while ((registration = changes.poll()) != null) {
+                if(registration.isCancelled) {
+                    registration.close(null);
+                    continue;
+                }
+                if(registration.isClosed) {
+                    continue;
+                }
+                if(registration.key != null) {
+                    if(registration.isPaused) {
+                        registration.isPaused = false;
+                        try {
+                            registration.key.interestOps(SelectionKey.OP_READ);
+                        } catch (CancelledKeyException e) {
+                            // e.g. channel closed while paused
+                            registration.close(e);
+                        }
+                    }
+                    continue;
+                }
+                try {
+                    registration.key = registration.channel.register(selector, SelectionKey.OP_READ, registration);
+                } catch (IOException e) {
+                    // e.g. closed before registered
+                    registration.close(e);
+                }
+            }
+        }
+    }
+}
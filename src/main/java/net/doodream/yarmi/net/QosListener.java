@@ -3,5 +3,13 @@ package net.doodream.yarmi.net;
 public interface QosListener {
     void onQosUpdated(final ServiceProxy proxy, long measuredRttInMill);
 
+    /**
+     * called by {@link QosProber} with the clock offset estimated from the timestamp of the remote service
+     * @param clockOffsetInMill clock of the remote service minus local clock, assuming the response is made at the middle of the round trip
+     */
+    default void onQosUpdated(final ServiceProxy proxy, long measuredRttInMill, long clockOffsetInMill) {
+        onQosUpdated(proxy, measuredRttInMill);
+    }
+
     void onError(final ServiceProxy proxy, Throwable throwable);
 }
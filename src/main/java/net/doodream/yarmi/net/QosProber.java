@@ -0,0 +1,280 @@
+package net.doodream.yarmi.net;
+
+import net.doodream.yarmi.annotation.RMIException;
+import net.doodream.yarmi.annotation.server.Controller;
+import net.doodream.yarmi.data.Endpoint;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.server.svc.HealthCheckController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  background prober measuring round trip time and clock offset of the registered {@link ServiceProxy}s
+ *  by calling {@link HealthCheckController#check()} of the service, and publishing them to {@link QosListener}s.
+ *  so the user calls never pay for the measurement, and the proxies are probed at the interval jittered by ±25%,
+ *  not to probe all the proxies (registered at once) at the same moment.
+ *
+ *  prober is a standalone API, no routing nor timeout of the library consumes the measured numbers.
+ *  e.g. {@link BalancedServiceProxy} and {@link PooledServiceProxy} route the calls by the latency measured from the calls themselves.
+ *  the user takes the numbers from {@link QosListener} or {@link #getRtt(ServiceProxy)} for its own decision,
+ *  such as picking an instance among the discovered ones or setting the timeout of the calls.
+ *
+ *  the service should declare {@link HealthCheckController} as its controller to be probed.
+ *  proxy failing to write the probe (e.g. closed) is reported to the listeners and unregistered.
+ *  prober is created by the user with its interval, so no prober thread is started unless probing is used,
+ *  and should be closed by its user (refer {@link #close()}) to stop the probes and the prober thread
+ */
+public class QosProber {
+
+    private static final Logger Log = LoggerFactory.getLogger(QosProber.class);
+    private static final int JITTER_PERCENT = 25;
+
+    private final long interval;
+    private final List<QosListener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<ServiceProxy, Probe> probes = new ConcurrentHashMap<>();
+    private final ExecutorService executorService;
+    private volatile boolean isClosed;
+
+    /**
+     * @param interval mean interval of the probes per proxy in milliseconds
+     */
+    public QosProber(long interval) {
+        if(interval <= 0) {
+            throw new IllegalArgumentException("invalid probe interval");
+        }
+        this.interval = interval;
+        executorService = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "yarmi-qos-prober");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void addListener(QosListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(QosListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * start probing the proxy, which should be opened
+     * @param proxy proxy to be probed
+     * @param svc service definition class of the proxy, declaring {@link HealthCheckController}
+     * @return true if registered, false if the service doesn't provide {@link HealthCheckController}, the proxy is registered already
+     * or the prober is closed
+     */
+    public boolean register(ServiceProxy proxy, Class<?> svc) {
+        if(isClosed) {
+            return false;
+        }
+        final Endpoint endpoint = getHealthCheckEndpoint(proxy, svc);
+        if(endpoint == null) {
+            Log.warn("{} doesn't provide health check", svc.getName());
+            return false;
+        }
+        final Probe probe = new Probe(proxy, endpoint);
+        if(probes.putIfAbsent(proxy, probe) != null) {
+            return false;
+        }
+        // first probe is also jittered, so the proxies registered together are probed apart
+        probe.schedule();
+        if(isClosed) {
+            // closed while registering
+            unregister(proxy);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * stop probing the proxy
+     * @return true if the proxy has been probed
+     */
+    public boolean unregister(ServiceProxy proxy) {
+        final Probe probe = probes.remove(proxy);
+        if(probe == null) {
+            return false;
+        }
+        probe.cancel();
+        return true;
+    }
+
+    /**
+     * @return round trip time of the last probe in milliseconds, or -1 if not measured yet
+     */
+    public long getRtt(ServiceProxy proxy) {
+        final Probe probe = probes.get(proxy);
+        return (probe == null) ? -1L : probe.rtt;
+    }
+
+    /**
+     * @return clock offset of the remote service estimated by the last probe in milliseconds, or 0 if not measured yet
+     */
+    public long getClockOffset(ServiceProxy proxy) {
+        final Probe probe = probes.get(proxy);
+        return (probe == null) ? 0L : probe.clockOffset;
+    }
+
+    public int size() {
+        return probes.size();
+    }
+
+    /**
+     * stop probing all the proxies and the prober thread, the proxies are not closed
+     */
+    public void close() {
+        isClosed = true;
+        for (Probe probe : probes.values()) {
+            probe.cancel();
+        }
+        probes.clear();
+        executorService.shutdown();
+    }
+
+    private static Endpoint getHealthCheckEndpoint(ServiceProxy proxy, Class<?> svc) {
+        if(!proxy.provide(HealthCheckController.class)) {
+            return null;
+        }
+        for (Field field : svc.getDeclaredFields()) {
+            final Controller controller = field.getAnnotation(Controller.class);
+            if((controller != null) && (field.getType() == HealthCheckController.class)) {
+                try {
+                    return Endpoint.create(controller, HealthCheckController.class.getMethod("check"));
+                } catch (NoSuchMethodException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private long nextDelay() {
+        final long jitter = interval * JITTER_PERCENT / 100;
+        return interval - jitter + ThreadLocalRandom.current().nextLong(2 * jitter + 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "{ interval : %d ms, proxies : %d, listeners : %d }", interval, probes.size(), listeners.size());
+    }
+
+    /**
+     *  probing state of a proxy, the next probe is scheduled when the previous one completes,
+     *  so at most one probe is in flight per proxy
+     */
+    private final class Probe {
+
+        private final ServiceProxy proxy;
+        private final Endpoint endpoint;
+        private volatile TimingWheel.Timeout next;
+        private volatile long rtt = -1L;
+        private volatile long clockOffset;
+
+        private Probe(ServiceProxy proxy, Endpoint endpoint) {
+            this.proxy = proxy;
+            this.endpoint = endpoint;
+        }
+
+        private void schedule() {
+            // probe is written by the prober thread, not to block the ticking thread of the timing wheel
+            next = TimingWheel.getDefault().schedule(() -> {
+                try {
+                    executorService.execute(this::probe);
+                } catch (RejectedExecutionException e) {
+                    // prober closed after the probe is scheduled
+                    Log.debug("probe rejected for {}", proxy.who());
+                }
+            }, nextDelay(), TimeUnit.MILLISECONDS);
+            if(!isRegistered()) {
+                next.cancel();
+            }
+        }
+
+        private void cancel() {
+            final TimingWheel.Timeout timeout = next;
+            if(timeout != null) {
+                timeout.cancel();
+            }
+        }
+
+        private boolean isRegistered() {
+            return !isClosed && (probes.get(proxy) == this);
+        }
+
+        private void probe() {
+            if(!isRegistered()) {
+                return;
+            }
+            final long sentAt = System.currentTimeMillis();
+            final long start = System.nanoTime();
+            try {
+                proxy.requestAsync(endpoint, interval).whenComplete((response, throwable) -> {
+                    if(throwable != null) {
+                        onError(throwable);
+                    } else if(!response.isSuccessful()) {
+                        onError(new RMIException(response));
+                    } else {
+                        onResponse(response, sentAt, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    }
+                    if(isRegistered()) {
+                        schedule();
+                    }
+                });
+            } catch (IOException e) {
+                Log.debug("stop probing {} : {}", proxy.who(), e.getMessage());
+                probes.remove(proxy, this);
+                onError(e);
+            }
+        }
+
+        private void onResponse(Response response, long sentAt, long rtt) {
+            final Object body;
+            try {
+                body = response.getBody();
+            } catch (UncheckedIOException e) {
+                onError(e);
+                return;
+            }
+            if(!(body instanceof Number)) {
+                onError(new IllegalStateException("invalid health check response : " + body));
+                return;
+            }
+            // remote timestamp is assumed to be taken at the middle of the round trip
+            final long clockOffset = ((Number) body).longValue() - (sentAt + rtt / 2);
+            this.rtt = rtt;
+            this.clockOffset = clockOffset;
+            for (QosListener listener : listeners) {
+                try {
+                    listener.onQosUpdated(proxy, rtt, clockOffset);
+                } catch (RuntimeException e) {
+                    Log.warn("fail to notify qos : {}", e.getMessage());
+                }
+            }
+        }
+
+        private void onError(Throwable throwable) {
+            for (QosListener listener : listeners) {
+                try {
+                    listener.onError(proxy, throwable);
+                } catch (RuntimeException e) {
+                    Log.warn("fail to notify qos error : {}", e.getMessage());
+                }
+            }
+        }
+    }
+}
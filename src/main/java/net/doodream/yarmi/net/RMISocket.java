@@ -3,6 +3,7 @@ package net.doodream.yarmi.net;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.SocketChannel;
 
 public interface RMISocket {
     InputStream getInputStream() throws IOException;
@@ -12,4 +13,24 @@ public interface RMISocket {
     boolean isConnected();
     boolean isClosed();
     String getRemoteName();
+
+    /**
+     * set timeout for blocking read, read blocked longer than the timeout throws {@link java.net.SocketTimeoutException}
+     * without consuming any data from the stream
+     * @param timeoutInMills timeout in milliseconds, 0 means infinite
+     * @return true if the socket supports read timeout, otherwise false
+     * @throws IOException fail to set timeout
+     */
+    default boolean setReadTimeout(int timeoutInMills) throws IOException {
+        return false;
+    }
+
+    /**
+     * get channel of the socket, which can be read by {@link ProxyEventLoop} in non-blocking mode after the handshake.
+     * output stream of the socket should keep working once the channel is switched into non-blocking mode
+     * @return channel of the socket, or null if the socket can't be multiplexed
+     */
+    default SocketChannel getChannel() {
+        return null;
+    }
 }
@@ -4,6 +4,7 @@ package net.doodream.yarmi.net;
 import net.doodream.yarmi.data.RMIServiceInfo;
 import net.doodream.yarmi.data.Request;
 import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.serde.EndpointLookup;
 import net.doodream.yarmi.server.RMIService;
 
 import java.io.IOException;
@@ -39,6 +40,15 @@ public interface ServiceAdapter {
      */
     String listen(RMIServiceInfo serviceInfo, InetAddress network, Function<Request, Response> requestHandler) throws IOException, IllegalAccessException, InstantiationException;
 
+    /**
+     * same as {@link #listen(RMIServiceInfo, InetAddress, Function)}, while {@link Request} from client is decoded with
+     * parameter types of the endpoint provided by the lookup
+     * @param lookup lookup for {@link net.doodream.yarmi.data.Endpoint} of the service
+     */
+    default String listen(RMIServiceInfo serviceInfo, InetAddress network, EndpointLookup lookup, Function<Request, Response> requestHandler) throws IOException, IllegalAccessException, InstantiationException {
+        return listen(serviceInfo, network, requestHandler);
+    }
+
     /**
      * return {@link ServiceProxyFactory} which is capable of building {@link ServiceProxy} able to connect to current service adapter
      * 현재 {@link ServiceAdapter}에 대응 되는 client측 peer를 생성 할 수 있는 {@link ServiceProxyFactory}를 반환
@@ -54,6 +64,20 @@ public interface ServiceAdapter {
      */
     void configure(Map<String, String> params);
 
+    /**
+     * @return number of the requests dropped without being handled, since their deadline is passed before invoking the controller
+     */
+    default long getExpiredRequests() {
+        return 0L;
+    }
+
+    /**
+     * @return number of the requests cancelled by the client, whose response is not written
+     */
+    default long getCancelledRequests() {
+        return 0L;
+    }
+
     /**
      * server 측 network 연결을 해제하고 모든 resource 를 반환
      */
@@ -6,9 +6,16 @@ import net.doodream.yarmi.data.RMIServiceInfo;
 import net.doodream.yarmi.data.Response;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 public interface ServiceProxy {
 
+    /**
+     * service parameter to keep response body encoded until {@link Response#getBody()} is called ("true" to enable),
+     * which also allows to iterate large collection body with {@link Response#bodyIterator()}
+     */
+    String PARAM_LAZY_BODY = "response.body.lazy";
+
     static ServiceProxy getDefault(RMIServiceInfo info, RMISocket socket) {
         return DefaultServiceProxy.create(info, socket);
     }
@@ -50,7 +57,27 @@ public interface ServiceProxy {
          */
         boolean open() throws IOException, IllegalAccessException, InstantiationException;
         Response<?> request(Endpoint endpoint, long timeoutMilliSec, Object ...args) throws IOException;
+
+        /**
+         * make request without waiting for the response, so that the number of in-flight requests doesn't depend on the number of threads
+         * the proxy not supporting async request completes the future in the calling thread by default
+         * @param endpoint endpoint to request
+         * @param timeoutMilliSec timeout of the request, the future is completed with {@link RMIError#TIMEOUT} response on expiry
+         * @param args arguments of the request
+         * @return future of the response
+         * @throws IOException the proxy is closed or fails to write the request
+         */
+        default CompletableFuture<Response<?>> requestAsync(Endpoint endpoint, long timeoutMilliSec, Object ...args) throws IOException {
+            return CompletableFuture.completedFuture(request(endpoint, timeoutMilliSec, args));
+        }
         void close(boolean force) throws IOException;
         String who();
         boolean provide(Class controller);
+
+        /**
+         * @return number of the blob sessions in progress, which keep using the connection of the proxy after their calls return
+         */
+        default int getSessionCount() {
+            return 0;
+        }
 }
@@ -0,0 +1,173 @@
+package net.doodream.yarmi.net;
+
+import net.doodream.yarmi.data.Endpoint;
+import net.doodream.yarmi.data.RMIServiceInfo;
+import net.doodream.yarmi.data.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *  registry of the {@link ServiceProxy}s in the process, keyed by the address of the remote service and its fingerprint
+ *  (refer {@link RMIServiceInfo#getFingerprint()}). so the call proxies of the same service, even for the different controllers,
+ *  share one handshaken connection instead of opening their own.
+ *
+ *  each proxy given by the registry is a handle of the shared connection, which is opened on the first open of the handles
+ *  and closed on the last close of them (i.e. reference counted by the open count of {@link DefaultServiceProxy}).
+ *  connection closed by error is replaced by new one on the next open. proxies other than {@link DefaultServiceProxy}
+ *  (e.g. {@link PooledServiceProxy}) are not shared
+ */
+public class ServiceProxyRegistry {
+
+    private static final Logger Log = LoggerFactory.getLogger(ServiceProxyRegistry.class);
+    private static final ServiceProxyRegistry DEFAULT = new ServiceProxyRegistry();
+
+    private final ConcurrentHashMap<String, DefaultServiceProxy> proxies = new ConcurrentHashMap<>();
+
+    /**
+     * @return registry shared by all the call proxies in the process
+     */
+    public static ServiceProxyRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * get proxy to the service, sharing the connection with the other proxies to the same service
+     * @param info service info obtained from the service discovery
+     * @return proxy to be opened and closed by the caller
+     */
+    public ServiceProxy get(RMIServiceInfo info) {
+        final String key = String.format(Locale.ENGLISH, "%s#%s", info.getProxyFactoryHint(), info.getFingerprint());
+        final ServiceProxy[] unshared = new ServiceProxy[1];
+        final DefaultServiceProxy proxy = current(key, info, unshared);
+        if(proxy == null) {
+            return unshared[0];
+        }
+        return new SharedServiceProxy(key, info, proxy);
+    }
+
+    /**
+     * @return number of the connections shared
+     */
+    public int size() {
+        return proxies.size();
+    }
+
+    /**
+     * get the connection of the key, or create new one if it doesn't exist or has been closed
+     * @param unshared holder of the proxy created, if it can't be shared
+     */
+    private DefaultServiceProxy current(String key, RMIServiceInfo info, ServiceProxy[] unshared) {
+        return proxies.compute(key, (k, proxy) -> {
+            if((proxy != null) && !proxy.isClosed()) {
+                return proxy;
+            }
+            final ServiceProxy created = RMIServiceInfo.toServiceProxy(info);
+            if(created instanceof DefaultServiceProxy) {
+                return (DefaultServiceProxy) created;
+            }
+            unshared[0] = created;
+            return null;
+        });
+    }
+
+    private void evict(String key, DefaultServiceProxy proxy) {
+        if(proxies.remove(key, proxy)) {
+            Log.debug("connection to {} evicted", key);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "{ connections : %d }", proxies.size());
+    }
+
+    /**
+     *  handle of the shared connection, which holds one reference of the connection while opened
+     */
+    private final class SharedServiceProxy implements ServiceProxy {
+
+        private final String key;
+        private final RMIServiceInfo info;
+        private volatile DefaultServiceProxy proxy;
+        private boolean isOpened;
+
+        private SharedServiceProxy(String key, RMIServiceInfo info, DefaultServiceProxy proxy) {
+            this.key = key;
+            this.info = info;
+            this.proxy = proxy;
+        }
+
+        @Override
+        public synchronized boolean open() throws IOException, IllegalAccessException, InstantiationException {
+            if(isOpened) {
+                return false;
+            }
+            while (true) {
+                final DefaultServiceProxy proxy = this.proxy;
+                // the connection is not closed by the other handles between the check and the open
+                synchronized (proxy) {
+                    if(!proxy.isClosed()) {
+                        try {
+                            proxy.open();
+                        } catch (IOException | IllegalAccessException | InstantiationException | RuntimeException e) {
+                            // failed connection is not shared, the next open tries new one
+                            proxy.close(true);
+                            evict(key, proxy);
+                            throw e;
+                        }
+                        isOpened = true;
+                        return true;
+                    }
+                }
+                evict(key, proxy);
+                this.proxy = current(key, info, new ServiceProxy[1]);
+            }
+        }
+
+        @Override
+        public Response<?> request(Endpoint endpoint, long timeoutMilliSec, Object... args) throws IOException {
+            return proxy.request(endpoint, timeoutMilliSec, args);
+        }
+
+        @Override
+        public CompletableFuture<Response<?>> requestAsync(Endpoint endpoint, long timeoutMilliSec, Object... args) throws IOException {
+            return proxy.requestAsync(endpoint, timeoutMilliSec, args);
+        }
+
+        @Override
+        public synchronized void close(boolean force) throws IOException {
+            if(!isOpened) {
+                return;
+            }
+            isOpened = false;
+            final DefaultServiceProxy proxy = this.proxy;
+            synchronized (proxy) {
+                // connection is kept for the other handles even on force close, only the last handle closes it
+                proxy.close(false);
+                if(proxy.isClosed()) {
+                    evict(key, proxy);
+                }
+            }
+        }
+
+        @Override
+        public String who() {
+            return proxy.who();
+        }
+
+        @Override
+        public boolean provide(Class controller) {
+            return proxy.provide(controller);
+        }
+
+        @Override
+        public int getSessionCount() {
+            return proxy.getSessionCount();
+        }
+    }
+}
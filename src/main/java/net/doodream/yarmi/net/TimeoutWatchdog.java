@@ -0,0 +1,150 @@
+package net.doodream.yarmi.net;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  {@link TimeoutWatchdog} bounds blocking I/O operation with a deadline without handing the operation over to other thread.
+ *  the operation is performed in the calling thread while being watched, and single watchdog thread shared
+ *  by all the connections aborts the operation missing its deadline by closing the target stream (or socket)
+ *  and interrupting the blocked thread.
+ *
+ *  as the target is closed on expiry, partially written (or read) message never leaves the stream in the middle of a message.
+ */
+public class TimeoutWatchdog {
+
+    private static final Logger Log = LoggerFactory.getLogger(TimeoutWatchdog.class);
+    private static final TimeoutWatchdog DEFAULT = new TimeoutWatchdog("yarmi-timeout-watchdog");
+
+    private static final int WATCHING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final DelayQueue<Watch> watches = new DelayQueue<>();
+    private final String name;
+    private volatile Thread watchdogThread;
+
+    /**
+     * watch for single blocking operation, which should be cancelled by the watched thread right after the operation
+     */
+    public static class Watch implements Delayed {
+        private final AtomicInteger state = new AtomicInteger(WATCHING);
+        private final long deadline;
+        private Closeable target;
+        private Thread thread;
+
+        private Watch(long deadline, Closeable target, Thread thread) {
+            this.deadline = deadline;
+            this.target = target;
+            this.thread = thread;
+        }
+
+        /**
+         * stop watching the operation
+         * @return true if the operation completes in time, otherwise false (the target has been closed)
+         */
+        public boolean cancel() {
+            if(state.compareAndSet(WATCHING, CANCELLED)) {
+                release();
+                return true;
+            }
+            if(state.get() == CANCELLED) {
+                return true;
+            }
+            synchronized (this) {
+                // clear interrupt caused by the watchdog, not to leak it into the caller
+                Thread.interrupted();
+            }
+            return false;
+        }
+
+        private void expire() {
+            synchronized (this) {
+                if(!state.compareAndSet(WATCHING, EXPIRED)) {
+                    return;
+                }
+                try {
+                    target.close();
+                } catch (IOException e) {
+                    Log.trace("fail to close on timeout : {}", e.getMessage());
+                }
+                thread.interrupt();
+                release();
+            }
+        }
+
+        private void release() {
+            target = null;
+            thread = null;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.signum(deadline - ((Watch) o).deadline);
+        }
+    }
+
+    /**
+     * @return watchdog shared by all the connections in the process
+     */
+    public static TimeoutWatchdog getDefault() {
+        return DEFAULT;
+    }
+
+    public TimeoutWatchdog(String name) {
+        this.name = name;
+    }
+
+    /**
+     * start watching blocking operation performed by calling thread
+     * @param deadline deadline of the operation as {@link System#nanoTime()}
+     * @param target stream or socket to be closed when the operation misses the deadline
+     * @return {@link Watch} which should be cancelled after the operation
+     */
+    public Watch watch(long deadline, Closeable target) {
+        final Watch watch = new Watch(deadline, target, Thread.currentThread());
+        // cancelled watch is not removed from the queue, it's dropped by the watchdog when its deadline is reached
+        watches.offer(watch);
+        startIfNotRunning();
+        return watch;
+    }
+
+    private void startIfNotRunning() {
+        if(watchdogThread != null) {
+            return;
+        }
+        synchronized (this) {
+            if(watchdogThread != null) {
+                return;
+            }
+            final Thread thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+            thread.start();
+            watchdogThread = thread;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                watches.take().expire();
+            } catch (InterruptedException e) {
+                Log.warn("watchdog interrupted");
+            } catch (RuntimeException e) {
+                Log.warn("unexpected error on expiry : {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package net.doodream.yarmi.net;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *  hashed timing wheel expiring timeouts of the requests in batches, shared by all the {@link ServiceProxy}s in the process.
+ *  timeout is put into the bucket of its deadline tick, and all the timeouts of a bucket are expired at once by single ticking thread,
+ *  so that scheduling and cancelling a timeout costs O(1) regardless of the number of pending timeouts.
+ *
+ *  scheduled and cancelled timeouts are handed to the ticking thread through lock-free queues, buckets are touched only by the ticking thread.
+ *  timeout is expired within one tick after its deadline, and the expiry task is run in the ticking thread, so it should not block
+ */
+public class TimingWheel {
+
+    private static final Logger Log = LoggerFactory.getLogger(TimingWheel.class);
+
+    private static final long DEFAULT_TICK_DURATION = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+    private static final TimingWheel DEFAULT = new TimingWheel("yarmi-timing-wheel", DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE);
+
+    private final String name;
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final long startTime;
+    private volatile Thread tickingThread;
+    private volatile boolean isIdle;
+    private long tick;
+
+    /**
+     * @return timing wheel shared by all the proxies in the process
+     */
+    public static TimingWheel getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param name name of the ticking thread
+     * @param tickDuration duration of a tick in nanoseconds, which is the resolution of the timeout
+     * @param wheelSize number of buckets, rounded up to power of two
+     */
+    public TimingWheel(String name, long tickDuration, int wheelSize) {
+        if((tickDuration <= 0) || (wheelSize <= 0)) {
+            throw new IllegalArgumentException("invalid tick duration or wheel size");
+        }
+        this.name = name;
+        this.tickDuration = tickDuration;
+        final int size = (wheelSize == 1) ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = size - 1;
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * schedule the task to be run after the delay
+     * @param task task run in the ticking thread on expiry
+     * @param delay delay of the expiry
+     * @param unit time unit of the delay
+     * @return {@link Timeout} which should be cancelled if the task is no more needed
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        final Timeout timeout = new Timeout(this, task, System.nanoTime() + unit.toNanos(delay));
+        pending.incrementAndGet();
+        scheduled.offer(timeout);
+        startIfNotRunning();
+        if(isIdle) {
+            LockSupport.unpark(tickingThread);
+        }
+        return timeout;
+    }
+
+    /**
+     * @return number of the timeouts neither expired nor cancelled
+     */
+    public int size() {
+        return pending.get();
+    }
+
+    private void startIfNotRunning() {
+        if(tickingThread != null) {
+            return;
+        }
+        synchronized (this) {
+            if(tickingThread != null) {
+                return;
+            }
+            final Thread thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+            thread.start();
+            tickingThread = thread;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            if(pending.get() == 0) {
+                // nothing to expire, so ticking thread sleeps until next schedule and skips the ticks passed
+                isIdle = true;
+                if(pending.get() == 0) {
+                    LockSupport.park(this);
+                }
+                isIdle = false;
+                tick = Math.max(tick, (System.nanoTime() - startTime) / tickDuration);
+            }
+            final long deadline = startTime + (tick + 1) * tickDuration;
+            long now;
+            while ((now = System.nanoTime()) - deadline < 0) {
+                LockSupport.parkNanos(this, deadline - now);
+            }
+            try {
+                removeCancelled();
+                transferScheduled();
+                wheel[(int) (tick & mask)].expire(tick);
+            } catch (RuntimeException e) {
+                Log.warn("unexpected error on tick : {}", e.getMessage());
+            }
+            tick++;
+        }
+    }
+
+    private void transferScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if(timeout.state != Timeout.ST_INIT) {
+                continue;
+            }
+            // timeout already passed is expired in the current tick
+            final long deadlineTick = Math.max((timeout.deadline - startTime + tickDuration - 1) / tickDuration, tick);
+            timeout.deadlineTick = deadlineTick;
+            wheel[(int) (deadlineTick & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if(timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     *  handle of the task scheduled on {@link TimingWheel}
+     */
+    public static class Timeout {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final TimingWheel timingWheel;
+        private final long deadline;
+        private volatile int state = ST_INIT;
+        private Runnable task;
+        // below are touched only by the ticking thread
+        private long deadlineTick;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimingWheel timingWheel, Runnable task, long deadline) {
+            this.timingWheel = timingWheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * cancel the timeout, the task is released immediately and the timeout is removed from the wheel on the next tick
+         * @return true if cancelled, false if the task has already been run (or cancelled)
+         */
+        public boolean cancel() {
+            if(!STATE.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            task = null;
+            timingWheel.pending.decrementAndGet();
+            timingWheel.cancelled.offer(this);
+            return true;
+        }
+
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        private void expire() {
+            if(!STATE.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            final Runnable expired = task;
+            task = null;
+            timingWheel.pending.decrementAndGet();
+            if(expired == null) {
+                return;
+            }
+            try {
+                expired.run();
+            } catch (RuntimeException e) {
+                Log.warn("fail to expire timeout : {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     *  doubly linked list of the timeouts whose deadline ticks are hashed into the same bucket
+     */
+    private static class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if(head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void expire(long tick) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                // timeout of later round remains in the bucket
+                if(timeout.deadlineTick <= tick) {
+                    remove(timeout);
+                    timeout.expire();
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if(timeout.bucket != this) {
+                return;
+            }
+            if(timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if(timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package net.doodream.yarmi.net.frame;
+
+/**
+ *  single message cut from the stream by {@link FrameChannel}.
+ *  payload is held in the buffer borrowed from {@link FrameBufferPool}, so it should be returned by {@link #release()}
+ *  once the message is decoded
+ */
+public class Frame {
+
+    private final FrameBufferPool pool;
+    private final int length;
+    private final long receivedAt;
+    private volatile byte[] buffer;
+
+    Frame(FrameBufferPool pool, byte[] buffer, int length) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.length = length;
+        receivedAt = System.nanoTime();
+    }
+
+    /**
+     * @return buffer containing the payload from offset 0, which can be larger than the payload
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return size of the payload in byte
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return time when the frame is read from the stream as {@link System#nanoTime()}
+     */
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    /**
+     * return buffer to the pool, the frame can't be used after release
+     */
+    public void release() {
+        final byte[] b = buffer;
+        if(b == null) {
+            return;
+        }
+        buffer = null;
+        pool.release(b);
+    }
+}
@@ -0,0 +1,71 @@
+package net.doodream.yarmi.net.frame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ *  {@link FrameAssembler} cuts frames of {@link FrameChannel} from the bytes read by non-blocking read,
+ *  so that the thread multiplexing many channels (e.g. {@link net.doodream.yarmi.net.ProxyEventLoop}) reads the frames
+ *  without blocking on the channel until the frame is completed.
+ *
+ *  bytes are fed in the order of the stream by one thread at a time, and the payload is read into the buffer
+ *  borrowed from {@link FrameBufferPool} like {@link FrameChannel#read()}
+ */
+public class FrameAssembler {
+
+    private final FrameChannel channel;
+    private final byte[] header = new byte[FrameChannel.HEADER_SIZE];
+    private int headerOffset;
+    private int lengthHeader;
+    // null while reading the header
+    private byte[] payload;
+    private int length;
+    private int offset;
+
+    FrameAssembler(FrameChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * consume the bytes of the buffer until a frame is completed
+     * @param src bytes read from the channel, which is consumed as much as the frame needs
+     * @return completed frame, or null if all the bytes are consumed without completing a frame
+     * @throws FrameTooLargeException size of the frame exceeds max. frame size, the stream is no longer usable
+     * @throws IOException invalid frame
+     */
+    public Frame poll(ByteBuffer src) throws IOException {
+        if(payload == null) {
+            final int size = Math.min(FrameChannel.HEADER_SIZE - headerOffset, src.remaining());
+            src.get(header, headerOffset, size);
+            headerOffset += size;
+            if(headerOffset < FrameChannel.HEADER_SIZE) {
+                return null;
+            }
+            headerOffset = 0;
+            lengthHeader = FrameChannel.readInt(header, 0);
+            length = channel.getFrameLength(lengthHeader);
+            payload = channel.acquire(length);
+            offset = 0;
+        }
+        final int size = Math.min(length - offset, src.remaining());
+        src.get(payload, offset, size);
+        offset += size;
+        if(offset < length) {
+            return null;
+        }
+        final byte[] buffer = payload;
+        payload = null;
+        return channel.complete(lengthHeader, buffer, length);
+    }
+
+    /**
+     * return the buffer of the frame being read, the assembler can't be used afterward
+     */
+    public void release() {
+        final byte[] buffer = payload;
+        if(buffer != null) {
+            payload = null;
+            channel.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package net.doodream.yarmi.net.frame;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  pool of byte array buffers for {@link Frame}, buffers are kept in power-of-two size classes
+ *  so that a buffer released by a frame can be reused by any other frame of the same class.
+ *  buffers larger than the largest class are allocated on demand and dropped on release
+ */
+public class FrameBufferPool {
+
+    private static final int MIN_SHIFT = 8;
+    private static final int MAX_SHIFT = 20;
+    private static final int DEFAULT_BUFFERS_PER_CLASS = 64;
+    private static final FrameBufferPool DEFAULT = new FrameBufferPool(DEFAULT_BUFFERS_PER_CLASS);
+
+    private final ConcurrentLinkedQueue<byte[]>[] classes;
+    private final AtomicInteger[] counts;
+    private final int buffersPerClass;
+
+    /**
+     * @return pool shared by all the {@link FrameChannel}s in the process
+     */
+    public static FrameBufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    @SuppressWarnings("unchecked")
+    public FrameBufferPool(int buffersPerClass) {
+        final int size = MAX_SHIFT - MIN_SHIFT + 1;
+        this.buffersPerClass = buffersPerClass;
+        classes = new ConcurrentLinkedQueue[size];
+        counts = new AtomicInteger[size];
+        for (int i = 0; i < size; i++) {
+            classes[i] = new ConcurrentLinkedQueue<>();
+            counts[i] = new AtomicInteger(0);
+        }
+    }
+
+    /**
+     * borrow buffer from the pool
+     * @param size minimum size of the buffer
+     * @return buffer whose length is equal or larger than the size
+     */
+    public byte[] acquire(int size) {
+        final int index = indexOf(size);
+        if(index < 0) {
+            return new byte[size];
+        }
+        final byte[] buffer = classes[index].poll();
+        if(buffer == null) {
+            return new byte[1 << (index + MIN_SHIFT)];
+        }
+        counts[index].decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * return buffer to the pool
+     * @param buffer buffer acquired from {@link #acquire(int)}
+     */
+    public void release(byte[] buffer) {
+        final int index = indexOf(buffer.length);
+        if((index < 0) || (buffer.length != (1 << (index + MIN_SHIFT)))) {
+            return;
+        }
+        if(counts[index].incrementAndGet() > buffersPerClass) {
+            counts[index].decrementAndGet();
+            return;
+        }
+        classes[index].offer(buffer);
+    }
+
+    private static int indexOf(int size) {
+        if(size > (1 << MAX_SHIFT)) {
+            return -1;
+        }
+        final int shift = Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(shift, MIN_SHIFT) - MIN_SHIFT;
+    }
+}
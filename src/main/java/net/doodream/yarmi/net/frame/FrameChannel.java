@@ -0,0 +1,724 @@
+package net.doodream.yarmi.net.frame;
+
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.data.ServiceParams;
+import net.doodream.yarmi.net.NegotiatedRMISocket;
+import net.doodream.yarmi.net.RMISocket;
+import net.doodream.yarmi.net.TimeoutWatchdog;
+import net.doodream.yarmi.serde.Converter;
+import net.doodream.yarmi.serde.EndpointLookup;
+import net.doodream.yarmi.serde.Reader;
+import net.doodream.yarmi.serde.StringDictionary;
+import net.doodream.yarmi.serde.Writer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *  {@link FrameChannel} puts length-prefixed frame layer between {@link RMISocket} and {@link Converter}.
+ *  each message is encoded into a frame with 4 byte (big-endian) length header, so that
+ *  1. reading thread only cuts frames from the stream into pooled buffers, while decoding can be done by other threads (refer {@link FrameDispatcher})
+ *  2. size of the message is known before reading its payload, which allows to reject too large message
+ *
+ *  frames are read exactly (without read-ahead), so the channel can be handed over between
+ *  {@link net.doodream.yarmi.net.Negotiator} and the service proxy (or client adapter) after handshake
+ *
+ *  strings defined in the message by per-connection {@link StringDictionary} are appended after the payload with the flag bit
+ *  ({@link #DICTIONARY_FLAG}) in the header, which are read by the reading thread in the order of frames before decoding.
+ *
+ *  payload larger than the threshold negotiated by {@link net.doodream.yarmi.net.DefaultNegotiator} is compressed by
+ *  per-connection {@link FrameCompressor}, which is marked with the flag bit in the length header
+ *
+ *  message is encoded (and compressed) into a frame in the writing thread without any lock, and the frames written concurrently
+ *  are queued into {@link FrameSendQueue} and written by one of the writing threads, which gathers the frames queued at the same moment
+ *  into single write of the socket. so encoding large message never delays the other messages of the connection.
+ *
+ *  timed read is performed in the calling thread and bounded by read timeout of the socket
+ *  (or {@link TimeoutWatchdog} if not supported), timed write is bounded by {@link TimeoutWatchdog}.
+ *  timed operation either completes whole frame, fails without consuming (or writing) any byte,
+ *  or closes the socket when it times out in the middle of the frame, so the stream never continues from broken frame
+ */
+public class FrameChannel {
+
+    public static final String PARAM_MAX_FRAME_SIZE = "frame.max.size";
+    public static final int DEFAULT_MAX_FRAME_SIZE = 16 << 20;
+    static final int HEADER_SIZE = 4;
+    static final int DICTIONARY_FLAG = 0x40000000;
+    private static final int FLAGS = FrameCompressor.COMPRESSED_FLAG | DICTIONARY_FLAG;
+    // encode buffer grown over this size is dropped after write, not to hold large buffer for thread lifetime
+    private static final int MAX_RETAINED_ENCODE_BUFFER_SIZE = 1 << 20;
+    // writing thread waits until its frame is written, so the encode buffer of the thread can be shared by all the channels
+    private static final ThreadLocal<FrameOutputStream> ENCODE_BUFFERS = new ThreadLocal<FrameOutputStream>() {
+        @Override
+        protected FrameOutputStream initialValue() {
+            return new FrameOutputStream();
+        }
+    };
+    private static final long NO_DEADLINE = 0L;
+    // frames are gathered into a batch until it reaches this size
+    private static final int MAX_BATCH_SIZE = 64 << 10;
+
+    private final RMISocket socket;
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final byte[] header = new byte[HEADER_SIZE];
+    private final Converter converter;
+    private final FrameBufferPool pool;
+    private final int maxFrameSize;
+    private final int compressionLevel;
+    // created on construction if compression is negotiated, otherwise on the first compressed frame from the peer
+    private volatile FrameCompressor compressor;
+    // null if disabled by the service parameter
+    private final StringDictionary dictionary;
+    private final FrameSendQueue sendQueue;
+    // below are touched only by the drainer holding the write lock
+    private final ByteArrayOutputStream batchBuffer = new ByteArrayOutputStream(MAX_BATCH_SIZE);
+    private final List<FrameSendQueue.Entry> batchEntries = new ArrayList<>();
+    private long batchDeadline;
+    // frame larger than the batch is written from the buffer of its writing thread without copy
+    private FrameSendQueue.Entry directEntry;
+
+    /**
+     * output stream used as encode buffer, which reserves space for the header at the beginning
+     */
+    private static class FrameOutputStream extends ByteArrayOutputStream {
+
+        private int flags;
+        private StringDictionary.Encoding dictionaryEncoding;
+
+        FrameOutputStream() {
+            super(256);
+            count = HEADER_SIZE;
+        }
+
+        @Override
+        public synchronized void reset() {
+            count = HEADER_SIZE;
+            flags = 0;
+            dictionaryEncoding = null;
+        }
+
+        int getPayloadSize() {
+            return count - HEADER_SIZE;
+        }
+
+        void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        /**
+         * fill the header of the frame
+         * @return size of the frame including the header
+         */
+        int finish() {
+            final int header = flags | getPayloadSize();
+            buf[0] = (byte) (header >>> 24);
+            buf[1] = (byte) (header >>> 16);
+            buf[2] = (byte) (header >>> 8);
+            buf[3] = (byte) header;
+            return count;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    private FrameChannel(RMISocket socket, Converter converter, FrameBufferPool pool, int maxFrameSize,
+                         int compressionThreshold, int compressionLevel, int dictionarySize, long flushDelay) throws IOException {
+        this.socket = socket;
+        this.converter = converter;
+        this.pool = pool;
+        this.maxFrameSize = maxFrameSize;
+        this.compressionLevel = compressionLevel;
+        this.dictionary = (dictionarySize > 0) ? new StringDictionary(dictionarySize) : null;
+        inputStream = socket.getInputStream();
+        outputStream = socket.getOutputStream();
+        sendQueue = new FrameSendQueue(flushDelay);
+        if(compressionThreshold != FrameCompressor.NO_COMPRESSION) {
+            compressor = new FrameCompressor(compressionThreshold, compressionLevel);
+        }
+    }
+
+    /**
+     * create {@link FrameChannel} over opened socket
+     * @param socket opened socket
+     * @param converter converter used to encode / decode the payload of frame
+     * @param params service parameters, max. frame size is taken from {@link #PARAM_MAX_FRAME_SIZE}
+     *               compression level from {@link FrameCompressor#PARAM_COMPRESSION_LEVEL}
+     *               dictionary size from {@link StringDictionary#PARAM_DICTIONARY_SIZE}
+     *               and flush delay from {@link FrameSendQueue#PARAM_FLUSH_DELAY}
+     * @return {@link FrameChannel}, which compresses the payload if the socket is {@link NegotiatedRMISocket} with compression
+     * @throws IOException fail to get streams from the socket
+     */
+    public static FrameChannel create(RMISocket socket, Converter converter, Map<String, String> params) throws IOException {
+        final int compressionThreshold = (socket instanceof NegotiatedRMISocket) ?
+                ((NegotiatedRMISocket) socket).getCompressionThreshold() : FrameCompressor.NO_COMPRESSION;
+        return new FrameChannel(socket, converter, FrameBufferPool.getDefault(), getMaxFrameSize(params),
+                compressionThreshold, FrameCompressor.getLevel(params), StringDictionary.getSize(params),
+                FrameSendQueue.getFlushDelay(params));
+    }
+
+    /**
+     * get max. frame size from service parameters
+     * @param params service parameters
+     * @return max. frame size in byte
+     */
+    public static int getMaxFrameSize(Map<String, String> params) {
+        return ServiceParams.getInt(params, PARAM_MAX_FRAME_SIZE, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * read single frame from the stream, should be called from one thread at a time
+     * @return {@link Frame} whose buffer should be released after consumed
+     * @throws FrameTooLargeException size of the frame exceeds max. frame size, the stream is no longer usable
+     * @throws IOException I/O error or end of stream
+     */
+    public Frame read() throws IOException {
+        try {
+            return read(NO_DEADLINE);
+        } catch (TimeoutException e) {
+            // never happens without deadline
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * read single frame from the stream within the timeout, should be called from one thread at a time
+     * @param timeout timeout
+     * @param unit unit of the timeout
+     * @return {@link Frame} whose buffer should be released after consumed
+     * @throws TimeoutException no frame is read in time. the stream is still usable if timeout happens before receiving the frame,
+     * otherwise the socket is closed
+     * @throws IOException I/O error or end of stream
+     */
+    public Frame read(long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if(timeout <= 0) {
+            throw new TimeoutException("read timeout : not started");
+        }
+        if(socket.setReadTimeout(toReadTimeout(deadline))) {
+            try {
+                return read(deadline);
+            } finally {
+                if(!socket.isClosed()) {
+                    socket.setReadTimeout(0);
+                }
+            }
+        }
+
+        // socket doesn't support read timeout
+        final TimeoutWatchdog.Watch watch = TimeoutWatchdog.getDefault().watch(deadline, socket::close);
+        try {
+            return read(NO_DEADLINE);
+        } catch (IOException e) {
+            if(!watch.cancel()) {
+                throw new TimeoutException("read timeout : " + e.getMessage());
+            }
+            throw e;
+        } finally {
+            watch.cancel();
+        }
+    }
+
+    private Frame read(long deadline) throws IOException, TimeoutException {
+        readFully(header, HEADER_SIZE, deadline, true);
+        final int lengthHeader = readInt(header, 0);
+        final int length = getFrameLength(lengthHeader);
+        final byte[] buffer = pool.acquire(length);
+        try {
+            readFully(buffer, length, deadline, false);
+        } catch (IOException | TimeoutException e) {
+            pool.release(buffer);
+            throw e;
+        }
+        return complete(lengthHeader, buffer, length);
+    }
+
+    /**
+     * create assembler cutting frames from the bytes read by non-blocking read, instead of {@link #read()}
+     */
+    public FrameAssembler assembler() {
+        return new FrameAssembler(this);
+    }
+
+    /**
+     * @param lengthHeader length header of the frame including the flags
+     * @return size of the payload
+     * @throws FrameTooLargeException size of the frame exceeds max. frame size
+     */
+    int getFrameLength(int lengthHeader) throws FrameTooLargeException {
+        final int length = lengthHeader & ~FLAGS;
+        if(length > maxFrameSize) {
+            throw new FrameTooLargeException(length, maxFrameSize);
+        }
+        return length;
+    }
+
+    byte[] acquire(int length) {
+        return pool.acquire(length);
+    }
+
+    void release(byte[] buffer) {
+        pool.release(buffer);
+    }
+
+    /**
+     * build frame from the payload read in the order of frames, the buffer is owned by the frame (or released) afterward
+     */
+    Frame complete(int lengthHeader, byte[] buffer, int length) throws IOException {
+        Frame frame;
+        if((lengthHeader & FrameCompressor.COMPRESSED_FLAG) != 0) {
+            try {
+                frame = decompress(buffer, length);
+            } finally {
+                pool.release(buffer);
+            }
+        } else {
+            frame = new Frame(pool, buffer, length);
+        }
+        if((lengthHeader & DICTIONARY_FLAG) != 0) {
+            frame = readDefinitions(frame);
+        }
+        return frame;
+    }
+
+    /**
+     * learn strings defined at the end of the frame, the frame is trimmed not to include the definitions
+     */
+    private Frame readDefinitions(Frame frame) throws IOException {
+        final byte[] buffer = frame.getBuffer();
+        final int length = frame.getLength();
+        try {
+            if((dictionary == null) || (length < 4)) {
+                throw new IOException("unexpected string definitions");
+            }
+            final int definitionSize = readInt(buffer, length - 4);
+            if((definitionSize < 0) || (definitionSize > length - 4)) {
+                throw new IOException("invalid string definitions");
+            }
+            final int payloadSize = length - 4 - definitionSize;
+            dictionary.readDefinitions(buffer, payloadSize, definitionSize);
+            return new Frame(pool, buffer, payloadSize);
+        } catch (IOException e) {
+            frame.release();
+            throw e;
+        }
+    }
+
+    private Frame decompress(byte[] compressed, int length) throws IOException {
+        if(length < 4) {
+            throw new IOException("invalid compressed frame");
+        }
+        final int originalLength = readInt(compressed, 0);
+        if((originalLength < 0) || (originalLength > maxFrameSize)) {
+            throw new FrameTooLargeException(originalLength, maxFrameSize);
+        }
+        FrameCompressor compressor = this.compressor;
+        if(compressor == null) {
+            compressor = new FrameCompressor(FrameCompressor.NO_COMPRESSION, compressionLevel);
+            this.compressor = compressor;
+        }
+        final byte[] buffer = pool.acquire(originalLength);
+        try {
+            compressor.decompress(compressed, 4, length - 4, buffer, originalLength);
+        } catch (IOException e) {
+            pool.release(buffer);
+            throw e;
+        }
+        return new Frame(pool, buffer, originalLength);
+    }
+
+    static int readInt(byte[] b, int offset) {
+        return ((b[offset] & 0xff) << 24) |
+                ((b[offset + 1] & 0xff) << 16) |
+                ((b[offset + 2] & 0xff) << 8) |
+                (b[offset + 3] & 0xff);
+    }
+
+    /**
+     * read exact number of bytes from the stream
+     * @param isFrameStart true if nothing of the frame is consumed before, timeout at the start of frame doesn't break the stream
+     */
+    private void readFully(byte[] b, int len, long deadline, boolean isFrameStart) throws IOException, TimeoutException {
+        int offset = 0;
+        while (offset < len) {
+            final int rsz;
+            try {
+                if(deadline != NO_DEADLINE) {
+                    socket.setReadTimeout(toReadTimeout(deadline));
+                }
+                rsz = inputStream.read(b, offset, len - offset);
+            } catch (SocketTimeoutException e) {
+                if(!(isFrameStart && (offset == 0))) {
+                    // timeout in the middle of the frame, the stream can't be recovered
+                    socket.close();
+                }
+                throw new TimeoutException("read timeout");
+            }
+            if(rsz < 0) {
+                throw new EOFException();
+            }
+            offset += rsz;
+        }
+    }
+
+    private static int toReadTimeout(long deadline) throws SocketTimeoutException {
+        final long remaining = deadline - System.nanoTime();
+        if(remaining <= 0) {
+            throw new SocketTimeoutException();
+        }
+        // round up not to be 0 (infinite)
+        return (int) Math.min(TimeUnit.NANOSECONDS.toMillis(remaining) + 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * decode the frame and release it
+     * @param frame frame from {@link #read()}
+     * @param cls class of the message
+     * @param lookup lookup for endpoint of the message
+     * @return decoded message
+     * @throws IOException fail to decode
+     */
+    public <T> T decode(Frame frame, Class<T> cls, EndpointLookup lookup) throws IOException {
+        try {
+            return converter.invert(frame.getBuffer(), 0, frame.getLength(), cls, lookup, dictionary);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * decode the response keeping its body encoded and release the frame
+     * @param frame frame from {@link #read()}
+     * @param lookup lookup for endpoint of the response
+     * @return decoded response whose body is decoded on the first {@link Response#getBody()}
+     * @throws IOException fail to decode
+     */
+    public Response decodeLazily(Frame frame, EndpointLookup lookup) throws IOException {
+        try {
+            return converter.invertLazily(frame.getBuffer(), 0, frame.getLength(), lookup, dictionary);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * encode message into a frame and write it to the stream
+     * @param src message to write
+     * @throws FrameTooLargeException encoded message exceeds max. frame size, nothing is written in this case
+     * @throws IOException I/O error
+     */
+    public void write(Object src) throws IOException {
+        try {
+            send(src, NO_DEADLINE);
+        } catch (TimeoutException e) {
+            // never happens without deadline
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * encode message into a frame and write it to the stream within the timeout
+     * @param src message to write
+     * @param timeout timeout
+     * @param unit unit of the timeout
+     * @throws TimeoutException the frame is not written in time. nothing is written if timeout happens before starting write,
+     * otherwise the socket is closed, so the peer never sees partially written frame followed by another frame
+     * @throws IOException I/O error or encoded message exceeds max. frame size
+     */
+    public void write(Object src, long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        if(timeout <= 0) {
+            throw new TimeoutException("write timeout : not started");
+        }
+        send(src, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * encode the message in the calling thread and wait until the frame is written
+     */
+    private void send(Object src, long deadline) throws IOException, TimeoutException {
+        final FrameOutputStream buffer = encode(src);
+        byte[] compressed = null;
+        try {
+            final int payloadSize = buffer.getPayloadSize();
+            final FrameCompressor compressor = this.compressor;
+            int compressedSize = -1;
+            if((compressor != null) && compressor.shouldCompress(payloadSize)) {
+                compressed = pool.acquire(FrameCompressor.HEADER_SIZE + payloadSize);
+                compressedSize = compressor.compress(buffer.getBuffer(), HEADER_SIZE, payloadSize, buffer.flags, compressed);
+            }
+            if(compressedSize > 0) {
+                await(new FrameSendQueue.Entry(compressed, compressedSize, buffer.dictionaryEncoding, deadline));
+            } else {
+                await(new FrameSendQueue.Entry(buffer.getBuffer(), buffer.finish(), buffer.dictionaryEncoding, deadline));
+            }
+        } finally {
+            if(compressed != null) {
+                pool.release(compressed);
+            }
+            if(buffer.capacity() > MAX_RETAINED_ENCODE_BUFFER_SIZE) {
+                ENCODE_BUFFERS.remove();
+            }
+        }
+    }
+
+    /**
+     * queue the frame and wait until it's written, by the calling thread or the other writing thread
+     */
+    private void await(FrameSendQueue.Entry entry) throws IOException, TimeoutException {
+        sendQueue.offer(entry);
+        boolean isInterrupted = false;
+        try {
+            while (true) {
+                drainQueue();
+                if(entry.isDone()) {
+                    break;
+                }
+                if(entry.deadline == NO_DEADLINE) {
+                    LockSupport.park(this);
+                } else {
+                    final long remaining = entry.deadline - System.nanoTime();
+                    if((remaining > 0) && !isInterrupted) {
+                        LockSupport.parkNanos(this, remaining);
+                    } else if(entry.cancel()) {
+                        // the thread might have been woken to take over draining
+                        drainQueue();
+                        throw new TimeoutException(isInterrupted ? "write interrupted" : "write timeout : not started");
+                    } else {
+                        // being written, which is bounded by the watchdog
+                        LockSupport.park(this);
+                    }
+                }
+                isInterrupted |= Thread.interrupted();
+            }
+        } finally {
+            if(isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        entry.rethrow();
+    }
+
+    /**
+     * write a batch of the queued frames if no other thread is writing,
+     * and hand draining over to the thread of the remaining frame
+     */
+    private void drainQueue() {
+        if(sendQueue.isEmpty() || !writeLock.tryLock()) {
+            return;
+        }
+        try {
+            writeBatch();
+        } finally {
+            writeLock.unlock();
+        }
+        if(!sendQueue.isEmpty()) {
+            sendQueue.handOver();
+        }
+    }
+
+    /**
+     * gather queued frames into the batch buffer and write it at once, should be called with write lock held
+     */
+    private void writeBatch() {
+        final ByteArrayOutputStream batch = batchBuffer;
+        batch.reset();
+        batchDeadline = NO_DEADLINE;
+        directEntry = null;
+        collect(batch);
+        final long flushDeadline = sendQueue.flushDeadline();
+        final boolean isDelayed = (flushDeadline != 0L) && !batchEntries.isEmpty() && (directEntry == null);
+        if(isDelayed) {
+            // connection is contended, so more frames are likely to be queued soon
+            while ((batch.size() < MAX_BATCH_SIZE) && (flushDeadline - System.nanoTime() > 0)) {
+                if(!collect(batch)) {
+                    Thread.yield();
+                }
+            }
+        }
+        if(batchEntries.isEmpty()) {
+            return;
+        }
+
+        final TimeoutWatchdog.Watch watch = (batchDeadline != NO_DEADLINE) ?
+                TimeoutWatchdog.getDefault().watch(batchDeadline, socket::close) : null;
+        final int size = (directEntry != null) ? directEntry.length : batch.size();
+        IOException error = null;
+        boolean isTimeout = false;
+        try {
+            if(directEntry != null) {
+                outputStream.write(directEntry.frame, 0, directEntry.length);
+            } else {
+                batch.writeTo(outputStream);
+            }
+            outputStream.flush();
+        } catch (IOException e) {
+            error = e;
+            isTimeout = (watch != null) && !watch.cancel();
+        } finally {
+            if(watch != null) {
+                watch.cancel();
+            }
+        }
+        sendQueue.onBatch(batchEntries.size(), size, isDelayed);
+        for (FrameSendQueue.Entry entry : batchEntries) {
+            if(error == null) {
+                entry.complete(null);
+            } else if(isTimeout && (entry.deadline != NO_DEADLINE)) {
+                entry.complete(new TimeoutException("write timeout : " + error.getMessage()));
+            } else {
+                entry.complete(error);
+            }
+        }
+        batchEntries.clear();
+        directEntry = null;
+    }
+
+    /**
+     * copy queued frames into the batch, the frame which missed its deadline is completed with error
+     * @return true if any frame is added to the batch
+     */
+    private boolean collect(ByteArrayOutputStream batch) {
+        boolean isCollected = false;
+        FrameSendQueue.Entry entry;
+        while ((directEntry == null) && ((entry = sendQueue.peek()) != null)) {
+            if((batch.size() > 0) && (batch.size() + entry.length > MAX_BATCH_SIZE)) {
+                break;
+            }
+            sendQueue.poll();
+            if(!entry.take()) {
+                // cancelled
+                continue;
+            }
+            if(entry.deadline != NO_DEADLINE) {
+                if(entry.deadline - System.nanoTime() <= 0) {
+                    entry.complete(new TimeoutException("write timeout : not started"));
+                    continue;
+                }
+                if((batchDeadline == NO_DEADLINE) || (entry.deadline - batchDeadline < 0)) {
+                    batchDeadline = entry.deadline;
+                }
+            }
+            if(entry.length >= MAX_BATCH_SIZE) {
+                directEntry = entry;
+            } else {
+                batch.write(entry.frame, 0, entry.length);
+            }
+            if(entry.dictionaryEncoding != null) {
+                // frames are written in the order of the batch, so the frames encoded from now on can refer the strings defined in this frame
+                entry.dictionaryEncoding.commit();
+            }
+            batchEntries.add(entry);
+            isCollected = true;
+        }
+        return isCollected;
+    }
+
+    /**
+     * encode message into the encode buffer of the calling thread
+     */
+    private FrameOutputStream encode(Object src) throws IOException {
+        final FrameOutputStream buffer = ENCODE_BUFFERS.get();
+        buffer.reset();
+        if(dictionary == null) {
+            converter.convert(src, buffer);
+        } else {
+            // concurrent encodings may define the same string, then the peer learns both
+            final StringDictionary.Encoding encoding = dictionary.begin();
+            converter.convert(src, buffer, encoding);
+            if(encoding.hasDefinitions()) {
+                final int start = buffer.size();
+                encoding.writeDefinitions(buffer);
+                buffer.writeInt(buffer.size() - start);
+                buffer.flags |= DICTIONARY_FLAG;
+                buffer.dictionaryEncoding = encoding;
+            }
+        }
+        final int payloadSize = buffer.getPayloadSize();
+        if(payloadSize > maxFrameSize) {
+            throw new FrameTooLargeException(payloadSize, maxFrameSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * build {@link Reader} reading and decoding frame in the calling thread
+     * @param lookup lookup for endpoint of the message
+     * @return {@link Reader}
+     */
+    public Reader reader(final EndpointLookup lookup) {
+        return new Reader() {
+            @Override
+            public synchronized <T> T read(Class<T> cls) throws IOException {
+                return decode(FrameChannel.this.read(), cls, lookup);
+            }
+
+            @Override
+            public synchronized <T> T read(Class<T> cls, long timeout, TimeUnit timeUnit) throws IOException, TimeoutException {
+                return decode(FrameChannel.this.read(timeout, timeUnit), cls, lookup);
+            }
+        };
+    }
+
+    /**
+     * build {@link Writer} writing each object as a frame
+     * @return {@link Writer}
+     */
+    public Writer writer() {
+        return new Writer() {
+            @Override
+            public void write(Object src) throws IOException {
+                FrameChannel.this.write(src);
+            }
+
+            @Override
+            public void write(Object src, long timeout, TimeUnit unit) throws TimeoutException {
+                try {
+                    FrameChannel.this.write(src, timeout, unit);
+                } catch (IOException e) {
+                    final TimeoutException exception = new TimeoutException(e.getMessage());
+                    exception.initCause(e);
+                    throw exception;
+                }
+            }
+        };
+    }
+
+    public RMISocket getSocket() {
+        return socket;
+    }
+
+    /**
+     * @return send queue of the channel which provides statistics of the batched writes
+     */
+    public FrameSendQueue getSendQueue() {
+        return sendQueue;
+    }
+
+    /**
+     * @return compressor of the channel which provides statistics of compression, or null if nothing compressed
+     */
+    public FrameCompressor getCompressor() {
+        return compressor;
+    }
+}
@@ -0,0 +1,233 @@
+package net.doodream.yarmi.net.frame;
+
+import net.doodream.yarmi.data.ServiceParams;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ *  per-connection compressor of frame payload used by {@link FrameChannel}.
+ *  {@link Deflater}s are pooled and reused (after reset) for every frame of the connection, so that the writing threads compress
+ *  their frames concurrently. {@link Inflater} is created once for the reading thread.
+ *  compression is applied only to the payload larger than the threshold.
+ *  it also keeps statistics of the compression, i.e. ratio of the compressed size and CPU time spent for it.
+ *
+ *  compressed frame has the flag bit ({@link #COMPRESSED_FLAG}) in its length header,
+ *  followed by 4 byte original length of the payload and the deflated payload
+ */
+public class FrameCompressor {
+
+    public static final String PARAM_COMPRESSION_THRESHOLD = "compression.threshold";
+    public static final String PARAM_COMPRESSION_LEVEL = "compression.level";
+    public static final int NO_COMPRESSION = -1;
+
+    static final int COMPRESSED_FLAG = 0x80000000;
+    static final int HEADER_SIZE = 8;
+    // deflaters more than this are ended on release
+    private static final int MAX_POOLED_DEFLATERS = 8;
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean IS_CPU_TIME_SUPPORTED = isCpuTimeSupported();
+
+    private final int threshold;
+    private final int level;
+    private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledDeflaters = new AtomicInteger();
+    private final Inflater inflater = new Inflater();
+
+    private final AtomicLong deflatedFrames = new AtomicLong();
+    private final AtomicLong deflateInputBytes = new AtomicLong();
+    private final AtomicLong deflateOutputBytes = new AtomicLong();
+    private final AtomicLong deflateCpuTime = new AtomicLong();
+    private final AtomicLong inflatedFrames = new AtomicLong();
+    private final AtomicLong inflateInputBytes = new AtomicLong();
+    private final AtomicLong inflateOutputBytes = new AtomicLong();
+    private final AtomicLong inflateCpuTime = new AtomicLong();
+
+    /**
+     * @param threshold min. size of payload to be compressed, or {@link #NO_COMPRESSION} to only decompress
+     * @param level compression level of {@link Deflater}
+     */
+    public FrameCompressor(int threshold, int level) {
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    /**
+     * get compression threshold from service parameters
+     * @param params service parameters
+     * @return min. size of payload to be compressed, or {@link #NO_COMPRESSION} if not configured
+     */
+    public static int getThreshold(Map<String, String> params) {
+        return ServiceParams.getInt(params, PARAM_COMPRESSION_THRESHOLD, NO_COMPRESSION);
+    }
+
+    /**
+     * get compression level from service parameters
+     * @param params service parameters
+     * @return compression level, {@link Deflater#DEFAULT_COMPRESSION} if not configured
+     */
+    public static int getLevel(Map<String, String> params) {
+        return ServiceParams.getInt(params, PARAM_COMPRESSION_LEVEL, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    boolean shouldCompress(int length) {
+        return (threshold != NO_COMPRESSION) && (length >= threshold);
+    }
+
+    /**
+     * compress payload into a frame, can be called from multiple threads concurrently
+     * @param flags the other flags of the frame header
+     * @param dst buffer for the compressed frame, whose length should be at least {@link #HEADER_SIZE} + length
+     * @return size of the compressed frame including header, or -1 if the payload is not compressible
+     */
+    int compress(byte[] src, int offset, int length, int flags, byte[] dst) {
+        final long start = cpuTime();
+        final Deflater deflater = acquireDeflater();
+        try {
+            deflater.reset();
+            deflater.setInput(src, offset, length);
+            deflater.finish();
+            // compressed payload not smaller than original is useless, so output is bounded by the length
+            int size = HEADER_SIZE;
+            while (!deflater.finished() && (size < HEADER_SIZE + length)) {
+                size += deflater.deflate(dst, size, HEADER_SIZE + length - size);
+            }
+            if(!deflater.finished()) {
+                return -1;
+            }
+            writeInt(dst, 0, COMPRESSED_FLAG | flags | (size - 4));
+            writeInt(dst, 4, length);
+            deflatedFrames.incrementAndGet();
+            deflateInputBytes.addAndGet(length);
+            deflateOutputBytes.addAndGet(size - HEADER_SIZE);
+            return size;
+        } finally {
+            releaseDeflater(deflater);
+            deflateCpuTime.addAndGet(cpuTime() - start);
+        }
+    }
+
+    private Deflater acquireDeflater() {
+        final Deflater deflater = deflaters.poll();
+        if(deflater == null) {
+            return new Deflater(level);
+        }
+        pooledDeflaters.decrementAndGet();
+        return deflater;
+    }
+
+    private void releaseDeflater(Deflater deflater) {
+        if(pooledDeflaters.incrementAndGet() > MAX_POOLED_DEFLATERS) {
+            pooledDeflaters.decrementAndGet();
+            deflater.end();
+            return;
+        }
+        deflaters.offer(deflater);
+    }
+
+    /**
+     * decompress payload of compressed frame, should be called from reading thread of the channel
+     * @param src payload of compressed frame excluding original length
+     * @param dst buffer for the decompressed payload
+     * @param length original length of the payload
+     * @throws IOException the payload is corrupted
+     */
+    void decompress(byte[] src, int offset, int srcLength, byte[] dst, int length) throws IOException {
+        final long start = cpuTime();
+        try {
+            inflater.reset();
+            inflater.setInput(src, offset, srcLength);
+            int inflated = 0;
+            while ((inflated < length) && !inflater.finished()) {
+                final int n = inflater.inflate(dst, inflated, length - inflated);
+                if((n == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if((inflated != length) || !inflater.finished()) {
+                throw new IOException("corrupted compressed frame");
+            }
+            inflatedFrames.incrementAndGet();
+            inflateInputBytes.addAndGet(srcLength);
+            inflateOutputBytes.addAndGet(length);
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflateCpuTime.addAndGet(cpuTime() - start);
+        }
+    }
+
+    /**
+     * @return ratio of compressed size to original size for both direction, 1.0 if nothing compressed
+     */
+    public double getRatio() {
+        final long original = deflateInputBytes.get() + inflateOutputBytes.get();
+        if(original == 0) {
+            return 1.0;
+        }
+        return (double) (deflateOutputBytes.get() + inflateInputBytes.get()) / original;
+    }
+
+    /**
+     * @return CPU time spent for compression in nanoseconds (or wall clock time if CPU time is not supported by JVM)
+     */
+    public long getDeflateCpuTime() {
+        return deflateCpuTime.get();
+    }
+
+    /**
+     * @return CPU time spent for decompression in nanoseconds (or wall clock time if CPU time is not supported by JVM)
+     */
+    public long getInflateCpuTime() {
+        return inflateCpuTime.get();
+    }
+
+    public long getDeflatedFrames() {
+        return deflatedFrames.get();
+    }
+
+    public long getInflatedFrames() {
+        return inflatedFrames.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "{ ratio : %.3f, deflated : %d frames (%d -> %d bytes, %d us), inflated : %d frames (%d -> %d bytes, %d us) }",
+                getRatio(),
+                deflatedFrames.get(), deflateInputBytes.get(), deflateOutputBytes.get(), deflateCpuTime.get() / 1000L,
+                inflatedFrames.get(), inflateInputBytes.get(), inflateOutputBytes.get(), inflateCpuTime.get() / 1000L);
+    }
+
+    private static void writeInt(byte[] b, int offset, int value) {
+        b[offset] = (byte) (value >>> 24);
+        b[offset + 1] = (byte) (value >>> 16);
+        b[offset + 2] = (byte) (value >>> 8);
+        b[offset + 3] = (byte) value;
+    }
+
+    private static boolean isCpuTimeSupported() {
+        try {
+            return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static long cpuTime() {
+        return IS_CPU_TIME_SUPPORTED ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+}
@@ -0,0 +1,179 @@
+package net.doodream.yarmi.net.frame;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *  {@link FrameDispatcher} decodes frames cut by the reading thread on worker threads in parallel,
+ *  while decoded messages are delivered to {@link Listener} one at a time in the order of frames.
+ *  (ordering matters for messages like session control message, which is handled by stateful session)
+ *
+ *  number of frames being decoded or waiting for delivery is bounded, so that reading thread is blocked
+ *  when the listener can't keep up with incoming messages. the thread which must not block (e.g. I/O thread of the event loop)
+ *  offers the frame instead, which is told to stop reading until the pending frames drain.
+ */
+public class FrameDispatcher<T> {
+
+    public static final int DEFAULT_MAX_PENDING_FRAMES = 64;
+
+    public interface Decoder<T> {
+        T decode(Frame frame) throws IOException;
+    }
+
+    public interface Listener<T> {
+        /**
+         * called for each message in the order of frames
+         * @param message decoded message
+         * @throws Exception error while handling the message, which is delivered to {@link #onError(Throwable)}
+         */
+        void onMessage(T message) throws Exception;
+
+        /**
+         * called when the frame can't be decoded or {@link #onMessage(Object)} throws
+         * @param throwable cause
+         */
+        void onError(Throwable throwable);
+    }
+
+    private static class Slot<T> {
+        // false for the frame offered over the max. pending frames
+        private boolean hasPermit;
+        private volatile boolean isDone;
+        private T message;
+        private Throwable error;
+    }
+
+    private final ConcurrentLinkedQueue<Slot<T>> pendingSlots = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isDelivering = new AtomicBoolean(false);
+    private final Semaphore pendingPermits;
+    // resumes the reading stopped by offer, run once a pending frame is delivered
+    private final AtomicReference<Runnable> resumer = new AtomicReference<>();
+    private final Executor executor;
+    private final Decoder<T> decoder;
+    private final Listener<T> listener;
+
+    public FrameDispatcher(Executor executor, Decoder<T> decoder, Listener<T> listener) {
+        this(executor, decoder, listener, DEFAULT_MAX_PENDING_FRAMES);
+    }
+
+    public FrameDispatcher(Executor executor, Decoder<T> decoder, Listener<T> listener, int maxPendingFrames) {
+        this.executor = executor;
+        this.decoder = decoder;
+        this.listener = listener;
+        pendingPermits = new Semaphore(maxPendingFrames);
+    }
+
+    /**
+     * submit frame to be decoded, called from reading thread
+     * @param frame frame read from {@link FrameChannel}
+     * @throws IOException interrupted while waiting for pending frames or executor is no longer available
+     */
+    public void dispatch(final Frame frame) throws IOException {
+        try {
+            pendingPermits.acquire();
+        } catch (InterruptedException e) {
+            frame.release();
+            throw new IOException("interrupted while dispatching frame", e);
+        }
+        submit(frame, true);
+    }
+
+    /**
+     * submit frame to be decoded without blocking, called from the thread which can't wait for pending frames.
+     * the frame is accepted even when the max. pending frames are exceeded, so the caller should stop reading on false,
+     * until resume is run (once, in the delivering thread)
+     * @param frame frame read from {@link FrameChannel}
+     * @param resume resumes the reading of the caller
+     * @return false if the pending frames are full, then resume will be run
+     * @throws IOException executor is no longer available
+     */
+    public boolean offer(final Frame frame, Runnable resume) throws IOException {
+        if(pendingPermits.tryAcquire()) {
+            submit(frame, true);
+            return true;
+        }
+        submit(frame, false);
+        resumer.set(resume);
+        // permit released before the resumer is set isn't missed
+        return (pendingPermits.availablePermits() > 0) && resumer.compareAndSet(resume, null);
+    }
+
+    private void submit(final Frame frame, boolean hasPermit) throws IOException {
+        final Slot<T> slot = new Slot<>();
+        slot.hasPermit = hasPermit;
+        pendingSlots.offer(slot);
+        try {
+            executor.execute(() -> {
+                try {
+                    slot.message = decoder.decode(frame);
+                } catch (Throwable throwable) {
+                    slot.error = throwable;
+                } finally {
+                    frame.release();
+                }
+                slot.isDone = true;
+                deliver();
+            });
+        } catch (RejectedExecutionException e) {
+            frame.release();
+            slot.error = e;
+            slot.isDone = true;
+            deliver();
+            throw new IOException("dispatcher stopped", e);
+        }
+    }
+
+    /**
+     * deliver decoded messages at the head of queue, only one thread delivers at a time
+     * and the others leave their slot to be delivered by the delivering thread
+     */
+    private void deliver() {
+        do {
+            if (!isDelivering.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                Slot<T> slot;
+                while (((slot = pendingSlots.peek()) != null) && slot.isDone) {
+                    pendingSlots.poll();
+                    if(slot.hasPermit) {
+                        pendingPermits.release();
+                        resume();
+                    }
+                    if (slot.error != null) {
+                        listener.onError(slot.error);
+                        continue;
+                    }
+                    try {
+                        listener.onMessage(slot.message);
+                    } catch (Exception e) {
+                        listener.onError(e);
+                    }
+                }
+            } finally {
+                isDelivering.set(false);
+            }
+            // re-check as slot could be completed after the loop above, while delivering flag is still set
+        } while (isHeadDone());
+    }
+
+    private void resume() {
+        if(resumer.get() == null) {
+            return;
+        }
+        final Runnable resume = resumer.getAndSet(null);
+        if(resume != null) {
+            resume.run();
+        }
+    }
+
+    private boolean isHeadDone() {
+        final Slot<T> slot = pendingSlots.peek();
+        return (slot != null) && slot.isDone;
+    }
+}
@@ -0,0 +1,222 @@
+package net.doodream.yarmi.net.frame;
+
+import net.doodream.yarmi.data.ServiceParams;
+import net.doodream.yarmi.serde.StringDictionary;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *  per-connection queue of the frames to be written by {@link FrameChannel}.
+ *  writing threads encode their messages into frames and put them into the queue, and one of them holding the write lock drains it,
+ *  so that the frames queued at the same moment are gathered into single buffered write (and flush) of the socket.
+ *
+ *  when the previous batch has gathered more than one frame (i.e. the connection is contended), the drainer waits
+ *  for more frames up to the flush delay before writing, which is bounded by {@link #PARAM_FLUSH_DELAY}.
+ *  it also keeps statistics of the batches, i.e. number of frames and bytes per write
+ */
+public class FrameSendQueue {
+
+    public static final String PARAM_FLUSH_DELAY = "frame.flush.delay";
+    // in microseconds
+    public static final long DEFAULT_FLUSH_DELAY = 20L;
+    public static final long NO_FLUSH_DELAY = 0L;
+
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final long flushDelay;
+    // written only by the drainer holding the write lock
+    private volatile boolean isContended;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong delayedBatches = new AtomicLong();
+    private volatile int maxBatchFrames;
+
+    /**
+     * @param flushDelay max. delay of the write to gather more frames in microseconds, or {@link #NO_FLUSH_DELAY}
+     */
+    public FrameSendQueue(long flushDelay) {
+        this.flushDelay = TimeUnit.MICROSECONDS.toNanos(Math.max(flushDelay, NO_FLUSH_DELAY));
+    }
+
+    /**
+     * get flush delay from service parameters
+     * @param params service parameters
+     * @return max. delay of the write in microseconds, {@link #DEFAULT_FLUSH_DELAY} if not configured
+     */
+    public static long getFlushDelay(Map<String, String> params) {
+        return ServiceParams.getLong(params, PARAM_FLUSH_DELAY, DEFAULT_FLUSH_DELAY);
+    }
+
+    void offer(Entry entry) {
+        queue.offer(entry);
+    }
+
+    Entry peek() {
+        return queue.peek();
+    }
+
+    Entry poll() {
+        return queue.poll();
+    }
+
+    boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * wake the thread of the first queued entry to take over draining, so that a writing thread drains
+     * at most one batch of the others after its own frame is written
+     */
+    void handOver() {
+        for (Entry entry : queue) {
+            if(entry.state == Entry.ST_QUEUED) {
+                LockSupport.unpark(entry.waiter);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return deadline of the flush as {@link System#nanoTime()} if the drainer should wait for more frames, otherwise 0
+     */
+    long flushDeadline() {
+        if(!isContended || (flushDelay == 0)) {
+            return 0L;
+        }
+        return System.nanoTime() + flushDelay;
+    }
+
+    void onBatch(int frameCount, int byteCount, boolean isDelayed) {
+        isContended = frameCount > 1;
+        batches.incrementAndGet();
+        frames.addAndGet(frameCount);
+        bytes.addAndGet(byteCount);
+        if(isDelayed) {
+            delayedBatches.incrementAndGet();
+        }
+        if(frameCount > maxBatchFrames) {
+            maxBatchFrames = frameCount;
+        }
+    }
+
+    /**
+     * @return number of socket writes
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * @return number of frames written
+     */
+    public long getFrames() {
+        return frames.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return number of batches written after waiting for more frames
+     */
+    public long getDelayedBatches() {
+        return delayedBatches.get();
+    }
+
+    /**
+     * @return average number of frames per socket write, 0 if nothing written
+     */
+    public double getAverageBatchSize() {
+        final long batches = this.batches.get();
+        return (batches == 0) ? 0.0 : (double) frames.get() / batches;
+    }
+
+    /**
+     * @return max. number of frames written at once
+     */
+    public int getMaxBatchSize() {
+        return maxBatchFrames;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "{ batches : %d (%d delayed), frames : %d (%.2f per batch, max %d), bytes : %d }",
+                batches.get(), delayedBatches.get(), frames.get(), getAverageBatchSize(), maxBatchFrames, bytes.get());
+    }
+
+    /**
+     *  encoded frame waiting in the queue, the writing thread is parked until the entry is done.
+     *  the frame is owned by the writing thread, which can reuse the buffer after the entry is done (or cancelled)
+     */
+    static final class Entry {
+
+        private static final int ST_QUEUED = 0;
+        private static final int ST_TAKEN = 1;
+        private static final int ST_DONE = 2;
+        private static final int ST_CANCELLED = 3;
+        private static final AtomicIntegerFieldUpdater<Entry> STATE = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "state");
+
+        final byte[] frame;
+        final int length;
+        // strings defined by the frame, which are known to the peer once the frame is put into the batch
+        final StringDictionary.Encoding dictionaryEncoding;
+        // as System#nanoTime() or 0 if not bounded
+        final long deadline;
+        private final Thread waiter;
+        private volatile int state = ST_QUEUED;
+        // published by the volatile write of the state
+        private Exception error;
+
+        Entry(byte[] frame, int length, StringDictionary.Encoding dictionaryEncoding, long deadline) {
+            this.frame = frame;
+            this.length = length;
+            this.dictionaryEncoding = dictionaryEncoding;
+            this.deadline = deadline;
+            this.waiter = Thread.currentThread();
+        }
+
+        /**
+         * taken by the drainer, the entry can't be cancelled afterward
+         */
+        boolean take() {
+            return STATE.compareAndSet(this, ST_QUEUED, ST_TAKEN);
+        }
+
+        /**
+         * cancel the entry not taken yet
+         */
+        boolean cancel() {
+            return STATE.compareAndSet(this, ST_QUEUED, ST_CANCELLED);
+        }
+
+        void complete(Exception error) {
+            this.error = error;
+            state = ST_DONE;
+            LockSupport.unpark(waiter);
+        }
+
+        boolean isDone() {
+            return state == ST_DONE;
+        }
+
+        void rethrow() throws IOException, TimeoutException {
+            if(error instanceof TimeoutException) {
+                throw (TimeoutException) error;
+            }
+            if(error != null) {
+                throw (IOException) error;
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package net.doodream.yarmi.net.frame;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ *  thrown when size of a frame exceeds the maximum frame size of the {@link FrameChannel}
+ */
+public class FrameTooLargeException extends IOException {
+
+    public FrameTooLargeException(int size, int maxSize) {
+        super(String.format(Locale.ENGLISH, "frame size %d exceeds max. frame size %d", size, maxSize));
+    }
+}
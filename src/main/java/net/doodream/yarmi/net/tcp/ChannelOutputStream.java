@@ -0,0 +1,117 @@
+package net.doodream.yarmi.net.tcp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *  blocking output stream over {@link SocketChannel}, which keeps working after the channel is switched into non-blocking mode
+ *  for the reads multiplexed by {@link net.doodream.yarmi.net.ProxyEventLoop}. the writing thread waits on its own selector
+ *  only when the send buffer of the socket is full.
+ *
+ *  interrupt pending before the write doesn't close the channel (as {@link java.nio.channels.InterruptibleChannel} does),
+ *  but the interrupt while waiting for the send buffer (e.g. by {@link net.doodream.yarmi.net.TimeoutWatchdog}) aborts the write
+ *  and closes the channel, so the peer never sees the frame partially written.
+ *  close doesn't wait for the write in progress, which is aborted by the channel closed
+ */
+class ChannelOutputStream extends OutputStream {
+
+    // channel closed while waiting is noticed within this interval at the latest
+    private static final long WRITABLE_POLL_INTERVAL = 100L;
+
+    private final SocketChannel channel;
+    // serializes the writes, not taken by close
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile boolean isClosed;
+    // opened on the first write blocked by full send buffer, closed by the writing thread
+    private volatile Selector selector;
+
+    ChannelOutputStream(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        final boolean isInterrupted = Thread.interrupted();
+        writeLock.lock();
+        try {
+            if(isClosed) {
+                throw new ClosedChannelException();
+            }
+            while (buffer.hasRemaining()) {
+                if(channel.write(buffer) == 0) {
+                    awaitWritable();
+                }
+            }
+        } finally {
+            writeLock.unlock();
+            if(isClosed) {
+                closeSelector();
+            }
+            if(isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void awaitWritable() throws IOException {
+        if(selector == null) {
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_WRITE);
+        }
+        while (selector.select(WRITABLE_POLL_INTERVAL) == 0) {
+            if(isClosed || !channel.isOpen()) {
+                throw new ClosedChannelException();
+            }
+            if(Thread.interrupted()) {
+                // write can't be continued from the middle of the frame
+                channel.close();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("write interrupted");
+            }
+        }
+        selector.selectedKeys().clear();
+    }
+
+    private void closeSelector() {
+        if(!writeLock.tryLock()) {
+            // closed by the thread writing now
+            return;
+        }
+        try {
+            if(selector != null) {
+                selector.close();
+                selector = null;
+            }
+        } catch (IOException ignore) {
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        try {
+            channel.close();
+        } finally {
+            final Selector selector = this.selector;
+            if(selector != null) {
+                selector.wakeup();
+            }
+            closeSelector();
+        }
+    }
+}
@@ -9,11 +9,15 @@ import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.SocketChannel;
 
 public class TcpRMISocket implements RMISocket {
 
     private Socket socket;
     private SocketAddress remoteAddress;
+    // stream over the channel of the socket opened by client, null for the socket accepted by server
+    private ChannelOutputStream channelOutputStream;
     public TcpRMISocket(Socket client) {
         socket = client;
         remoteAddress = socket.getRemoteSocketAddress();
@@ -38,31 +42,59 @@ public class TcpRMISocket implements RMISocket {
         if(socket == null || socket.isClosed()) {
             throw new IllegalStateException("Connection is not opened");
         }
+        if(channelOutputStream != null) {
+            return channelOutputStream;
+        }
         return socket.getOutputStream();
     }
 
     @Override
     public void close() throws IOException {
-        if(socket.isClosed()) {
+        if(socket == null || socket.isClosed()) {
             return;
         }
+        if(channelOutputStream != null) {
+            channelOutputStream.close();
+        }
         socket.close();
     }
 
     @Override
     public void open() throws IOException {
         InetSocketAddress inetSocketAddress = (InetSocketAddress) remoteAddress;
-        socket = new Socket(inetSocketAddress.getHostName(), inetSocketAddress.getPort());
+        // connected over the channel, so that the proxy can read it with shared event loop after handshake
+        final InetSocketAddress address = new InetSocketAddress(inetSocketAddress.getHostName(), inetSocketAddress.getPort());
+        if(address.isUnresolved()) {
+            throw new UnknownHostException(address.getHostName());
+        }
+        final SocketChannel channel = SocketChannel.open(address);
+        channelOutputStream = new ChannelOutputStream(channel);
+        socket = channel.socket();
     }
 
     @Override
     public boolean isConnected() {
-        return socket.isConnected();
+        return (socket != null) && socket.isConnected();
     }
 
     @Override
     public boolean isClosed() {
-        return socket.isClosed();
+        // socket never opened (e.g. failed to connect) is regarded as closed
+        return (socket == null) || socket.isClosed();
+    }
+
+    @Override
+    public boolean setReadTimeout(int timeoutInMills) throws IOException {
+        if(socket == null || socket.isClosed()) {
+            throw new IllegalStateException("Connection is not opened");
+        }
+        socket.setSoTimeout(timeoutInMills);
+        return true;
+    }
+
+    @Override
+    public SocketChannel getChannel() {
+        return (socket == null) ? null : socket.getChannel();
     }
 
     @Override
@@ -1,6 +1,7 @@
 package net.doodream.yarmi.net.tcp;
 
 import net.doodream.yarmi.data.RMIServiceInfo;
+import net.doodream.yarmi.net.PooledServiceProxy;
 import net.doodream.yarmi.net.ServiceProxy;
 import net.doodream.yarmi.net.ServiceProxyFactory;
 
@@ -29,6 +30,13 @@ public class TcpServiceProxyFactory implements ServiceProxyFactory {
         if(host == null) {
             host = serviceInfo.getProxyFactoryHint();
         }
+        if(PooledServiceProxy.getMaxSize(serviceInfo.getParams()) > 1) {
+            // each connection of the pool has its own socket
+            final RMIServiceInfo info = serviceInfo;
+            final String address = host;
+            final int port = this.port;
+            return PooledServiceProxy.create(() -> ServiceProxy.getDefault(info, new TcpRMISocket(address, port)), info.getParams());
+        }
         return ServiceProxy.getDefault(serviceInfo, new TcpRMISocket(host, port));
     }
 
@@ -0,0 +1,175 @@
+package net.doodream.yarmi.serde;
+
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  pool of {@link ByteBuffer}s which messages are converted into by {@link Converter#convert(Object, ByteBufferPool)},
+ *  so that transport can hand the encoded message to NIO channel without copying it into another buffer.
+ *  buffers are kept in power-of-two size classes like {@link net.doodream.yarmi.net.frame.FrameBufferPool},
+ *  buffers larger than the largest class are allocated on demand and dropped on release.
+ *
+ *  direct pool allocates buffers outside of java heap, which avoids the copy made by JDK when heap buffer is written to channel
+ */
+public class ByteBufferPool {
+
+    private static final int MIN_SHIFT = 8;
+    private static final int MAX_SHIFT = 20;
+    private static final int DEFAULT_BUFFERS_PER_CLASS = 64;
+    private static final ByteBufferPool DEFAULT = new ByteBufferPool(DEFAULT_BUFFERS_PER_CLASS, false);
+    private static final ByteBufferPool DIRECT = new ByteBufferPool(DEFAULT_BUFFERS_PER_CLASS, true);
+
+    private final ConcurrentLinkedQueue<ByteBuffer>[] classes;
+    private final AtomicInteger[] counts;
+    private final int buffersPerClass;
+    private final boolean isDirect;
+
+    /**
+     * @return pool of heap buffers shared in the process
+     */
+    public static ByteBufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return pool of direct buffers shared in the process
+     */
+    public static ByteBufferPool getDirect() {
+        return DIRECT;
+    }
+
+    /**
+     * @param buffersPerClass max. number of buffers retained for each size class
+     * @param isDirect true if buffers are allocated by {@link ByteBuffer#allocateDirect(int)}
+     */
+    @SuppressWarnings("unchecked")
+    public ByteBufferPool(int buffersPerClass, boolean isDirect) {
+        final int size = MAX_SHIFT - MIN_SHIFT + 1;
+        this.buffersPerClass = buffersPerClass;
+        this.isDirect = isDirect;
+        classes = new ConcurrentLinkedQueue[size];
+        counts = new AtomicInteger[size];
+        for (int i = 0; i < size; i++) {
+            classes[i] = new ConcurrentLinkedQueue<>();
+            counts[i] = new AtomicInteger(0);
+        }
+    }
+
+    public boolean isDirect() {
+        return isDirect;
+    }
+
+    /**
+     * borrow buffer from the pool
+     * @param size minimum size of the buffer
+     * @return cleared buffer whose capacity is equal or larger than the size
+     */
+    public ByteBuffer acquire(int size) {
+        final int index = indexOf(size);
+        if(index < 0) {
+            return allocate(size);
+        }
+        final ByteBuffer buffer = classes[index].poll();
+        if(buffer == null) {
+            return allocate(1 << (index + MIN_SHIFT));
+        }
+        counts[index].decrementAndGet();
+        ((Buffer) buffer).clear();
+        return buffer;
+    }
+
+    /**
+     * return buffer to the pool, the buffer (and its slices) should not be used after release
+     * @param buffer buffer acquired from {@link #acquire(int)}
+     */
+    public void release(ByteBuffer buffer) {
+        final int capacity = buffer.capacity();
+        final int index = indexOf(capacity);
+        if((index < 0) || (capacity != (1 << (index + MIN_SHIFT))) || (buffer.isDirect() != isDirect)) {
+            return;
+        }
+        if(counts[index].incrementAndGet() > buffersPerClass) {
+            counts[index].decrementAndGet();
+            return;
+        }
+        classes[index].offer(buffer);
+    }
+
+    private ByteBuffer allocate(int size) {
+        return isDirect ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    private static int indexOf(int size) {
+        if(size > (1 << MAX_SHIFT)) {
+            return -1;
+        }
+        final int shift = Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(shift, MIN_SHIFT) - MIN_SHIFT;
+    }
+
+    /**
+     *  output stream writing into the buffer from the pool, which is replaced with larger one from the pool when it's full.
+     *  used to convert message of unknown size into pooled buffer
+     */
+    public static class BufferOutputStream extends OutputStream {
+
+        private final ByteBufferPool pool;
+        private ByteBuffer buffer;
+
+        public BufferOutputStream(ByteBufferPool pool, int initialSize) {
+            this.pool = pool;
+            this.buffer = pool.acquire(initialSize);
+        }
+
+        @Override
+        public void write(int b) {
+            ensureRemaining(1);
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureRemaining(len);
+            buffer.put(b, off, len);
+        }
+
+        /**
+         * @return flipped buffer containing written bytes, which should be released to the pool after consumed.
+         * the stream can't be used after this call
+         */
+        public ByteBuffer toBuffer() {
+            final ByteBuffer written = buffer;
+            buffer = null;
+            ((Buffer) written).flip();
+            return written;
+        }
+
+        /**
+         * release the buffer without consuming it (e.g. when the conversion fails), no-op after {@link #toBuffer()}
+         */
+        public void release() {
+            if(buffer != null) {
+                pool.release(buffer);
+                buffer = null;
+            }
+        }
+
+        private void ensureRemaining(int required) {
+            if(buffer.remaining() >= required) {
+                return;
+            }
+            int capacity = buffer.capacity() << 1;
+            while (capacity - buffer.position() < required) {
+                capacity <<= 1;
+            }
+            final ByteBuffer grown = pool.acquire(capacity);
+            ((Buffer) buffer).flip();
+            grown.put(buffer);
+            pool.release(buffer);
+            buffer = grown;
+        }
+    }
+}
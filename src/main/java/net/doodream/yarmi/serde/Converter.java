@@ -1,8 +1,13 @@
 package net.doodream.yarmi.serde;
 
+import net.doodream.yarmi.data.Response;
+
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  *  Converter class defines how object is converted into byte stream (and vice-versa) comprising of
@@ -14,11 +19,111 @@ public interface Converter {
 
     Reader reader(InputStream inputStream);
 
+    /**
+     * build {@link Reader} which binds body of {@link net.doodream.yarmi.data.Response} and value of
+     * {@link net.doodream.yarmi.data.Param} into the types declared by {@link net.doodream.yarmi.data.Endpoint}
+     * @param inputStream stream to read from
+     * @param lookup lookup for endpoint of the message, reader falls back to generic decoding if it returns null
+     * @return {@link Reader}
+     */
+    default Reader reader(InputStream inputStream, EndpointLookup lookup) {
+        return reader(inputStream);
+    }
+
     Writer writer(OutputStream outputStream);
 
     byte[] convert(Object src);
 
     <T> T invert(byte[] b, Class<T> cls);
 
+    /**
+     * convert object into given stream, used to encode message into (reusable) frame buffer
+     * @param src object to convert
+     * @param outputStream stream to write the encoded bytes into, which is not closed after conversion
+     * @throws IOException fail to encode the object
+     */
+    default void convert(Object src, OutputStream outputStream) throws IOException {
+        outputStream.write(convert(src));
+    }
+
+    /**
+     * invert object from a region of byte array, used to decode message from pooled frame buffer
+     * @param b byte array containing the encoded object
+     * @param offset start offset of the encoded object
+     * @param length length of the encoded object
+     * @param cls class of the object
+     * @param lookup lookup for endpoint of the message, refer {@link #reader(InputStream, EndpointLookup)}
+     * @return decoded object
+     * @throws IOException fail to decode the object
+     */
+    default <T> T invert(byte[] b, int offset, int length, Class<T> cls, EndpointLookup lookup) throws IOException {
+        return invert(Arrays.copyOfRange(b, offset, offset + length), cls);
+    }
+
+    /**
+     * convert object into given stream with per-connection {@link StringDictionary}, converter not supporting dictionary
+     * ignores it by default
+     * @param src object to convert
+     * @param outputStream stream to write the encoded bytes into
+     * @param dictionary encoding with the dictionary of the connection, strings defined by the encoding are written by the caller
+     * @throws IOException fail to encode the object
+     */
+    default void convert(Object src, OutputStream outputStream, StringDictionary.Encoding dictionary) throws IOException {
+        convert(src, outputStream);
+    }
+
+    /**
+     * invert object from a region of byte array with per-connection {@link StringDictionary}
+     * @param dictionary dictionary of the connection, whose definitions from the peer are read before
+     * @see #invert(byte[], int, int, Class, EndpointLookup)
+     */
+    default <T> T invert(byte[] b, int offset, int length, Class<T> cls, EndpointLookup lookup, StringDictionary dictionary) throws IOException {
+        return invert(b, offset, length, cls, lookup);
+    }
+
+    /**
+     * invert response keeping its body encoded, which is decoded on the first {@link Response#getBody()}
+     * (refer {@link net.doodream.yarmi.data.LazyBody}). converter not supporting lazy decoding decodes the body eagerly by default
+     * @see #invert(byte[], int, int, Class, EndpointLookup, StringDictionary)
+     */
+    default Response invertLazily(byte[] b, int offset, int length, EndpointLookup lookup, StringDictionary dictionary) throws IOException {
+        return invert(b, offset, length, Response.class, lookup, dictionary);
+    }
+
+    /**
+     * convert object into a buffer borrowed from the pool, so that the message can be written to NIO channel as it is
+     * @param src object to convert
+     * @param pool pool to borrow the buffer from
+     * @return flipped buffer containing the encoded object, which should be released to the pool after written
+     * @throws IOException fail to encode the object
+     */
+    default ByteBuffer convert(Object src, ByteBufferPool pool) throws IOException {
+        final ByteBufferPool.BufferOutputStream outputStream = new ByteBufferPool.BufferOutputStream(pool, 256);
+        try {
+            convert(src, outputStream);
+            return outputStream.toBuffer();
+        } finally {
+            outputStream.release();
+        }
+    }
+
+    /**
+     * invert object from remaining bytes of the buffer, which can be a slice of larger (possibly direct) buffer.
+     * heap buffer is decoded in place by {@link #invert(byte[], int, int, Class, EndpointLookup)}
+     * @param src buffer containing the encoded object between its position and limit, which are not changed by the call
+     * @param cls class of the object
+     * @param lookup lookup for endpoint of the message, refer {@link #reader(InputStream, EndpointLookup)}
+     * @return decoded object
+     * @throws IOException fail to decode the object
+     */
+    default <T> T invert(ByteBuffer src, Class<T> cls, EndpointLookup lookup) throws IOException {
+        if(src.hasArray()) {
+            return invert(src.array(), src.arrayOffset() + src.position(), src.remaining(), cls, lookup);
+        }
+        final byte[] b = new byte[src.remaining()];
+        src.duplicate().get(b);
+        return invert(b, 0, b.length, cls, lookup);
+    }
+
     Object resolve(Object unresolved, Type type) throws ClassNotFoundException, IllegalAccessException, InstantiationException;
 }
@@ -0,0 +1,27 @@
+package net.doodream.yarmi.serde;
+
+import net.doodream.yarmi.data.Endpoint;
+
+/**
+ *  lookup from unique key of {@link Endpoint} to the endpoint itself
+ *  {@link Reader} uses it to get target types of response body or request parameters
+ *  ({@link Endpoint#getUnwrappedRetType()} / {@link Endpoint#getParamTypes()}) while parsing,
+ *  so that those can be bound into target type directly without intermediate map tree
+ */
+public interface EndpointLookup {
+
+    /**
+     * @param unique unique key of the endpoint
+     * @return endpoint for the key, or null if the endpoint is not known
+     */
+    Endpoint lookup(String unique);
+
+    /**
+     * {@link Reader} skips parameters of the request expired while waiting to be decoded
+     * @param timeout time budget of the request in milliseconds
+     * @return true if the budget is spent since the message is received
+     */
+    default boolean isExpired(long timeout) {
+        return false;
+    }
+}
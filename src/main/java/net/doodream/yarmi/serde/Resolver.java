@@ -0,0 +1,13 @@
+package net.doodream.yarmi.serde;
+
+/**
+ *  resolution plan compiled for single target {@link java.lang.reflect.Type} by {@link ResolverCompiler}
+ *  it converts generic decoding result (e.g. {@link java.util.Map} / {@link java.util.List} tree) into target type
+ *  plan is immutable once compiled and can be shared among threads
+ */
+public interface Resolver {
+
+    Resolver IDENTITY = unresolved -> unresolved;
+
+    Object resolve(Object unresolved) throws IllegalAccessException, InstantiationException;
+}
@@ -0,0 +1,389 @@
+package net.doodream.yarmi.serde;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *  compiles {@link Type} into {@link Resolver} and caches compiled plan, so that reflective lookups
+ *  (class loading, field / constructor / valueOf lookup) are done only once per type.
+ *  compiled plans are kept in LRU cache with bounded size, which is owned by single {@link Converter}
+ */
+public class ResolverCompiler {
+
+    private static final Logger Log = LoggerFactory.getLogger(ResolverCompiler.class);
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private final Map<Type, Resolver> plans;
+
+    public ResolverCompiler() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public ResolverCompiler(int maxCacheSize) {
+        plans = Collections.synchronizedMap(ResolverCompiler.getLruCache(maxCacheSize));
+    }
+
+    private static <K,V> Map<K, V> getLruCache(final int size) {
+        return new LinkedHashMap<K, V> (size * 4/3, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * get resolution plan for given type, plan is compiled on first request and cached afterward
+     * @param type target type
+     * @return compiled {@link Resolver} for the type
+     */
+    public Resolver compile(Type type) {
+        if(type == null) {
+            return Resolver.IDENTITY;
+        }
+        Resolver resolver = plans.get(type);
+        if(resolver != null) {
+            return resolver;
+        }
+        resolver = build(type);
+        plans.put(type, resolver);
+        return resolver;
+    }
+
+    public Object resolve(Object unresolved, Type type) throws IllegalAccessException, InstantiationException {
+        if(unresolved == null) {
+            return null;
+        }
+        return compile(type).resolve(unresolved);
+    }
+
+    private Resolver build(Type type) {
+        final Class<?> cls;
+        Type[] typeArguments = null;
+        if(type instanceof Class) {
+            cls = (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            final ParameterizedType parameterizedType = (ParameterizedType) type;
+            if(!(parameterizedType.getRawType() instanceof Class)) {
+                return Resolver.IDENTITY;
+            }
+            cls = (Class<?>) parameterizedType.getRawType();
+            typeArguments = parameterizedType.getActualTypeArguments();
+        } else {
+            // type variable, wildcard or generic array can't be resolved into concrete class
+            return Resolver.IDENTITY;
+        }
+
+        if(cls.isPrimitive()) {
+            return new PrimitivePlan(cls);
+        }
+        if(cls.isArray()) {
+            return Resolver.IDENTITY;
+        }
+        if(cls.equals(Class.class)) {
+            return new ClassPlan();
+        }
+        if(Map.class.isAssignableFrom(cls)) {
+            if(typeArguments == null || typeArguments.length < 2) {
+                return Resolver.IDENTITY;
+            }
+            return new MapPlan(cls, compile(typeArguments[1]));
+        }
+        if(Collection.class.isAssignableFrom(cls)) {
+            if(typeArguments == null || typeArguments.length < 1) {
+                return Resolver.IDENTITY;
+            }
+            return new CollectionPlan(cls, compile(typeArguments[0]));
+        }
+        if(cls.isInterface() || Modifier.isAbstract(cls.getModifiers())) {
+            Log.warn("fail to handle {}", type);
+            return Resolver.IDENTITY;
+        }
+        return new ObjectPlan(cls, this);
+    }
+
+    /**
+     * converts boxed number into boxed type of the primitive (e.g. {@link Integer} into {@link Long} for long)
+     */
+    private static class PrimitivePlan implements Resolver {
+        private final Class<?> cls;
+
+        PrimitivePlan(Class<?> cls) {
+            this.cls = cls;
+        }
+
+        @Override
+        public Object resolve(Object unresolved) {
+            if(!(unresolved instanceof Number)) {
+                return unresolved;
+            }
+            final Number number = (Number) unresolved;
+            if(cls == int.class) {
+                return (unresolved instanceof Integer) ? unresolved : number.intValue();
+            } else if (cls == long.class) {
+                return (unresolved instanceof Long) ? unresolved : number.longValue();
+            } else if (cls == double.class) {
+                return (unresolved instanceof Double) ? unresolved : number.doubleValue();
+            } else if (cls == float.class) {
+                return (unresolved instanceof Float) ? unresolved : number.floatValue();
+            } else if (cls == short.class) {
+                return (unresolved instanceof Short) ? unresolved : number.shortValue();
+            } else if (cls == byte.class) {
+                return (unresolved instanceof Byte) ? unresolved : number.byteValue();
+            }
+            return unresolved;
+        }
+    }
+
+    private static class ClassPlan implements Resolver {
+        @Override
+        public Object resolve(Object unresolved) {
+            if(!(unresolved instanceof String)) {
+                return unresolved;
+            }
+            try {
+                return Class.forName((String) unresolved);
+            } catch (ClassNotFoundException e) {
+                Log.warn("class not found : {}", unresolved);
+                return unresolved;
+            }
+        }
+    }
+
+    private static class MapPlan implements Resolver {
+        private final Class<?> cls;
+        private final Resolver valueResolver;
+
+        MapPlan(Class<?> cls, Resolver valueResolver) {
+            this.cls = cls;
+            this.valueResolver = valueResolver;
+        }
+
+        @Override
+        public Object resolve(Object unresolved) throws IllegalAccessException, InstantiationException {
+            if(!(unresolved instanceof Map)) {
+                return unresolved;
+            }
+            final Map<Object, Object> unresolvedMap = (Map<Object, Object>) unresolved;
+            if(cls.isInstance(unresolved)) {
+                // resolve in-place
+                for (Map.Entry<Object, Object> entry : unresolvedMap.entrySet()) {
+                    entry.setValue(valueResolver.resolve(entry.getValue()));
+                }
+                return unresolvedMap;
+            }
+            final Map<Object, Object> resolvedMap = newMap();
+            for (Map.Entry<Object, Object> entry : unresolvedMap.entrySet()) {
+                resolvedMap.put(entry.getKey(), valueResolver.resolve(entry.getValue()));
+            }
+            return resolvedMap;
+        }
+
+        private Map<Object, Object> newMap() throws IllegalAccessException, InstantiationException {
+            if(cls.isInterface()) {
+                if(SortedMap.class.isAssignableFrom(cls)) {
+                    return new TreeMap<>();
+                }
+                return new LinkedHashMap<>();
+            }
+            return (Map<Object, Object>) cls.newInstance();
+        }
+    }
+
+    private static class CollectionPlan implements Resolver {
+        private final Class<?> cls;
+        private final Resolver elementResolver;
+
+        CollectionPlan(Class<?> cls, Resolver elementResolver) {
+            this.cls = cls;
+            this.elementResolver = elementResolver;
+        }
+
+        @Override
+        public Object resolve(Object unresolved) throws IllegalAccessException, InstantiationException {
+            if(!(unresolved instanceof Collection)) {
+                return unresolved;
+            }
+            if((unresolved.getClass() == ArrayList.class) && cls.isInstance(unresolved)) {
+                // resolve in-place
+                final ArrayList<Object> list = (ArrayList<Object>) unresolved;
+                for (int i = 0; i < list.size(); i++) {
+                    list.set(i, elementResolver.resolve(list.get(i)));
+                }
+                return list;
+            }
+            final Collection<Object> resolved = newCollection();
+            for (Object o : (Collection<?>) unresolved) {
+                resolved.add(elementResolver.resolve(o));
+            }
+            return resolved;
+        }
+
+        private Collection<Object> newCollection() throws IllegalAccessException, InstantiationException {
+            if(cls.isInterface()) {
+                if(SortedSet.class.isAssignableFrom(cls)) {
+                    return new TreeSet<>();
+                } else if(Set.class.isAssignableFrom(cls)) {
+                    return new HashSet<>();
+                } else if(Queue.class.isAssignableFrom(cls)) {
+                    return new ArrayDeque<>();
+                }
+                return new ArrayList<>();
+            }
+            return (Collection<Object>) cls.newInstance();
+        }
+    }
+
+    /**
+     * plan for concrete class, which is resolved from key-value map by setting fields or converted from value
+     * with constructor or valueOf(String) of the class
+     */
+    private static class ObjectPlan implements Resolver {
+        private static final Constructor<?> NO_CONSTRUCTOR;
+        static {
+            try {
+                NO_CONSTRUCTOR = Object.class.getConstructor();
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        private final Class<?> cls;
+        private final ResolverCompiler compiler;
+        private final Method valueOf;
+        private final ConcurrentHashMap<Class<?>, Constructor<?>> constructors = new ConcurrentHashMap<>();
+        private volatile FieldSetter[] setters;
+        private volatile Constructor<?> defaultConstructor;
+
+        ObjectPlan(Class<?> cls, ResolverCompiler compiler) {
+            this.cls = cls;
+            this.compiler = compiler;
+            valueOf = findValueOf(cls);
+        }
+
+        private static Method findValueOf(Class<?> cls) {
+            try {
+                final Method method = cls.getMethod("valueOf", String.class);
+                if(Modifier.isStatic(method.getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException ignored) { }
+            return null;
+        }
+
+        @Override
+        public Object resolve(Object unresolved) throws IllegalAccessException, InstantiationException {
+            if(cls.isInstance(unresolved)) {
+                return unresolved;
+            }
+            if(unresolved instanceof Map) {
+                return resolveKvMap((Map<?, ?>) unresolved);
+            }
+            final Constructor<?> constructor = getConstructor(unresolved.getClass());
+            try {
+                if (constructor != NO_CONSTRUCTOR) {
+                    return constructor.newInstance(unresolved);
+                }
+                if (valueOf != null) {
+                    return valueOf.invoke(null, String.valueOf(unresolved));
+                }
+            } catch (InvocationTargetException ignored) { }
+            return unresolved;
+        }
+
+        private Constructor<?> getConstructor(Class<?> unresolvedCls) {
+            Constructor<?> constructor = constructors.get(unresolvedCls);
+            if(constructor != null) {
+                return constructor;
+            }
+            try {
+                constructor = cls.getConstructor(unresolvedCls);
+            } catch (NoSuchMethodException e) {
+                constructor = NO_CONSTRUCTOR;
+            }
+            constructors.put(unresolvedCls, constructor);
+            return constructor;
+        }
+
+        private Object resolveKvMap(Map<?, ?> map) throws IllegalAccessException, InstantiationException {
+            final Object object;
+            try {
+                object = getDefaultConstructor().newInstance();
+            } catch (InvocationTargetException e) {
+                throw new InstantiationException(e.getMessage());
+            }
+            for (FieldSetter setter : getSetters()) {
+                final Object value = map.get(setter.name);
+                if(value == null) {
+                    continue;
+                }
+                setter.set(object, value);
+            }
+            return object;
+        }
+
+        private Constructor<?> getDefaultConstructor() throws InstantiationException {
+            Constructor<?> constructor = defaultConstructor;
+            if(constructor != null) {
+                return constructor;
+            }
+            try {
+                constructor = cls.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new InstantiationException(String.format("no default constructor for %s", cls.getName()));
+            }
+            defaultConstructor = constructor;
+            return constructor;
+        }
+
+        /**
+         * setters are built lazily, so that self-referencing type (e.g. class containing list of itself)
+         * doesn't lead to infinite compilation
+         */
+        private FieldSetter[] getSetters() {
+            FieldSetter[] fieldSetters = setters;
+            if(fieldSetters != null) {
+                return fieldSetters;
+            }
+            final List<FieldSetter> setterList = new ArrayList<>();
+            for (Class<?> c = cls; (c != null) && (c != Object.class); c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if(Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    setterList.add(new FieldSetter(field, compiler));
+                }
+            }
+            fieldSetters = setterList.toArray(new FieldSetter[0]);
+            setters = fieldSetters;
+            return fieldSetters;
+        }
+    }
+
+    private static class FieldSetter {
+        private final String name;
+        private final Field field;
+        private final ResolverCompiler compiler;
+        private volatile Resolver resolver;
+
+        FieldSetter(Field field, ResolverCompiler compiler) {
+            this.field = field;
+            this.name = field.getName();
+            this.compiler = compiler;
+        }
+
+        void set(Object target, Object value) throws IllegalAccessException, InstantiationException {
+            Resolver fieldResolver = resolver;
+            if(fieldResolver == null) {
+                fieldResolver = compiler.compile(field.getGenericType());
+                resolver = fieldResolver;
+            }
+            field.set(target, fieldResolver.resolve(value));
+        }
+    }
+}
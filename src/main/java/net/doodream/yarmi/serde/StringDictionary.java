@@ -0,0 +1,208 @@
+package net.doodream.yarmi.serde;
+
+import net.doodream.yarmi.data.ServiceParams;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ *  dictionary of strings kept per connection and learned during the session, so that the strings repeated
+ *  in every message (e.g. endpoint, session key, field names) are written as small integer references.
+ *  only the strings of the protocol are supposed to be referred, the strings of user data (e.g. keys of map) are written inline
+ *  not to fill the dictionary with the strings seen only a few times.
+ *  {@link Converter} opts into the dictionary by implementing
+ *  {@link Converter#convert(Object, OutputStream, Encoding)} / {@link Converter#invert(byte[], int, int, Class, EndpointLookup, StringDictionary)}
+ *
+ *  each direction of the connection has its own id space. a string is defined with its id in the frame
+ *  which refers it first, and the definitions are read by the reading thread before the frame is decoded (refer
+ *  {@link net.doodream.yarmi.net.frame.FrameChannel}), so that decoding frames in parallel always sees the definitions
+ *  of the previous frames. the string is referred without definition only after its defining frame has been written,
+ *  and the messages encoded meanwhile define the string again with the same id.
+ *  the dictionary stops learning when it is full, entries are never evicted.
+ */
+public class StringDictionary {
+
+    public static final String PARAM_DICTIONARY_SIZE = "dictionary.size";
+    public static final int DEFAULT_SIZE = 1024;
+    public static final int NOT_FOUND = -1;
+    // short string is cheaper to be written inline, and long one is unlikely to be a key
+    private static final int MIN_LENGTH = 4;
+    private static final int MAX_LENGTH = 256;
+
+    private final int size;
+    // outgoing strings whose defining frame has been written
+    private final Map<String, Integer> committed = new ConcurrentHashMap<>();
+    // outgoing strings with their ids reserved, including the ones not committed yet (e.g. being encoded or cancelled)
+    private final ConcurrentHashMap<String, Integer> reserved = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    // incoming strings defined by the peer
+    private final AtomicReferenceArray<String> received;
+
+    /**
+     * @param size max. number of strings for each direction
+     */
+    public StringDictionary(int size) {
+        this.size = size;
+        this.received = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * get dictionary size from service parameters
+     * @param params service parameters
+     * @return max. number of strings, 0 if disabled
+     */
+    public static int getSize(Map<String, String> params) {
+        return Math.max(ServiceParams.getInt(params, PARAM_DICTIONARY_SIZE, DEFAULT_SIZE), 0);
+    }
+
+    /**
+     * begin encoding a message with the dictionary
+     * @return {@link Encoding} collecting the strings defined by the message
+     */
+    public Encoding begin() {
+        return new Encoding();
+    }
+
+    /**
+     * @param id id of the string defined by the peer
+     * @return string for the id
+     * @throws IOException the id is not defined
+     */
+    public String get(int id) throws IOException {
+        final String value = ((id >= 0) && (id < size)) ? received.get(id) : null;
+        if(value == null) {
+            throw new IOException("undefined string reference " + id);
+        }
+        return value;
+    }
+
+    /**
+     * read definitions written by {@link Encoding#writeDefinitions(OutputStream)}, should be called from reading thread in the order of frames
+     * @param b buffer containing the definitions
+     * @param offset start of the definitions
+     * @param length length of the definitions
+     * @throws IOException malformed definitions
+     */
+    public void readDefinitions(byte[] b, int offset, int length) throws IOException {
+        final int[] position = { offset };
+        final int limit = offset + length;
+        final int count = readVarInt(b, position, limit);
+        for (int i = 0; i < count; i++) {
+            final int id = readVarInt(b, position, limit);
+            final int len = readVarInt(b, position, limit);
+            if((id < 0) || (id >= size) || (len < 0) || (len > limit - position[0])) {
+                throw new IOException("invalid string definition " + id);
+            }
+            received.set(id, new String(b, position[0], len, StandardCharsets.UTF_8));
+            position[0] += len;
+        }
+    }
+
+    /**
+     *  strings referred (and defined) while encoding single message
+     */
+    public class Encoding {
+
+        private Map<String, Integer> defined;
+
+        private Encoding() { }
+
+        /**
+         * get reference id of the string, which is defined in this message if not known to the peer yet
+         * @param value string to be referred
+         * @return id of the string or {@link #NOT_FOUND} if the string should be written inline
+         */
+        public int reference(String value) {
+            final int length = value.length();
+            if((length < MIN_LENGTH) || (length > MAX_LENGTH)) {
+                return NOT_FOUND;
+            }
+            final Integer id = committed.get(value);
+            if(id != null) {
+                return id;
+            }
+            if(defined != null) {
+                final Integer definedId = defined.get(value);
+                if(definedId != null) {
+                    return definedId;
+                }
+            }
+            // concurrent encoding of the same string shares the reserved id, so the id is never burnt per message
+            final Integer reservedId = reserved.computeIfAbsent(value, key -> {
+                final int newId = nextId.getAndIncrement();
+                if(newId >= size) {
+                    nextId.set(size);
+                    return null;
+                }
+                return newId;
+            });
+            if(reservedId == null) {
+                return NOT_FOUND;
+            }
+            if(defined == null) {
+                defined = new LinkedHashMap<>();
+            }
+            defined.put(value, reservedId);
+            return reservedId;
+        }
+
+        public boolean hasDefinitions() {
+            return (defined != null) && !defined.isEmpty();
+        }
+
+        /**
+         * write the strings defined in this message
+         */
+        public void writeDefinitions(OutputStream outputStream) throws IOException {
+            writeVarInt(outputStream, defined.size());
+            for (Map.Entry<String, Integer> entry : defined.entrySet()) {
+                final byte[] encoded = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                writeVarInt(outputStream, entry.getValue());
+                writeVarInt(outputStream, encoded.length);
+                outputStream.write(encoded);
+            }
+        }
+
+        /**
+         * mark the strings defined in this message as known to the peer, should be called after the message is written
+         */
+        public void commit() {
+            if(defined == null) {
+                return;
+            }
+            for (Map.Entry<String, Integer> entry : defined.entrySet()) {
+                committed.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static void writeVarInt(OutputStream outputStream, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            outputStream.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        outputStream.write(value);
+    }
+
+    private static int readVarInt(byte[] b, int[] position, int limit) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if(position[0] >= limit) {
+                throw new EOFException();
+            }
+            final int v = b[position[0]++] & 0xff;
+            value |= (v & 0x7f) << shift;
+            if((v & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+}
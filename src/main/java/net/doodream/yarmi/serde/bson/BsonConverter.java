@@ -1,6 +1,5 @@
 package net.doodream.yarmi.serde.bson;
 
-import com.doodream.cutils.Types;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
@@ -8,11 +7,19 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 import de.undercouch.bson4jackson.BsonFactory;
 import de.undercouch.bson4jackson.BsonGenerator;
 import de.undercouch.bson4jackson.BsonParser;
+import net.doodream.yarmi.data.Request;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.TimeoutWatchdog;
 import net.doodream.yarmi.serde.Converter;
+import net.doodream.yarmi.serde.EndpointLookup;
 import net.doodream.yarmi.serde.Reader;
+import net.doodream.yarmi.serde.ResolverCompiler;
 import net.doodream.yarmi.serde.Writer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,16 +28,17 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.reflect.*;
-import java.util.*;
-import java.util.concurrent.*;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class BsonConverter implements Converter {
     private static final Logger Log = LoggerFactory.getLogger(BsonConverter.class);
 
     private ObjectMapper objectMapper;
     private BsonFactory bsonFactory;
-    private final ExecutorService executorService = Executors.newWorkStealingPool();
+    private final ResolverCompiler resolverCompiler = new ResolverCompiler();
 
     public BsonConverter() {
 
@@ -42,42 +50,44 @@ public class BsonConverter implements Converter {
                 .enable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT))
                 .setSerializationInclusion(JsonInclude.Include.NON_NULL)
                 .disable(MapperFeature.AUTO_DETECT_IS_GETTERS, MapperFeature.AUTO_DETECT_GETTERS)
-                .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+                .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+                .registerModule(new SimpleModule()
+                        .addDeserializer(Request.class, new RequestDeserializer())
+                        .addDeserializer(Response.class, new ResponseDeserializer()));
     }
 
 
     @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-        if(executorService.isShutdown() || executorService.isTerminated()) {
-            return;
-        }
-        executorService.shutdown();
+    public Reader reader(final InputStream inputStream) {
+        return reader(inputStream, null);
     }
 
     @Override
-    public Reader reader(final InputStream inputStream) {
+    public Reader reader(final InputStream inputStream, final EndpointLookup lookup) {
         try {
             return new Reader() {
 
                 private final BsonParser parser = bsonFactory.createParser(new BufferedInputStream(inputStream));
+                private final ObjectReader objectReader = objectMapper.reader().withAttribute(EndpointLookup.class, lookup);
 
                 @Override
                 public synchronized <T> T read(Class<T> cls) throws IOException {
-                    return parser.readValueAs(cls);
+                    return objectReader.forType(cls).readValue(parser);
                 }
 
+                // read is performed in the calling thread, the stream is closed if the read misses the deadline
                 @Override
                 public synchronized <T> T read(Class<T> cls, long timeout, TimeUnit timeUnit) throws IOException, TimeoutException {
-                    Future<T> result = executorService.submit(() -> {
-                        return parser.readValueAs(cls);
-                    });
+                    final TimeoutWatchdog.Watch watch = TimeoutWatchdog.getDefault().watch(System.nanoTime() + timeUnit.toNanos(timeout), inputStream);
                     try {
-                        return result.get(timeout, timeUnit);
-                    } catch (InterruptedException e) {
-                        throw new TimeoutException(e.getMessage());
-                    } catch (ExecutionException e) {
-                        throw new IOException(e);
+                        return objectReader.forType(cls).readValue(parser);
+                    } catch (IOException e) {
+                        if(!watch.cancel()) {
+                            throw new TimeoutException("read timeout : " + e.getMessage());
+                        }
+                        throw e;
+                    } finally {
+                        watch.cancel();
                     }
                 }
             };
@@ -100,20 +110,33 @@ public class BsonConverter implements Converter {
                 }
 
                 // => max due time is managed by client policy, instead of I/O configuration
+                // object is encoded before write, so nothing is written if the deadline is missed before write starts
+                // and the stream is closed if the deadline is missed in the middle of write
                 @Override
                 public synchronized void write(Object src, long timeout, TimeUnit unit) throws TimeoutException {
-                    final Future<Boolean> writeTask = executorService.submit(() -> {
+                    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+                    try {
+                        final byte[] encoded = objectMapper.writeValueAsBytes(src);
+                        bsonGenerator.flush();
+                        if(deadline - System.nanoTime() <= 0) {
+                            throw new TimeoutException("write timeout : not started");
+                        }
+                        final TimeoutWatchdog.Watch watch = TimeoutWatchdog.getDefault().watch(deadline, outputStream);
                         try {
-                            bsonGenerator.writeObject(src);
-                            return true;
+                            outputStream.write(encoded);
+                            outputStream.flush();
                         } catch (IOException e) {
-                            return false;
+                            if(!watch.cancel()) {
+                                throw new TimeoutException("write timeout : " + e.getMessage());
+                            }
+                            throw e;
+                        } finally {
+                            watch.cancel();
                         }
-                    });
-                    try {
-                        writeTask.get(timeout, unit);
-                    } catch (InterruptedException | ExecutionException e) {
-                        throw new TimeoutException(e.getMessage());
+                    } catch (IOException e) {
+                        final TimeoutException exception = new TimeoutException(e.getMessage());
+                        exception.initCause(e);
+                        throw exception;
                     }
                 }
             };
@@ -145,107 +168,31 @@ public class BsonConverter implements Converter {
 
 
     @Override
-    public Object resolve(final Object unresolved, Type type) throws InstantiationException, IllegalAccessException {
-        if(unresolved == null) {
-            return null;
-        }
-        if(type.equals(Class.class) && (unresolved instanceof String)) {
-            try {
-                return Class.forName((String) unresolved);
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
-            }
-        }
-        Class clsz;
-        try {
-            if (type instanceof ParameterizedType) {
-                clsz = Class.forName(Types.getTypeName(((ParameterizedType) type).getRawType()));
-            } else {
-                clsz = Class.forName(Types.getTypeName(type));
-            }
-        } catch (ClassNotFoundException e) {
-            return unresolved;
-        }
-        final Class cls = clsz;
-        final Class unresolvedCls = unresolved.getClass();
-
-        if(cls.isInterface()) {
-            Type[] typeArguments = ((ParameterizedType) type).getActualTypeArguments();
-            if (typeArguments == null || (typeArguments.length == 0)) {
-                return unresolved;
-            }
-
-            if (cls.equals(List.class)) {
-                ArrayList unresolvedList = (ArrayList) unresolved;
-                final ArrayList<Object> resolvedList = new ArrayList<>();
-                for (Object o : unresolvedList) {
-                    resolvedList.add(resolve(o, typeArguments[0]));
-                }
-                return resolvedList;
-            } else if (cls.equals(Map.class)) {
-                HashMap<?, Object> unresolvedMap = (HashMap) unresolved;
-                for (Map.Entry<?, Object> entry : unresolvedMap.entrySet()) {
-                    entry.setValue(resolve(entry.getValue(), typeArguments[1]));
-                }
-                return unresolvedMap;
-            } else if (cls.equals(Set.class)) {
-                HashSet<Object> unresolvedSet = new HashSet<>((List<Object>)unresolved);
-                final Set<Object> resolvedSet = new HashSet<>();
-                for (Object o : unresolvedSet) {
-                    resolvedSet.add(resolve(o, typeArguments[0]));
-                }
-                return resolvedSet;
-            } else {
-                Log.warn("fail to handle {} {}", unresolved, cls);
-                return unresolved;
-            }
-        } else {
-            if(unresolvedCls.equals(LinkedHashMap.class)) {
-                return resolveKvMap((Map<?, ?>) unresolved, cls);
-            }
-        }
-
-        if(cls.equals(unresolvedCls) ||
-                Types.isCastable(unresolved, type) ||
-                Types.isCastable(unresolved, cls)) {
-            return cls.cast(unresolved);
-        }
-
-
-
-        if(unresolvedCls.getSuperclass().equals(Number.class)) {
-            // TODO: 18. 12. 5 handle subclass type of Number
-        }
-
-        try {
-            Constructor<?> constructor = cls.getConstructor(unresolvedCls);
-            return constructor.newInstance(unresolved);
-        } catch (NoSuchMethodException | InvocationTargetException ignored) {
-
-        }
-        try {
-            Method valueOf = cls.getMethod("valueOf", String.class);
-            return valueOf.invoke(null, String.valueOf(unresolved));
-        } catch (NoSuchMethodException | InvocationTargetException ignored) {
-
-        }
-        return unresolved;
+    public void convert(Object src, OutputStream outputStream) throws IOException {
+        objectMapper.writeValue(outputStream, src);
+    }
 
+    @Override
+    public <T> T invert(byte[] b, int offset, int length, Class<T> cls, EndpointLookup lookup) throws IOException {
+        return objectMapper.readerFor(cls)
+                .withAttribute(EndpointLookup.class, lookup)
+                .readValue(b, offset, length);
     }
 
-    private Object resolveKvMap(final Map<?, ?> map, Class cls) throws IllegalAccessException, InstantiationException {
-        final Object object = cls.newInstance();
-        final Field[] fields = cls.getDeclaredFields();
-        for (Field field : fields) {
-            if(map.containsKey(field.getName())) {
-                final Type fieldType = field.getGenericType();
-                Object resolvedField = resolve(map.get(field.getName()), fieldType);
-                field.setAccessible(true);
-                field.set(object, resolvedField);
-            }
+    // direct buffer is parsed as a stream over its duplicate, instead of copying it into byte array
+    @Override
+    public <T> T invert(ByteBuffer src, Class<T> cls, EndpointLookup lookup) throws IOException {
+        if(src.hasArray()) {
+            return invert(src.array(), src.arrayOffset() + src.position(), src.remaining(), cls, lookup);
         }
+        return objectMapper.readerFor(cls)
+                .withAttribute(EndpointLookup.class, lookup)
+                .readValue(new ByteBufferBackedInputStream(src.duplicate()));
+    }
 
-        return object;
+    @Override
+    public Object resolve(final Object unresolved, Type type) throws InstantiationException, IllegalAccessException {
+        return resolverCompiler.resolve(unresolved, type);
     }
 
 }
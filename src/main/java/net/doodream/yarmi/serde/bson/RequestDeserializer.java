@@ -0,0 +1,162 @@
+package net.doodream.yarmi.serde.bson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import net.doodream.yarmi.data.Endpoint;
+import net.doodream.yarmi.data.Param;
+import net.doodream.yarmi.data.Request;
+import net.doodream.yarmi.net.session.BlobSession;
+import net.doodream.yarmi.net.session.SessionControlMessage;
+import net.doodream.yarmi.serde.EndpointLookup;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  deserializer for {@link Request}, binds value of each {@link Param} into corresponding parameter type of the endpoint.
+ */
+class RequestDeserializer extends TypedBindingDeserializer<Request> {
+
+    RequestDeserializer() {
+        super(Request.class);
+    }
+
+    @Override
+    public Request deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        final Request.Builder builder = new Request.Builder();
+        final EndpointLookup lookup = getLookup(ctxt);
+        String endpoint = null;
+        int nonce = 0;
+        long timeout = 0L;
+        TokenBuffer unboundParams = null;
+
+        JsonToken token = p.getCurrentToken();
+        if(token == JsonToken.START_OBJECT) {
+            token = p.nextToken();
+        }
+        for (; token == JsonToken.FIELD_NAME; token = p.nextToken()) {
+            final String field = p.getCurrentName();
+            p.nextToken();
+            switch (field) {
+                case "endpoint":
+                    endpoint = p.getValueAsString();
+                    builder.endpoint(endpoint);
+                    break;
+                case "nonce":
+                    nonce = p.getValueAsInt();
+                    break;
+                case "cancellation":
+                    builder.cancellation(p.getValueAsBoolean());
+                    break;
+                case "timeout":
+                    timeout = p.getValueAsLong();
+                    builder.timeout(timeout);
+                    break;
+                case "session":
+                    builder.session((BlobSession) readValue(p, ctxt, BlobSession.class));
+                    break;
+                case "scm":
+                    builder.scm((SessionControlMessage) readValue(p, ctxt, SessionControlMessage.class));
+                    break;
+                case "params":
+                    if(isExpired(lookup, timeout)) {
+                        // the caller has given up already, request is dropped without parameters
+                        p.skipChildren();
+                    } else if(endpoint == null) {
+                        // types of the parameters are not decidable yet
+                        unboundParams = buffer(p, ctxt);
+                    } else {
+                        builder.params(readParams(p, ctxt, getParamTypes(lookup, endpoint)));
+                    }
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+
+        if((unboundParams != null) && !isExpired(lookup, timeout)) {
+            final JsonParser bufferParser = unboundParams.asParser(p);
+            bufferParser.nextToken();
+            builder.params(readParams(bufferParser, ctxt, getParamTypes(lookup, endpoint)));
+        }
+
+        final Request request = builder.build();
+        request.setNonce(nonce);
+        return request;
+    }
+
+    private static List<Param> readParams(JsonParser p, DeserializationContext ctxt, Type[] types) throws IOException {
+        if(p.getCurrentToken() != JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return null;
+        }
+        final List<Param> params = new ArrayList<>();
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            params.add(readParam(p, ctxt, types));
+        }
+        return params;
+    }
+
+    private static Param readParam(JsonParser p, DeserializationContext ctxt, Type[] types) throws IOException {
+        Integer order = null;
+        Object value = null;
+        TokenBuffer unboundValue = null;
+
+        JsonToken token = p.getCurrentToken();
+        if(token == JsonToken.START_OBJECT) {
+            token = p.nextToken();
+        }
+        for (; token == JsonToken.FIELD_NAME; token = p.nextToken()) {
+            final String field = p.getCurrentName();
+            p.nextToken();
+            switch (field) {
+                case "order":
+                    order = p.getValueAsInt();
+                    break;
+                case "value":
+                    if(order == null) {
+                        unboundValue = buffer(p, ctxt);
+                    } else {
+                        value = readValue(p, ctxt, getParamType(types, order));
+                    }
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+        final int paramOrder = (order == null) ? 0 : order;
+        if(unboundValue != null) {
+            value = readValue(unboundValue, p, ctxt, getParamType(types, paramOrder));
+        }
+        final Param param = Param.create(getParamType(types, paramOrder), null);
+        param.setOrder(paramOrder);
+        param.apply(value);
+        return param;
+    }
+
+    private static boolean isExpired(EndpointLookup lookup, long timeout) {
+        return (lookup != null) && (timeout > 0) && lookup.isExpired(timeout);
+    }
+
+    private static Type[] getParamTypes(EndpointLookup lookup, String unique) {
+        if((lookup == null) || (unique == null)) {
+            return null;
+        }
+        final Endpoint endpoint = lookup.lookup(unique);
+        if(endpoint == null) {
+            return null;
+        }
+        return endpoint.getParamTypes();
+    }
+
+    private static Type getParamType(Type[] types, int order) {
+        if((types == null) || (order < 0) || (order >= types.length)) {
+            return null;
+        }
+        return types[order];
+    }
+}
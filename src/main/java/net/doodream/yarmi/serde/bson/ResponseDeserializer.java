@@ -0,0 +1,95 @@
+package net.doodream.yarmi.serde.bson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import net.doodream.yarmi.data.Endpoint;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.session.SessionControlMessage;
+import net.doodream.yarmi.serde.EndpointLookup;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ *  deserializer for {@link Response}, binds body of successful response into return type of the endpoint.
+ *  error response or response for unknown endpoint is decoded in generic form as before
+ */
+class ResponseDeserializer extends TypedBindingDeserializer<Response> {
+
+    ResponseDeserializer() {
+        super(Response.class);
+    }
+
+    @Override
+    public Response deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        final Response.Builder<Object> builder = new Response.Builder<>();
+        final EndpointLookup lookup = getLookup(ctxt);
+        String endpoint = null;
+        int nonce = 0;
+        Boolean isSuccessful = null;
+        Object body = null;
+        TokenBuffer unboundBody = null;
+
+        JsonToken token = p.getCurrentToken();
+        if(token == JsonToken.START_OBJECT) {
+            token = p.nextToken();
+        }
+        for (; token == JsonToken.FIELD_NAME; token = p.nextToken()) {
+            final String field = p.getCurrentName();
+            p.nextToken();
+            switch (field) {
+                case "endpoint":
+                    endpoint = p.getValueAsString();
+                    break;
+                case "nonce":
+                    nonce = p.getValueAsInt();
+                    break;
+                case "code":
+                    builder.code(p.getValueAsInt());
+                    break;
+                case "isSuccessful":
+                    isSuccessful = p.getValueAsBoolean();
+                    builder.isSuccessful(isSuccessful);
+                    break;
+                case "hasSessionSwitch":
+                    builder.hasSessionSwitch(p.getValueAsBoolean());
+                    break;
+                case "scm":
+                    builder.scm((SessionControlMessage) readValue(p, ctxt, SessionControlMessage.class));
+                    break;
+                case "body":
+                    if((isSuccessful == null) || (isSuccessful && (endpoint == null))) {
+                        // type of the body is not decidable yet
+                        unboundBody = buffer(p, ctxt);
+                    } else {
+                        body = readValue(p, ctxt, getBodyType(lookup, endpoint, isSuccessful));
+                    }
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+
+        if(unboundBody != null) {
+            body = readValue(unboundBody, p, ctxt, getBodyType(lookup, endpoint, (isSuccessful != null) && isSuccessful));
+        }
+
+        final Response response = builder.body(body).build();
+        response.setEndpoint(endpoint);
+        response.setNonce(nonce);
+        return response;
+    }
+
+    private static Type getBodyType(EndpointLookup lookup, String unique, boolean isSuccessful) {
+        if(!isSuccessful || (lookup == null) || (unique == null)) {
+            return null;
+        }
+        final Endpoint endpoint = lookup.lookup(unique);
+        if(endpoint == null) {
+            return null;
+        }
+        return endpoint.getUnwrappedRetType();
+    }
+}
@@ -0,0 +1,73 @@
+package net.doodream.yarmi.serde.bson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.serde.EndpointLookup;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ *  base deserializer for message containing generic value (e.g. body of {@link Response}),
+ *  which binds the value into the type declared by endpoint directly
+ */
+abstract class TypedBindingDeserializer<T> extends StdDeserializer<T> {
+
+    TypedBindingDeserializer(Class<?> vc) {
+        super(vc);
+    }
+
+    static EndpointLookup getLookup(DeserializationContext ctxt) {
+        return (EndpointLookup) ctxt.getAttribute(EndpointLookup.class);
+    }
+
+    /**
+     * read value at current token as given type
+     * @param type target type, value is decoded in generic form if type is null or not bindable
+     */
+    static Object readValue(JsonParser p, DeserializationContext ctxt, Type type) throws IOException {
+        if(p.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return ctxt.readValue(p, toJavaType(ctxt, type));
+    }
+
+    /**
+     * read value from tokens buffered by {@link #buffer(JsonParser, DeserializationContext)}
+     */
+    static Object readValue(TokenBuffer buffer, JsonParser p, DeserializationContext ctxt, Type type) throws IOException {
+        final JsonParser bufferParser = buffer.asParser(p);
+        bufferParser.nextToken();
+        return readValue(bufferParser, ctxt, type);
+    }
+
+    /**
+     * keep tokens of the value at current token, used when target type of the value is not decidable yet
+     */
+    static TokenBuffer buffer(JsonParser p, DeserializationContext ctxt) throws IOException {
+        final TokenBuffer buffer = new TokenBuffer(p, ctxt);
+        buffer.copyCurrentStructure(p);
+        return buffer;
+    }
+
+    private static JavaType toJavaType(DeserializationContext ctxt, Type type) {
+        if(!isBindable(type)) {
+            return ctxt.constructType(Object.class);
+        }
+        return ctxt.getTypeFactory().constructType(type);
+    }
+
+    private static boolean isBindable(Type type) {
+        if(type instanceof ParameterizedType) {
+            return true;
+        }
+        // raw Response (e.g. method returning Response without type parameter) conveys no type of body
+        return (type instanceof Class) && !type.equals(Response.class);
+    }
+}
@@ -0,0 +1,261 @@
+package net.doodream.yarmi.serde.compact;
+
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.TimeoutWatchdog;
+import net.doodream.yarmi.serde.ByteBufferPool;
+import net.doodream.yarmi.serde.Converter;
+import net.doodream.yarmi.serde.EndpointLookup;
+import net.doodream.yarmi.serde.Reader;
+import net.doodream.yarmi.serde.ResolverCompiler;
+import net.doodream.yarmi.serde.StringDictionary;
+import net.doodream.yarmi.serde.Writer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ *  {@link Converter} of schema-indexed binary format described in {@link CompactFormat}.
+ *  compared to {@link net.doodream.yarmi.serde.bson.BsonConverter}, field names of the protocol messages are not written at all
+ *  and field names of the other objects are written once per message, and integers are written as varint.
+ *  it can be selected for a service with {@code @Service(converter = CompactConverter.class)},
+ *  both server and client should use the same converter.
+ *  over {@link net.doodream.yarmi.net.frame.FrameChannel}, key-like strings (e.g. endpoint) are referred from {@link StringDictionary} of the connection
+ */
+public class CompactConverter implements Converter {
+    private static final Logger Log = LoggerFactory.getLogger(CompactConverter.class);
+
+    private final ResolverCompiler resolverCompiler = new ResolverCompiler();
+    private final ThreadLocal<CompactEncoder> encoders = new ThreadLocal<CompactEncoder>() {
+        @Override
+        protected CompactEncoder initialValue() {
+            return new CompactEncoder();
+        }
+    };
+
+    public CompactConverter() {
+    }
+
+    @Override
+    public Reader reader(InputStream inputStream) {
+        return reader(inputStream, null);
+    }
+
+    /**
+     * message in the stream is prefixed with its length in varint
+     */
+    @Override
+    public Reader reader(final InputStream inputStream, final EndpointLookup lookup) {
+        return new Reader() {
+
+            private final DataInputStream dataInputStream = new DataInputStream(inputStream);
+            private byte[] buffer = new byte[0];
+
+            @Override
+            public synchronized <T> T read(Class<T> cls) throws IOException {
+                final int length = readLength();
+                if(buffer.length < length) {
+                    buffer = new byte[length];
+                }
+                dataInputStream.readFully(buffer, 0, length);
+                return invert(buffer, 0, length, cls, lookup);
+            }
+
+            // read is performed in the calling thread, the stream is closed if the read misses the deadline
+            @Override
+            public synchronized <T> T read(Class<T> cls, long timeout, TimeUnit timeUnit) throws IOException, TimeoutException {
+                final TimeoutWatchdog.Watch watch = TimeoutWatchdog.getDefault().watch(System.nanoTime() + timeUnit.toNanos(timeout), inputStream);
+                try {
+                    return read(cls);
+                } catch (IOException e) {
+                    if(!watch.cancel()) {
+                        throw new TimeoutException("read timeout : " + e.getMessage());
+                    }
+                    throw e;
+                } finally {
+                    watch.cancel();
+                }
+            }
+
+            private int readLength() throws IOException {
+                int length = 0;
+                for (int shift = 0; shift < 32; shift += 7) {
+                    final int b = dataInputStream.read();
+                    if(b < 0) {
+                        throw new EOFException();
+                    }
+                    length |= (b & 0x7f) << shift;
+                    if((b & 0x80) == 0) {
+                        if(length < 0) {
+                            throw new IOException("invalid message length " + length);
+                        }
+                        return length;
+                    }
+                }
+                throw new IOException("malformed message length");
+            }
+        };
+    }
+
+    @Override
+    public Writer writer(final OutputStream outputStream) {
+        return new Writer() {
+
+            @Override
+            public synchronized void write(Object src) throws IOException {
+                final CompactEncoder encoder = encode(src);
+                writeLength(encoder.size());
+                encoder.writeTo(outputStream);
+                outputStream.flush();
+            }
+
+            // object is encoded before write, so nothing is written if the deadline is missed before write starts
+            // and the stream is closed if the deadline is missed in the middle of write
+            @Override
+            public synchronized void write(Object src, long timeout, TimeUnit unit) throws TimeoutException {
+                final long deadline = System.nanoTime() + unit.toNanos(timeout);
+                try {
+                    final CompactEncoder encoder = encode(src);
+                    if(deadline - System.nanoTime() <= 0) {
+                        throw new TimeoutException("write timeout : not started");
+                    }
+                    final TimeoutWatchdog.Watch watch = TimeoutWatchdog.getDefault().watch(deadline, outputStream);
+                    try {
+                        writeLength(encoder.size());
+                        encoder.writeTo(outputStream);
+                        outputStream.flush();
+                    } catch (IOException e) {
+                        if(!watch.cancel()) {
+                            throw new TimeoutException("write timeout : " + e.getMessage());
+                        }
+                        throw e;
+                    } finally {
+                        watch.cancel();
+                    }
+                } catch (IOException e) {
+                    final TimeoutException exception = new TimeoutException(e.getMessage());
+                    exception.initCause(e);
+                    throw exception;
+                }
+            }
+
+            private void writeLength(int length) throws IOException {
+                while ((length & ~0x7f) != 0) {
+                    outputStream.write((length & 0x7f) | 0x80);
+                    length >>>= 7;
+                }
+                outputStream.write(length);
+            }
+        };
+    }
+
+    @Override
+    public byte[] convert(Object src) {
+        try {
+            return encode(src).toByteArray();
+        } catch (IOException e) {
+            Log.error("fail to convert {}", e.getLocalizedMessage());
+        }
+        return new byte[0];
+    }
+
+    @Override
+    public <T> T invert(byte[] b, Class<T> cls) {
+        try {
+            return invert(b, 0, b.length, cls, null);
+        } catch (IOException e) {
+            Log.error("fail to invert {}", e.getLocalizedMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public void convert(Object src, OutputStream outputStream) throws IOException {
+        encode(src).writeTo(outputStream);
+    }
+
+    @Override
+    public void convert(Object src, OutputStream outputStream, StringDictionary.Encoding dictionary) throws IOException {
+        encode(src, dictionary).writeTo(outputStream);
+    }
+
+    @Override
+    public <T> T invert(byte[] b, int offset, int length, Class<T> cls, EndpointLookup lookup) throws IOException {
+        return invert(b, offset, length, cls, lookup, null);
+    }
+
+    @Override
+    public <T> T invert(byte[] b, int offset, int length, Class<T> cls, EndpointLookup lookup, StringDictionary dictionary) throws IOException {
+        final CompactDecoder decoder = new CompactDecoder(b, offset, length, lookup, resolverCompiler, dictionary);
+        try {
+            return cls.cast(decoder.readValue(cls));
+        } catch (ClassCastException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // body is copied out of the frame as it is, and decoded on the first Response#getBody() (or by Response#bodyIterator())
+    @Override
+    public Response invertLazily(byte[] b, int offset, int length, EndpointLookup lookup, StringDictionary dictionary) throws IOException {
+        final CompactDecoder decoder = new CompactDecoder(b, offset, length, lookup, resolverCompiler, dictionary);
+        decoder.setLazyBody(true);
+        try {
+            return (Response) decoder.readValue(Response.class);
+        } catch (ClassCastException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // size of the message is known after encoding, so the buffer is borrowed once in exact size class
+    @Override
+    public ByteBuffer convert(Object src, ByteBufferPool pool) throws IOException {
+        final CompactEncoder encoder = encode(src);
+        final ByteBuffer buffer = pool.acquire(encoder.size());
+        encoder.writeTo(buffer);
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    @Override
+    public <T> T invert(ByteBuffer src, Class<T> cls, EndpointLookup lookup) throws IOException {
+        final CompactDecoder decoder;
+        if(src.hasArray()) {
+            decoder = new CompactDecoder(src.array(), src.arrayOffset() + src.position(), src.remaining(), lookup, resolverCompiler, null);
+        } else {
+            decoder = new CompactDecoder(src, lookup, resolverCompiler, null);
+        }
+        try {
+            return cls.cast(decoder.readValue(cls));
+        } catch (ClassCastException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public Object resolve(Object unresolved, Type type) throws IllegalAccessException, InstantiationException {
+        return resolverCompiler.resolve(unresolved, type);
+    }
+
+    /**
+     * encode object with the encoder of the calling thread, the result is valid until next encode in the thread
+     */
+    private CompactEncoder encode(Object src) throws IOException {
+        return encode(src, null);
+    }
+
+    private CompactEncoder encode(Object src, StringDictionary.Encoding dictionary) throws IOException {
+        final CompactEncoder encoder = encoders.get();
+        encoder.reset(dictionary);
+        encoder.writeValue(src);
+        return encoder;
+    }
+}
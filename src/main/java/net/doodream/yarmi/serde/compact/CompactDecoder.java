@@ -0,0 +1,836 @@
+package net.doodream.yarmi.serde.compact;
+
+import net.doodream.yarmi.data.Endpoint;
+import net.doodream.yarmi.data.LazyBody;
+import net.doodream.yarmi.data.Param;
+import net.doodream.yarmi.data.PrimitiveArgs;
+import net.doodream.yarmi.data.Request;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.session.BlobSession;
+import net.doodream.yarmi.net.session.SessionControlMessage;
+import net.doodream.yarmi.serde.EndpointLookup;
+import net.doodream.yarmi.serde.ResolverCompiler;
+import net.doodream.yarmi.serde.StringDictionary;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static net.doodream.yarmi.serde.compact.CompactFormat.*;
+
+/**
+ *  decodes single message in {@link CompactFormat} from a region of byte array (or direct {@link ByteBuffer}).
+ *  values are bound into the expected type while parsing, for the protocol messages the type of
+ *  response body and request parameters is taken from {@link Endpoint} given by {@link EndpointLookup}.
+ *  value which can't be bound directly (e.g. expected type is interface) is decoded in generic form
+ *  ({@link Map} / {@link List}) and resolved by {@link ResolverCompiler} as {@link net.doodream.yarmi.serde.bson.BsonConverter} does
+ */
+final class CompactDecoder {
+
+    // either of them is null, direct buffer is read by absolute get without changing its position
+    private final byte[] buffer;
+    private final ByteBuffer directBuffer;
+    private final int limit;
+    private final EndpointLookup lookup;
+    private final ResolverCompiler resolverCompiler;
+    private final StringDictionary dictionary;
+    // schemas defined in this message, allocated on first definition as most of messages have no user-defined object
+    private List<String[]> definedSchemas;
+    private int position;
+    private boolean isBodyLazy;
+
+    CompactDecoder(byte[] buffer, int offset, int length, EndpointLookup lookup, ResolverCompiler resolverCompiler, StringDictionary dictionary) {
+        this.buffer = buffer;
+        this.directBuffer = null;
+        this.position = offset;
+        this.limit = offset + length;
+        this.lookup = lookup;
+        this.resolverCompiler = resolverCompiler;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @param buffer direct buffer containing the message between its position and limit
+     */
+    CompactDecoder(ByteBuffer buffer, EndpointLookup lookup, ResolverCompiler resolverCompiler, StringDictionary dictionary) {
+        this.buffer = null;
+        this.directBuffer = buffer;
+        this.position = buffer.position();
+        this.limit = buffer.limit();
+        this.lookup = lookup;
+        this.resolverCompiler = resolverCompiler;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * keep the body of response encoded in {@link CompactLazyBody} instead of decoding it
+     */
+    void setLazyBody(boolean isBodyLazy) {
+        this.isBodyLazy = isBodyLazy;
+    }
+
+    Object readValue(Type type) throws IOException {
+        final int tag = readByte();
+        if(tag == NULL) {
+            return null;
+        }
+        final Class<?> raw = rawClassOf(type);
+        if((raw == null) || (raw == Object.class)) {
+            return readGeneric(tag);
+        }
+        if(raw == Response.class) {
+            return readResponse(tag);
+        }
+        if(raw == Request.class) {
+            return readRequest(tag);
+        }
+
+        switch (tag) {
+            case FALSE:
+            case TRUE:
+                return bindScalar(tag == TRUE, raw, type);
+            case INT:
+                return bindNumber(unzigzag(readVarInt()), raw, type);
+            case LONG:
+                return bindNumber(unzigzag(readVarLong()), raw, type);
+            case FLOAT:
+                return bindNumber(Float.intBitsToFloat(readFixedInt()), raw, type);
+            case DOUBLE:
+                return bindNumber(Double.longBitsToDouble(readFixedLong()), raw, type);
+            case STRING:
+                return bindString(readString(), raw, type);
+            case STRING_REF:
+                return bindString(readReference(), raw, type);
+            case BINARY:
+                return bindScalar(readBinary(), raw, type);
+            case LIST:
+                return readList(type, raw);
+            case MAP:
+                return readMap(type, raw);
+            case OBJECT_DEF:
+            case OBJECT:
+                return readObject(tag, type, raw);
+            default:
+                throw new IOException("unknown tag " + tag);
+        }
+    }
+
+    private Object readGeneric(int tag) throws IOException {
+        switch (tag) {
+            case NULL:
+                return null;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case INT:
+                return unzigzag(readVarInt());
+            case LONG:
+                return unzigzag(readVarLong());
+            case FLOAT:
+                return Float.intBitsToFloat(readFixedInt());
+            case DOUBLE:
+                return Double.longBitsToDouble(readFixedLong());
+            case STRING:
+                return readString();
+            case STRING_REF:
+                return readReference();
+            case BINARY:
+                return readBinary();
+            case LIST: {
+                final int count = readVarInt();
+                final List<Object> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(readGeneric(readByte()));
+                }
+                return list;
+            }
+            case MAP: {
+                final int count = readVarInt();
+                final Map<Object, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    final Object key = readGeneric(readByte());
+                    map.put(key, readGeneric(readByte()));
+                }
+                return map;
+            }
+            case OBJECT_DEF:
+            case OBJECT: {
+                final String[] names = readSchema(tag);
+                final Map<String, Object> map = new LinkedHashMap<>();
+                for (String name : names) {
+                    final Object value = readGeneric(readByte());
+                    if(value != null) {
+                        map.put(name, value);
+                    }
+                }
+                return map;
+            }
+            default:
+                throw new IOException("unknown tag " + tag);
+        }
+    }
+
+    private Object readList(Type type, Class<?> raw) throws IOException {
+        final int count = readVarInt();
+        if(raw.isArray()) {
+            final Type componentType = (type instanceof GenericArrayType) ?
+                    ((GenericArrayType) type).getGenericComponentType() : raw.getComponentType();
+            final Object array = Array.newInstance(raw.getComponentType(), count);
+            for (int i = 0; i < count; i++) {
+                final Object element = readValue(componentType);
+                if((element != null) || !raw.getComponentType().isPrimitive()) {
+                    Array.set(array, i, element);
+                }
+            }
+            return array;
+        }
+        final Collection<Object> collection = newCollection(raw, count);
+        if(collection == null) {
+            final List<Object> list = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(readGeneric(readByte()));
+            }
+            return resolve(list, type);
+        }
+        final Type elementType = typeArgumentOf(type, 0);
+        for (int i = 0; i < count; i++) {
+            collection.add(readValue(elementType));
+        }
+        return collection;
+    }
+
+    private Object readMap(Type type, Class<?> raw) throws IOException {
+        final int count = readVarInt();
+        final Map<Object, Object> map = newMap(raw);
+        if(map == null) {
+            final Map<Object, Object> generic = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                final Object key = readGeneric(readByte());
+                generic.put(key, readGeneric(readByte()));
+            }
+            return resolve(generic, type);
+        }
+        final Type keyType = typeArgumentOf(type, 0);
+        final Type valueType = typeArgumentOf(type, 1);
+        for (int i = 0; i < count; i++) {
+            final Object key = readValue(keyType);
+            map.put(key, readValue(valueType));
+        }
+        return map;
+    }
+
+    private Object readObject(int tag, Type type, Class<?> raw) throws IOException {
+        final CompactSchema target = CompactSchema.of(raw);
+        if(!target.isInstantiable()) {
+            // e.g. interface or class without default constructor
+            final String[] names = readSchema(tag);
+            final Map<String, Object> map = new LinkedHashMap<>();
+            for (String name : names) {
+                final Object value = readGeneric(readByte());
+                if(value != null) {
+                    map.put(name, value);
+                }
+            }
+            return resolve(map, type);
+        }
+        final String[] names = readSchema(tag);
+        try {
+            final Object object = target.newInstance();
+            for (String name : names) {
+                final int index = target.indexOf(name);
+                if(index < 0) {
+                    // unknown field
+                    readGeneric(readByte());
+                    continue;
+                }
+                final Object value = readValue(resolveFieldType(target.getType(index), type));
+                if((value == null) && target.isPrimitive(index)) {
+                    continue;
+                }
+                target.set(object, index, value);
+            }
+            return object;
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            throw new IOException(String.format(Locale.ENGLISH, "fail to bind %s", raw.getName()), e);
+        }
+    }
+
+    /**
+     * read response while binding its body into return type of the endpoint
+     */
+    private Response readResponse(int tag) throws IOException {
+        final String[] names = readSchema(tag);
+        final Response.Builder<Object> builder = new Response.Builder<>();
+        String endpoint = null;
+        int nonce = 0;
+        boolean isSuccessful = false;
+        boolean hasSessionSwitch = false;
+        LazyBody lazyBody = null;
+        // only the outermost response is decoded lazily
+        final boolean isLazy = isBodyLazy;
+        isBodyLazy = false;
+        for (int i = 0; i < names.length; i++) {
+            switch (names[i]) {
+                case "endpoint":
+                    endpoint = (String) readValue(String.class);
+                    break;
+                case "nonce":
+                    nonce = (Integer) readValue(int.class);
+                    break;
+                case "code":
+                    builder.code((Integer) readValue(int.class));
+                    break;
+                case "isSuccessful":
+                    isSuccessful = (Boolean) readValue(boolean.class);
+                    builder.isSuccessful(isSuccessful);
+                    break;
+                case "hasSessionSwitch":
+                    hasSessionSwitch = (Boolean) readValue(boolean.class);
+                    builder.hasSessionSwitch(hasSessionSwitch);
+                    break;
+                case "scm":
+                    builder.scm((SessionControlMessage) readValue(SessionControlMessage.class));
+                    break;
+                case "body":
+                    // body at the end of the message is taken as it is, unless it depends on schemas defined before it
+                    // error message and blob session are small and needed right away, so they are always decoded
+                    if(isLazy && isSuccessful && !hasSessionSwitch && (i == names.length - 1) && (definedSchemas == null)) {
+                        lazyBody = new CompactLazyBody(copyRemaining(), getReturnType(endpoint), resolverCompiler, dictionary);
+                    } else {
+                        builder.body(readValue(isSuccessful ? getReturnType(endpoint) : null));
+                    }
+                    break;
+                default:
+                    readGeneric(readByte());
+            }
+        }
+        final Response response = builder.build();
+        response.setEndpoint(endpoint);
+        response.setNonce(nonce);
+        if(lazyBody != null) {
+            response.setLazyBody(lazyBody);
+        }
+        return response;
+    }
+
+    /**
+     * read request while binding its parameters into parameter types of the endpoint
+     */
+    private Request readRequest(int tag) throws IOException {
+        final String[] names = readSchema(tag);
+        final Request.Builder builder = new Request.Builder();
+        String endpoint = null;
+        int nonce = 0;
+        long timeout = 0L;
+        for (String name : names) {
+            switch (name) {
+                case "session":
+                    builder.session((BlobSession) readValue(BlobSession.class));
+                    break;
+                case "endpoint":
+                    endpoint = (String) readValue(String.class);
+                    builder.endpoint(endpoint);
+                    break;
+                case "cancellation":
+                    builder.cancellation((Boolean) readValue(boolean.class));
+                    break;
+                case "timeout":
+                    timeout = (Long) readValue(long.class);
+                    builder.timeout(timeout);
+                    break;
+                case "params":
+                    final Endpoint target = getEndpoint(endpoint);
+                    if((lookup != null) && (timeout > 0) && lookup.isExpired(timeout)) {
+                        // the caller has given up already, request is dropped without parameters
+                        readGeneric(readByte());
+                    } else if((target != null) && target.isPrimitive()) {
+                        builder.args(readPrimitiveArgs(PrimitiveArgs.create(target)));
+                    } else {
+                        builder.params(readParams(target == null ? null : target.getParamTypes()));
+                    }
+                    break;
+                case "scm":
+                    builder.scm((SessionControlMessage) readValue(SessionControlMessage.class));
+                    break;
+                case "nonce":
+                    nonce = (Integer) readValue(int.class);
+                    break;
+                default:
+                    readGeneric(readByte());
+            }
+        }
+        final Request request = builder.build();
+        request.setNonce(nonce);
+        return request;
+    }
+
+    private List<Param> readParams(Type[] types) throws IOException {
+        final int tag = readByte();
+        if(tag == NULL) {
+            return null;
+        }
+        if(tag != LIST) {
+            throw new IOException("unexpected tag for params " + tag);
+        }
+        final int count = readVarInt();
+        final List<Param> params = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int paramTag = readByte();
+            final String[] names = readSchema(paramTag);
+            int order = 0;
+            Object value = null;
+            for (String name : names) {
+                switch (name) {
+                    case "order":
+                        order = (Integer) readValue(int.class);
+                        break;
+                    case "value":
+                        value = readValue(getParamType(types, order));
+                        break;
+                    default:
+                        readGeneric(readByte());
+                }
+            }
+            final Param param = Param.create(getParamType(types, order), null);
+            param.setOrder(order);
+            param.apply(value);
+            params.add(param);
+        }
+        return params;
+    }
+
+    /**
+     * read parameters of primitive endpoint directly into long / string slots, without boxing
+     */
+    private PrimitiveArgs readPrimitiveArgs(PrimitiveArgs args) throws IOException {
+        final int tag = readByte();
+        if(tag == NULL) {
+            return null;
+        }
+        if(tag != LIST) {
+            throw new IOException("unexpected tag for params " + tag);
+        }
+        final int count = readVarInt();
+        for (int i = 0; i < count; i++) {
+            final String[] names = readSchema(readByte());
+            int order = 0;
+            for (String name : names) {
+                switch (name) {
+                    case "order":
+                        order = unzigzag(readTaggedVarInt());
+                        if((order < 0) || (order >= args.size())) {
+                            throw new IOException("invalid param order " + order);
+                        }
+                        break;
+                    case "value":
+                        readPrimitiveArg(args, order);
+                        break;
+                    default:
+                        readGeneric(readByte());
+                }
+            }
+        }
+        return args;
+    }
+
+    private void readPrimitiveArg(PrimitiveArgs args, int index) throws IOException {
+        final int tag = readByte();
+        switch (tag) {
+            case NULL:
+                break;
+            case FALSE:
+            case TRUE:
+                args.setBoolean(index, tag == TRUE);
+                break;
+            case INT:
+                args.setLong(index, unzigzag(readVarInt()));
+                break;
+            case LONG:
+                args.setLong(index, unzigzag(readVarLong()));
+                break;
+            case FLOAT:
+                args.setDouble(index, Float.intBitsToFloat(readFixedInt()));
+                break;
+            case DOUBLE:
+                args.setDouble(index, Double.longBitsToDouble(readFixedLong()));
+                break;
+            case STRING:
+                if((args.getType(index) != String.class) && (args.getType(index) != char.class)) {
+                    throw new IOException("unexpected string for " + args.getType(index).getName());
+                }
+                args.setString(index, readString());
+                break;
+            case STRING_REF:
+                if((args.getType(index) != String.class) && (args.getType(index) != char.class)) {
+                    throw new IOException("unexpected string for " + args.getType(index).getName());
+                }
+                args.setString(index, readReference());
+                break;
+            default:
+                throw new IOException("unexpected tag for primitive param " + tag);
+        }
+    }
+
+    private int readTaggedVarInt() throws IOException {
+        final int tag = readByte();
+        if(tag != INT) {
+            throw new IOException("unexpected tag for int " + tag);
+        }
+        return readVarInt();
+    }
+
+    private Endpoint getEndpoint(String unique) {
+        if((lookup == null) || (unique == null)) {
+            return null;
+        }
+        return lookup.lookup(unique);
+    }
+
+    private Type getReturnType(String unique) {
+        final Endpoint endpoint = getEndpoint(unique);
+        if(endpoint == null) {
+            return null;
+        }
+        final Type type = endpoint.getUnwrappedRetType();
+        // raw Response (e.g. method returning Response without type parameter) conveys no type of body
+        return Response.class.equals(type) ? null : type;
+    }
+
+    private static Type getParamType(Type[] types, int order) {
+        if((types == null) || (order < 0) || (order >= types.length)) {
+            return null;
+        }
+        return types[order];
+    }
+
+    /**
+     * read schema of object, which is either builtin, defined in this message before or defined here
+     * @return field names of the object in the order of values
+     */
+    private String[] readSchema(int tag) throws IOException {
+        if((tag != OBJECT) && (tag != OBJECT_DEF)) {
+            throw new IOException("unexpected tag for object " + tag);
+        }
+        final int id = readVarInt();
+        if(tag == OBJECT_DEF) {
+            final int size = readVarInt();
+            final String[] names = new String[size];
+            for (int i = 0; i < size; i++) {
+                names[i] = readName();
+            }
+            final int index = id - CompactSchema.getBuiltinCount() - 1;
+            if(definedSchemas == null) {
+                definedSchemas = new ArrayList<>();
+            }
+            if(index != definedSchemas.size()) {
+                throw new IOException("unexpected schema id " + id);
+            }
+            definedSchemas.add(names);
+            return names;
+        }
+        final CompactSchema builtin = CompactSchema.builtin(id);
+        if(builtin != null) {
+            return builtin.getNames();
+        }
+        final int index = id - CompactSchema.getBuiltinCount() - 1;
+        if((definedSchemas == null) || (index < 0) || (index >= definedSchemas.size())) {
+            throw new IOException("undefined schema id " + id);
+        }
+        return definedSchemas.get(index);
+    }
+
+    private Object bindScalar(Object value, Class<?> raw, Type type) throws IOException {
+        if(raw.isInstance(value) || (raw == boolean.class && value instanceof Boolean)) {
+            return value;
+        }
+        return resolve(value, type);
+    }
+
+    private Object bindNumber(Number value, Class<?> raw, Type type) throws IOException {
+        if((raw == int.class) || (raw == Integer.class)) {
+            return value.intValue();
+        } else if((raw == long.class) || (raw == Long.class)) {
+            return value.longValue();
+        } else if((raw == double.class) || (raw == Double.class)) {
+            return value.doubleValue();
+        } else if((raw == float.class) || (raw == Float.class)) {
+            return value.floatValue();
+        } else if((raw == short.class) || (raw == Short.class)) {
+            return value.shortValue();
+        } else if((raw == byte.class) || (raw == Byte.class)) {
+            return value.byteValue();
+        } else if(raw.isInstance(value)) {
+            return value;
+        }
+        return resolve(value, type);
+    }
+
+    private Object bindString(String value, Class<?> raw, Type type) throws IOException {
+        if(raw.isInstance(value)) {
+            return value;
+        }
+        if(((raw == char.class) || (raw == Character.class)) && !value.isEmpty()) {
+            return value.charAt(0);
+        }
+        if(raw.isEnum()) {
+            return toEnum(raw, value);
+        }
+        if(raw == Class.class) {
+            try {
+                return Class.forName(value);
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+        return resolve(value, type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object toEnum(Class<?> raw, String value) {
+        return Enum.valueOf((Class<? extends Enum>) raw, value);
+    }
+
+    private Object resolve(Object unresolved, Type type) throws IOException {
+        try {
+            return resolverCompiler.resolve(unresolved, type);
+        } catch (IllegalAccessException | InstantiationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static Collection<Object> newCollection(Class<?> raw, int size) throws IOException {
+        if(!Collection.class.isAssignableFrom(raw)) {
+            return null;
+        }
+        if(raw.isAssignableFrom(ArrayList.class)) {
+            return new ArrayList<>(size);
+        } else if(raw.isAssignableFrom(HashSet.class)) {
+            return new HashSet<>();
+        } else if(raw.isAssignableFrom(TreeSet.class)) {
+            return new TreeSet<>();
+        } else if(raw.isAssignableFrom(ArrayDeque.class)) {
+            return new ArrayDeque<>(size);
+        }
+        return (Collection<Object>) newInstance(raw);
+    }
+
+    private static Map<Object, Object> newMap(Class<?> raw) throws IOException {
+        if(!Map.class.isAssignableFrom(raw)) {
+            return null;
+        }
+        if(raw.isAssignableFrom(LinkedHashMap.class)) {
+            return new LinkedHashMap<>();
+        } else if(raw.isAssignableFrom(TreeMap.class)) {
+            return new TreeMap<>();
+        }
+        return (Map<Object, Object>) newInstance(raw);
+    }
+
+    private static Object newInstance(Class<?> raw) throws IOException {
+        final CompactSchema schema = CompactSchema.of(raw);
+        if(!schema.isInstantiable()) {
+            return null;
+        }
+        try {
+            return schema.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static Class<?> rawClassOf(Type type) {
+        if(type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if(type instanceof ParameterizedType) {
+            final Type raw = ((ParameterizedType) type).getRawType();
+            return (raw instanceof Class) ? (Class<?>) raw : null;
+        }
+        if(type instanceof GenericArrayType) {
+            final Class<?> component = rawClassOf(((GenericArrayType) type).getGenericComponentType());
+            return component == null ? null : Array.newInstance(component, 0).getClass();
+        }
+        // type variable & wildcard are decoded in generic form
+        return null;
+    }
+
+    /**
+     * read header of collection (or array) value, elements follow it
+     * @return number of elements, or -1 if the value is null
+     */
+    int readCollectionHeader() throws IOException {
+        final int tag = readByte();
+        if(tag == NULL) {
+            return -1;
+        }
+        if(tag != LIST) {
+            throw new IOException("not a collection : tag " + tag);
+        }
+        return readVarInt();
+    }
+
+    /**
+     * @return element type of collection (or array) type, or null if unknown
+     */
+    static Type elementTypeOf(Type type) {
+        if(type instanceof GenericArrayType) {
+            return ((GenericArrayType) type).getGenericComponentType();
+        }
+        if((type instanceof Class) && ((Class<?>) type).isArray()) {
+            return ((Class<?>) type).getComponentType();
+        }
+        return typeArgumentOf(type, 0);
+    }
+
+    private static Type typeArgumentOf(Type type, int index) {
+        if(!(type instanceof ParameterizedType)) {
+            return null;
+        }
+        final Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+        return index < arguments.length ? arguments[index] : null;
+    }
+
+    /**
+     * resolve field type declared with type variable of the owner class (e.g. T body of Response&lt;T&gt;)
+     */
+    private static Type resolveFieldType(Type fieldType, Type ownerType) {
+        if(!(fieldType instanceof TypeVariable) || !(ownerType instanceof ParameterizedType)) {
+            return fieldType;
+        }
+        final ParameterizedType owner = (ParameterizedType) ownerType;
+        final TypeVariable<?>[] variables = ((Class<?>) owner.getRawType()).getTypeParameters();
+        for (int i = 0; i < variables.length; i++) {
+            if(variables[i].equals(fieldType)) {
+                return owner.getActualTypeArguments()[i];
+            }
+        }
+        return fieldType;
+    }
+
+    private int readByte() throws IOException {
+        if(position >= limit) {
+            throw new EOFException();
+        }
+        if(buffer == null) {
+            return directBuffer.get(position++) & 0xff;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    private int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = readByte();
+            value |= (b & 0x7f) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private int readFixedInt() throws IOException {
+        return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+    }
+
+    private long readFixedLong() throws IOException {
+        return ((long) readFixedInt() << 32) | (readFixedInt() & 0xffffffffL);
+    }
+
+    private String readString() throws IOException {
+        return readUtf8(readLength());
+    }
+
+    private String readReference() throws IOException {
+        final int id = readVarInt();
+        if(dictionary == null) {
+            throw new IOException("string reference without dictionary " + id);
+        }
+        return dictionary.get(id);
+    }
+
+    /**
+     * read field name of schema definition, zero length is followed by the reference to the dictionary
+     */
+    private String readName() throws IOException {
+        final int length = readLength();
+        if(length == 0) {
+            return readReference();
+        }
+        return readUtf8(length);
+    }
+
+    private String readUtf8(int length) {
+        final String value;
+        if(buffer == null) {
+            value = new String(copyDirect(length), StandardCharsets.UTF_8);
+        } else {
+            value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        }
+        position += length;
+        return value;
+    }
+
+    private byte[] readBinary() throws IOException {
+        final int length = readLength();
+        final byte[] value;
+        if(buffer == null) {
+            value = copyDirect(length);
+        } else {
+            value = Arrays.copyOfRange(buffer, position, position + length);
+        }
+        position += length;
+        return value;
+    }
+
+    /**
+     * copy the rest of the message, which is consumed
+     */
+    private byte[] copyRemaining() {
+        final int length = limit - position;
+        final byte[] copied = (buffer == null) ? copyDirect(length) : Arrays.copyOfRange(buffer, position, limit);
+        position = limit;
+        return copied;
+    }
+
+    private byte[] copyDirect(int length) {
+        final byte[] copied = new byte[length];
+        final ByteBuffer region = directBuffer.duplicate();
+        ((Buffer) region).position(position);
+        region.get(copied);
+        return copied;
+    }
+
+    private int readLength() throws IOException {
+        final int length = readVarInt();
+        if((length < 0) || (length > limit - position)) {
+            throw new EOFException();
+        }
+        return length;
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,284 @@
+package net.doodream.yarmi.serde.compact;
+
+import net.doodream.yarmi.serde.StringDictionary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static net.doodream.yarmi.serde.compact.CompactFormat.*;
+
+/**
+ *  encodes single message into internal buffer in {@link CompactFormat}, the encoder is reusable after {@link #reset()}
+ */
+final class CompactEncoder {
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+    // buffer grown over this size is dropped on reset, not to hold large buffer for thread lifetime
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1 << 20;
+
+    private final IdentityHashMap<Class<?>, Integer> schemaIds = new IdentityHashMap<>();
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int position;
+    private int nextSchemaId;
+    private StringDictionary.Encoding dictionary;
+
+    CompactEncoder() {
+        reset(null);
+    }
+
+    /**
+     * @param dictionary dictionary of the connection to refer key-like strings, or null if not available
+     */
+    void reset(StringDictionary.Encoding dictionary) {
+        if(buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+            buffer = new byte[INITIAL_BUFFER_SIZE];
+        }
+        position = 0;
+        schemaIds.clear();
+        nextSchemaId = CompactSchema.getBuiltinCount() + 1;
+        this.dictionary = dictionary;
+    }
+
+    int size() {
+        return position;
+    }
+
+    void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(buffer, 0, position);
+    }
+
+    void writeTo(ByteBuffer dst) {
+        dst.put(buffer, 0, position);
+    }
+
+    byte[] toByteArray() {
+        final byte[] encoded = new byte[position];
+        System.arraycopy(buffer, 0, encoded, 0, position);
+        return encoded;
+    }
+
+    void writeValue(Object value) throws IOException {
+        if(value == null) {
+            writeByte(NULL);
+        } else if(value instanceof String) {
+            writeByte(STRING);
+            writeString((String) value);
+        } else if((value instanceof Integer) || (value instanceof Short) || (value instanceof Byte)) {
+            writeByte(INT);
+            writeVarInt(zigzag(((Number) value).intValue()));
+        } else if(value instanceof Long) {
+            writeByte(LONG);
+            writeVarLong(zigzag((Long) value));
+        } else if(value instanceof Boolean) {
+            writeByte((Boolean) value ? TRUE : FALSE);
+        } else if(value instanceof Double) {
+            writeByte(DOUBLE);
+            writeFixedLong(Double.doubleToLongBits((Double) value));
+        } else if(value instanceof Float) {
+            writeByte(FLOAT);
+            writeFixedInt(Float.floatToIntBits((Float) value));
+        } else if((value instanceof Character) || (value instanceof Number)) {
+            writeByte(STRING);
+            writeString(value.toString());
+        } else if(value instanceof Enum) {
+            writeKey(((Enum) value).name());
+        } else if(value instanceof Class) {
+            writeByte(STRING);
+            writeString(((Class) value).getName());
+        } else if(value instanceof byte[]) {
+            final byte[] bytes = (byte[]) value;
+            writeByte(BINARY);
+            writeVarInt(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        } else if(value.getClass().isArray()) {
+            final int length = Array.getLength(value);
+            writeByte(LIST);
+            writeVarInt(length);
+            for (int i = 0; i < length; i++) {
+                writeValue(Array.get(value, i));
+            }
+        } else if(value instanceof Collection) {
+            final Collection<?> collection = (Collection<?>) value;
+            writeByte(LIST);
+            writeVarInt(collection.size());
+            for (Object element : collection) {
+                writeValue(element);
+            }
+        } else if(value instanceof Map) {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            writeByte(MAP);
+            writeVarInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                // keys of user map (e.g. ids) are unlikely repeated over the connection, so they're not learned
+                writeValue(entry.getKey());
+                writeValue(entry.getValue());
+            }
+        } else {
+            writeObject(value);
+        }
+    }
+
+    private void writeObject(Object value) throws IOException {
+        final CompactSchema schema = CompactSchema.of(value.getClass());
+        if(schema.getBuiltinId() != CompactSchema.NOT_BUILTIN) {
+            writeByte(OBJECT);
+            writeVarInt(schema.getBuiltinId());
+        } else {
+            final Integer schemaId = schemaIds.get(schema.getSchemaClass());
+            if(schemaId != null) {
+                writeByte(OBJECT);
+                writeVarInt(schemaId);
+            } else {
+                // first occurrence in the message, define schema with field names
+                final int newSchemaId = nextSchemaId++;
+                schemaIds.put(schema.getSchemaClass(), newSchemaId);
+                writeByte(OBJECT_DEF);
+                writeVarInt(newSchemaId);
+                writeVarInt(schema.size());
+                for (String name : schema.getNames()) {
+                    writeName(name);
+                }
+            }
+        }
+        try {
+            for (int i = 0; i < schema.size(); i++) {
+                final Object fieldValue = schema.get(value, i);
+                if(schema.isKey(i) && (fieldValue != null)) {
+                    writeKey((String) fieldValue);
+                } else {
+                    writeValue(fieldValue);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * write string value which is likely repeated over the connection, as reference if the dictionary is available
+     */
+    private void writeKey(String value) {
+        final int id = (dictionary == null) ? StringDictionary.NOT_FOUND : dictionary.reference(value);
+        if(id == StringDictionary.NOT_FOUND) {
+            writeByte(STRING);
+            writeString(value);
+            return;
+        }
+        writeByte(STRING_REF);
+        writeVarInt(id);
+    }
+
+    /**
+     * write field name of schema definition, which is not tagged
+     */
+    private void writeName(String name) {
+        final int id = (dictionary == null) ? StringDictionary.NOT_FOUND : dictionary.reference(name);
+        if(id == StringDictionary.NOT_FOUND) {
+            writeString(name);
+            return;
+        }
+        // field name is never empty, so zero length marks reference
+        writeVarInt(0);
+        writeVarInt(id);
+    }
+
+    private void writeString(String value) {
+        final int length = value.length();
+        ensureCapacity(length + 5);
+        // fast path for ASCII string, which is encoded without intermediate byte array
+        final int start = position;
+        int lengthSize = varIntSize(length);
+        int offset = start + lengthSize;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if(c >= 0x80) {
+                final byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                position = start;
+                writeVarInt(encoded.length);
+                writeBytes(encoded, 0, encoded.length);
+                return;
+            }
+            buffer[offset++] = (byte) c;
+        }
+        writeVarInt(length);
+        position = offset;
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] b, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(b, offset, buffer, position, length);
+        position += length;
+    }
+
+    private void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7f) != 0) {
+            buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7fL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeFixedInt(int value) {
+        ensureCapacity(4);
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeFixedLong(long value) {
+        writeFixedInt((int) (value >>> 32));
+        writeFixedInt((int) value);
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void ensureCapacity(int required) {
+        if(position + required <= buffer.length) {
+            return;
+        }
+        int capacity = buffer.length << 1;
+        while (capacity < position + required) {
+            capacity <<= 1;
+        }
+        final byte[] grown = new byte[capacity];
+        System.arraycopy(buffer, 0, grown, 0, position);
+        buffer = grown;
+    }
+}
@@ -0,0 +1,44 @@
+package net.doodream.yarmi.serde.compact;
+
+/**
+ *  wire format of {@link CompactConverter}
+ *
+ *  every value starts with single tag byte followed by its content
+ *  - NULL / FALSE / TRUE : no content
+ *  - INT / LONG : zigzag encoded varint
+ *  - FLOAT / DOUBLE : IEEE 754 bits in big-endian
+ *  - STRING / BINARY : varint length followed by UTF-8 bytes (or raw bytes)
+ *  - LIST : varint count followed by the values
+ *  - MAP : varint count followed by key & value pairs
+ *  - OBJECT_DEF : varint schema id, varint field count, field names (as length-prefixed UTF-8) and the field values
+ *  - OBJECT : varint schema id followed by the field values in the order of the schema
+ *  - STRING_REF : varint id of the string in {@link net.doodream.yarmi.serde.StringDictionary} of the connection
+ *
+ *  schema of a class is the list of fields, which is selected by the same rule as {@link net.doodream.yarmi.serde.bson.BsonConverter}
+ *  (every non-static, non-transient field including private ones, super class first and in declared order).
+ *  the classes of the protocol itself (e.g. {@link net.doodream.yarmi.data.Request}) have builtin schema id known to both side,
+ *  while schema of the other classes is defined with field names at its first occurrence in a message and referred by id afterward.
+ *  so field names are written at most once per message, instead of once per object.
+ *
+ *  with the dictionary, key-like strings (endpoint, session key, field names, enum names and string keys of map) are
+ *  written as references. field name referred from the dictionary is written as 0 (invalid length of name) followed by varint id.
+ */
+final class CompactFormat {
+
+    static final int NULL = 0;
+    static final int FALSE = 1;
+    static final int TRUE = 2;
+    static final int INT = 3;
+    static final int LONG = 4;
+    static final int FLOAT = 5;
+    static final int DOUBLE = 6;
+    static final int STRING = 7;
+    static final int BINARY = 8;
+    static final int LIST = 9;
+    static final int MAP = 10;
+    static final int OBJECT_DEF = 11;
+    static final int OBJECT = 12;
+    static final int STRING_REF = 13;
+
+    private CompactFormat() { }
+}
@@ -0,0 +1,83 @@
+package net.doodream.yarmi.serde.compact;
+
+import net.doodream.yarmi.data.LazyBody;
+import net.doodream.yarmi.serde.ResolverCompiler;
+import net.doodream.yarmi.serde.StringDictionary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ *  response body copied out of the frame in {@link CompactFormat}, which is decoded on demand.
+ *  the body is self-contained except the strings of {@link StringDictionary}, which are never evicted during the connection
+ */
+final class CompactLazyBody implements LazyBody {
+
+    private final byte[] encoded;
+    private final Type type;
+    private final ResolverCompiler resolverCompiler;
+    private final StringDictionary dictionary;
+
+    /**
+     * @param encoded encoded body
+     * @param type return type of the endpoint, or null to decode in generic form
+     */
+    CompactLazyBody(byte[] encoded, Type type, ResolverCompiler resolverCompiler, StringDictionary dictionary) {
+        this.encoded = encoded;
+        this.type = type;
+        this.resolverCompiler = resolverCompiler;
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public Object decode() throws IOException {
+        return newDecoder().readValue(type);
+    }
+
+    @Override
+    public <E> Iterator<E> iterator() throws IOException {
+        final CompactDecoder decoder = newDecoder();
+        final int count = decoder.readCollectionHeader();
+        if(count < 0) {
+            return Collections.emptyIterator();
+        }
+        final Type elementType = CompactDecoder.elementTypeOf(type);
+        return new Iterator<E>() {
+            // schemas defined by the previous elements are kept in the decoder
+            private int remaining = count;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if(remaining <= 0) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                try {
+                    return (E) decoder.readValue(elementType);
+                } catch (IOException e) {
+                    remaining = 0;
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return encoded.length;
+    }
+
+    private CompactDecoder newDecoder() {
+        return new CompactDecoder(encoded, 0, encoded.length, null, resolverCompiler, dictionary);
+    }
+}
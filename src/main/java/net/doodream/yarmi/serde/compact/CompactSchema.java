@@ -0,0 +1,201 @@
+package net.doodream.yarmi.serde.compact;
+
+import net.doodream.yarmi.data.ControllerInfo;
+import net.doodream.yarmi.data.Param;
+import net.doodream.yarmi.data.RMIServiceInfo;
+import net.doodream.yarmi.data.Request;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.session.BlobSession;
+import net.doodream.yarmi.net.session.SessionControlMessage;
+import net.doodream.yarmi.net.session.param.SCMChunkParam;
+import net.doodream.yarmi.net.session.param.SCMErrorParam;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *  field table of a class used by {@link CompactConverter}, which is built once per class and shared
+ */
+final class CompactSchema {
+
+    static final int NOT_BUILTIN = 0;
+
+    // order of the classes defines builtin schema id, so new class should be appended at the end
+    private static final Class<?>[] BUILTIN_CLASSES = {
+            Request.class,
+            Response.class,
+            Param.class,
+            SessionControlMessage.class,
+            BlobSession.class,
+            SCMChunkParam.class,
+            SCMErrorParam.class,
+            RMIServiceInfo.class,
+            ControllerInfo.class
+    };
+    // fields of builtin classes which are likely repeated over the connection, refer StringDictionary
+    private static final List<String> KEY_FIELDS = Arrays.asList("endpoint", "key", "mime");
+    private static final Map<Class<?>, CompactSchema> SCHEMAS = new ConcurrentHashMap<>();
+    private static final CompactSchema[] BUILTIN_SCHEMAS = new CompactSchema[BUILTIN_CLASSES.length];
+
+    static {
+        for (int i = 0; i < BUILTIN_CLASSES.length; i++) {
+            final CompactSchema schema = new CompactSchema(BUILTIN_CLASSES[i], i + 1);
+            BUILTIN_SCHEMAS[i] = schema;
+            SCHEMAS.put(schema.cls, schema);
+        }
+    }
+
+    private final Class<?> cls;
+    private final int builtinId;
+    private final Field[] fields;
+    private final String[] names;
+    private final Type[] types;
+    private final boolean[] keys;
+    private final Map<String, Integer> indexByName;
+    private final Constructor<?> constructor;
+
+    private CompactSchema(Class<?> cls, int builtinId) {
+        this.cls = cls;
+        this.builtinId = builtinId;
+        final List<Field> collected = new ArrayList<>();
+        collectFields(cls, collected);
+        fields = collected.toArray(new Field[0]);
+        names = new String[fields.length];
+        types = new Type[fields.length];
+        keys = new boolean[fields.length];
+        final Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < fields.length; i++) {
+            fields[i].setAccessible(true);
+            names[i] = fields[i].getName();
+            types[i] = fields[i].getGenericType();
+            index.put(names[i], i);
+            keys[i] = (builtinId != NOT_BUILTIN) && KEY_FIELDS.contains(names[i]) && (fields[i].getType() == String.class);
+        }
+        indexByName = Collections.unmodifiableMap(index);
+        constructor = findConstructor(cls);
+    }
+
+    /**
+     * @param cls class of the object
+     * @return schema of the class
+     */
+    static CompactSchema of(Class<?> cls) {
+        CompactSchema schema = SCHEMAS.get(cls);
+        if(schema != null) {
+            return schema;
+        }
+        schema = new CompactSchema(cls, NOT_BUILTIN);
+        final CompactSchema prev = SCHEMAS.putIfAbsent(cls, schema);
+        return prev == null ? schema : prev;
+    }
+
+    /**
+     * @param id builtin schema id
+     * @return builtin schema or null if no schema for the id
+     */
+    static CompactSchema builtin(int id) {
+        if((id <= NOT_BUILTIN) || (id > BUILTIN_SCHEMAS.length)) {
+            return null;
+        }
+        return BUILTIN_SCHEMAS[id - 1];
+    }
+
+    /**
+     * @return number of builtin schema, schema id defined in a message starts from the next of it
+     */
+    static int getBuiltinCount() {
+        return BUILTIN_SCHEMAS.length;
+    }
+
+    private static void collectFields(Class<?> cls, List<Field> into) {
+        if((cls == null) || (cls == Object.class)) {
+            return;
+        }
+        collectFields(cls.getSuperclass(), into);
+        for (Field field : cls.getDeclaredFields()) {
+            final int modifiers = field.getModifiers();
+            if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                continue;
+            }
+            into.add(field);
+        }
+    }
+
+    private static Constructor<?> findConstructor(Class<?> cls) {
+        if(cls.isInterface() || Modifier.isAbstract(cls.getModifiers())) {
+            return null;
+        }
+        try {
+            final Constructor<?> constructor = cls.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException | SecurityException e) {
+            return null;
+        }
+    }
+
+    Class<?> getSchemaClass() {
+        return cls;
+    }
+
+    int getBuiltinId() {
+        return builtinId;
+    }
+
+    int size() {
+        return fields.length;
+    }
+
+    String[] getNames() {
+        return names;
+    }
+
+    Type getType(int index) {
+        return types[index];
+    }
+
+    /**
+     * @return true if the field is key-like string of the protocol, e.g. endpoint of {@link Request}
+     */
+    boolean isKey(int index) {
+        return keys[index];
+    }
+
+    boolean isPrimitive(int index) {
+        return fields[index].getType().isPrimitive();
+    }
+
+    /**
+     * @param name name of the field
+     * @return index of the field or -1 if the class doesn't have the field
+     */
+    int indexOf(String name) {
+        final Integer index = indexByName.get(name);
+        return index == null ? -1 : index;
+    }
+
+    boolean isInstantiable() {
+        return constructor != null;
+    }
+
+    Object newInstance() throws ReflectiveOperationException {
+        return constructor.newInstance();
+    }
+
+    Object get(Object object, int index) throws IllegalAccessException {
+        return fields[index].get(object);
+    }
+
+    void set(Object object, int index, Object value) throws IllegalAccessException {
+        fields[index].set(object, value);
+    }
+}
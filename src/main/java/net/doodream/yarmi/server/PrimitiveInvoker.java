@@ -0,0 +1,84 @@
+package net.doodream.yarmi.server;
+
+import net.doodream.yarmi.data.Endpoint;
+import net.doodream.yarmi.data.PrimitiveArgs;
+import net.doodream.yarmi.data.Response;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ *  invoker of primitive endpoint (refer {@link Endpoint#isPrimitive()}) compiled into single {@link MethodHandle},
+ *  which reads each argument from {@link PrimitiveArgs} with the getter of its type. so the method is called with
+ *  {@link MethodHandle#invokeExact(Object...)} without boxing arguments into {@code Object[]} and reflective invocation
+ */
+public final class PrimitiveInvoker {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Response.class, PrimitiveArgs.class);
+
+    private final MethodHandle handle;
+
+    /**
+     * @param endpoint endpoint to invoke
+     * @param impl implementation of the controller
+     * @return compiled invoker or null if the endpoint is not primitive
+     * @throws IllegalAccessException the method is not accessible
+     */
+    public static PrimitiveInvoker compile(Endpoint endpoint, Object impl) throws IllegalAccessException {
+        if(!endpoint.isPrimitive()) {
+            return null;
+        }
+        final Method method = endpoint.getJMethod();
+        method.setAccessible(true);
+        MethodHandle handle = LOOKUP.unreflect(method).bindTo(impl);
+
+        final Class<?>[] types = endpoint.getPrimitiveTypes();
+        if(types.length == 0) {
+            handle = MethodHandles.dropArguments(handle, 0, PrimitiveArgs.class);
+        } else {
+            final MethodHandle[] getters = new MethodHandle[types.length];
+            for (int i = 0; i < types.length; i++) {
+                getters[i] = MethodHandles.insertArguments(getter(types[i]), 1, i);
+            }
+            // (PrimitiveArgs, PrimitiveArgs, ...) -> Response is collapsed into (PrimitiveArgs) -> Response
+            handle = MethodHandles.permuteArguments(MethodHandles.filterArguments(handle, 0, getters), INVOKER_TYPE, new int[types.length]);
+        }
+        return new PrimitiveInvoker(handle.asType(INVOKER_TYPE));
+    }
+
+    private static MethodHandle getter(Class<?> type) throws IllegalAccessException {
+        final String name;
+        if(type == String.class) {
+            name = "getString";
+        } else {
+            name = "get" + Character.toUpperCase(type.getName().charAt(0)) + type.getName().substring(1);
+        }
+        try {
+            return LOOKUP.findVirtual(PrimitiveArgs.class, name, MethodType.methodType(type, int.class));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(String.format("no getter for %s", type.getName()), e);
+        }
+    }
+
+    private PrimitiveInvoker(MethodHandle handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * invoke the method with given arguments
+     * @param args arguments for the endpoint
+     * @return {@link Response} returned from the method
+     * @throws InvocationTargetException exception occurred within the method call
+     */
+    public Response invoke(PrimitiveArgs args) throws InvocationTargetException {
+        try {
+            return (Response) handle.invokeExact(args);
+        } catch (Throwable throwable) {
+            throw new InvocationTargetException(throwable);
+        }
+    }
+}
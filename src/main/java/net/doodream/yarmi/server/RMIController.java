@@ -14,12 +14,14 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public class RMIController {
 
     private static final Logger Log = LoggerFactory.getLogger(RMIController.class);
     private Controller controller;
     private Map<String, Endpoint> endpointMap;
+    private Map<String, PrimitiveInvoker> invokerMap;
     private Class stub;
     private Object impl;
 
@@ -46,6 +48,11 @@ public class RMIController {
             return this;
         }
 
+        public Builder invokerMap(HashMap<String, PrimitiveInvoker> invokerMap) {
+            controller.invokerMap = invokerMap;
+            return this;
+        }
+
         public RMIController build() {
             return controller;
         }
@@ -88,6 +95,7 @@ public class RMIController {
         }
         final Object validImpl = impl;
         final HashMap<String, Endpoint> endpointMap = new HashMap<>();
+        final HashMap<String, PrimitiveInvoker> invokerMap = new HashMap<>();
 
         for (Method method : cls.getDeclaredMethods()) {
             if(!RMIMethod.isValidMethod(method)) {
@@ -96,12 +104,14 @@ public class RMIController {
 
             final Endpoint endpoint = Endpoint.create(controller, method);
             RMIController.collectMethod(endpointMap, endpoint);
+            RMIController.collectInvoker(invokerMap, endpoint, validImpl);
         }
 
         return RMIController.builder()
                 .impl(validImpl)
                 .controller(controller)
                 .endpointMap(endpointMap)
+                .invokerMap(invokerMap)
                 .stub(cls)
                 .build();
 
@@ -127,6 +137,23 @@ public class RMIController {
         map.put(endpoint.getUnique(), endpoint);
     }
 
+    /**
+     * compile {@link PrimitiveInvoker} for primitive endpoint, the other endpoints are invoked reflectively
+     * @param map map to collect invoker into
+     * @param endpoint endpoint to be compiled
+     * @param impl implementation of the controller
+     */
+    private static void collectInvoker(HashMap<String, PrimitiveInvoker> map, Endpoint endpoint, Object impl) {
+        try {
+            final PrimitiveInvoker invoker = PrimitiveInvoker.compile(endpoint, impl);
+            if(invoker != null) {
+                map.put(endpoint.getUnique(), invoker);
+            }
+        } catch (IllegalAccessException | RuntimeException e) {
+            Log.warn("fail to compile invoker for {} : {}", endpoint.getJMethod().getName(), e.getMessage());
+        }
+    }
+
     /**
      * check the controller is valid or not
      * @param field field
@@ -161,6 +188,15 @@ public class RMIController {
         return new ArrayList<>(endpointMap.keySet());
     }
 
+    /**
+     * return {@link Endpoint} mapped to the hash
+     * @param unique unique hash of the endpoint
+     * @return {@link Endpoint} or null if not exists
+     */
+    Endpoint getEndpoint(String unique) {
+        return endpointMap.get(unique);
+    }
+
     /**
      * handle client request and return response
      * @param request valid {@link Request} from client
@@ -176,7 +212,20 @@ public class RMIController {
             return Response.from(RMIError.NOT_FOUND);
         }
 
-        final Type[] types = endpoint.getJMethod().getGenericParameterTypes();
+        final PrimitiveInvoker invoker = invokerMap.get(endpoint.getUnique());
+        if(invoker != null) {
+            PrimitiveArgs args = request.getArgs();
+            if(args == null) {
+                args = PrimitiveArgs.from(endpoint, request.getParams());
+            }
+            Log.trace("invoke primitive request handler {} for ({})", endpoint.getJMethod().getName(), request.getNonce());
+            return invoker.invoke(args);
+        }
+        if(request.getArgs() != null) {
+            return toResponse(endpoint.getJMethod().invoke(impl, request.getArgs().toArray()));
+        }
+
+        final Type[] types = endpoint.getParamTypes();
         final List<Param> unresolvedParams = request.getParams();
         final List<Object> resolvedParams = new ArrayList<>();
         unresolvedParams.sort((o1, o2) -> Param.sort(o1, o2));
@@ -196,6 +245,19 @@ public class RMIController {
         }
 
         Log.trace("invoke request handler {} for ({})", endpoint.getJMethod().getName(), request.getNonce());
-        return (Response) endpoint.getJMethod().invoke(impl, resolvedParams.toArray(new Object[0]));
+        return toResponse(endpoint.getJMethod().invoke(impl, resolvedParams.toArray(new Object[0])));
+    }
+
+    /**
+     * async method ({@link Endpoint#isAsync()}) returns future of the response, which is handed over as {@link Response#deferred(CompletableFuture)}
+     */
+    private static Response toResponse(Object result) {
+        if(result instanceof CompletableFuture) {
+            // async method is validated to return future of the response on creating its endpoint
+            @SuppressWarnings("unchecked")
+            final CompletableFuture<? extends Response> future = (CompletableFuture<? extends Response>) result;
+            return Response.deferred(future);
+        }
+        return (Response) result;
     }
 }
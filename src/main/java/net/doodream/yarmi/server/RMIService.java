@@ -16,9 +16,12 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Created by innocentevil on 18. 5. 4.
@@ -77,6 +80,18 @@ public class RMIService {
      * @return
      */
     public static RMIService create(Class<?> cls, final Object ...controllerImpls) throws IllegalArgumentException {
+        return create(cls, Collections.<String, String>emptyMap(), controllerImpls);
+    }
+
+    /**
+     * create service with the parameters overriding the ones declared by the service definition class,
+     * e.g. to run multiple instances of the same service on the different ports
+     * @param cls service definition class
+     * @param overrides parameters replacing the declared ones
+     * @param controllerImpls implementations of the controllers
+     * @return {@link RMIService} created from the service definition class
+     */
+    public static RMIService create(Class<?> cls, Map<String, String> overrides, final Object ...controllerImpls) throws IllegalArgumentException {
 
         Service service = cls.getAnnotation(Service.class);
         final AdapterParam[] params = service.params();
@@ -84,6 +99,9 @@ public class RMIService {
         for (AdapterParam param : params) {
             paramAsMap.put(param.key(), param.value());
         }
+        if(overrides != null) {
+            paramAsMap.putAll(overrides);
+        }
 
         try {
             final ServiceAdapter adapter = service.adapter().newInstance();
@@ -178,7 +196,7 @@ public class RMIService {
      * @throws InstantiationException if dependent class represents an abstract class,an interface, an array class, a primitive type, or void;or if the class has no nullary constructor;
      */
     public void listen(InetAddress network) throws IllegalAccessException, IOException, InstantiationException {
-        serviceInfo.setProxyFactoryHint(adapter.listen(serviceInfo, network, request -> {
+        serviceInfo.setProxyFactoryHint(adapter.listen(serviceInfo, network, this::lookupEndpoint, request -> {
             try {
                 return routeRequest(request);
             } catch (IllegalAccessException | InvalidResponseException | IOException e) {
@@ -187,6 +205,19 @@ public class RMIService {
         }));
     }
 
+    /**
+     * lookup {@link Endpoint} from its unique hash, used to decode parameters of the request into declared types
+     * @param unique unique hash of the endpoint
+     * @return {@link Endpoint} or null if no controller has the endpoint
+     */
+    private Endpoint lookupEndpoint(String unique) {
+        final RMIController controller = controllerMap.get(unique);
+        if(controller == null) {
+            return null;
+        }
+        return controller.getEndpoint(unique);
+    }
+
     /**
      * route {@link Request} to target controller
      * @param request @{@link Request} from the client
@@ -210,6 +241,10 @@ public class RMIService {
                 if (response == null) {
                     response = Response.from(RMIError.NOT_IMPLEMENTED);
                 }
+                if (response.isDeferred()) {
+                    final CompletableFuture<Response> deferred = response.getDeferred();
+                    return Response.deferred(deferred.handle((completed, throwable) -> endDeferred(completed, throwable, request)));
+                }
                 return end(response, request);
             } catch (InvocationTargetException e) {
                 Log.error("InvocationError : {}", e);
@@ -220,6 +255,21 @@ public class RMIService {
         return end(Response.from(RMIError.NOT_FOUND), request);
     }
 
+    /**
+     * end the response of async controller method when it's completed
+     */
+    private Response endDeferred(Response res, Throwable throwable, Request req) {
+        try {
+            if(throwable != null) {
+                Log.error("InvocationError : {}", throwable);
+                return end(Response.from(RMIError.INTERNAL_SERVER_ERROR), req);
+            }
+            return end((res != null) ? res : Response.from(RMIError.NOT_IMPLEMENTED), req);
+        } catch (InvalidResponseException | IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
     /**
      *
      * @param res {@link Response} from controller
@@ -257,4 +307,18 @@ public class RMIService {
     public RMIServiceInfo getServiceInfo() {
         return serviceInfo;
     }
+
+    /**
+     * @return number of the requests dropped by the service, since the caller has given up before they're handled
+     */
+    public long getExpiredRequests() {
+        return adapter.getExpiredRequests();
+    }
+
+    /**
+     * @return number of the requests cancelled by the caller, whose response is not written
+     */
+    public long getCancelledRequests() {
+        return adapter.getCancelledRequests();
+    }
 }
@@ -0,0 +1,129 @@
+package net.doodream.yarmi.client;
+
+import net.doodream.yarmi.data.Endpoint;
+import net.doodream.yarmi.method.RMIMethod;
+import net.doodream.yarmi.test.service.echoback.DelayedResponseController;
+import net.doodream.yarmi.test.service.echoback.EchoBackController;
+import net.doodream.yarmi.test.service.echoback.EchoBackService;
+import net.doodream.yarmi.test.service.echoback.PrimitiveEchoBackController;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+
+public class StubPlanTest {
+
+    @Test
+    public void reusePlan() throws Exception {
+        final StubPlan echoPlan = StubPlan.get(EchoBackService.class, new Class[]{ EchoBackController.class });
+        Assert.assertSame(echoPlan, StubPlan.get(EchoBackService.class, new Class[]{ EchoBackController.class }));
+
+        // controller set is compared regardless of its order
+        final StubPlan bothPlan = StubPlan.get(EchoBackService.class, new Class[]{ EchoBackController.class, PrimitiveEchoBackController.class });
+        Assert.assertSame(bothPlan, StubPlan.get(EchoBackService.class, new Class[]{ PrimitiveEchoBackController.class, EchoBackController.class }));
+        Assert.assertNotSame(echoPlan, bothPlan);
+
+        // null for all the controllers declared
+        final StubPlan allPlan = StubPlan.get(EchoBackService.class, null);
+        Assert.assertSame(allPlan, StubPlan.get(EchoBackService.class, null));
+        Assert.assertTrue(allPlan.getEndpoints().containsKey(DelayedResponseController.class.getMethods()[0]));
+        Assert.assertFalse(bothPlan.getEndpoints().containsKey(DelayedResponseController.class.getMethods()[0]));
+    }
+
+    @Test
+    public void dispatchPerController() throws Exception {
+        final StubPlan plan = StubPlan.get(EchoBackService.class, new Class[]{ EchoBackController.class, PrimitiveEchoBackController.class });
+        for (Class<?> controller : new Class[]{ EchoBackController.class, PrimitiveEchoBackController.class }) {
+            for (Method method : controller.getMethods()) {
+                if(!RMIMethod.isValidMethod(method)) {
+                    continue;
+                }
+                final Endpoint endpoint = plan.resolve(method);
+                Assert.assertNotNull(endpoint);
+                Assert.assertEquals(method, endpoint.getJMethod());
+                // found from the dispatch table on the next call
+                Assert.assertSame(endpoint, plan.resolve(method));
+            }
+        }
+        // methods out of the controllers of the plan have no endpoint
+        for (Method method : DelayedResponseController.class.getMethods()) {
+            Assert.assertNull(plan.resolve(method));
+        }
+        Assert.assertNull(plan.resolve(Object.class.getMethod("toString")));
+    }
+
+    @Test
+    public void notCacheInvalidService() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            try {
+                StubPlan.get(String.class, null);
+                Assert.fail("plan built for invalid service");
+            } catch (IllegalArgumentException expected) { }
+        }
+    }
+
+    @Test
+    public void unloadServiceClass() throws Exception {
+        ClassLoader loader = new ServiceClassLoader();
+        final WeakReference<ClassLoader> loaderRef = new WeakReference<>(loader);
+        Class<?> svc = loader.loadClass(EchoBackService.class.getName());
+        Assert.assertNotSame(EchoBackService.class, svc);
+        Assert.assertSame(StubPlan.get(svc, new Class[]{ EchoBackController.class }), StubPlan.get(svc, new Class[]{ EchoBackController.class }));
+
+        // cached plan doesn't keep the class loader of the service class
+        svc = null;
+        loader = null;
+        for (int i = 0; (i < 20) && (loaderRef.get() != null); i++) {
+            System.gc();
+            Thread.sleep(50L);
+        }
+        Assert.assertNull(loaderRef.get());
+    }
+
+    /**
+     * loads its own copy of the service class, while the other classes (e.g. controllers) are loaded by the parent
+     */
+    private static class ServiceClassLoader extends ClassLoader {
+
+        private ServiceClassLoader() {
+            super(StubPlanTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if(!EchoBackService.class.getName().equals(name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if(loaded == null) {
+                    loaded = findClass(name);
+                }
+                return loaded;
+            }
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            try (InputStream is = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                if(is == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[4096];
+                int read;
+                while ((read = is.read(buffer)) > 0) {
+                    bos.write(buffer, 0, read);
+                }
+                final byte[] bytes = bos.toByteArray();
+                return defineClass(name, bytes, 0, bytes.length);
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+}
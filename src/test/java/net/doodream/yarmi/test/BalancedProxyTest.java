@@ -0,0 +1,179 @@
+package net.doodream.yarmi.test;
+
+import net.doodream.yarmi.annotation.server.Controller;
+import net.doodream.yarmi.client.RMIClient;
+import net.doodream.yarmi.data.Endpoint;
+import net.doodream.yarmi.data.RMIServiceInfo;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.BalancedServiceProxy;
+import net.doodream.yarmi.net.tcp.TcpServiceAdapter;
+import net.doodream.yarmi.serde.Converter;
+import net.doodream.yarmi.server.RMIService;
+import net.doodream.yarmi.test.service.echoback.DelayedResponseController;
+import net.doodream.yarmi.test.service.echoback.EchoBackService;
+import net.doodream.yarmi.test.service.echoback.PooledEchoBackService;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class BalancedProxyTest {
+
+    private static RMIService service;
+    private static RMIService otherService;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        service = RMIService.create(EchoBackService.class);
+        service.listen();
+        // another instance of the same service
+        otherService = RMIService.create(EchoBackService.class, Collections.singletonMap(TcpServiceAdapter.PARAM_PORT, "6467"));
+        otherService.listen();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        service.stop();
+        otherService.stop();
+    }
+
+    @Test
+    public void balanceOverInstances() throws Exception {
+        Assert.assertEquals(service.getServiceInfo().getName(), otherService.getServiceInfo().getName());
+        Assert.assertNotEquals(service.getServiceInfo().getParams().get(TcpServiceAdapter.PARAM_PORT),
+                otherService.getServiceInfo().getParams().get(TcpServiceAdapter.PARAM_PORT));
+        final BalancedServiceProxy balancer = BalancedServiceProxy.create(Arrays.asList(service.getServiceInfo(), otherService.getServiceInfo()));
+        Assert.assertTrue(balancer.open());
+        Assert.assertEquals(2, balancer.getAvailable());
+
+        final Endpoint endpoint = getDelayedResponseEndpoint();
+        for (int round = 0; round < 4; round++) {
+            final List<CompletableFuture<Response<?>>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(balancer.requestAsync(endpoint, 5000L, 50L));
+            }
+            for (CompletableFuture<Response<?>> future : futures) {
+                Assert.assertTrue(future.get(5, TimeUnit.SECONDS).isSuccessful());
+            }
+        }
+        // outstanding requests spread the calls over both of the instances
+        Assert.assertTrue(balancer.getCompleted(0) > 0);
+        Assert.assertTrue(balancer.getCompleted(1) > 0);
+        Assert.assertEquals(40, balancer.getCompleted(0) + balancer.getCompleted(1));
+        balancer.close(false);
+    }
+
+    @Test
+    public void ejectUnreachableInstance() throws Exception {
+        final RMIServiceInfo serviceInfo = service.getServiceInfo();
+        final Map<String, String> params = new HashMap<>(serviceInfo.getParams());
+        // nobody listens to the port
+        params.put(TcpServiceAdapter.PARAM_PORT, "6499");
+        final RMIServiceInfo unreachable = RMIServiceInfo.builder()
+                .version(serviceInfo.getVersion())
+                .adapter(serviceInfo.getAdapter())
+                .negotiator(serviceInfo.getNegotiator())
+                .converter(serviceInfo.getConverter())
+                .params(params)
+                .controllerInfos(serviceInfo.getControllerInfos())
+                .provider(serviceInfo.getProvider())
+                .name(serviceInfo.getName())
+                .build();
+        unreachable.setProxyFactoryHint(serviceInfo.getProxyFactoryHint());
+
+        final BalancedServiceProxy balancer = BalancedServiceProxy.create(Arrays.asList(unreachable, serviceInfo));
+        Assert.assertTrue(balancer.open());
+        Assert.assertEquals(1, balancer.getEjections());
+        Assert.assertEquals(1, balancer.getAvailable());
+        final Endpoint endpoint = getDelayedResponseEndpoint();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(balancer.request(endpoint, 5000L, 1L).isSuccessful());
+        }
+        Assert.assertEquals(10, balancer.getCompleted(1));
+        balancer.close(false);
+
+        final Object client = RMIClient.create(Arrays.asList(unreachable, serviceInfo), EchoBackService.class, new Class[] {
+                DelayedResponseController.class
+        }, 5000L);
+        Assert.assertNotNull(client);
+        final DelayedResponseController controller = (DelayedResponseController) client;
+        for (int i = 0; i < 20; i++) {
+            final Response response = controller.getDelayedResponse(1L);
+            Assert.assertTrue(response.isSuccessful());
+        }
+        RMIClient.destroy(client);
+    }
+
+    @Test
+    public void retryOpenAfterAllInstancesFailed() throws Exception {
+        final RMIServiceInfo serviceInfo = service.getServiceInfo();
+        final List<RMIServiceInfo> infos = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            // converter is not instantiable
+            final RMIServiceInfo broken = RMIServiceInfo.builder()
+                    .version(serviceInfo.getVersion())
+                    .adapter(serviceInfo.getAdapter())
+                    .negotiator(serviceInfo.getNegotiator())
+                    .converter(Converter.class)
+                    .params(serviceInfo.getParams())
+                    .controllerInfos(serviceInfo.getControllerInfos())
+                    .provider(serviceInfo.getProvider())
+                    .name(serviceInfo.getName())
+                    .build();
+            broken.setProxyFactoryHint(serviceInfo.getProxyFactoryHint());
+            infos.add(broken);
+        }
+
+        final BalancedServiceProxy balancer = BalancedServiceProxy.create(infos);
+        // failure of the instances is thrown on every open, not left as opened
+        for (int i = 0; i < 2; i++) {
+            try {
+                balancer.open();
+                Assert.fail("balancer opened without instance");
+            } catch (InstantiationException expected) { }
+        }
+        try {
+            balancer.request(getDelayedResponseEndpoint(), 5000L, 1L);
+            Assert.fail("call through balancer not opened");
+        } catch (IOException expected) { }
+    }
+
+    @Test
+    public void rejectInstancesOfDifferentServices() throws Exception {
+        final RMIServiceInfo serviceInfo = service.getServiceInfo();
+        final Map<String, String> params = new HashMap<>(serviceInfo.getParams());
+        params.put(BalancedServiceProxy.PARAM_MAX_FAILURES, "1");
+        final RMIServiceInfo reconfigured = RMIServiceInfo.builder()
+                .version(serviceInfo.getVersion())
+                .adapter(serviceInfo.getAdapter())
+                .negotiator(serviceInfo.getNegotiator())
+                .converter(serviceInfo.getConverter())
+                .params(params)
+                .controllerInfos(serviceInfo.getControllerInfos())
+                .provider(serviceInfo.getProvider())
+                .name(serviceInfo.getName())
+                .build();
+
+        for (RMIServiceInfo other : Arrays.asList(reconfigured, RMIServiceInfo.from(PooledEchoBackService.class))) {
+            try {
+                BalancedServiceProxy.create(Arrays.asList(serviceInfo, other));
+                Assert.fail("balancer created over different services");
+            } catch (IllegalArgumentException expected) { }
+        }
+    }
+
+    private static Endpoint getDelayedResponseEndpoint() throws Exception {
+        return Endpoint.create(EchoBackService.class.getDeclaredField("delayedResponseController").getAnnotation(Controller.class),
+                DelayedResponseController.class.getMethod("getDelayedResponse", long.class));
+    }
+}
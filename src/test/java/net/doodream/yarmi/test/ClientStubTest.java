@@ -0,0 +1,78 @@
+package net.doodream.yarmi.test;
+
+import net.doodream.yarmi.client.ClientStub;
+import net.doodream.yarmi.client.RMIClient;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.server.RMIService;
+import net.doodream.yarmi.test.data.User;
+import net.doodream.yarmi.test.service.echoback.EchoBackController;
+import net.doodream.yarmi.test.service.echoback.EchoBackService;
+import net.doodream.yarmi.test.service.echoback.PrimitiveEchoBackController;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ClientStubTest {
+
+    private static RMIService service;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        service = RMIService.create(EchoBackService.class);
+        service.listen();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        service.stop();
+    }
+
+    @Test
+    public void generatedStubForSingleController() throws Exception {
+        final Object client = buildNewClient(EchoBackController.class);
+        Assert.assertTrue(client instanceof ClientStub);
+        Assert.assertEquals(EchoBackController.class.getName() + "_YarmiStub", client.getClass().getName());
+
+        final EchoBackController controller = (EchoBackController) client;
+        final Response<String> response = controller.sendMessage("stub");
+        Assert.assertTrue(response.isSuccessful());
+        Assert.assertEquals("stub", response.getBody());
+
+        final List<String> list = Arrays.asList("a", "b");
+        Assert.assertEquals(list, controller.sendList(list).getBody());
+        final User user = new User();
+        user.setName("stub");
+        Assert.assertEquals(user, controller.sendJavaObject(user).getBody());
+
+        RMIClient.destroy(client);
+    }
+
+    @Test
+    public void generatedStubForPrimitiveParams() throws Exception {
+        final Object client = buildNewClient(PrimitiveEchoBackController.class);
+        Assert.assertTrue(client instanceof ClientStub);
+
+        final Response<Integer> response = ((PrimitiveEchoBackController) client).echoBackInteger(7);
+        Assert.assertTrue(response.isSuccessful());
+        Assert.assertEquals(Integer.valueOf(7), response.getBody());
+        RMIClient.destroy(client, true);
+    }
+
+    @Test
+    public void reflectiveProxyForMultipleControllers() throws Exception {
+        final Object client = buildNewClient(EchoBackController.class, PrimitiveEchoBackController.class);
+        Assert.assertTrue(Proxy.isProxyClass(client.getClass()));
+        Assert.assertEquals("proxy", ((EchoBackController) client).sendMessage("proxy").getBody());
+        RMIClient.destroy(client);
+    }
+
+    private static Object buildNewClient(Class<?>... controllers) {
+        return RMIClient.create(service.getServiceInfo(), EchoBackService.class, controllers, 5000L, TimeUnit.MILLISECONDS);
+    }
+}
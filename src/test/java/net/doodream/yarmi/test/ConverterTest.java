@@ -2,36 +2,67 @@ package net.doodream.yarmi.test;
 
 
 import com.doodream.cutils.Types;
+import net.doodream.yarmi.annotation.server.Controller;
+import net.doodream.yarmi.data.Endpoint;
 import net.doodream.yarmi.data.RMIServiceInfo;
 import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.NegotiatedRMISocket;
+import net.doodream.yarmi.net.RMISocket;
+import net.doodream.yarmi.net.frame.FrameChannel;
+import net.doodream.yarmi.net.frame.FrameCompressor;
+import net.doodream.yarmi.net.frame.FrameSendQueue;
+import net.doodream.yarmi.serde.ByteBufferPool;
 import net.doodream.yarmi.serde.Converter;
+import net.doodream.yarmi.serde.EndpointLookup;
 import net.doodream.yarmi.serde.Reader;
+import net.doodream.yarmi.serde.StringDictionary;
 import net.doodream.yarmi.serde.Writer;
 import net.doodream.yarmi.serde.bson.BsonConverter;
+import net.doodream.yarmi.serde.compact.CompactConverter;
+import net.doodream.yarmi.test.data.ComplexObject;
 import net.doodream.yarmi.test.data.User;
+import net.doodream.yarmi.test.service.echoback.EchoBackController;
 import net.doodream.yarmi.test.service.echoback.EchoBackService;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class ConverterTest {
-
+    private static final Logger Log = LoggerFactory.getLogger(ConverterTest.class);
 
     private List<Converter> converters;
 
     @Before
     public void setup() {
         converters = Arrays.asList(
-                new BsonConverter()
+                new BsonConverter(),
+                new CompactConverter()
         );
     }
 
@@ -52,6 +83,379 @@ public class ConverterTest {
         }
     }
 
+    @Test
+    public void typedBindingTest() throws NoSuchFieldException, NoSuchMethodException, IOException {
+        final Controller controller = EchoBackService.class.getDeclaredField("echoBackController").getAnnotation(Controller.class);
+        final Endpoint endpoint = Endpoint.create(controller, EchoBackController.class.getMethod("sendUserList", List.class));
+        User user = new User();
+        user.setName("James");
+        user.setAge(30);
+        final List<User> users = Arrays.asList(user);
+
+        for (Converter converter : converters) {
+            final Response<List<User>> response = Response.success(users);
+            response.setEndpoint(endpoint.getUnique());
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            converter.writer(baos).write(response);
+
+            // body is bound into return type of the endpoint while parsing, without resolution
+            Reader reader = converter.reader(new ByteArrayInputStream(baos.toByteArray()), unique -> endpoint.getUnique().equals(unique) ? endpoint : null);
+            Response parsed = reader.read(Response.class);
+            Assert.assertEquals(users, parsed.getBody());
+            Assert.assertTrue(((List) parsed.getBody()).get(0) instanceof User);
+        }
+    }
+
+    @Test
+    public void byteBufferTest() throws NoSuchFieldException, NoSuchMethodException, IOException {
+        final Controller controller = EchoBackService.class.getDeclaredField("echoBackController").getAnnotation(Controller.class);
+        final Endpoint endpoint = Endpoint.create(controller, EchoBackController.class.getMethod("sendUserList", List.class));
+        final List<User> users = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            users.add(User.builder().name("user" + i).age(i).build());
+        }
+        final Response<List<User>> response = Response.success(users);
+        response.setEndpoint(endpoint.getUnique());
+
+        for (Converter converter : converters) {
+            for (ByteBufferPool pool : Arrays.asList(new ByteBufferPool(4, false), new ByteBufferPool(4, true))) {
+                final ByteBuffer encoded = converter.convert(response, pool);
+                Assert.assertEquals(pool.isDirect(), encoded.isDirect());
+                Assert.assertArrayEquals(converter.convert(response), toArray(encoded));
+
+                // message is decoded from the slice of larger buffer, e.g. a batch read from channel
+                final ByteBuffer batch = pool.acquire(encoded.remaining() + 16);
+                batch.put(new byte[16]).put(encoded.duplicate());
+                batch.flip();
+                batch.position(16);
+                final ByteBuffer slice = batch.slice();
+                final Response parsed = converter.invert(slice, Response.class, unique -> endpoint.getUnique().equals(unique) ? endpoint : null);
+                Assert.assertEquals(users, parsed.getBody());
+                Assert.assertEquals(0, slice.position());
+
+                // released buffer is reused
+                pool.release(encoded);
+                pool.release(batch);
+                Assert.assertSame(encoded, pool.acquire(encoded.capacity()));
+            }
+        }
+    }
+
+    @Test
+    public void lazyBodyTest() throws NoSuchFieldException, NoSuchMethodException, IOException {
+        final Controller controller = EchoBackService.class.getDeclaredField("echoBackController").getAnnotation(Controller.class);
+        final Endpoint endpoint = Endpoint.create(controller, EchoBackController.class.getMethod("sendUserList", List.class));
+        final List<User> users = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            users.add(User.builder().name("user" + i).age(i).build());
+        }
+        final Response<List<User>> response = Response.success(users);
+        response.setEndpoint(endpoint.getUnique());
+        final EndpointLookup lookup = unique -> endpoint.getUnique().equals(unique) ? endpoint : null;
+
+        for (Converter converter : converters) {
+            final byte[] encoded = converter.convert(response);
+            Response parsed = converter.invertLazily(encoded, 0, encoded.length, lookup, null);
+            // converter not supporting lazy decoding falls back to eager decoding
+            Assert.assertEquals(converter instanceof CompactConverter, parsed.hasLazyBody());
+            Assert.assertTrue(parsed.isSuccessful());
+            Assert.assertEquals(Response.SUCCESS, parsed.getCode());
+            Assert.assertEquals(users, parsed.getBody());
+            Assert.assertFalse(parsed.hasLazyBody());
+
+            // elements are decoded one by one
+            parsed = converter.invertLazily(encoded, 0, encoded.length, lookup, null);
+            final Iterator<User> iterator = parsed.bodyIterator();
+            for (User user : users) {
+                Assert.assertTrue(iterator.hasNext());
+                Assert.assertEquals(user, iterator.next());
+            }
+            Assert.assertFalse(iterator.hasNext());
+
+            // error response is never lazy
+            final Response error = Response.error(500, "failure message");
+            final byte[] encodedError = converter.convert(error);
+            parsed = converter.invertLazily(encodedError, 0, encodedError.length, lookup, null);
+            Assert.assertFalse(parsed.hasLazyBody());
+            Assert.assertEquals("failure message", parsed.getBody());
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void compactEncodingTest() throws NoSuchFieldException, NoSuchMethodException, IOException {
+        final Controller controller = EchoBackService.class.getDeclaredField("echoBackController").getAnnotation(Controller.class);
+        final User user = new User();
+        user.setName("James");
+        user.setAge(30);
+        final List<User> users = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            users.add(User.builder().name("user" + i).age(i).build());
+        }
+
+        Assert.assertTrue(compareEncoding(controller, EchoBackController.class.getMethod("sendJavaObject", User.class), user));
+        Assert.assertTrue(compareEncoding(controller, EchoBackController.class.getMethod("sendComplexObject", ComplexObject.class), ComplexObject.createTestObject()));
+        Assert.assertTrue(compareEncoding(controller, EchoBackController.class.getMethod("sendUserList", List.class), users));
+    }
+
+    /**
+     * @return true if the body is decoded into the same value by both converters and compact encoding is smaller
+     */
+    private boolean compareEncoding(Controller controller, java.lang.reflect.Method method, Object body) throws IOException {
+        final Endpoint endpoint = Endpoint.create(controller, method);
+        final Response response = Response.success(body);
+        response.setEndpoint(endpoint.getUnique());
+        final Converter bson = new BsonConverter();
+        final Converter compact = new CompactConverter();
+
+        final byte[] bsonEncoded = bson.convert(response);
+        final byte[] compactEncoded = compact.convert(response);
+        final Response bsonDecoded = bson.invert(bsonEncoded, 0, bsonEncoded.length, Response.class, unique -> endpoint);
+        final Response compactDecoded = compact.invert(compactEncoded, 0, compactEncoded.length, Response.class, unique -> endpoint);
+        Log.info("{} : bson {} bytes / compact {} bytes", method.getName(), bsonEncoded.length, compactEncoded.length);
+
+        return body.equals(bsonDecoded.getBody())
+                && body.equals(compactDecoded.getBody())
+                && (compactEncoded.length < bsonEncoded.length);
+    }
+
+    @Test
+    public void compressedFrameTest() throws IOException {
+        final List<User> users = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            users.add(User.builder().name("user" + i).age(i).build());
+        }
+        for (Converter converter : converters) {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final FrameChannel writeChannel = FrameChannel.create(new NegotiatedRMISocket(streamSocket(null, baos), 256), converter, Collections.emptyMap());
+            writeChannel.write(Response.success("small"));
+            writeChannel.write(Response.success(users));
+            Assert.assertEquals(1L, writeChannel.getCompressor().getDeflatedFrames());
+            Assert.assertTrue(writeChannel.getCompressor().getRatio() < 1.0);
+
+            // reading side decompresses without negotiated socket
+            final FrameChannel readChannel = FrameChannel.create(streamSocket(new ByteArrayInputStream(baos.toByteArray()), null), converter, Collections.emptyMap());
+            Assert.assertEquals("small", readChannel.reader(null).read(Response.class).getBody());
+            final Response response = readChannel.reader(null).read(Response.class);
+            Assert.assertEquals(users.size(), ((List) response.getBody()).size());
+            Assert.assertEquals(1L, readChannel.getCompressor().getInflatedFrames());
+            Log.info("compression : {}", writeChannel.getCompressor());
+        }
+    }
+
+    @Test
+    public void dictionaryFrameTest() throws NoSuchFieldException, NoSuchMethodException, IOException {
+        final Controller controller = EchoBackService.class.getDeclaredField("echoBackController").getAnnotation(Controller.class);
+        final Endpoint endpoint = Endpoint.create(controller, EchoBackController.class.getMethod("sendComplexObject", ComplexObject.class));
+        final Converter converter = new CompactConverter();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final FrameChannel writeChannel = FrameChannel.create(streamSocket(null, baos), converter, Collections.emptyMap());
+
+        final int[] frameSizes = new int[3];
+        for (int i = 0; i < frameSizes.length; i++) {
+            final Response<ComplexObject> response = Response.success(ComplexObject.createTestObject());
+            response.setEndpoint(endpoint.getUnique());
+            final int start = baos.size();
+            writeChannel.write(response);
+            frameSizes[i] = baos.size() - start;
+        }
+        // endpoint and field names are defined by the first frame and referred afterward
+        Assert.assertTrue(frameSizes[1] < frameSizes[0]);
+        Assert.assertEquals(frameSizes[1], frameSizes[2]);
+        Log.info("frame size with dictionary : {}", Arrays.toString(frameSizes));
+
+        final FrameChannel readChannel = FrameChannel.create(streamSocket(new ByteArrayInputStream(baos.toByteArray()), null), converter, Collections.emptyMap());
+        for (int i = 0; i < frameSizes.length; i++) {
+            final Response response = readChannel.decode(readChannel.read(), Response.class, unique -> endpoint);
+            Assert.assertEquals(endpoint.getUnique(), response.getEndpoint());
+            Assert.assertEquals(ComplexObject.createTestObject(), response.getBody());
+        }
+    }
+
+    @Test
+    public void dictionaryLearningTest() throws IOException {
+        final StringDictionary dictionary = new StringDictionary(2);
+        final Converter converter = new CompactConverter();
+
+        // keys of user map are written inline
+        final Map<String, String> userMap = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            userMap.put(UUID.randomUUID().toString(), "value");
+        }
+        final StringDictionary.Encoding mapEncoding = dictionary.begin();
+        converter.convert(userMap, new ByteArrayOutputStream(), mapEncoding);
+        Assert.assertFalse(mapEncoding.hasDefinitions());
+
+        // concurrent and cancelled encodings of the same string share its id
+        final StringDictionary.Encoding first = dictionary.begin();
+        final StringDictionary.Encoding second = dictionary.begin();
+        final int id = first.reference("/echo/object");
+        Assert.assertNotEquals(StringDictionary.NOT_FOUND, id);
+        Assert.assertEquals(id, second.reference("/echo/object"));
+        Assert.assertEquals(id, dictionary.begin().reference("/echo/object"));
+        second.commit();
+
+        // so the other string still finds the slot left
+        Assert.assertNotEquals(StringDictionary.NOT_FOUND, dictionary.begin().reference("session-key"));
+        Assert.assertEquals(StringDictionary.NOT_FOUND, dictionary.begin().reference("another-key"));
+    }
+
+    @Test
+    public void batchedFrameTest() throws Exception {
+        final int threads = 8;
+        final int frames = 50;
+        for (Converter converter : converters) {
+            // slow socket write lets the frames queued meanwhile be gathered into the next write
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream() {
+                @Override
+                public synchronized void write(byte[] b, int off, int len) {
+                    try {
+                        Thread.sleep(1L);
+                    } catch (InterruptedException ignore) { }
+                    super.write(b, off, len);
+                }
+            };
+            final FrameChannel writeChannel = FrameChannel.create(streamSocket(null, baos), converter, Collections.emptyMap());
+            final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            final List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                results.add(executorService.submit(() -> {
+                    for (int i = 0; i < frames; i++) {
+                        writeChannel.write(Response.success(User.builder().name("user" + thread).age(i).build()), 1L, TimeUnit.SECONDS);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(10L, TimeUnit.SECONDS);
+            }
+            executorService.shutdown();
+
+            final FrameSendQueue sendQueue = writeChannel.getSendQueue();
+            Assert.assertEquals(threads * frames, sendQueue.getFrames());
+            Assert.assertTrue(sendQueue.getBatches() < sendQueue.getFrames());
+            Assert.assertEquals(baos.size(), sendQueue.getBytes());
+            Log.info("batched writes : {}", sendQueue);
+
+            // frames of each thread are written in the order of the calls
+            final int[] nextAge = new int[threads];
+            final FrameChannel readChannel = FrameChannel.create(streamSocket(new ByteArrayInputStream(baos.toByteArray()), null), converter, Collections.emptyMap());
+            for (int i = 0; i < threads * frames; i++) {
+                final User user = (User) converter.resolve(readChannel.reader(null).read(Response.class).getBody(), User.class);
+                boolean isNext = false;
+                for (int t = 0; (t < threads) && !isNext; t++) {
+                    if((nextAge[t] < frames) && user.equals(User.builder().name("user" + t).age(nextAge[t]).build())) {
+                        nextAge[t]++;
+                        isNext = true;
+                    }
+                }
+                Assert.assertTrue(isNext);
+            }
+        }
+    }
+
+    @Test
+    public void concurrentEncodingTest() throws Exception {
+        // encoding of the message is slow, which should not delay the other messages
+        final Converter converter = new BsonConverter() {
+            @Override
+            public void convert(Object src, OutputStream outputStream) throws IOException {
+                if("slow".equals(((Response) src).getBody())) {
+                    try {
+                        Thread.sleep(500L);
+                    } catch (InterruptedException ignore) { }
+                }
+                super.convert(src, outputStream);
+            }
+        };
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final FrameChannel writeChannel = FrameChannel.create(streamSocket(null, baos), converter, Collections.emptyMap());
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        final Future<?> slowWrite = executorService.submit(() -> {
+            writeChannel.write(Response.success("slow"));
+            return null;
+        });
+        Thread.sleep(50L);
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            writeChannel.write(Response.success("fast"), 1L, TimeUnit.SECONDS);
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 300L);
+        Assert.assertFalse(slowWrite.isDone());
+        slowWrite.get(2L, TimeUnit.SECONDS);
+        executorService.shutdown();
+
+        final FrameChannel readChannel = FrameChannel.create(streamSocket(new ByteArrayInputStream(baos.toByteArray()), null), converter, Collections.emptyMap());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("fast", readChannel.reader(null).read(Response.class).getBody());
+        }
+        Assert.assertEquals("slow", readChannel.reader(null).read(Response.class).getBody());
+    }
+
+    private static RMISocket streamSocket(final InputStream inputStream, final OutputStream outputStream) {
+        return new RMISocket() {
+            @Override
+            public InputStream getInputStream() {
+                return inputStream;
+            }
+
+            @Override
+            public OutputStream getOutputStream() {
+                return outputStream;
+            }
+
+            @Override
+            public void close() { }
+
+            @Override
+            public void open() { }
+
+            @Override
+            public boolean isConnected() {
+                return true;
+            }
+
+            @Override
+            public boolean isClosed() {
+                return false;
+            }
+
+            @Override
+            public String getRemoteName() {
+                return "stream";
+            }
+        };
+    }
+
+    @Test
+    public void timedReadWriteTest() throws IOException, TimeoutException {
+        for (Converter converter : converters) {
+            User user = new User();
+            user.setName("James");
+            user.setAge(30);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            converter.writer(baos).write(Response.success(user), 1L, TimeUnit.SECONDS);
+            Response response = converter.reader(new ByteArrayInputStream(baos.toByteArray())).read(Response.class, 1L, TimeUnit.SECONDS);
+            Assert.assertTrue(response.isSuccessful());
+
+            // read from the stream without any data should time out in the calling thread
+            final PipedInputStream emptyStream = new PipedInputStream(new PipedOutputStream());
+            final long start = System.currentTimeMillis();
+            try {
+                converter.reader(emptyStream).read(Response.class, 100L, TimeUnit.MILLISECONDS);
+                Assert.fail("read should time out");
+            } catch (TimeoutException ignored) { }
+            Assert.assertTrue(System.currentTimeMillis() - start < 1000L);
+            Assert.assertFalse(Thread.currentThread().isInterrupted());
+        }
+    }
+
     private boolean testServiceInfoObject(Converter converter, RMIServiceInfo from) throws ClassNotFoundException, InstantiationException, IllegalAccessException, IOException {
         RMIServiceInfo serviceInfo = testObjectTransfer(converter, from, RMIServiceInfo.class);
         return from.equals(serviceInfo);
@@ -19,6 +19,10 @@ import org.junit.runners.MethodSorters;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
@@ -351,12 +355,136 @@ public class EchoBackTest {
     }
 
 
+    @Test
+    public void L_asyncDelayedResponse() throws Exception {
+        final int count = 200;
+        final long delay = 500L;
+        final Object client = buildNewClient();
+        final DelayedResponseController controller = (DelayedResponseController) client;
+
+        // every call is in flight at once without blocking the calling thread
+        final long start = System.currentTimeMillis();
+        final List<CompletableFuture<Response<Long>>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(controller.getDelayedResponseAsync(delay));
+        }
+        Assert.assertFalse(futures.get(0).isDone());
+        for (CompletableFuture<Response<Long>> future : futures) {
+            final Response<Long> response = future.get(10, TimeUnit.SECONDS);
+            Assert.assertTrue(response.isSuccessful());
+            Assert.assertEquals(Long.valueOf(delay), response.getBody());
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < delay * 10);
+        RMIClient.destroy(client);
+    }
+
+    @Test
+    public void M_concurrentCallsOnSingleProxy() throws Exception {
+        final int threads = 8;
+        final int calls = 200;
+        final Object client = buildNewClient();
+        final EchoBackController controller = (EchoBackController) client;
+
+        // threads share the proxy (and the endpoint), each call should get its own argument back
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        final List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            results.add(executorService.submit(() -> {
+                int matched = 0;
+                for (int i = 0; i < calls; i++) {
+                    final String msg = String.format(Locale.ENGLISH, "%d-%d", thread, i);
+                    final Response<String> response = controller.sendMessage(msg);
+                    if(response.isSuccessful() && msg.equals(response.getBody())) {
+                        matched++;
+                    }
+                }
+                return matched;
+            }));
+        }
+        for (Future<Integer> result : results) {
+            Assert.assertEquals(Integer.valueOf(calls), result.get(30, TimeUnit.SECONDS));
+        }
+        executorService.shutdown();
+        RMIClient.destroy(client);
+    }
+
+    @Test
+    public void N_cancelTimedOutCall() throws Exception {
+        final long delay = 5000L;
+        final long cancelledBefore = service.getCancelledRequests();
+        final Object client = buildNewClient(200L);
+        final DelayedResponseController controller = (DelayedResponseController) client;
+
+        final long start = System.currentTimeMillis();
+        try {
+            controller.getDelayedResponse(delay);
+            Assert.fail("call should time out");
+        } catch (RMIException ignored) { }
+        // controller is interrupted by the cancellation from the client, and its response is not written
+        while ((service.getCancelledRequests() == cancelledBefore) && (System.currentTimeMillis() - start < delay * 2)) {
+            Thread.sleep(20L);
+        }
+        Assert.assertEquals(cancelledBefore + 1, service.getCancelledRequests());
+        Assert.assertTrue(System.currentTimeMillis() - start < delay);
+        RMIClient.destroy(client);
+    }
+
+    @Test
+    public void O_dropExpiredRequests() throws Exception {
+        // workers of the service are kept busy by the calls not timed out (so not cancelled),
+        // and the calls with short timeout queued behind them expire before being handled
+        final int busy = Runtime.getRuntime().availableProcessors() * 2;
+        final int count = 8;
+        final long delay = 500L;
+        final long expiredBefore = service.getExpiredRequests();
+        final Object busyClient = buildNewClient();
+        final Object client = buildNewClient(100L);
+        final DelayedResponseController busyController = (DelayedResponseController) busyClient;
+        final DelayedResponseController controller = (DelayedResponseController) client;
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(busy + count);
+        final List<Future<Boolean>> busyResults = new ArrayList<>();
+        for (int i = 0; i < busy; i++) {
+            busyResults.add(executorService.submit(() -> busyController.getDelayedResponse(delay).isSuccessful()));
+        }
+        Thread.sleep(50L);
+        final List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(executorService.submit(() -> {
+                try {
+                    return controller.getDelayedResponse(delay).isSuccessful();
+                } catch (RMIException e) {
+                    return false;
+                }
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            Assert.assertFalse(result.get(10, TimeUnit.SECONDS));
+        }
+        for (Future<Boolean> result : busyResults) {
+            Assert.assertTrue(result.get(10, TimeUnit.SECONDS));
+        }
+        final long deadline = System.currentTimeMillis() + 10000L;
+        while ((service.getExpiredRequests() == expiredBefore) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(50L);
+        }
+        Assert.assertTrue(service.getExpiredRequests() > expiredBefore);
+        executorService.shutdown();
+        RMIClient.destroy(client);
+        RMIClient.destroy(busyClient);
+    }
+
     private Object buildNewClient() {
+        return buildNewClient(10000L);
+    }
+
+    private Object buildNewClient(long timeout) {
 
         return RMIClient.create(service.getServiceInfo(), EchoBackService.class, new Class[]{
                 DelayedResponseController.class,
                 EchoBackController.class,
                 PrimitiveEchoBackController.class
-        }, 10000L, TimeUnit.MILLISECONDS);
+        }, timeout, TimeUnit.MILLISECONDS);
     }
 }
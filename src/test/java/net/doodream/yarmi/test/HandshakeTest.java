@@ -0,0 +1,136 @@
+package net.doodream.yarmi.test;
+
+import net.doodream.yarmi.client.RMIClient;
+import net.doodream.yarmi.data.RMIServiceInfo;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.frame.FrameChannel;
+import net.doodream.yarmi.net.tcp.TcpRMISocket;
+import net.doodream.yarmi.net.tcp.TcpServiceAdapter;
+import net.doodream.yarmi.serde.Reader;
+import net.doodream.yarmi.serde.Writer;
+import net.doodream.yarmi.serde.bson.BsonConverter;
+import net.doodream.yarmi.server.RMIService;
+import net.doodream.yarmi.test.service.echoback.EchoBackController;
+import net.doodream.yarmi.test.service.echoback.EchoBackService;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class HandshakeTest {
+
+    private static RMIService service;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        service = RMIService.create(EchoBackService.class);
+        service.listen();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        service.stop();
+    }
+
+    @Test
+    public void fingerprintOfSameContract() throws Exception {
+        final RMIServiceInfo info = service.getServiceInfo();
+        Assert.assertEquals(info.getFingerprint(), RMIServiceInfo.from(EchoBackService.class).getFingerprint());
+
+        // independent of the order of the params
+        final Map<String, String> reversed = new LinkedHashMap<>();
+        final Map<String, String> params = new HashMap<>(info.getParams());
+        params.put("fingerprint.a", "1");
+        params.put("fingerprint.b", "2");
+        reversed.put("fingerprint.b", "2");
+        reversed.put("fingerprint.a", "1");
+        reversed.putAll(info.getParams());
+        Assert.assertEquals(copyOf(info, info.getVersion(), params).getFingerprint(), copyOf(info, info.getVersion(), reversed).getFingerprint());
+        Assert.assertNotEquals(info.getFingerprint(), copyOf(info, info.getVersion(), params).getFingerprint());
+        Assert.assertNotEquals(info.getFingerprint(), copyOf(info, "0.0.0", info.getParams()).getFingerprint());
+    }
+
+    @Test
+    public void reconnectWithFingerprint() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            final Object client = buildNewClient(service.getServiceInfo());
+            Assert.assertNotNull(client);
+            final Response<String> response = ((EchoBackController) client).sendMessage("hello");
+            Assert.assertTrue(response.isSuccessful());
+            Assert.assertEquals("hello", response.getBody());
+            RMIClient.destroy(client);
+        }
+    }
+
+    @Test
+    public void rejectUnknownContract() throws Exception {
+        // unknown fingerprint falls back to full service info, which doesn't match
+        final RMIServiceInfo info = copyOf(service.getServiceInfo(), "0.0.0", service.getServiceInfo().getParams());
+        Assert.assertNull(buildNewClient(info));
+
+        final Object client = buildNewClient(service.getServiceInfo());
+        Assert.assertNotNull(client);
+        RMIClient.destroy(client);
+    }
+
+    @Test
+    public void notCacheClaimedFingerprint() throws Exception {
+        final RMIServiceInfo info = service.getServiceInfo();
+        // fingerprint claimed is not of the service info sent, so it's not accepted at once next time
+        Assert.assertEquals("FULL", handshake("forged", info));
+        Assert.assertEquals("FULL", handshake("forged", info));
+        // fingerprint of the service info is accepted at once
+        Assert.assertEquals("OK", handshake(info.getFingerprint(), info).substring(0, 2));
+    }
+
+    /**
+     * @return reply of the server to the fingerprint claimed
+     */
+    private static String handshake(String fingerprint, RMIServiceInfo info) throws Exception {
+        final TcpRMISocket socket = new TcpRMISocket("localhost", Integer.parseInt(info.getParams().get(TcpServiceAdapter.PARAM_PORT)));
+        socket.open();
+        try {
+            final FrameChannel channel = FrameChannel.create(socket, new BsonConverter(), info.getParams());
+            final Reader reader = channel.reader(null);
+            final Writer writer = channel.writer();
+            writer.write(Response.success(fingerprint), 5L, TimeUnit.SECONDS);
+            final Response reply = reader.read(Response.class, 5L, TimeUnit.SECONDS);
+            Assert.assertNotNull(reply);
+            if("FULL".equals(reply.getBody())) {
+                writer.write(info, 5L, TimeUnit.SECONDS);
+                final Response result = reader.read(Response.class, 5L, TimeUnit.SECONDS);
+                Assert.assertNotNull(result);
+                Assert.assertTrue(result.isSuccessful());
+            }
+            return (String) reply.getBody();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static RMIServiceInfo copyOf(RMIServiceInfo info, String version, Map<String, String> params) {
+        final RMIServiceInfo copy = RMIServiceInfo.builder()
+                .name(info.getName())
+                .provider(info.getProvider())
+                .version(version)
+                .adapter(info.getAdapter())
+                .negotiator(info.getNegotiator())
+                .converter(info.getConverter())
+                .params(params)
+                .controllerInfos(info.getControllerInfos())
+                .build();
+        copy.setProxyFactoryHint(info.getProxyFactoryHint());
+        return copy;
+    }
+
+    private static Object buildNewClient(RMIServiceInfo info) {
+        return RMIClient.create(info, EchoBackService.class, new Class[]{
+                EchoBackController.class
+        }, 5000L, TimeUnit.MILLISECONDS);
+    }
+}
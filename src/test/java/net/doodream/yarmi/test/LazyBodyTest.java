@@ -0,0 +1,102 @@
+package net.doodream.yarmi.test;
+
+import net.doodream.yarmi.client.RMIClient;
+import net.doodream.yarmi.data.LazyBody;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.server.RMIService;
+import net.doodream.yarmi.test.data.User;
+import net.doodream.yarmi.test.service.echoback.CompactEchoBackService;
+import net.doodream.yarmi.test.service.echoback.EchoBackController;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class LazyBodyTest {
+
+    private static RMIService service;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        service = RMIService.create(CompactEchoBackService.class);
+        service.listen();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        service.stop();
+    }
+
+    @Test
+    public void decodeBodyOnFirstAccess() throws Exception {
+        final Object client = buildNewClient();
+        final EchoBackController controller = (EchoBackController) client;
+        final List<User> users = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            users.add(User.builder().name("user" + i).age(i).build());
+        }
+
+        Response<List<User>> response = controller.sendUserList(users);
+        Assert.assertTrue(response.isSuccessful());
+        Assert.assertTrue(response.hasLazyBody());
+        Assert.assertEquals(users, response.getBody());
+        Assert.assertFalse(response.hasLazyBody());
+
+        // elements are decoded one by one
+        response = controller.sendUserList(users);
+        Assert.assertTrue(response.hasLazyBody());
+        final Iterator<User> iterator = response.bodyIterator();
+        for (User user : users) {
+            Assert.assertTrue(iterator.hasNext());
+            Assert.assertEquals(user, iterator.next());
+        }
+        Assert.assertFalse(iterator.hasNext());
+
+        Assert.assertEquals("lazy", controller.sendMessage("lazy").getBody());
+        RMIClient.destroy(client);
+    }
+
+    @Test
+    public void failToDecodeBody() throws Exception {
+        final Response<String> response = Response.success(null);
+        response.setLazyBody(new LazyBody() {
+            @Override
+            public Object decode() throws IOException {
+                throw new IOException("corrupted");
+            }
+
+            @Override
+            public <E> Iterator<E> iterator() throws IOException {
+                throw new IOException("corrupted");
+            }
+
+            @Override
+            public int size() {
+                return 0;
+            }
+        });
+        // failure is not hidden as null body, even after the encoded body is dropped
+        for (int i = 0; i < 2; i++) {
+            try {
+                final String body = response.getBody();
+                Assert.fail("corrupted body decoded : " + body);
+            } catch (UncheckedIOException expected) {
+                Assert.assertEquals("corrupted", expected.getCause().getMessage());
+            }
+        }
+        Assert.assertFalse(response.hasLazyBody());
+    }
+
+    private static Object buildNewClient() {
+        return RMIClient.create(service.getServiceInfo(), CompactEchoBackService.class, new Class[]{
+                EchoBackController.class
+        }, 5000L, TimeUnit.MILLISECONDS);
+    }
+}
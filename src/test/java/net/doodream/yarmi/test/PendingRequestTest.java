@@ -0,0 +1,139 @@
+package net.doodream.yarmi.test;
+
+import net.doodream.yarmi.data.RMIError;
+import net.doodream.yarmi.data.Request;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.PendingRequestTable;
+import net.doodream.yarmi.net.TimingWheel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PendingRequestTest {
+
+    @Test
+    public void registerAndRemove() throws Exception {
+        final PendingRequestTable table = new PendingRequestTable(4);
+        final List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final Request request = new Request.Builder().build();
+            table.register(request);
+            requests.add(request);
+        }
+        Assert.assertEquals(100, table.size());
+        // grown as the slots are occupied, the previous tables still hold the earlier requests
+        Assert.assertTrue(table.capacity() > 4);
+        Assert.assertTrue(table.tableCount() > 1);
+
+        final Request first = requests.get(0);
+        Assert.assertNotEquals(0, first.getNonce());
+        Assert.assertSame(first, table.remove(first.getNonce()));
+        // late removal (e.g. response after timeout) finds nothing
+        Assert.assertNull(table.remove(first.getNonce()));
+
+        // slot of the removed request is reused by the next generation
+        final int mask = table.capacity() - 1;
+        final Request next = new Request.Builder().build();
+        while ((table.register(next) & mask) != (first.getNonce() & mask)) {
+            table.remove(next.getNonce());
+        }
+        Assert.assertNull(table.remove(first.getNonce()));
+        Assert.assertSame(next, table.remove(next.getNonce()));
+
+        final AtomicInteger drained = new AtomicInteger();
+        table.drain(request -> {
+            drained.incrementAndGet();
+            request.setResponse(RMIError.CLOSED.getResponse());
+        });
+        Assert.assertEquals(99, drained.get());
+        Assert.assertEquals(0, table.size());
+        Assert.assertEquals(1, table.tableCount());
+        Assert.assertEquals(RMIError.CLOSED.getResponse().getCode(), requests.get(1).getResponse(0L).getCode());
+    }
+
+    @Test
+    public void dropRetiredTable() throws Exception {
+        final PendingRequestTable table = new PendingRequestTable(2);
+        final int threads = 4;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger lost = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    for (int round = 0; round < 100; round++) {
+                        final List<Request> requests = new ArrayList<>();
+                        for (int i = 0; i < 20; i++) {
+                            final Request request = new Request.Builder().build();
+                            table.register(request);
+                            requests.add(request);
+                        }
+                        for (Request request : requests) {
+                            if(table.remove(request.getNonce()) != request) {
+                                lost.incrementAndGet();
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    lost.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        Assert.assertTrue(done.await(10L, TimeUnit.SECONDS));
+        // every request is found even while the table grows, and the retired tables are dropped as they become empty
+        Assert.assertEquals(0, lost.get());
+        Assert.assertEquals(0, table.size());
+        Assert.assertEquals(1, table.tableCount());
+    }
+
+    @Test
+    public void waitResponse() throws Exception {
+        final Request request = new Request.Builder().build();
+        final Response response = RMIError.NOT_FOUND.getResponse();
+        new Thread(() -> {
+            try {
+                Thread.sleep(100L);
+            } catch (InterruptedException ignore) { }
+            request.setResponse(response);
+            // only the first response is taken
+            request.setResponse(RMIError.TIMEOUT.getResponse());
+        }).start();
+        Assert.assertSame(response, request.getResponse(0L));
+        Assert.assertSame(response, request.toFuture().get());
+
+        final Request noResponse = new Request.Builder().build();
+        Assert.assertEquals(RMIError.TIMEOUT.getResponse().getCode(), noResponse.getResponse(50L).getCode());
+    }
+
+    @Test
+    public void expireInBatch() throws Exception {
+        final TimingWheel timingWheel = new TimingWheel("test-timing-wheel", TimeUnit.MILLISECONDS.toNanos(5), 8);
+        final int count = 10000;
+        final CountDownLatch expired = new CountDownLatch(count / 2);
+        final AtomicInteger cancelledRun = new AtomicInteger();
+        final List<TimingWheel.Timeout> cancelled = new ArrayList<>();
+        final long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            // delay longer than a round of the wheel
+            if((i & 1) == 0) {
+                timingWheel.schedule(expired::countDown, 100L, TimeUnit.MILLISECONDS);
+            } else {
+                cancelled.add(timingWheel.schedule(cancelledRun::incrementAndGet, 100L, TimeUnit.MILLISECONDS));
+            }
+        }
+        for (TimingWheel.Timeout timeout : cancelled) {
+            Assert.assertTrue(timeout.cancel());
+        }
+        Assert.assertTrue(expired.await(2L, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100L));
+        Assert.assertEquals(0, cancelledRun.get());
+        Assert.assertEquals(0, timingWheel.size());
+        Assert.assertFalse(cancelled.get(0).cancel());
+    }
+}
@@ -0,0 +1,128 @@
+package net.doodream.yarmi.test;
+
+import net.doodream.yarmi.annotation.server.Controller;
+import net.doodream.yarmi.data.Endpoint;
+import net.doodream.yarmi.data.Param;
+import net.doodream.yarmi.data.PrimitiveArgs;
+import net.doodream.yarmi.data.Request;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.serde.Converter;
+import net.doodream.yarmi.serde.EndpointLookup;
+import net.doodream.yarmi.serde.compact.CompactConverter;
+import net.doodream.yarmi.server.PrimitiveInvoker;
+import net.doodream.yarmi.test.service.echoback.EchoBackController;
+import net.doodream.yarmi.test.service.echoback.EchoBackService;
+import net.doodream.yarmi.test.service.echoback.PrimitiveEchoBackController;
+import net.doodream.yarmi.test.service.echoback.PrimitiveEchoBackControllerImpl;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.List;
+
+public class PrimitiveInvocationTest {
+    private static final Logger Log = LoggerFactory.getLogger(PrimitiveInvocationTest.class);
+    private static final int WARM_UP_COUNT = 20000;
+    private static final int BENCHMARK_COUNT = 100000;
+
+    private Controller controller;
+    private PrimitiveEchoBackController impl;
+
+    @Before
+    public void setup() throws NoSuchFieldException {
+        controller = EchoBackService.class.getDeclaredField("primitiveEchoBackController").getAnnotation(Controller.class);
+        impl = new PrimitiveEchoBackControllerImpl();
+    }
+
+    @Test
+    public void primitiveEndpointTest() throws Exception {
+        Assert.assertTrue(endpointOf("echoBackInteger", int.class).isPrimitive());
+        Assert.assertTrue(endpointOf("echoBackBoolean", boolean.class).isPrimitive());
+        final Controller objectController = EchoBackService.class.getDeclaredField("echoBackController").getAnnotation(Controller.class);
+        Assert.assertFalse(Endpoint.create(objectController, EchoBackController.class.getMethod("sendUserList", List.class)).isPrimitive());
+
+        final Converter converter = new CompactConverter();
+        Assert.assertEquals(123456, invoke(converter, endpointOf("echoBackInteger", int.class), 123456));
+        Assert.assertEquals(-123456789012L, invoke(converter, endpointOf("echoBackLong", long.class), -123456789012L));
+        Assert.assertEquals(1.5f, invoke(converter, endpointOf("echoBackFloat", float.class), 1.5f));
+        Assert.assertEquals(2.25, invoke(converter, endpointOf("echoBackDouble", double.class), 2.25));
+        Assert.assertEquals(true, invoke(converter, endpointOf("echoBackBoolean", boolean.class), true));
+    }
+
+    /**
+     * compare allocation per call of decoding & invocation, between boxed (resolved & reflectively invoked) params
+     * and {@link PrimitiveArgs} invoked by {@link PrimitiveInvoker}
+     */
+    @Test
+    public void allocationBenchmark() throws Exception {
+        Assume.assumeTrue(isAllocationMeasurable());
+        final Converter converter = new CompactConverter();
+        final Endpoint endpoint = endpointOf("echoBackLong", long.class);
+        final PrimitiveInvoker invoker = PrimitiveInvoker.compile(endpoint, impl);
+        final EndpointLookup lookup = unique -> endpoint;
+        final byte[] encoded = converter.convert(Request.fromEndpoint(endpoint, 1234567L));
+
+        final Method method = endpoint.getJMethod();
+        final Runnable boxed = () -> {
+            try {
+                final Request request = converter.invert(encoded, 0, encoded.length, Request.class, null);
+                final Object[] args = new Object[request.getParams().size()];
+                for (int i = 0; i < args.length; i++) {
+                    final Param param = request.getParams().get(i);
+                    args[i] = param.resolve(converter, endpoint.getParamTypes()[i]);
+                }
+                method.invoke(impl, args);
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        };
+        final Runnable primitive = () -> {
+            try {
+                final Request request = converter.invert(encoded, 0, encoded.length, Request.class, lookup);
+                invoker.invoke(request.getArgs());
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        };
+
+        final long boxedBytes = measureAllocation(boxed);
+        final long primitiveBytes = measureAllocation(primitive);
+        Log.info("allocation per call : boxed {} bytes / primitive {} bytes", boxedBytes, primitiveBytes);
+        Assert.assertTrue(primitiveBytes < boxedBytes);
+    }
+
+    private Endpoint endpointOf(String name, Class<?> type) throws NoSuchMethodException {
+        return Endpoint.create(controller, PrimitiveEchoBackController.class.getMethod(name, type));
+    }
+
+    private Object invoke(Converter converter, Endpoint endpoint, Object arg) throws Exception {
+        final byte[] encoded = converter.convert(Request.fromEndpoint(endpoint, arg));
+        final Request request = converter.invert(encoded, 0, encoded.length, Request.class, unique -> endpoint);
+        Assert.assertNotNull(request.getArgs());
+        final Response response = PrimitiveInvoker.compile(endpoint, impl).invoke(request.getArgs());
+        return response.getBody();
+    }
+
+    private static boolean isAllocationMeasurable() {
+        return (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)
+                && ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).isThreadAllocatedMemorySupported();
+    }
+
+    private static long measureAllocation(Runnable call) {
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARM_UP_COUNT; i++) {
+            call.run();
+        }
+        final long start = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < BENCHMARK_COUNT; i++) {
+            call.run();
+        }
+        return (threadMXBean.getThreadAllocatedBytes(threadId) - start) / BENCHMARK_COUNT;
+    }
+}
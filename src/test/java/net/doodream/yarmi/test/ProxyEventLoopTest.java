@@ -0,0 +1,194 @@
+package net.doodream.yarmi.test;
+
+import net.doodream.yarmi.annotation.server.Controller;
+import net.doodream.yarmi.client.RMIClient;
+import net.doodream.yarmi.data.Endpoint;
+import net.doodream.yarmi.data.RMIServiceInfo;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.ProxyEventLoop;
+import net.doodream.yarmi.net.ServiceProxy;
+import net.doodream.yarmi.net.frame.Frame;
+import net.doodream.yarmi.net.frame.FrameChannel;
+import net.doodream.yarmi.net.tcp.TcpRMISocket;
+import net.doodream.yarmi.serde.bson.BsonConverter;
+import net.doodream.yarmi.server.RMIService;
+import net.doodream.yarmi.test.service.echoback.EchoBackController;
+import net.doodream.yarmi.test.service.echoback.EchoBackService;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ProxyEventLoopTest {
+
+    private static RMIService service;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        service = RMIService.create(EchoBackService.class);
+        service.listen();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        service.stop();
+    }
+
+    @Test
+    public void readProxiesWithSharedThreads() throws Exception {
+        final int count = 32;
+        final ProxyEventLoop eventLoop = ProxyEventLoop.getDefault();
+        final int channelsBefore = eventLoop.size();
+        final long framesBefore = eventLoop.getFrames();
+
+        // proxies are built directly, as the call proxies of the same service share one connection
+        final Endpoint endpoint = Endpoint.create(EchoBackService.class.getDeclaredField("echoBackController").getAnnotation(Controller.class),
+                EchoBackController.class.getMethod("sendMessage", String.class));
+        final List<ServiceProxy> proxies = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final ServiceProxy proxy = RMIServiceInfo.toServiceProxy(service.getServiceInfo());
+            proxy.open();
+            proxies.add(proxy);
+        }
+        Assert.assertEquals(channelsBefore + count, eventLoop.size());
+        for (int i = 0; i < count; i++) {
+            final String msg = String.format(Locale.ENGLISH, "hello-%d", i);
+            final Response<?> response = proxies.get(i).request(endpoint, 5000L, msg);
+            Assert.assertTrue(response.isSuccessful());
+            Assert.assertEquals(msg, response.getBody());
+        }
+        Assert.assertTrue(eventLoop.getFrames() - framesBefore >= count);
+
+        // no reading thread per proxy
+        int ioThreads = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if(thread.getName().startsWith("yarmi-proxy-io-")) {
+                ioThreads++;
+            }
+        }
+        Assert.assertTrue(ioThreads <= ProxyEventLoop.DEFAULT_IO_THREADS);
+
+        for (ServiceProxy proxy : proxies) {
+            proxy.close(false);
+        }
+        final long deadline = System.currentTimeMillis() + 3000L;
+        while ((eventLoop.size() > channelsBefore) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(50L);
+        }
+        Assert.assertEquals(channelsBefore, eventLoop.size());
+    }
+
+    @Test
+    public void readFrameLargerThanReadBuffer() throws Exception {
+        final char[] chars = new char[1 << 18];
+        Arrays.fill(chars, 'a');
+        final String msg = new String(chars);
+        final Object client = buildNewClient();
+        final Response<String> response = ((EchoBackController) client).sendMessage(msg);
+        Assert.assertTrue(response.isSuccessful());
+        Assert.assertEquals(msg, response.getBody());
+        RMIClient.destroy(client);
+    }
+
+    @Test(timeout = 20000L)
+    public void abortTimedWriteToStalledPeer() throws Exception {
+        final char[] chars = new char[12 << 20];
+        Arrays.fill(chars, 'a');
+        final Response<String> message = Response.success(new String(chars));
+        // peer accepting the connection never reads, so the send buffer becomes full
+        try (ServerSocket stalledPeer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            for (int i = 0; i < 2; i++) {
+                final TcpRMISocket socket = new TcpRMISocket(InetAddress.getLoopbackAddress().getHostAddress(), stalledPeer.getLocalPort());
+                socket.open();
+                final FrameChannel channel = FrameChannel.create(socket, new BsonConverter(), new HashMap<>());
+                try {
+                    channel.write(message, 2000L, TimeUnit.MILLISECONDS);
+                    Assert.fail("write to stalled peer completes");
+                } catch (TimeoutException | IOException expected) {
+                    // watchdog keeps working for the next timed write
+                }
+                Assert.assertTrue(socket.isClosed());
+            }
+        }
+    }
+
+    @Test(timeout = 20000L)
+    public void pauseReadingForSlowListener() throws Exception {
+        final int count = 100;
+        final int window = 10;
+        final ProxyEventLoop eventLoop = new ProxyEventLoop(1);
+        final AtomicInteger received = new AtomicInteger();
+        final AtomicReference<Runnable> resumer = new AtomicReference<>();
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            final TcpRMISocket socket = new TcpRMISocket(InetAddress.getLoopbackAddress().getHostAddress(), server.getLocalPort());
+            socket.open();
+            final Socket peer = server.accept();
+            final FrameChannel channel = FrameChannel.create(socket, new BsonConverter(), new HashMap<>());
+            final ProxyEventLoop.Registration registration = eventLoop.register(socket.getChannel(), channel, new ProxyEventLoop.Listener() {
+                @Override
+                public boolean onFrame(Frame frame, Runnable resume) {
+                    frame.release();
+                    // listener taking a window of frames at a time
+                    if(received.incrementAndGet() % window == 0) {
+                        resumer.set(resume);
+                        return false;
+                    }
+                    return true;
+                }
+
+                @Override
+                public void onError(Throwable throwable) { }
+            });
+
+            final FrameChannel peerChannel = FrameChannel.create(new TcpRMISocket(peer), new BsonConverter(), new HashMap<>());
+            final Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        peerChannel.write(Response.success(String.format(Locale.ENGLISH, "frame-%d", i)));
+                    }
+                } catch (IOException ignore) { }
+            });
+            writer.start();
+
+            while (received.get() < count) {
+                final Runnable resume = resumer.getAndSet(null);
+                if(resume == null) {
+                    Thread.sleep(10L);
+                    continue;
+                }
+                // no more read until resumed, once the frames cut from the same read are delivered
+                Thread.sleep(50L);
+                final int paused = received.get();
+                Thread.sleep(50L);
+                Assert.assertEquals(paused, received.get());
+                resume.run();
+            }
+            writer.join();
+            Assert.assertEquals(count, received.get());
+            Assert.assertTrue(eventLoop.getPauses() > 0);
+            registration.cancel();
+            socket.close();
+            peer.close();
+        }
+    }
+
+    private Object buildNewClient() {
+        return RMIClient.create(service.getServiceInfo(), EchoBackService.class, new Class[]{
+                EchoBackController.class
+        }, 5000L, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,222 @@
+package net.doodream.yarmi.test;
+
+import net.doodream.yarmi.annotation.server.Controller;
+import net.doodream.yarmi.client.RMIClient;
+import net.doodream.yarmi.data.Endpoint;
+import net.doodream.yarmi.data.RMIServiceInfo;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.PooledServiceProxy;
+import net.doodream.yarmi.net.ServiceProxy;
+import net.doodream.yarmi.net.session.BlobSession;
+import net.doodream.yarmi.server.RMIService;
+import net.doodream.yarmi.test.service.echoback.DelayedResponseController;
+import net.doodream.yarmi.test.service.echoback.EchoBackController;
+import net.doodream.yarmi.test.service.echoback.PooledEchoBackService;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class ProxyPoolTest {
+
+    private static RMIService service;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        service = RMIService.create(PooledEchoBackService.class);
+        service.listen();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        service.stop();
+    }
+
+    @Test
+    public void growAndShrink() throws Exception {
+        final ServiceProxy serviceProxy = RMIServiceInfo.toServiceProxy(service.getServiceInfo());
+        Assert.assertTrue(serviceProxy instanceof PooledServiceProxy);
+        final PooledServiceProxy pool = (PooledServiceProxy) serviceProxy;
+        Assert.assertTrue(pool.open());
+        Assert.assertEquals(1, pool.size());
+
+        final Endpoint endpoint = Endpoint.create(PooledEchoBackService.class.getDeclaredField("delayedResponseController").getAnnotation(Controller.class),
+                DelayedResponseController.class.getMethod("getDelayedResponse", long.class));
+        // the least loaded connection keeps outstanding requests over the threshold, so the pool grows up to max.
+        for (int round = 0; round < 5; round++) {
+            final List<CompletableFuture<Response<?>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.requestAsync(endpoint, 5000L, 100L));
+            }
+            for (CompletableFuture<Response<?>> future : futures) {
+                Assert.assertTrue(future.get(5, TimeUnit.SECONDS).isSuccessful());
+            }
+        }
+        Assert.assertTrue(pool.getGrown() > 0);
+        Assert.assertTrue(pool.size() > 1);
+        Assert.assertTrue(pool.size() <= 4);
+        Assert.assertEquals(0, pool.getOutstanding());
+
+        // idle connections are closed down to the min. size
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while ((pool.size() > 1) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(100L);
+        }
+        Assert.assertEquals(1, pool.size());
+        Assert.assertTrue(pool.getShrunk() > 0);
+        Assert.assertTrue(pool.request(endpoint, 5000L, 10L).isSuccessful());
+        pool.close(false);
+    }
+
+    @Test
+    public void shrinkUnderLowLoad() throws Exception {
+        final PooledServiceProxy pool = (PooledServiceProxy) RMIServiceInfo.toServiceProxy(service.getServiceInfo());
+        Assert.assertTrue(pool.open());
+        final Endpoint endpoint = getDelayedResponseEndpoint();
+        grow(pool, endpoint);
+        Assert.assertTrue(pool.size() > 1);
+
+        // calls more frequent than the idle timeout don't keep the spare connections
+        final long deadline = System.currentTimeMillis() + 8000L;
+        while ((pool.size() > 1) && (System.currentTimeMillis() < deadline)) {
+            Assert.assertTrue(pool.request(endpoint, 5000L, 1L).isSuccessful());
+            Thread.sleep(100L);
+        }
+        Assert.assertEquals(1, pool.size());
+        Assert.assertTrue(pool.getShrunk() > 0);
+        pool.close(false);
+    }
+
+    @Test
+    public void retireAfterSessionEnded() throws Exception {
+        final PooledServiceProxy pool = (PooledServiceProxy) RMIServiceInfo.toServiceProxy(service.getServiceInfo());
+        Assert.assertTrue(pool.open());
+        final Endpoint endpoint = getDelayedResponseEndpoint();
+        grow(pool, endpoint);
+        final int size = pool.size();
+        Assert.assertTrue(size > 1);
+
+        // the other connections are busy, so the session is started over the last one
+        final List<CompletableFuture<Response<?>>> futures = new ArrayList<>();
+        for (int i = 0; i < size - 1; i++) {
+            futures.add(pool.requestAsync(endpoint, 5000L, 300L));
+        }
+        final byte[] blob = new byte[1 << 16];
+        final BlobSession session = new BlobSession(ses -> {
+            try {
+                ses.write(blob, blob.length);
+            } catch (IOException ignored) {
+            } finally {
+                try {
+                    ses.close();
+                } catch (IOException ignored) { }
+            }
+        });
+        final Endpoint blobEndpoint = Endpoint.create(PooledEchoBackService.class.getDeclaredField("echoBackController").getAnnotation(Controller.class),
+                EchoBackController.class.getMethod("sendBlob", BlobSession.class));
+        Assert.assertTrue(pool.request(blobEndpoint, 5000L, session).isSuccessful());
+        for (CompletableFuture<Response<?>> future : futures) {
+            Assert.assertTrue(future.get(5, TimeUnit.SECONDS).isSuccessful());
+        }
+
+        long deadline = System.currentTimeMillis() + 5000L;
+        while ((pool.getSessionCount() > 0) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(50L);
+        }
+        Assert.assertEquals(0, pool.getSessionCount());
+
+        // connection of the ended session is closed as the others
+        deadline = System.currentTimeMillis() + 8000L;
+        while ((pool.size() > 1) && (System.currentTimeMillis() < deadline)) {
+            Assert.assertTrue(pool.request(endpoint, 5000L, 1L).isSuccessful());
+            Thread.sleep(100L);
+        }
+        Assert.assertEquals(1, pool.size());
+        pool.close(false);
+    }
+
+    @Test
+    public void recoverAfterAllConnectionsFailed() throws Exception {
+        final PooledServiceProxy pool = (PooledServiceProxy) RMIServiceInfo.toServiceProxy(service.getServiceInfo());
+        Assert.assertTrue(pool.open());
+        final String who = pool.who();
+        final Endpoint endpoint = Endpoint.create(PooledEchoBackService.class.getDeclaredField("delayedResponseController").getAnnotation(Controller.class),
+                DelayedResponseController.class.getMethod("getDelayedResponse", long.class));
+        Assert.assertTrue(pool.request(endpoint, 5000L, 10L).isSuccessful());
+
+        // failed connections are removed, and no reconnection succeeds while the service is down
+        service.stop();
+        long deadline = System.currentTimeMillis() + 5000L;
+        while ((pool.size() > 0) && (System.currentTimeMillis() < deadline)) {
+            try {
+                pool.request(endpoint, 5000L, 10L);
+            } catch (IOException ignore) { }
+            Thread.sleep(50L);
+        }
+        Assert.assertEquals(0, pool.size());
+        Thread.sleep(200L);
+
+        // the empty pool reconnects to the restarted service
+        service = RMIService.create(PooledEchoBackService.class);
+        service.listen();
+        Response<?> response = null;
+        deadline = System.currentTimeMillis() + 5000L;
+        while ((response == null) && (System.currentTimeMillis() < deadline)) {
+            try {
+                response = pool.request(endpoint, 5000L, 10L);
+            } catch (IOException e) {
+                Thread.sleep(50L);
+            }
+        }
+        Assert.assertNotNull(response);
+        Assert.assertTrue(response.isSuccessful());
+        Assert.assertEquals(who, pool.who());
+        Assert.assertTrue(pool.provide(DelayedResponseController.class));
+        pool.close(false);
+    }
+
+    @Test
+    public void callThroughPool() throws Exception {
+        final Object client = RMIClient.create(service.getServiceInfo(), PooledEchoBackService.class, new Class[] {
+                DelayedResponseController.class
+        }, 5000L, TimeUnit.MILLISECONDS);
+        final DelayedResponseController controller = (DelayedResponseController) client;
+        final List<CompletableFuture<Response<Long>>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(controller.getDelayedResponseAsync(100L));
+        }
+        for (CompletableFuture<Response<Long>> future : futures) {
+            final Response<Long> response = future.get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(response.isSuccessful());
+            Assert.assertEquals(Long.valueOf(100L), response.getBody());
+        }
+        Assert.assertTrue(controller.getDelayedResponse(10L).isSuccessful());
+        RMIClient.destroy(client);
+    }
+
+    private static Endpoint getDelayedResponseEndpoint() throws Exception {
+        return Endpoint.create(PooledEchoBackService.class.getDeclaredField("delayedResponseController").getAnnotation(Controller.class),
+                DelayedResponseController.class.getMethod("getDelayedResponse", long.class));
+    }
+
+    /**
+     * keep outstanding requests over the threshold of the least loaded connection, so the pool grows
+     */
+    private static void grow(PooledServiceProxy pool, Endpoint endpoint) throws Exception {
+        for (int round = 0; round < 5; round++) {
+            final List<CompletableFuture<Response<?>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.requestAsync(endpoint, 5000L, 100L));
+            }
+            for (CompletableFuture<Response<?>> future : futures) {
+                Assert.assertTrue(future.get(5, TimeUnit.SECONDS).isSuccessful());
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package net.doodream.yarmi.test;
+
+import net.doodream.yarmi.data.RMIServiceInfo;
+import net.doodream.yarmi.net.QosListener;
+import net.doodream.yarmi.net.QosProber;
+import net.doodream.yarmi.net.ServiceProxy;
+import net.doodream.yarmi.server.RMIService;
+import net.doodream.yarmi.test.service.echoback.EchoBackService;
+import net.doodream.yarmi.test.service.echoback.PooledEchoBackService;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class QosProberTest {
+
+    private static RMIService service;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        service = RMIService.create(PooledEchoBackService.class);
+        service.listen();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        service.stop();
+    }
+
+    @Test
+    public void probeHealthCheck() throws Exception {
+        final ServiceProxy proxy = RMIServiceInfo.toServiceProxy(service.getServiceInfo());
+        Assert.assertTrue(proxy.open());
+
+        final QosProber prober = new QosProber(100L);
+        final CountDownLatch updated = new CountDownLatch(3);
+        final AtomicLong lastOffset = new AtomicLong(Long.MAX_VALUE);
+        final AtomicInteger errors = new AtomicInteger();
+        prober.addListener(new QosListener() {
+            @Override
+            public void onQosUpdated(ServiceProxy probed, long measuredRttInMill) {
+                Assert.assertSame(proxy, probed);
+                Assert.assertTrue(measuredRttInMill >= 0);
+                updated.countDown();
+            }
+
+            @Override
+            public void onQosUpdated(ServiceProxy probed, long measuredRttInMill, long clockOffsetInMill) {
+                lastOffset.set(clockOffsetInMill);
+                onQosUpdated(probed, measuredRttInMill);
+            }
+
+            @Override
+            public void onError(ServiceProxy probed, Throwable throwable) {
+                errors.incrementAndGet();
+            }
+        });
+
+        // service without health check controller is not probed
+        Assert.assertFalse(prober.register(proxy, EchoBackService.class));
+        Assert.assertTrue(prober.register(proxy, PooledEchoBackService.class));
+        Assert.assertFalse(prober.register(proxy, PooledEchoBackService.class));
+
+        Assert.assertTrue(updated.await(3L, TimeUnit.SECONDS));
+        Assert.assertTrue(prober.getRtt(proxy) >= 0);
+        // server runs on the same host
+        Assert.assertTrue(Math.abs(lastOffset.get()) < 1000L);
+        Assert.assertEquals(0, errors.get());
+
+        // closed proxy is reported and dropped from the prober
+        proxy.close(true);
+        final long deadline = System.currentTimeMillis() + 3000L;
+        while ((prober.size() > 0) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(50L);
+        }
+        Assert.assertEquals(0, prober.size());
+        Assert.assertTrue(errors.get() > 0);
+        Assert.assertFalse(prober.unregister(proxy));
+        prober.close();
+    }
+
+    @Test
+    public void stopProbingOnClose() throws Exception {
+        final ServiceProxy proxy = RMIServiceInfo.toServiceProxy(service.getServiceInfo());
+        Assert.assertTrue(proxy.open());
+
+        final QosProber prober = new QosProber(50L);
+        final AtomicInteger updates = new AtomicInteger();
+        prober.addListener(new QosListener() {
+            @Override
+            public void onQosUpdated(ServiceProxy probed, long measuredRttInMill) {
+                updates.incrementAndGet();
+            }
+
+            @Override
+            public void onError(ServiceProxy probed, Throwable throwable) { }
+        });
+        Assert.assertTrue(prober.register(proxy, PooledEchoBackService.class));
+        final long deadline = System.currentTimeMillis() + 3000L;
+        while ((updates.get() == 0) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(20L);
+        }
+        Assert.assertTrue(updates.get() > 0);
+
+        prober.close();
+        Assert.assertEquals(0, prober.size());
+        Assert.assertFalse(prober.register(proxy, PooledEchoBackService.class));
+        // probe in flight on close may still complete
+        Thread.sleep(100L);
+        final int closedAt = updates.get();
+        Thread.sleep(300L);
+        Assert.assertEquals(closedAt, updates.get());
+        proxy.close(true);
+    }
+}
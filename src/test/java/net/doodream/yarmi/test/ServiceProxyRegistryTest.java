@@ -0,0 +1,130 @@
+package net.doodream.yarmi.test;
+
+import net.doodream.yarmi.annotation.RMIException;
+import net.doodream.yarmi.client.RMIClient;
+import net.doodream.yarmi.data.Response;
+import net.doodream.yarmi.net.ProxyEventLoop;
+import net.doodream.yarmi.server.RMIService;
+import net.doodream.yarmi.test.service.echoback.EchoBackController;
+import net.doodream.yarmi.test.service.echoback.EchoBackService;
+import net.doodream.yarmi.test.service.echoback.PrimitiveEchoBackController;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.TimeUnit;
+
+public class ServiceProxyRegistryTest {
+
+    private static RMIService service;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        service = RMIService.create(EchoBackService.class);
+        service.listen();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        service.stop();
+    }
+
+    @Test
+    public void shareConnectionAcrossControllers() throws Exception {
+        final ProxyEventLoop eventLoop = ProxyEventLoop.getDefault();
+        // connections destroyed by other tests are closed asynchronously on the event loop
+        final int channelsBefore = awaitStableSize(eventLoop);
+
+        final Object echoClient = buildNewClient(EchoBackController.class);
+        final Object primitiveClient = buildNewClient(PrimitiveEchoBackController.class);
+        final Object bothClient = buildNewClient(EchoBackController.class, PrimitiveEchoBackController.class);
+        Assert.assertEquals(channelsBefore + 1, eventLoop.size());
+
+        assertEcho(echoClient, "hello");
+        assertEcho(bothClient, "world");
+        assertPrimitive(primitiveClient, 3);
+        assertPrimitive(bothClient, 4);
+
+        // connection is kept until the last call proxy is destroyed
+        RMIClient.destroy(echoClient);
+        assertPrimitive(primitiveClient, 5);
+        RMIClient.destroy(primitiveClient, true);
+        assertEcho(bothClient, "still");
+        RMIClient.destroy(bothClient);
+
+        final long deadline = System.currentTimeMillis() + 3000L;
+        while ((eventLoop.size() > channelsBefore) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(50L);
+        }
+        Assert.assertEquals(channelsBefore, eventLoop.size());
+    }
+
+    @Test
+    public void reconnectAfterLastClose() throws Exception {
+        final Object client = buildNewClient(EchoBackController.class);
+        assertEcho(client, "first");
+        RMIClient.destroy(client);
+
+        // closed connection is not handed to the new call proxy
+        final Object reconnected = buildNewClient(EchoBackController.class);
+        Assert.assertNotNull(reconnected);
+        assertEcho(reconnected, "second");
+        RMIClient.destroy(reconnected);
+    }
+
+    @Test
+    public void replaceConnectionLostByRestart() throws Exception {
+        final Object client = buildNewClient(EchoBackController.class);
+        assertEcho(client, "before");
+
+        service.stop();
+        service = RMIService.create(EchoBackService.class);
+        service.listen();
+
+        // call over the lost connection fails (either pending or not written), while its handle is still opened
+        try {
+            final Response<String> response = ((EchoBackController) client).sendMessage("lost");
+            Assert.fail("call over lost connection succeeds : " + response.getBody());
+        } catch (RMIException | UndeclaredThrowableException expected) { }
+
+        // new call proxy doesn't share the lost connection
+        final Object reconnected = buildNewClient(EchoBackController.class);
+        Assert.assertNotNull(reconnected);
+        assertEcho(reconnected, "after");
+
+        RMIClient.destroy(client);
+        RMIClient.destroy(reconnected);
+    }
+
+    private static void assertEcho(Object client, String msg) {
+        final Response<String> response = ((EchoBackController) client).sendMessage(msg);
+        Assert.assertTrue(response.isSuccessful());
+        Assert.assertEquals(msg, response.getBody());
+    }
+
+    private static void assertPrimitive(Object client, int value) {
+        final Response<Integer> response = ((PrimitiveEchoBackController) client).echoBackInteger(value);
+        Assert.assertTrue(response.isSuccessful());
+        Assert.assertEquals(Integer.valueOf(value), response.getBody());
+    }
+
+    private static int awaitStableSize(ProxyEventLoop eventLoop) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 3000L;
+        int size = eventLoop.size();
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(200L);
+            final int current = eventLoop.size();
+            if(current == size) {
+                break;
+            }
+            size = current;
+        }
+        return size;
+    }
+
+    private static Object buildNewClient(Class<?>... controllers) {
+        return RMIClient.create(service.getServiceInfo(), EchoBackService.class, controllers, 5000L, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,23 @@
+package net.doodream.yarmi.test.service.echoback;
+
+import net.doodream.yarmi.annotation.AdapterParam;
+import net.doodream.yarmi.annotation.server.Controller;
+import net.doodream.yarmi.annotation.server.Service;
+import net.doodream.yarmi.net.ServiceProxy;
+import net.doodream.yarmi.net.tcp.TcpServiceAdapter;
+import net.doodream.yarmi.serde.compact.CompactConverter;
+
+@Service(
+        name = "compact-test-service",
+        provider = "www.doodream.com",
+        converter = CompactConverter.class,
+        params = {
+            @AdapterParam(key= TcpServiceAdapter.PARAM_PORT, value = "6466"),
+            @AdapterParam(key= ServiceProxy.PARAM_LAZY_BODY, value = "true")
+        })
+public class CompactEchoBackService {
+
+    @Controller(path = "/echo/object", version = 1, module = EchoBackControllerImpl.class)
+    EchoBackController echoBackController;
+
+}
@@ -3,8 +3,13 @@ package net.doodream.yarmi.test.service.echoback;
 import net.doodream.yarmi.annotation.RMIExpose;
 import net.doodream.yarmi.data.Response;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface DelayedResponseController {
 
     @RMIExpose
     Response getDelayedResponse(long delay);
+
+    @RMIExpose
+    CompletableFuture<Response<Long>> getDelayedResponseAsync(long delay);
 }
@@ -2,7 +2,18 @@ package net.doodream.yarmi.test.service.echoback;
 
 import net.doodream.yarmi.data.Response;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 public class DelayedResponseControllerImpl implements DelayedResponseController{
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @Override
     public Response getDelayedResponse(long delay) {
         try {
@@ -10,4 +21,11 @@ public class DelayedResponseControllerImpl implements DelayedResponseController{
         } catch (InterruptedException ignored) { }
         return Response.success(delay);
     }
+
+    @Override
+    public CompletableFuture<Response<Long>> getDelayedResponseAsync(long delay) {
+        final CompletableFuture<Response<Long>> future = new CompletableFuture<>();
+        TIMER.schedule(() -> future.complete(Response.success(delay)), delay, TimeUnit.MILLISECONDS);
+        return future;
+    }
 }
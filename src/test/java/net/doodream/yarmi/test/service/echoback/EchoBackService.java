@@ -3,6 +3,7 @@ package net.doodream.yarmi.test.service.echoback;
 import net.doodream.yarmi.annotation.AdapterParam;
 import net.doodream.yarmi.annotation.server.Controller;
 import net.doodream.yarmi.annotation.server.Service;
+import net.doodream.yarmi.net.frame.FrameCompressor;
 import net.doodream.yarmi.net.tcp.TcpServiceAdapter;
 import net.doodream.yarmi.serde.bson.BsonConverter;
 
@@ -11,7 +12,8 @@ import net.doodream.yarmi.serde.bson.BsonConverter;
         provider = "www.doodream.com",
         converter = BsonConverter.class,
         params = {
-            @AdapterParam(key= TcpServiceAdapter.PARAM_PORT, value = "6464")
+            @AdapterParam(key= TcpServiceAdapter.PARAM_PORT, value = "6464"),
+            @AdapterParam(key= FrameCompressor.PARAM_COMPRESSION_THRESHOLD, value = "1024")
         })
 public class EchoBackService {
 
@@ -0,0 +1,33 @@
+package net.doodream.yarmi.test.service.echoback;
+
+import net.doodream.yarmi.annotation.AdapterParam;
+import net.doodream.yarmi.annotation.server.Controller;
+import net.doodream.yarmi.annotation.server.Service;
+import net.doodream.yarmi.net.PooledServiceProxy;
+import net.doodream.yarmi.net.tcp.TcpServiceAdapter;
+import net.doodream.yarmi.server.svc.HealthCheckController;
+import net.doodream.yarmi.server.svc.impl.HealthCheckControllerImpl;
+import net.doodream.yarmi.serde.bson.BsonConverter;
+
+@Service(
+        name = "pooled-test-service",
+        provider = "www.doodream.com",
+        converter = BsonConverter.class,
+        params = {
+            @AdapterParam(key= TcpServiceAdapter.PARAM_PORT, value = "6465"),
+            @AdapterParam(key= PooledServiceProxy.PARAM_POOL_MAX, value = "4"),
+            @AdapterParam(key= PooledServiceProxy.PARAM_POOL_GROW_THRESHOLD, value = "2"),
+            @AdapterParam(key= PooledServiceProxy.PARAM_POOL_IDLE_TIMEOUT, value = "1000")
+        })
+public class PooledEchoBackService {
+
+    @Controller(path = "/delayed/response", version = 1, module = DelayedResponseControllerImpl.class)
+    DelayedResponseController delayedResponseController;
+
+    @Controller(path = "/echo/object", version = 1, module = EchoBackControllerImpl.class)
+    EchoBackController echoBackController;
+
+    @Controller(path = "/health", version = 1, module = HealthCheckControllerImpl.class)
+    HealthCheckController healthCheckController;
+
+}